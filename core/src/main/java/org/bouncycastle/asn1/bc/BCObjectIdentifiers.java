@@ -68,4 +68,14 @@
     public static final ASN1ObjectIdentifier bc_pbe_sha256_pkcs12_aes192_cbc = bc_pbe_sha256_pkcs12.branch("1.22");
     /** 1.3.6.1.4.1.22554.1.1.2.2.42 */
     public static final ASN1ObjectIdentifier bc_pbe_sha256_pkcs12_aes256_cbc = bc_pbe_sha256_pkcs12.branch("1.42");
+
+    /**
+     * time stamping(2)
+     * <p>
+     * 1.3.6.1.4.1.22554.2
+     */
+    public static final ASN1ObjectIdentifier bc_tsp = bc.branch("2");
+
+    /** Merkle tree inclusion proof attribute for batched time stamps; 1.3.6.1.4.1.22554.2.1 */
+    public static final ASN1ObjectIdentifier bc_tsp_merkleInclusionProof = bc_tsp.branch("1");
 }
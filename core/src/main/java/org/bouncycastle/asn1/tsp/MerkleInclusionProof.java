@@ -0,0 +1,147 @@
+package org.bouncycastle.asn1.tsp;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+
+/**
+ * Proof that a message imprint is one of the leaves of a Merkle tree, carried as an unsigned
+ * attribute of a time stamp token whose TSTInfo message imprint is the root of the tree.
+ */
+public class MerkleInclusionProof
+    extends ASN1Object
+{
+    private ASN1Integer    leafIndex;
+    private ASN1Integer    treeSize;
+    private MessageImprint messageImprint;
+    private ASN1Sequence   path;
+    private ASN1Integer    nonce;
+
+    public static MerkleInclusionProof getInstance(Object o)
+    {
+        if (o instanceof MerkleInclusionProof)
+        {
+            return (MerkleInclusionProof)o;
+        }
+
+        if (o != null)
+        {
+            return new MerkleInclusionProof(ASN1Sequence.getInstance(o));
+        }
+
+        return null;
+    }
+
+    private MerkleInclusionProof(
+        ASN1Sequence seq)
+    {
+        if (seq.size() != 4 && seq.size() != 5)
+        {
+            throw new IllegalArgumentException("bad sequence size: " + seq.size());
+        }
+
+        this.leafIndex = ASN1Integer.getInstance(seq.getObjectAt(0));
+        this.treeSize = ASN1Integer.getInstance(seq.getObjectAt(1));
+        this.messageImprint = MessageImprint.getInstance(seq.getObjectAt(2));
+        this.path = ASN1Sequence.getInstance(seq.getObjectAt(3));
+
+        if (seq.size() == 5)
+        {
+            this.nonce = ASN1Integer.getInstance(seq.getObjectAt(4));
+        }
+    }
+
+    /**
+     * @param leafIndex the position of the leaf in the tree, counting from zero.
+     * @param treeSize the number of leaves in the tree.
+     * @param messageImprint the message imprint the leaf was made from.
+     * @param path the sibling hashes on the way from the leaf to the root, nearest the leaf first.
+     * @param nonce the nonce the leaf was made with, null if none.
+     */
+    public MerkleInclusionProof(
+        int            leafIndex,
+        int            treeSize,
+        MessageImprint messageImprint,
+        byte[][]       path,
+        BigInteger     nonce)
+    {
+        ASN1EncodableVector v = new ASN1EncodableVector();
+
+        for (int i = 0; i != path.length; i++)
+        {
+            v.add(new DEROctetString(path[i]));
+        }
+
+        this.leafIndex = new ASN1Integer(leafIndex);
+        this.treeSize = new ASN1Integer(treeSize);
+        this.messageImprint = messageImprint;
+        this.path = new DERSequence(v);
+        this.nonce = (nonce != null) ? new ASN1Integer(nonce) : null;
+    }
+
+    public int getLeafIndex()
+    {
+        return leafIndex.getValue().intValue();
+    }
+
+    public int getTreeSize()
+    {
+        return treeSize.getValue().intValue();
+    }
+
+    public MessageImprint getMessageImprint()
+    {
+        return messageImprint;
+    }
+
+    public byte[][] getPath()
+    {
+        byte[][] hashes = new byte[path.size()][];
+
+        for (int i = 0; i != hashes.length; i++)
+        {
+            hashes[i] = ASN1OctetString.getInstance(path.getObjectAt(i)).getOctets();
+        }
+
+        return hashes;
+    }
+
+    public ASN1Integer getNonce()
+    {
+        return nonce;
+    }
+
+    /**
+     * <pre>
+     *    MerkleInclusionProof ::= SEQUENCE  {
+     *       leafIndex                    INTEGER,
+     *       treeSize                     INTEGER,
+     *       messageImprint               MessageImprint,
+     *       path                         SEQUENCE OF OCTET STRING,
+     *       nonce                        INTEGER OPTIONAL }
+     * </pre>
+     */
+    public ASN1Primitive toASN1Primitive()
+    {
+        ASN1EncodableVector v = new ASN1EncodableVector();
+
+        v.add(leafIndex);
+        v.add(treeSize);
+        v.add(messageImprint);
+        v.add(path);
+
+        if (nonce != null)
+        {
+            v.add(nonce);
+        }
+
+        return new DERSequence(v);
+    }
+}
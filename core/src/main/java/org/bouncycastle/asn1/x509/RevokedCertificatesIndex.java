@@ -0,0 +1,200 @@
+package org.bouncycastle.asn1.x509;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+
+/**
+ * A serial number index over the revokedCertificates of a TBSCertList.
+ * <p>
+ * The index only holds the hash of each serial number and the position of its entry,
+ * sorted by hash, so a lookup is a binary search followed by a comparison against the
+ * candidate entries. Entries are read from the underlying TBSCertList when required, and
+ * for an indirect CRL the certificate issuer in effect for an entry is resolved from the
+ * positions at which the certificateIssuer CRL entry extension changes.
+ * </p>
+ */
+public class RevokedCertificatesIndex
+{
+    private static final int[] EMPTY = new int[0];
+
+    private final ASN1Sequence revokedCertificates;
+    private final int[] hashes;
+    private final int[] positions;
+    private final int[] issuerPositions;
+    private final GeneralNames[] issuers;
+
+    /**
+     * Build an index for the passed in TBSCertList.
+     *
+     * @param tbsCertList the TBSCertList to be indexed.
+     * @param isIndirect true if the CRL is indirect and certificateIssuer entry extensions should be tracked.
+     */
+    public RevokedCertificatesIndex(TBSCertList tbsCertList, boolean isIndirect)
+    {
+        this.revokedCertificates = tbsCertList.revokedCertificates;
+
+        int size = (revokedCertificates == null) ? 0 : revokedCertificates.size();
+        long[] keys = new long[size];
+        int[] changes = new int[0];
+        GeneralNames[] names = new GeneralNames[0];
+        int changeCount = 0;
+
+        for (int i = 0; i != size; i++)
+        {
+            ASN1Sequence entry = ASN1Sequence.getInstance(revokedCertificates.getObjectAt(i));
+            int hash = ASN1Integer.getInstance(entry.getObjectAt(0)).getValue().hashCode();
+
+            keys[i] = ((long)hash << 32) | i;
+
+            if (isIndirect && entry.size() == 3)
+            {
+                Extension currentCaName = Extensions.getInstance(entry.getObjectAt(2)).getExtension(Extension.certificateIssuer);
+
+                if (currentCaName != null)
+                {
+                    if (changeCount == changes.length)
+                    {
+                        int[] tmpChanges = new int[changeCount * 2 + 1];
+                        GeneralNames[] tmpNames = new GeneralNames[tmpChanges.length];
+
+                        System.arraycopy(changes, 0, tmpChanges, 0, changeCount);
+                        System.arraycopy(names, 0, tmpNames, 0, changeCount);
+
+                        changes = tmpChanges;
+                        names = tmpNames;
+                    }
+
+                    changes[changeCount] = i;
+                    names[changeCount] = GeneralNames.getInstance(currentCaName.getParsedValue());
+                    changeCount++;
+                }
+            }
+        }
+
+        // the position is in the low order bits, so entries sharing a hash stay in CRL order.
+        Arrays.sort(keys);
+
+        this.hashes = new int[size];
+        this.positions = new int[size];
+
+        for (int i = 0; i != size; i++)
+        {
+            hashes[i] = (int)(keys[i] >> 32);
+            positions[i] = (int)keys[i];
+        }
+
+        this.issuerPositions = new int[changeCount];
+        this.issuers = new GeneralNames[changeCount];
+
+        System.arraycopy(changes, 0, issuerPositions, 0, changeCount);
+        System.arraycopy(names, 0, issuers, 0, changeCount);
+    }
+
+    /**
+     * Return the number of entries in the index.
+     *
+     * @return the number of revoked certificates on the CRL.
+     */
+    public int size()
+    {
+        return hashes.length;
+    }
+
+    /**
+     * Return the positions of the entries with the passed in serial number, in the order they
+     * appear on the CRL.
+     *
+     * @param serialNumber the serial number of interest.
+     * @return an array of entry positions, empty if the serial number is not on the CRL.
+     */
+    public int[] getEntryPositions(BigInteger serialNumber)
+    {
+        int hash = serialNumber.hashCode();
+        int low = 0;
+        int high = hashes.length;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (hashes[mid] < hash)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        int[] matches = EMPTY;
+        int count = 0;
+
+        for (int i = low; i < hashes.length && hashes[i] == hash; i++)
+        {
+            if (serialNumber.equals(getEntry(positions[i]).getUserCertificate().getValue()))
+            {
+                if (count == matches.length)
+                {
+                    int[] tmp = new int[count + 1];
+
+                    System.arraycopy(matches, 0, tmp, 0, count);
+
+                    matches = tmp;
+                }
+
+                matches[count++] = positions[i];
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Return the entry at the passed in position on the CRL.
+     *
+     * @param position the position of the entry.
+     * @return the CRL entry.
+     */
+    public TBSCertList.CRLEntry getEntry(int position)
+    {
+        return TBSCertList.CRLEntry.getInstance(revokedCertificates.getObjectAt(position));
+    }
+
+    /**
+     * Return the certificate issuer in effect for the entry at the passed in position - this takes
+     * into account the certificateIssuer extension on the entry itself as well as on any earlier entries.
+     *
+     * @param position the position of the entry.
+     * @return the certificate issuer names, or null if the CRL issuer applies.
+     */
+    public GeneralNames getCertificateIssuer(int position)
+    {
+        int low = 0;
+        int high = issuerPositions.length;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (issuerPositions[mid] <= position)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        if (low == 0)
+        {
+            return null;
+        }
+
+        return issuers[low - 1];
+    }
+}
@@ -41,13 +41,26 @@
     public CipherInputStream(
         InputStream is,
         BufferedBlockCipher cipher)
+    {
+        this(is, cipher, INPUT_BUF_SIZE);
+    }
+
+    /**
+     * Constructs a CipherInputStream from an InputStream and a
+     * BufferedBlockCipher, reading up to bufSize bytes from the
+     * underlying stream at a time.
+     */
+    public CipherInputStream(
+        InputStream is,
+        BufferedBlockCipher cipher,
+        int bufSize)
     {
         super(is);
 
         this.bufferedBlockCipher = cipher;
 
-        buf = new byte[cipher.getOutputSize(INPUT_BUF_SIZE)];
-        inBuf = new byte[INPUT_BUF_SIZE];
+        buf = new byte[cipher.getOutputSize(bufSize)];
+        inBuf = new byte[bufSize];
     }
 
     public CipherInputStream(
@@ -0,0 +1,64 @@
+package org.bouncycastle.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map holding at most a fixed number of entries, evicting the least recently used entry once a
+ * put takes it over its limit. Both get() and put() count as a use.
+ * <p>
+ * Note: like LinkedHashMap this class is not synchronized.
+ * </p>
+ */
+public class BoundedLRUMap
+    extends LinkedHashMap
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+
+    /**
+     * Base constructor.
+     *
+     * @param maxEntries the maximum number of entries the map will hold.
+     */
+    public BoundedLRUMap(int maxEntries)
+    {
+        super(16, 0.75f, true);
+
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Return the maximum number of entries the map will hold.
+     *
+     * @return the entry limit.
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    protected boolean removeEldestEntry(Map.Entry eldest)
+    {
+        if (size() > maxEntries)
+        {
+            evicted(eldest.getKey(), eldest.getValue());
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Called just before an entry is evicted to make room for a newer one. By default this does nothing,
+     * subclasses can override it to release whatever the value holds.
+     *
+     * @param key the key of the entry being evicted.
+     * @param value the value of the entry being evicted.
+     */
+    protected void evicted(Object key, Object value)
+    {
+    }
+}
@@ -0,0 +1,218 @@
+package org.bouncycastle.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A collection backed store which uses hash indexes to narrow down the objects a selector
+ * needs to be applied to.
+ * <p>
+ * The indexes are provided by a {@link StoreIndexer}. Where a selector constrains one or more of
+ * the indexes the smallest set of candidates is used, otherwise every object in the store is
+ * checked as for a {@link CollectionStore}. Matches are always returned in collection order.
+ * </p>
+ */
+public class IndexedCollectionStore
+    implements Store
+{
+    private final Object[] _local;
+    private final StoreIndexer indexer;
+    private final Map[] indexes;
+
+    /**
+     * Basic constructor.
+     *
+     * @param collection - initial contents for the store, this is copied.
+     * @param indexer - the indexer providing the keys for the store's indexes.
+     */
+    public IndexedCollectionStore(
+        Collection collection,
+        StoreIndexer indexer)
+    {
+        this._local = collection.toArray();
+        this.indexer = indexer;
+        this.indexes = new Map[indexer.getIndexCount()];
+
+        for (int i = 0; i != indexes.length; i++)
+        {
+            indexes[i] = new HashMap();
+        }
+
+        for (int pos = 0; pos != _local.length; pos++)
+        {
+            for (int i = 0; i != indexes.length; i++)
+            {
+                Object key = indexer.getIndexKey(i, _local[pos]);
+
+                if (key != null)
+                {
+                    Positions positions = (Positions)indexes[i].get(key);
+
+                    if (positions == null)
+                    {
+                        positions = new Positions();
+                        indexes[i].put(key, positions);
+                    }
+
+                    positions.add(pos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the matches in the collection for the passed in selector.
+     *
+     * @param selector the selector to match against.
+     * @return a possibly empty collection of matching objects.
+     */
+    public Collection getMatches(Selector selector)
+    {
+        Collection candidates = getCandidates(selector);
+
+        if (selector == null)
+        {
+            return candidates;
+        }
+
+        List col = new ArrayList();
+        Iterator iter = candidates.iterator();
+
+        while (iter.hasNext())
+        {
+            Object obj = iter.next();
+
+            if (selector.match(obj))
+            {
+                col.add(obj);
+            }
+        }
+
+        return col;
+    }
+
+    /**
+     * Return the objects in the store which the passed in selector could match, based on the
+     * indexes the selector constrains. The selector itself is not applied.
+     *
+     * @param selector the selector to look up, may be null.
+     * @return a possibly empty collection of candidate objects, in collection order.
+     */
+    public Collection getCandidates(Object selector)
+    {
+        int[] best = null;
+
+        if (selector != null)
+        {
+            for (int i = 0; i != indexes.length; i++)
+            {
+                Collection keys = indexer.getSelectorKeys(i, selector);
+
+                if (keys != null)
+                {
+                    int[] positions = lookup(indexes[i], keys);
+
+                    if (best == null || positions.length < best.length)
+                    {
+                        best = positions;
+                    }
+                }
+            }
+        }
+
+        List col;
+
+        if (best == null)
+        {
+            col = new ArrayList(_local.length);
+
+            for (int i = 0; i != _local.length; i++)
+            {
+                col.add(_local[i]);
+            }
+        }
+        else
+        {
+            col = new ArrayList(best.length);
+
+            for (int i = 0; i != best.length; i++)
+            {
+                col.add(_local[best[i]]);
+            }
+        }
+
+        return col;
+    }
+
+    private int[] lookup(Map index, Collection keys)
+    {
+        List found = new ArrayList(keys.size());
+        int count = 0;
+
+        for (Iterator it = new HashSet(keys).iterator(); it.hasNext();)
+        {
+            Positions positions = (Positions)index.get(it.next());
+
+            if (positions != null)
+            {
+                found.add(positions);
+                count += positions.count;
+            }
+        }
+
+        if (found.size() == 1)
+        {
+            return ((Positions)found.get(0)).toArray();
+        }
+
+        int[] rv = new int[count];
+        int off = 0;
+
+        for (int i = 0; i != found.size(); i++)
+        {
+            Positions positions = (Positions)found.get(i);
+
+            System.arraycopy(positions.values, 0, rv, off, positions.count);
+            off += positions.count;
+        }
+
+        // each object has a single key per index so there are no duplicates, just restore collection order.
+        java.util.Arrays.sort(rv);
+
+        return rv;
+    }
+
+    private static class Positions
+    {
+        int[] values = new int[1];
+        int count;
+
+        void add(int pos)
+        {
+            if (count == values.length)
+            {
+                int[] tmp = new int[count * 2];
+
+                System.arraycopy(values, 0, tmp, 0, count);
+
+                values = tmp;
+            }
+
+            values[count++] = pos;
+        }
+
+        int[] toArray()
+        {
+            int[] rv = new int[count];
+
+            System.arraycopy(values, 0, rv, 0, count);
+
+            return rv;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package org.bouncycastle.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A bounded cache of revocation information, such as CRLs or OCSP responses, keyed by issuer and
+ * distribution point. The provider's PKIX CertPathValidator will use one passed to it with
+ * org.bouncycastle.x509.ExtendedPKIXParameters.setRevocationCache() to hold the CRLs found in the
+ * parameters' stores, so a cache should only be shared between parameters with the same stores.
+ * <p>
+ * Each entry holds the objects found for an issuer and distribution point together with the
+ * thisUpdate and nextUpdate times they are good for. An entry is only returned between its thisUpdate
+ * and nextUpdate times, and is dropped once its nextUpdate is reached. Once the maximum number of
+ * entries is reached the least recently used entries are evicted first.
+ * </p>
+ * <p>
+ * If an executor is given, a lookup which finds an entry within the refresh period before its
+ * nextUpdate returns the entry and has the loader fetch its replacement in the background, so entries
+ * in regular use are replaced before they expire and validations do not wait on the fetch.
+ * </p>
+ */
+public class PKIXRevocationCache
+{
+    /**
+     * Source of revocation information for a cache.
+     */
+    public interface Loader
+    {
+        /**
+         * Fetch the current revocation information for an issuer and distribution point and add it
+         * to the cache using put(). Nothing need be added if there is no current information.
+         *
+         * @param cache the cache to add the information to.
+         * @param issuer the issuer of interest.
+         * @param distributionPoint the distribution point of interest, may be null.
+         * @throws StoreException if the revocation information cannot be fetched.
+         */
+        void load(PKIXRevocationCache cache, Object issuer, Object distributionPoint)
+            throws StoreException;
+    }
+
+    /**
+     * Source of the update times of revocation objects, such as CRLs, which carry their own.
+     */
+    public interface UpdateTimes
+    {
+        /**
+         * Return the time from which a revocation object can be used.
+         *
+         * @param value the revocation object.
+         * @return its thisUpdate time.
+         */
+        Date getThisUpdate(Object value);
+
+        /**
+         * Return the time at which a revocation object is due to be replaced.
+         *
+         * @param value the revocation object.
+         * @return its nextUpdate time, null if it has none.
+         */
+        Date getNextUpdate(Object value);
+    }
+
+    private final int maxEntries;
+    private final ExecutorService executor;
+    private final long refreshPeriod;
+
+    private final Map entries;
+
+    /**
+     * Create a cache which only fetches entries as they are looked up.
+     *
+     * @param maxEntries the maximum number of entries to hold.
+     */
+    public PKIXRevocationCache(int maxEntries)
+    {
+        this(maxEntries, null, 0);
+    }
+
+    /**
+     * Create a cache which refreshes entries in use in the background.
+     *
+     * @param maxEntries the maximum number of entries to hold.
+     * @param executor the executor to run refreshes on, null if entries are only fetched as they are looked up.
+     * @param refreshPeriod the time in milliseconds before an entry's nextUpdate at which it should be refreshed.
+     */
+    public PKIXRevocationCache(int maxEntries, ExecutorService executor, long refreshPeriod)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        if (refreshPeriod < 0)
+        {
+            throw new IllegalArgumentException("refreshPeriod cannot be negative");
+        }
+
+        this.maxEntries = maxEntries;
+        this.executor = executor;
+        this.refreshPeriod = refreshPeriod;
+        this.entries = new BoundedLRUMap(maxEntries);
+    }
+
+    /**
+     * Return the maximum number of entries held.
+     *
+     * @return the maximum number of entries.
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Add the revocation information for an issuer and distribution point, replacing any already held.
+     *
+     * @param issuer the issuer the information is for.
+     * @param distributionPoint the distribution point the information is for, may be null.
+     * @param values the revocation objects.
+     * @param thisUpdate the time from which the information can be used.
+     * @param nextUpdate the time at which the information is due to be replaced.
+     */
+    public void put(Object issuer, Object distributionPoint, Collection values, Date thisUpdate, Date nextUpdate)
+    {
+        if (!nextUpdate.after(thisUpdate))
+        {
+            throw new IllegalArgumentException("nextUpdate must be after thisUpdate");
+        }
+
+        Entry entry = new Entry(Collections.unmodifiableList(new ArrayList(values)), thisUpdate.getTime(), nextUpdate.getTime());
+
+        synchronized (entries)
+        {
+            entries.put(new Key(issuer, distributionPoint), entry);
+        }
+    }
+
+    /**
+     * Add the revocation information for an issuer and distribution point made up of objects which each
+     * carry their own update times, replacing any already held. The entry is good from the earliest
+     * thisUpdate to the earliest nextUpdate of the objects which have not yet reached their nextUpdate,
+     * so it expires as soon as any of them is due to be replaced. Nothing is added if none of the
+     * objects has a nextUpdate still to come.
+     *
+     * @param issuer the issuer the information is for.
+     * @param distributionPoint the distribution point the information is for, may be null.
+     * @param values the revocation objects.
+     * @param updateTimes the source of the update times of the objects in values.
+     * @return true if an entry was added, false otherwise.
+     */
+    public boolean putCurrent(Object issuer, Object distributionPoint, Collection values, UpdateTimes updateTimes)
+    {
+        Date now = new Date();
+        Date thisUpdate = null;
+        Date nextUpdate = null;
+
+        for (Iterator it = values.iterator(); it.hasNext();)
+        {
+            Object value = it.next();
+            Date   valueNextUpdate = updateTimes.getNextUpdate(value);
+
+            if (valueNextUpdate != null && valueNextUpdate.after(now))
+            {
+                Date valueThisUpdate = updateTimes.getThisUpdate(value);
+
+                if (thisUpdate == null || valueThisUpdate.before(thisUpdate))
+                {
+                    thisUpdate = valueThisUpdate;
+                }
+                if (nextUpdate == null || valueNextUpdate.before(nextUpdate))
+                {
+                    nextUpdate = valueNextUpdate;
+                }
+            }
+        }
+
+        if (nextUpdate != null && nextUpdate.after(thisUpdate))
+        {
+            put(issuer, distributionPoint, values, thisUpdate, nextUpdate);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the current revocation information for an issuer and distribution point.
+     *
+     * @param issuer the issuer of interest.
+     * @param distributionPoint the distribution point of interest, may be null.
+     * @return an unmodifiable collection of revocation objects, null if none are current.
+     */
+    public Collection get(Object issuer, Object distributionPoint)
+    {
+        Entry entry = getEntry(new Key(issuer, distributionPoint), System.currentTimeMillis());
+
+        return (entry != null) ? entry.values : null;
+    }
+
+    /**
+     * Return the current revocation information for an issuer and distribution point, using the
+     * loader to fetch it if none is held. If the information is due for refresh and the cache has an
+     * executor the loader is also run in the background to fetch its replacement.
+     *
+     * @param issuer the issuer of interest.
+     * @param distributionPoint the distribution point of interest, may be null.
+     * @param loader the source of the revocation information.
+     * @return an unmodifiable collection of revocation objects, null if none are current.
+     * @throws StoreException if the loader cannot fetch the revocation information.
+     */
+    public Collection get(final Object issuer, final Object distributionPoint, final Loader loader)
+        throws StoreException
+    {
+        Key   key = new Key(issuer, distributionPoint);
+        long  now = System.currentTimeMillis();
+        Entry entry = getEntry(key, now);
+
+        if (entry == null)
+        {
+            // two threads missing at once will both load, the second result simply replaces the first.
+            loader.load(this, issuer, distributionPoint);
+
+            entry = getEntry(key, now);
+        }
+        else if (executor != null && now >= entry.nextUpdate - refreshPeriod && entry.startRefresh())
+        {
+            final Entry current = entry;
+
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        loader.load(PKIXRevocationCache.this, issuer, distributionPoint);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // ignore - the entry is still good until its nextUpdate, the next lookup will try again.
+                    }
+                    finally
+                    {
+                        current.endRefresh();
+                    }
+                }
+            });
+        }
+
+        return (entry != null) ? entry.values : null;
+    }
+
+    /**
+     * Remove the revocation information for an issuer and distribution point.
+     *
+     * @param issuer the issuer of interest.
+     * @param distributionPoint the distribution point of interest, may be null.
+     */
+    public void invalidate(Object issuer, Object distributionPoint)
+    {
+        synchronized (entries)
+        {
+            entries.remove(new Key(issuer, distributionPoint));
+        }
+    }
+
+    /**
+     * Return the number of entries held, including any which are no longer current.
+     *
+     * @return the number of entries.
+     */
+    public int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+
+    private Entry getEntry(Key key, long now)
+    {
+        synchronized (entries)
+        {
+            Entry entry = (Entry)entries.get(key);
+
+            if (entry == null)
+            {
+                return null;
+            }
+
+            if (now >= entry.nextUpdate)
+            {
+                entries.remove(key);
+                return null;
+            }
+
+            return (now >= entry.thisUpdate) ? entry : null;
+        }
+    }
+
+    private static class Key
+    {
+        private final Object issuer;
+        private final Object distributionPoint;
+
+        Key(Object issuer, Object distributionPoint)
+        {
+            if (issuer == null)
+            {
+                throw new NullPointerException("issuer cannot be null");
+            }
+
+            this.issuer = issuer;
+            this.distributionPoint = distributionPoint;
+        }
+
+        public int hashCode()
+        {
+            return issuer.hashCode() ^ ((distributionPoint != null) ? distributionPoint.hashCode() : 0);
+        }
+
+        public boolean equals(Object o)
+        {
+            if (o == this)
+            {
+                return true;
+            }
+
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key)o;
+
+            if (!issuer.equals(other.issuer))
+            {
+                return false;
+            }
+
+            return (distributionPoint == null) ? other.distributionPoint == null : distributionPoint.equals(other.distributionPoint);
+        }
+    }
+
+    private static class Entry
+    {
+        final Collection values;
+        final long thisUpdate;
+        final long nextUpdate;
+
+        private boolean refreshing;
+
+        Entry(Collection values, long thisUpdate, long nextUpdate)
+        {
+            this.values = values;
+            this.thisUpdate = thisUpdate;
+            this.nextUpdate = nextUpdate;
+        }
+
+        synchronized boolean startRefresh()
+        {
+            if (refreshing)
+            {
+                return false;
+            }
+
+            refreshing = true;
+
+            return true;
+        }
+
+        synchronized void endRefresh()
+        {
+            refreshing = false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.bouncycastle.util;
+
+import java.util.Collection;
+
+/**
+ * Interface for classes which provide the index keys used by an {@link IndexedCollectionStore}.
+ * <p>
+ * For each index an object has at most one key, and a selector may constrain the index to a set of keys.
+ * An implementation must guarantee that a selector which returns keys for an index can only match
+ * objects whose key for that index is one of those keys, so objects with no key for the index will never
+ * match such a selector.
+ * </p>
+ */
+public interface StoreIndexer
+{
+    /**
+     * Return the number of indexes supported.
+     *
+     * @return the index count.
+     */
+    int getIndexCount();
+
+    /**
+     * Return the key obj should be indexed under for the passed in index.
+     *
+     * @param index the index of interest.
+     * @param obj the object to be indexed.
+     * @return the key, or null if obj cannot be found using this index.
+     */
+    Object getIndexKey(int index, Object obj);
+
+    /**
+     * Return the keys the passed in selector restricts the passed in index to.
+     *
+     * @param index the index of interest.
+     * @param selector the selector to be examined.
+     * @return a collection of keys, or null if the selector does not constrain this index.
+     */
+    Collection getSelectorKeys(int index, Object selector);
+}
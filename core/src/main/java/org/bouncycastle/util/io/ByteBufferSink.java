@@ -0,0 +1,20 @@
+package org.bouncycastle.util.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for output streams which can take their data directly from a ByteBuffer, saving a
+ * copy through a byte array when the underlying engine can process a buffer itself.
+ */
+public interface ByteBufferSink
+{
+    /**
+     * Write the bytes remaining in buf, on return buf's position will be its limit.
+     *
+     * @param buf the buffer holding the data to write.
+     * @throws IOException on a write error.
+     */
+    void write(ByteBuffer buf)
+        throws IOException;
+}
@@ -4,10 +4,12 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public final class Streams
 {
     private static int BUFFER_SIZE = 512;
+    private static int COPY_BUFFER_SIZE = 32 * 1024;
 
     public static void drain(InputStream inStr)
         throws IOException
@@ -84,4 +86,33 @@ public static long pipeAllLimited(InputStream inStr, long limit, OutputStream ou
         }
         return total;
     }
+
+    /**
+     * Write the bytes remaining in buf to outStr, passing the buffer straight through if outStr
+     * is a ByteBufferSink, and copying it through a byte array otherwise. On return buf's position
+     * will be its limit.
+     */
+    public static void writeBuffer(ByteBuffer buf, OutputStream outStr)
+        throws IOException
+    {
+        if (outStr instanceof ByteBufferSink)
+        {
+            ((ByteBufferSink)outStr).write(buf);
+        }
+        else if (buf.hasArray())
+        {
+            outStr.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            buf.position(buf.limit());
+        }
+        else
+        {
+            byte[] bs = new byte[Math.min(COPY_BUFFER_SIZE, buf.remaining())];
+            while (buf.hasRemaining())
+            {
+                int count = Math.min(bs.length, buf.remaining());
+                buf.get(bs, 0, count);
+                outStr.write(bs, 0, count);
+            }
+        }
+    }
 }
@@ -2,9 +2,11 @@
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public class TeeOutputStream
     extends OutputStream
+    implements ByteBufferSink
 {
     private OutputStream output1;
     private OutputStream output2;
@@ -29,6 +31,13 @@ public void write(byte[] buf, int off, int len)
         this.output2.write(buf, off, len);
     }
 
+    public void write(ByteBuffer buf)
+        throws IOException
+    {
+        Streams.writeBuffer(buf.duplicate(), this.output1);
+        Streams.writeBuffer(buf, this.output2);
+    }
+
     public void write(int b)
         throws IOException
     {
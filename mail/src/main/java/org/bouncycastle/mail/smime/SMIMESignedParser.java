@@ -2,6 +2,7 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -84,19 +85,6 @@ private static InputStream getInputStream(
         }
     }
 
-    private static File getTmpFile()
-        throws MessagingException
-    {
-        try
-        {
-            return File.createTempFile("bcMail", ".mime");
-        }
-        catch (IOException e)
-        {
-            throw new MessagingException("can't extract input stream: " + e);
-        }
-    }
-
     private static CMSTypedStream getSignedInputStream(
         BodyPart    bodyPart,
         String      defaultContentTransferEncoding,
@@ -135,8 +123,8 @@ private static CMSTypedStream getSignedInputStream(
     }
 
     /**
-     * base constructor using a defaultContentTransferEncoding of 7bit. A temporary backing file
-     * will be created for the signed data.
+     * base constructor using a defaultContentTransferEncoding of 7bit. The signed data is
+     * canonicalised as it is written to the content digests, so no copy of it is made.
      *
      * @param digCalcProvider provider for digest calculators.
      * @param message signed message with signature.
@@ -149,7 +137,7 @@ public SMIMESignedParser(
         MimeMultipart message)
         throws MessagingException, CMSException
     {
-        this(digCalcProvider, message, getTmpFile());
+        this(digCalcProvider, message, "7bit");
     }
 
     /**
@@ -172,8 +160,8 @@ public SMIMESignedParser(
     }
 
     /**
-     * base constructor with settable contentTransferEncoding. A temporary backing file will be created
-     * to contain the signed data.
+     * base constructor with settable contentTransferEncoding. The signed data is canonicalised
+     * as it is written to the content digests, so no copy of it is made.
      *
      * @param digCalcProvider provider for digest calculators.
      * @param message the signed message with signature.
@@ -188,7 +176,12 @@ public SMIMESignedParser(
         String        defaultContentTransferEncoding)
         throws MessagingException, CMSException
     {
-        this(digCalcProvider, message, defaultContentTransferEncoding, getTmpFile());
+        super(digCalcProvider, new CMSTypedStream(new ByteArrayInputStream(new byte[0])), getInputStream(message.getBodyPart(1)));
+
+        this.message = message;
+        this.content = (MimeBodyPart)message.getBodyPart(0);
+
+        digestContent(new CMSProcessableBodyPartInbound(message.getBodyPart(0), defaultContentTransferEncoding));
     }
 
     /**
@@ -248,6 +241,40 @@ public SMIMESignedParser(
         }
     }
 
+    /**
+     * Constructor for a signed message with encapsulated content. Encapsulated content of up
+     * to spoolThreshold bytes is held in memory, larger content is written to a temporary file
+     * as it is read, in which case the body part returned by getContent() will be a
+     * FileBackedMimeBodyPart which should be disposed of once it is no longer needed.
+     *
+     * @param digCalcProvider provider for digest calculators.
+     * @param message the Part containing the signed content.
+     * @param spoolThreshold the largest encapsulated content, in bytes, to hold in memory.
+     *
+     * @exception MessagingException on an error extracting the signature or
+     * otherwise processing the message.
+     * @exception SMIMEException if the body part encapsulated in the message cannot be extracted.
+     * @exception CMSException if some other problem occurs.
+     * @exception IllegalArgumentException if spoolThreshold is negative.
+     */
+    public SMIMESignedParser(
+        DigestCalculatorProvider digCalcProvider,
+        Part message,
+        int  spoolThreshold)
+        throws MessagingException, CMSException, SMIMEException
+    {
+        super(digCalcProvider, getInputStream(message));
+
+        this.message = message;
+
+        CMSTypedStream  cont = this.getSignedContent();
+
+        if (cont != null)
+        {
+            this.content = SMIMEUtil.toMimeBodyPart(cont, spoolThreshold);
+        }
+    }
+
     /**
      * Constructor for a signed message with encapsulated content. The encapsulated
      * content, if it exists, is written to the file represented by the File object
@@ -1,11 +1,13 @@
 package org.bouncycastle.mail.smime;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.security.NoSuchProviderException;
 import java.security.Provider;
 import java.security.Security;
@@ -485,6 +487,67 @@ public static FileBackedMimeBodyPart toMimeBodyPart(
         }
     }
     
+    /**
+     * Return the MimeBodyPart described in {@link CMSTypedStream} content, holding it in memory if it
+     * is no more than spoolThreshold bytes long and otherwise writing it to a temporary file as it is
+     * read. In the latter case the part returned is a FileBackedMimeBodyPart, which should be disposed
+     * of once it is no longer needed.
+     *
+     * @param content content stream containing body part.
+     * @param spoolThreshold the largest body part, in bytes, to hold in memory.
+     * @return the decoded body part.
+     * @throws SMIMEException
+     * @throws IllegalArgumentException if spoolThreshold is negative.
+     */
+    public static MimeBodyPart toMimeBodyPart(
+        CMSTypedStream    content,
+        int               spoolThreshold)
+        throws SMIMEException
+    {
+        if (spoolThreshold < 0)
+        {
+            throw new IllegalArgumentException("spoolThreshold cannot be negative");
+        }
+
+        InputStream           in = content.getContentStream();
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream((int)Math.min(spoolThreshold + 1L, BUF_SIZE));
+        byte[]                buf = new byte[BUF_SIZE];
+        int                   len;
+
+        try
+        {
+            // read no more than one byte past the threshold, so memory use follows the content.
+            while (bOut.size() <= spoolThreshold
+                && (len = in.read(buf, 0, (int)Math.min(buf.length, spoolThreshold + 1L - bOut.size()))) >= 0)
+            {
+                bOut.write(buf, 0, len);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SMIMEException("can't read content: " + e, e);
+        }
+
+        if (bOut.size() <= spoolThreshold)
+        {
+            return toMimeBodyPart(new ByteArrayInputStream(bOut.toByteArray()));
+        }
+
+        try
+        {
+            return new FileBackedMimeBodyPart(
+                new SequenceInputStream(new ByteArrayInputStream(bOut.toByteArray()), in), File.createTempFile("bcMail", ".mime"));
+        }
+        catch (IOException e)
+        {
+            throw new SMIMEException("can't save content to file: " + e, e);
+        }
+        catch (MessagingException e)
+        {
+            throw new SMIMEException("can't create part: " + e, e);
+        }
+    }
+
     /**
      * Return a file based MimeBodyPart represented by content and backed
      * by the file represented by file.
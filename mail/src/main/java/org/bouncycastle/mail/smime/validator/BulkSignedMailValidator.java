@@ -0,0 +1,197 @@
+package org.bouncycastle.mail.smime.validator;
+
+import java.security.cert.PKIXParameters;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.mail.internet.MimeMessage;
+
+import org.bouncycastle.x509.PKIXCertPathReviewer;
+
+/**
+ * Validates signed messages on the threads of an executor, so the signers of many messages can be
+ * checked at once. Each message is validated by a {@link SignedMailValidator} using a copy of the
+ * parameters passed in at construction, and the validators share a cache of the certificate paths
+ * built for signer certificates, so a signer's path is only built once for all the messages it has
+ * signed. Only complete paths, ending at a trust anchor and built entirely from the cert stores in
+ * the parameters, are cached. The stores are expected not to change while the validator is in use -
+ * call {@link #clearCache()} if they do.
+ * <p>
+ * Results are available from the Future returned for each message, and are also passed to a
+ * {@link ValidationListener} as each message is finished with if one is given.
+ * </p>
+ */
+public class BulkSignedMailValidator
+{
+    private static final Class DEFAULT_CERT_PATH_REVIEWER = PKIXCertPathReviewer.class;
+
+    private static final int DEFAULT_MAX_CACHED_PATHS = 1000;
+
+    /**
+     * Receiver of the results of validating messages. Methods may be called from the executor's
+     * threads for several messages at once.
+     */
+    public interface ValidationListener
+    {
+        /**
+         * Called once message has been validated.
+         *
+         * @param message the message validated.
+         * @param validator the validator holding the results for each signer.
+         */
+        void validated(MimeMessage message, SignedMailValidator validator);
+
+        /**
+         * Called if message could not be validated.
+         *
+         * @param message the message which failed.
+         * @param exception the reason for the failure.
+         */
+        void failed(MimeMessage message, SignedMailValidatorException exception);
+    }
+
+    private final PKIXParameters param;
+    private final ExecutorService executor;
+    private final Class certPathReviewerClass;
+    private final CertPathCache pathCache;
+
+    /**
+     * Create a validator using {@link PKIXCertPathReviewer} for the cert path validation.
+     *
+     * @param param
+     *            the parameters for the certificate path validation
+     * @param executor
+     *            the executor to validate messages on
+     */
+    public BulkSignedMailValidator(PKIXParameters param, ExecutorService executor)
+    {
+        this(param, executor, DEFAULT_CERT_PATH_REVIEWER, DEFAULT_MAX_CACHED_PATHS);
+    }
+
+    /**
+     * Create a validator.
+     *
+     * @param param
+     *            the parameters for the certificate path validation
+     * @param executor
+     *            the executor to validate messages on
+     * @param certPathReviewerClass
+     *            a subclass of {@link PKIXCertPathReviewer} with an empty constructor.
+     * @param maxCachedPaths
+     *            the maximum number of signer certificate paths to cache.
+     * @throws IllegalArgumentException if the certPathReviewerClass is not a
+     *             subclass of {@link PKIXCertPathReviewer} or maxCachedPaths is less than 1.
+     */
+    public BulkSignedMailValidator(PKIXParameters param, ExecutorService executor, Class certPathReviewerClass, int maxCachedPaths)
+    {
+        if (!DEFAULT_CERT_PATH_REVIEWER.isAssignableFrom(certPathReviewerClass))
+        {
+            throw new IllegalArgumentException("certPathReviewerClass is not a subclass of " + DEFAULT_CERT_PATH_REVIEWER.getName());
+        }
+        if (maxCachedPaths < 1)
+        {
+            throw new IllegalArgumentException("maxCachedPaths must be at least 1");
+        }
+
+        this.param = (PKIXParameters)param.clone();
+        this.executor = executor;
+        this.certPathReviewerClass = certPathReviewerClass;
+        this.pathCache = new CertPathCache(maxCachedPaths);
+    }
+
+    /**
+     * Queue message for validation.
+     *
+     * @param message the signed message.
+     * @return a Future returning the {@link SignedMailValidator} for message.
+     */
+    public Future validate(MimeMessage message)
+    {
+        return validate(message, null);
+    }
+
+    /**
+     * Queue message for validation, passing the result to listener when it is finished with.
+     *
+     * @param message the signed message.
+     * @param listener the receiver of the result, may be null.
+     * @return a Future returning the {@link SignedMailValidator} for message, getting the
+     * result will throw an ExecutionException wrapping a SignedMailValidatorException if the
+     * message could not be validated.
+     */
+    public Future validate(MimeMessage message, ValidationListener listener)
+    {
+        return executor.submit(new ValidationTask(message, listener));
+    }
+
+    /**
+     * Queue each of the messages for validation, passing the results to listener as they are finished with.
+     *
+     * @param messages a list of the signed messages.
+     * @param listener the receiver of the results, may be null.
+     * @return a list of the Futures for the messages, in the same order as messages.
+     */
+    public List validate(List messages, ValidationListener listener)
+    {
+        List futures = new ArrayList(messages.size());
+
+        for (Iterator it = messages.iterator(); it.hasNext();)
+        {
+            futures.add(validate((MimeMessage)it.next(), listener));
+        }
+
+        return futures;
+    }
+
+    /**
+     * Discard the certificate paths cached for signers.
+     */
+    public void clearCache()
+    {
+        pathCache.clear();
+    }
+
+    private class ValidationTask
+        implements Callable
+    {
+        private final MimeMessage message;
+        private final ValidationListener listener;
+
+        ValidationTask(MimeMessage message, ValidationListener listener)
+        {
+            this.message = message;
+            this.listener = listener;
+        }
+
+        public Object call()
+            throws SignedMailValidatorException
+        {
+            SignedMailValidator validator;
+
+            try
+            {
+                validator = new SignedMailValidator(message, param, certPathReviewerClass, pathCache);
+            }
+            catch (SignedMailValidatorException e)
+            {
+                if (listener != null)
+                {
+                    listener.failed(message, e);
+                }
+
+                throw e;
+            }
+
+            if (listener != null)
+            {
+                listener.validated(message, validator);
+            }
+
+            return validator;
+        }
+    }
+}
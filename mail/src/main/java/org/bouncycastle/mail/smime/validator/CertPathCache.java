@@ -0,0 +1,70 @@
+package org.bouncycastle.mail.smime.validator;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.util.BoundedLRUMap;
+
+/**
+ * A bounded cache of the certificate paths built for signer certificates, shared between the
+ * SignedMailValidators created by a BulkSignedMailValidator. Only complete paths, ending at a trust
+ * anchor, built entirely from the system cert stores are held, as a path using certificates carried
+ * in a message cannot be assumed to be available for another message, and a later message may
+ * carry the certificates missing from an incomplete one.
+ */
+class CertPathCache
+{
+    private final Map paths;
+
+    CertPathCache(int maxEntries)
+    {
+        this.paths = new BoundedLRUMap(maxEntries);
+    }
+
+    /**
+     * Return the result of SignedMailValidator.createCertPath() for signerCert, reusing the path
+     * built for an earlier message where possible.
+     */
+    Object[] createCertPath(X509Certificate signerCert,
+            Set trustanchors, List systemCertStores, List userCertStores) throws GeneralSecurityException
+    {
+        Object[] cached;
+
+        synchronized (paths)
+        {
+            cached = (Object[])paths.get(signerCert);
+        }
+
+        if (cached != null)
+        {
+            return new Object[] { cached[0], new ArrayList((List)cached[1]) };
+        }
+
+        Object[] results = SignedMailValidator.buildCertPath(signerCert, trustanchors, systemCertStores, userCertStores);
+        List     userProvidedList = (List)results[1];
+
+        // the signer certificate always counts as user provided.
+        if (((Boolean)results[2]).booleanValue()
+            && !userProvidedList.subList(1, userProvidedList.size()).contains(Boolean.TRUE))
+        {
+            synchronized (paths)
+            {
+                paths.put(signerCert, new Object[] { results[0], new ArrayList(userProvidedList) });
+            }
+        }
+
+        return new Object[] { results[0], userProvidedList };
+    }
+
+    void clear()
+    {
+        synchronized (paths)
+        {
+            paths.clear();
+        }
+    }
+}
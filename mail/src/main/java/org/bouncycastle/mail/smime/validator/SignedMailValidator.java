@@ -95,6 +95,8 @@
     
     private Class certPathReviewerClass;
 
+    private CertPathCache pathCache;
+
     /**
      * Validates the signed {@link MimeMessage} message. The
      * {@link PKIXParameters} from param are used for the certificate path
@@ -150,8 +152,19 @@ public SignedMailValidator(MimeMessage message, PKIXParameters param)
      */
     public SignedMailValidator(MimeMessage message, PKIXParameters param, Class certPathReviewerClass)
             throws SignedMailValidatorException
+    {
+        this(message, param, certPathReviewerClass, null);
+    }
+
+    /**
+     * Validates message, taking the certificate paths for the signers from pathCache where they
+     * have already been built for an earlier message.
+     */
+    SignedMailValidator(MimeMessage message, PKIXParameters param, Class certPathReviewerClass, CertPathCache pathCache)
+            throws SignedMailValidatorException
     {
         this.certPathReviewerClass = certPathReviewerClass;
+        this.pathCache = pathCache;
         boolean isSubclass = DEFAULT_CERT_PATH_REVIEWER.isAssignableFrom(certPathReviewerClass);
         if(!isSubclass)
         {
@@ -350,7 +363,15 @@ protected void validateSignatures(PKIXParameters pkixParam)
                     
                     List userCertStores = new ArrayList();
                     userCertStores.add(certs);
-                    Object[] cpres = createCertPath(cert, usedParameters.getTrustAnchors(), pkixParam.getCertStores(), userCertStores);
+                    Object[] cpres;
+                    if (pathCache != null)
+                    {
+                        cpres = pathCache.createCertPath(cert, usedParameters.getTrustAnchors(), pkixParam.getCertStores(), userCertStores);
+                    }
+                    else
+                    {
+                        cpres = createCertPath(cert, usedParameters.getTrustAnchors(), pkixParam.getCertStores(), userCertStores);
+                    }
                     certPath = (CertPath) cpres[0];
                     userProvidedList = (List) cpres[1];
 
@@ -670,6 +691,17 @@ public static CertPath createCertPath(X509Certificate signerCert,
      */
     public static Object[] createCertPath(X509Certificate signerCert,
             Set trustanchors, List systemCertStores, List userCertStores) throws GeneralSecurityException
+    {
+        Object[] results = buildCertPath(signerCert, trustanchors, systemCertStores, userCertStores);
+        return new Object[] {results[0], results[1]};
+    }
+
+    /**
+     * As createCertPath(), with a third element in the array returned - Boolean.TRUE if the path
+     * reached a trust anchor.
+     */
+    static Object[] buildCertPath(X509Certificate signerCert,
+            Set trustanchors, List systemCertStores, List userCertStores) throws GeneralSecurityException
     {
         Set  certSet = new LinkedHashSet();
         List userProvidedList = new ArrayList();
@@ -824,7 +856,7 @@ public static Object[] createCertPath(X509Certificate signerCert,
         }
         
         CertPath certPath = CertificateFactory.getInstance("X.509", "BC").generateCertPath(new ArrayList(certSet));
-        return new Object[] {certPath, userProvidedList};
+        return new Object[] {certPath, userProvidedList, Boolean.valueOf(trustAnchorFound)};
     }
 
     public CertStore getCertsAndCRLs()
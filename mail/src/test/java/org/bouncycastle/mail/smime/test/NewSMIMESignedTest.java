@@ -525,6 +525,56 @@ public void testSHA1WithRSAEncapsulatedParserAndFile()
         assertFalse(tmp.exists());
     }
 
+    public void testSHA1WithRSAEncapsulatedParserThreshold()
+        throws Exception
+    {
+        MimeBodyPart res = generateEncapsulatedRsa("SHA1withRSA", msg);
+        SMIMESignedParser s = new SMIMESignedParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), res, 1024);
+
+        assertFalse(s.getContent() instanceof FileBackedMimeBodyPart);
+
+        verifyMessageBytes(msg, s.getContent());
+
+        verifySigners(s.getCertificates(), s.getSignerInfos());
+
+        s.close();
+
+        res = generateEncapsulatedRsa("SHA1withRSA", msg);
+        s = new SMIMESignedParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), res, 10);
+
+        FileBackedMimeBodyPart content = (FileBackedMimeBodyPart)s.getContent();
+
+        verifyMessageBytes(msg, content);
+
+        content.dispose();
+
+        verifySigners(s.getCertificates(), s.getSignerInfos());
+
+        s.close();
+
+        // the buffer follows the content, not the threshold.
+        res = generateEncapsulatedRsa("SHA1withRSA", msg);
+        s = new SMIMESignedParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), res, Integer.MAX_VALUE);
+
+        assertFalse(s.getContent() instanceof FileBackedMimeBodyPart);
+
+        verifyMessageBytes(msg, s.getContent());
+
+        s.close();
+
+        res = generateEncapsulatedRsa("SHA1withRSA", msg);
+
+        try
+        {
+            new SMIMESignedParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), res, -1);
+            fail("negative threshold accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
     public void testMD5WithRSA()
         throws Exception
     {
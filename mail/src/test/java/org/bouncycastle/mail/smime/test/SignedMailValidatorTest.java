@@ -4,7 +4,11 @@
 import java.security.KeyPair;
 import java.security.Security;
 import java.security.cert.CertPath;
+import java.security.cert.CRLSelector;
+import java.security.cert.CertSelector;
 import java.security.cert.CertStore;
+import java.security.cert.CertStoreException;
+import java.security.cert.CertStoreSpi;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXParameters;
@@ -12,6 +16,9 @@
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -19,6 +26,10 @@
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.mail.Address;
 import javax.mail.Message;
@@ -40,7 +51,9 @@
 import org.bouncycastle.cms.test.CMSTestUtil;
 import org.bouncycastle.i18n.ErrorBundle;
 import org.bouncycastle.mail.smime.SMIMESignedGenerator;
+import org.bouncycastle.mail.smime.validator.BulkSignedMailValidator;
 import org.bouncycastle.mail.smime.validator.SignedMailValidator;
+import org.bouncycastle.mail.smime.validator.SignedMailValidatorException;
 import org.bouncycastle.util.Store;
 import org.bouncycastle.x509.PKIXCertPathReviewer;
 import org.bouncycastle.x509.extension.X509ExtensionUtil;
@@ -256,6 +269,96 @@ public void testSelfSignedCert()
         assertTrue(res.isValidSignature());
     }
 
+    public void testBulkValidation()
+        throws Exception
+    {
+        String signDN = "CN=Eric H. Echidna, E=eric@bouncycastle.org, O=Bouncy Castle, C=AU";
+        KeyPair signKP = CMSTestUtil.makeKeyPair();
+        X509Certificate signCert = CMSTestUtil.makeV1Certificate(signKP, signDN, signKP, signDN);
+
+        Set trustanchors = new HashSet();
+        trustanchors.add(new TrustAnchor(signCert, null));
+
+        PKIXParameters params = new PKIXParameters(trustanchors);
+        params.setRevocationEnabled(false);
+
+        List certList = new ArrayList();
+        certList.add(signCert);
+
+        List messages = new ArrayList();
+
+        for (int i = 0; i != 5; i++)
+        {
+            messages.add(makeSignedMessage(signKP, signCert, certList, "Hello world " + i + "!\n"));
+        }
+
+        Session session = Session.getDefaultInstance(System.getProperties(), null);
+        MimeMessage unsigned = new MimeMessage(session);
+
+        unsigned.setFrom(new InternetAddress("\"Eric H. Echidna\"<eric@bouncycastle.org>"));
+        unsigned.setText("Hello world!\n");
+        unsigned.saveChanges();
+
+        messages.add(unsigned);
+
+        final List validated = Collections.synchronizedList(new ArrayList());
+        final List failed = Collections.synchronizedList(new ArrayList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try
+        {
+            BulkSignedMailValidator bulkValidator = new BulkSignedMailValidator(params, executor);
+
+            List futures = bulkValidator.validate(messages, new BulkSignedMailValidator.ValidationListener()
+            {
+                public void validated(MimeMessage message, SignedMailValidator validator)
+                {
+                    validated.add(message);
+                }
+
+                public void failed(MimeMessage message, SignedMailValidatorException exception)
+                {
+                    failed.add(message);
+                }
+            });
+
+            for (int i = 0; i != 5; i++)
+            {
+                SignedMailValidator validator = (SignedMailValidator)((Future)futures.get(i)).get();
+                SignerInformation signer = (SignerInformation)validator
+                        .getSignerInformationStore().getSigners().iterator().next();
+
+                SignedMailValidator.ValidationResult res = validator.getValidationResult(signer);
+
+                assertTrue(res.isVerifiedSignature());
+                assertTrue(res.isValidSignature());
+                assertEquals(signCert, res.getCertPath().getCertificates().get(0));
+
+                // the same whether or not the path came from the cache.
+                assertEquals(Arrays.asList(new Boolean[] { Boolean.TRUE, Boolean.FALSE }), res.getUserProvidedCerts());
+            }
+
+            try
+            {
+                ((Future)futures.get(5)).get();
+                fail("unsigned message validated");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof SignedMailValidatorException);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals(5, validated.size());
+        assertEquals(1, failed.size());
+        assertSame(unsigned, failed.get(0));
+    }
+
 // TODO: this test needs to be replaced, unfortunately it was working due to a bug in
 // trust anchor extension handling
 //    public void testCorruptRootStore() throws Exception
@@ -280,6 +383,170 @@ public void testSelfSignedCert()
 //                "Warning: corrupt trust root store: There are 2 trusted public keys for the CA \"CN=SignedMailValidatorTest Root, C=CH\" - please ensure with CA which is the correct key.");
 //    }
     
+    public void testBulkValidationPathCache()
+        throws Exception
+    {
+        KeyPair rootKP = CMSTestUtil.makeKeyPair();
+        KeyPair interKP = CMSTestUtil.makeKeyPair();
+        KeyPair signKP = CMSTestUtil.makeKeyPair();
+        String rootDN = "CN=Test Root, O=Bouncy Castle, C=AU";
+        String interDN = "CN=Test Intermediate, O=Bouncy Castle, C=AU";
+        String signDN = "CN=Eric H. Echidna, E=eric@bouncycastle.org, O=Bouncy Castle, C=AU";
+        X509Certificate rootCert = CMSTestUtil.makeCACertificate(rootKP, rootDN, rootKP, rootDN);
+        X509Certificate interCert = CMSTestUtil.makeCACertificate(interKP, interDN, rootKP, rootDN);
+        X509Certificate signCert = CMSTestUtil.makeCertificate(signKP, signDN, interKP, interDN);
+
+        Set trustanchors = new HashSet();
+        trustanchors.add(new TrustAnchor(rootCert, null));
+
+        List signerOnly = new ArrayList();
+        signerOnly.add(signCert);
+
+        List signerAndInter = new ArrayList();
+        signerAndInter.add(signCert);
+        signerAndInter.add(interCert);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try
+        {
+            //
+            // intermediate in the system store - the path is built once and reused.
+            //
+            int[] lookups = new int[1];
+            PKIXParameters params = new PKIXParameters(trustanchors);
+            params.setRevocationEnabled(false);
+            params.addCertStore(createCountingStore(Collections.singletonList(interCert), lookups));
+
+            BulkSignedMailValidator bulkValidator = new BulkSignedMailValidator(params, executor);
+
+            SignedMailValidator.ValidationResult res = bulkValidate(bulkValidator, makeSignedMessage(signKP, signCert, signerOnly, "first\n"));
+            int firstLookups = lookups[0];
+
+            checkPath(res, new Boolean[] { Boolean.TRUE, Boolean.FALSE, Boolean.FALSE });
+
+            lookups[0] = 0;
+            res = bulkValidate(bulkValidator, makeSignedMessage(signKP, signCert, signerOnly, "second\n"));
+
+            checkPath(res, new Boolean[] { Boolean.TRUE, Boolean.FALSE, Boolean.FALSE });
+            assertTrue("path not taken from cache", lookups[0] < firstLookups);
+
+            //
+            // intermediate only in the message - the path is built for every message.
+            //
+            lookups[0] = 0;
+            params = new PKIXParameters(trustanchors);
+            params.setRevocationEnabled(false);
+            params.addCertStore(createCountingStore(Collections.EMPTY_LIST, lookups));
+
+            bulkValidator = new BulkSignedMailValidator(params, executor);
+
+            res = bulkValidate(bulkValidator, makeSignedMessage(signKP, signCert, signerAndInter, "first\n"));
+            firstLookups = lookups[0];
+
+            checkPath(res, new Boolean[] { Boolean.TRUE, Boolean.TRUE, Boolean.FALSE });
+
+            lookups[0] = 0;
+            res = bulkValidate(bulkValidator, makeSignedMessage(signKP, signCert, signerAndInter, "second\n"));
+
+            checkPath(res, new Boolean[] { Boolean.TRUE, Boolean.TRUE, Boolean.FALSE });
+            assertEquals("message path was cached", firstLookups, lookups[0]);
+
+            // a message without the intermediate must not find it through the cache.
+            res = bulkValidate(bulkValidator, makeSignedMessage(signKP, signCert, signerOnly, "third\n"));
+
+            assertFalse(res.getCertPathReview().isValidCertPath());
+
+            //
+            // an incomplete path is not cached, a later message carrying the intermediate validates.
+            //
+            params = new PKIXParameters(trustanchors);
+            params.setRevocationEnabled(false);
+
+            bulkValidator = new BulkSignedMailValidator(params, executor);
+
+            res = bulkValidate(bulkValidator, makeSignedMessage(signKP, signCert, signerOnly, "first\n"));
+
+            assertFalse(res.getCertPathReview().isValidCertPath());
+            assertEquals(1, res.getCertPath().getCertificates().size());
+
+            res = bulkValidate(bulkValidator, makeSignedMessage(signKP, signCert, signerAndInter, "second\n"));
+
+            checkPath(res, new Boolean[] { Boolean.TRUE, Boolean.TRUE, Boolean.FALSE });
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private SignedMailValidator.ValidationResult bulkValidate(BulkSignedMailValidator bulkValidator, MimeMessage msg)
+        throws Exception
+    {
+        SignedMailValidator validator = (SignedMailValidator)bulkValidator.validate(msg).get();
+        SignerInformation signer = (SignerInformation)validator
+                .getSignerInformationStore().getSigners().iterator().next();
+
+        return validator.getValidationResult(signer);
+    }
+
+    private void checkPath(SignedMailValidator.ValidationResult res, Boolean[] userProvided)
+    {
+        assertTrue(res.isVerifiedSignature());
+        assertTrue(res.getCertPathReview().isValidCertPath());
+        assertEquals(3, res.getCertPath().getCertificates().size());
+        assertEquals(Arrays.asList(userProvided), res.getUserProvidedCerts());
+    }
+
+    private MimeMessage makeSignedMessage(KeyPair signKP, X509Certificate signCert, List certList, String text)
+        throws Exception
+    {
+        SMIMESignedGenerator gen = new SMIMESignedGenerator();
+
+        gen.addSignerInfoGenerator(new JcaSimpleSignerInfoGeneratorBuilder().setProvider("BC").build("SHA1withRSA", signKP.getPrivate(), signCert));
+        gen.addCertificates(new JcaCertStore(certList));
+
+        MimeMultipart signedMsg = gen.generate(SMIMETestUtil.makeMimeBodyPart(text));
+        MimeMessage msg = new MimeMessage(Session.getDefaultInstance(System.getProperties(), null));
+
+        msg.setFrom(new InternetAddress("\"Eric H. Echidna\"<eric@bouncycastle.org>"));
+        msg.setRecipient(Message.RecipientType.TO, new InternetAddress("example@bouncycastle.org"));
+        msg.setContent(signedMsg, signedMsg.getContentType());
+        msg.saveChanges();
+
+        return msg;
+    }
+
+    private CertStore createCountingStore(List certs, final int[] lookups)
+        throws Exception
+    {
+        final CertStore store = CertStore.getInstance("Collection", new CollectionCertStoreParameters(certs));
+
+        CertStoreSpi spi = new CertStoreSpi(null)
+        {
+            public Collection engineGetCertificates(CertSelector selector)
+                throws CertStoreException
+            {
+                synchronized (lookups)
+                {
+                    lookups[0]++;
+                }
+
+                return store.getCertificates(selector);
+            }
+
+            public Collection engineGetCRLs(CRLSelector selector)
+                throws CertStoreException
+            {
+                return store.getCRLs(selector);
+            }
+        };
+
+        return new CertStore(spi, store.getProvider(), "Collection", null)
+        {
+        };
+    }
+
     public void testCircular() throws Exception
     {
         String message = "circular.eml";
@@ -282,14 +282,29 @@ public CBZip2OutputStream(OutputStream inStream) throws IOException {
     }
 
     public CBZip2OutputStream(OutputStream inStream, int inBlockSize)
+        throws IOException {
+        this(inStream, inBlockSize, false);
+    }
+
+    /**
+     * Create a stream which, if blocksOnly is true, writes just the compressed
+     * blocks - no stream header and no end of stream marker. The blocks are
+     * written bit aligned, so the last byte may only be partly used, see
+     * getBitCount().
+     */
+    CBZip2OutputStream(OutputStream inStream, int inBlockSize, boolean blocksOnly)
         throws IOException {
         block = null;
         quadrant = null;
         zptr = null;
         ftab = null;
 
-        inStream.write('B');
-        inStream.write('Z');
+        this.blocksOnly = blocksOnly;
+
+        if (!blocksOnly) {
+            inStream.write('B');
+            inStream.write('Z');
+        }
 
         bsSetStream(inStream);
 
@@ -407,10 +422,36 @@ public void finish() throws IOException {
         }
         currentChar = -1;
         endBlock();
-        endCompression();
+        if (blocksOnly) {
+            bitCount = bytesOut * 8L + bsLive;
+            bsFinishedWithStream();
+        } else {
+            endCompression();
+        }
         finished = true;
         flush();
     }
+
+    /**
+     * Return the combined CRC of the blocks written so far.
+     */
+    int getCombinedCRC() {
+        return combinedCRC;
+    }
+
+    /**
+     * Return the number of blocks written so far.
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Return the number of bits written by a finished blocks only stream.
+     */
+    long getBitCount() {
+        return bitCount;
+    }
     
     public void flush() throws IOException {
         super.flush();
@@ -418,6 +459,9 @@ public void flush() throws IOException {
     }
 
     private int blockCRC, combinedCRC;
+    private int blockCount;
+    private boolean blocksOnly;
+    private long bitCount;
 
     private void initialize() throws IOException {
         bytesOut = 0;
@@ -426,8 +470,10 @@ private void initialize() throws IOException {
         /* Write `magic' bytes h indicating file-format == huffmanised,
            followed by a digit indicating blockSize100k.
         */
-        bsPutUChar('h');
-        bsPutUChar('0' + blockSize100k);
+        if (!blocksOnly) {
+            bsPutUChar('h');
+            bsPutUChar('0' + blockSize100k);
+        }
 
         combinedCRC = 0;
     }
@@ -452,6 +498,7 @@ private void endBlock() throws IOException {
         blockCRC = mCrc.getFinalCRC();
         combinedCRC = (combinedCRC << 1) | (combinedCRC >>> 31);
         combinedCRC ^= blockCRC;
+        blockCount++;
 
         /* sort the block and establish posn of original string */
         doReversibleTransformation();
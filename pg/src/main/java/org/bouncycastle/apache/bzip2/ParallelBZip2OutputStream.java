@@ -0,0 +1,403 @@
+package org.bouncycastle.apache.bzip2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An output stream that compresses into the BZip2 format (with the leading "BZ" as for
+ * {@link CBZip2OutputStream}), compressing the blocks in parallel on an ExecutorService.
+ * <p>
+ * The input is split into chunks of one block's worth of data after run length encoding, each
+ * chunk is compressed independently as a BZip2 block, and the bit aligned results are joined in
+ * order into a single BZip2 stream which can be read by any BZip2 decompressor.
+ * </p>
+ * <p>
+ * At most maxPending chunks are held in memory waiting for compression or output. A chunk is
+ * normally about the block size, but is allowed to reach four times that for highly repetitive
+ * data.
+ * </p>
+ */
+public class ParallelBZip2OutputStream
+    extends OutputStream
+{
+    /*
+     * runs compress up to 51 times in the first stage, limiting the raw chunk size keeps memory
+     * use reasonable at the cost of some extra blocks for highly repetitive data.
+     */
+    private static final int MAX_EXPANSION = 4;
+
+    private final OutputStream out;
+    private final int blockSize100k;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final LinkedList pending = new LinkedList();
+
+    private final int blockLimit;
+    private final int maxChunkSize;
+
+    private byte[] chunk;
+    private int chunkOff;
+
+    // run length encoded size of the current chunk, as CBZip2OutputStream will see it.
+    private int encodedSize;
+    private int runChar = -1;
+    private int runLength;
+
+    private int combinedCRC;
+    private int bsBuff;
+    private int bsLive;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Create a stream using 900k blocks which allows two chunks per processor to be pending.
+     *
+     * @param out the stream the compressed data is written to.
+     * @param executor the executor to compress the blocks on.
+     */
+    public ParallelBZip2OutputStream(OutputStream out, ExecutorService executor)
+        throws IOException
+    {
+        this(out, 9, executor, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Base constructor.
+     *
+     * @param out the stream the compressed data is written to.
+     * @param blockSize100k the block size in units of 100k (1 to 9).
+     * @param executor the executor to compress the blocks on.
+     * @param maxPending the maximum number of chunks waiting for compression or output.
+     */
+    public ParallelBZip2OutputStream(OutputStream out, int blockSize100k, ExecutorService executor, int maxPending)
+        throws IOException
+    {
+        if (blockSize100k > 9)
+        {
+            blockSize100k = 9;
+        }
+        if (blockSize100k < 1)
+        {
+            blockSize100k = 1;
+        }
+        if (maxPending < 1)
+        {
+            throw new IllegalArgumentException("maxPending must be at least 1");
+        }
+
+        this.out = out;
+        this.blockSize100k = blockSize100k;
+        this.executor = executor;
+        this.maxPending = maxPending;
+
+        // chunks are sized to fill a block after run length encoding, leaving room for one more run.
+        this.blockLimit = BZip2Constants.baseBlockSize * blockSize100k - 20 - 6;
+        this.maxChunkSize = blockLimit * MAX_EXPANSION;
+        this.chunk = new byte[BZip2Constants.baseBlockSize * blockSize100k];
+
+        out.write('B');
+        out.write('Z');
+
+        bsW(8, 'h');
+        bsW(8, '0' + blockSize100k);
+    }
+
+    public void write(int b)
+        throws IOException
+    {
+        b &= 0xff;
+
+        if (isChunkBreak(b, chunkOff))
+        {
+            submitChunk();
+        }
+
+        if (chunkOff == chunk.length)
+        {
+            growChunk(chunkOff + 1);
+        }
+
+        chunk[chunkOff++] = (byte)b;
+    }
+
+    public void write(byte[] b, int off, int len)
+        throws IOException
+    {
+        if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // the bytes are still scanned one at a time to find the chunk boundaries, but are
+        // copied into the chunk a section at a time.
+        int start = off;
+        int end = off + len;
+
+        for (int i = off; i != end; i++)
+        {
+            if (isChunkBreak(b[i] & 0xff, chunkOff + (i - start)))
+            {
+                appendToChunk(b, start, i - start);
+                submitChunk();
+                start = i;
+            }
+        }
+
+        appendToChunk(b, start, end - start);
+    }
+
+    /*
+     * track the run length encoding of the next byte b, returning true if the current chunk,
+     * holding chunkLen bytes, has to be submitted before b is added to it.
+     */
+    private boolean isChunkBreak(int b, int chunkLen)
+    {
+        if (b == runChar && runLength < 255)
+        {
+            if (++runLength == 255)
+            {
+                // CBZip2OutputStream starts a new run after 255 bytes.
+                encodedSize += 5;
+                runChar = -1;
+                runLength = 0;
+            }
+
+            return false;
+        }
+
+        if (runChar >= 0)
+        {
+            encodedSize += (runLength < 4) ? runLength : 5;
+        }
+
+        runChar = b;
+        runLength = 1;
+
+        // only break at the start of a run, once the block would be full or the buffer is.
+        return encodedSize > blockLimit || chunkLen >= maxChunkSize;
+    }
+
+    private void appendToChunk(byte[] b, int off, int len)
+    {
+        if (chunkOff + len > chunk.length)
+        {
+            growChunk(chunkOff + len);
+        }
+
+        System.arraycopy(b, off, chunk, chunkOff, len);
+
+        chunkOff += len;
+    }
+
+    private void growChunk(int minLength)
+    {
+        byte[] tmp = new byte[Math.max(minLength, Math.min(chunk.length * 2, maxChunkSize + 255))];
+
+        System.arraycopy(chunk, 0, tmp, 0, chunkOff);
+
+        chunk = tmp;
+    }
+
+    /**
+     * Compress any remaining data and write the end of stream marker, without closing
+     * the underlying stream.
+     */
+    public void finish()
+        throws IOException
+    {
+        if (finished)
+        {
+            return;
+        }
+
+        if (chunkOff > 0)
+        {
+            submitChunk();
+        }
+
+        while (!pending.isEmpty())
+        {
+            writeNextBlocks();
+        }
+
+        bsW(8, 0x17);
+        bsW(8, 0x72);
+        bsW(8, 0x45);
+        bsW(8, 0x38);
+        bsW(8, 0x50);
+        bsW(8, 0x90);
+
+        bsW(16, (combinedCRC >>> 16) & 0xffff);
+        bsW(16, combinedCRC & 0xffff);
+
+        while (bsLive > 0)
+        {
+            out.write(bsBuff >>> 24);
+            bsBuff <<= 8;
+            bsLive -= 8;
+        }
+
+        finished = true;
+
+        out.flush();
+    }
+
+    public void flush()
+        throws IOException
+    {
+        out.flush();
+    }
+
+    public void close()
+        throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        finish();
+
+        closed = true;
+
+        out.close();
+    }
+
+    private void submitChunk()
+        throws IOException
+    {
+        if (finished)
+        {
+            throw new IOException("stream already finished");
+        }
+
+        final byte[] data = chunk;
+        final int    dataLen = chunkOff;
+
+        while (pending.size() >= maxPending)
+        {
+            writeNextBlocks();
+        }
+
+        pending.addLast(executor.submit(new Callable()
+        {
+            public Object call()
+                throws Exception
+            {
+                ByteArrayOutputStream bOut = new ByteArrayOutputStream(dataLen / 2);
+                CBZip2OutputStream    cOut = new CBZip2OutputStream(bOut, blockSize100k, true);
+
+                for (int i = 0; i != dataLen; i++)
+                {
+                    cOut.write(data[i]);
+                }
+
+                cOut.finish();
+
+                return new CompressedBlocks(bOut.toByteArray(), cOut.getBitCount(), cOut.getCombinedCRC(), cOut.getBlockCount());
+            }
+        }));
+
+        chunk = new byte[BZip2Constants.baseBlockSize * blockSize100k];
+        chunkOff = 0;
+        encodedSize = 0;
+    }
+
+    private void writeNextBlocks()
+        throws IOException
+    {
+        Future future = (Future)pending.removeFirst();
+        CompressedBlocks blocks;
+
+        try
+        {
+            blocks = (CompressedBlocks)future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("interrupted waiting for block compression");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+
+            throw new IOException("block compression failed: " + cause);
+        }
+
+        // fold the chunk's combined CRC in, as if its blocks had been added one at a time.
+        int shift = blocks.blockCount & 0x1f;
+
+        combinedCRC = ((combinedCRC << shift) | (shift == 0 ? 0 : combinedCRC >>> (32 - shift))) ^ blocks.combinedCRC;
+
+        byte[] data = blocks.data;
+        int fullBytes = (int)(blocks.bitCount >>> 3);
+        int extraBits = (int)(blocks.bitCount & 7);
+
+        while (bsLive >= 8)
+        {
+            out.write(bsBuff >>> 24);
+            bsBuff <<= 8;
+            bsLive -= 8;
+        }
+
+        if (bsLive == 0)
+        {
+            out.write(data, 0, fullBytes);
+        }
+        else
+        {
+            for (int i = 0; i != fullBytes; i++)
+            {
+                bsW(8, data[i] & 0xff);
+            }
+        }
+
+        if (extraBits != 0)
+        {
+            bsW(extraBits, (data[fullBytes] & 0xff) >>> (8 - extraBits));
+        }
+    }
+
+    private void bsW(int n, int v)
+        throws IOException
+    {
+        while (bsLive >= 8)
+        {
+            out.write(bsBuff >>> 24);
+            bsBuff <<= 8;
+            bsLive -= 8;
+        }
+        bsBuff |= (v << (32 - bsLive - n));
+        bsLive += n;
+    }
+
+    private static class CompressedBlocks
+    {
+        final byte[] data;
+        final long bitCount;
+        final int combinedCRC;
+        final int blockCount;
+
+        CompressedBlocks(byte[] data, long bitCount, int combinedCRC, int blockCount)
+        {
+            this.data = data;
+            this.bitCount = bitCount;
+            this.combinedCRC = combinedCRC;
+            this.blockCount = blockCount;
+        }
+    }
+}
@@ -110,6 +110,7 @@ else if (in3 == '=')
     Vector         headerList= new Vector();
     int            lastC = 0;
     boolean        isEndOfStream;
+    boolean        endPending = false;
     
     /**
      * Create a stream for reading a PGP armoured message, parsing up to a header 
@@ -320,6 +321,12 @@ public int read()
     {
         int    c;
 
+        if (endPending)       // the end was reached by a read into an array that returned data
+        {
+            endPending = false;
+            return -1;
+        }
+
         if (start)
         {
             if (hasHeaders)
@@ -374,95 +381,218 @@ else if (newLineFound && c == '-')
 
         if (bufPtr > 2 || crcFound)
         {
-            c = readIgnoreSpace();
-            
-            if (c == '\r' || c == '\n')
+            if (!fillBuffer(readIgnoreSpace()))
             {
-                c = readIgnoreSpace();
-                
-                while (c == '\n' || c == '\r')
+                return -1;
+            }
+        }
+
+        c = outBuf[bufPtr++];
+
+        crc.update(c);
+
+        return c;
+    }
+
+    /**
+     * Read data into the passed in array - within the armored data, whole groups of
+     * base64 characters are decoded straight into b and the CRC is updated in bulk.
+     *
+     * @param b the array to read into.
+     * @param off the offset into b to start at.
+     * @param len the maximum number of bytes to read.
+     * @return the number of bytes read, -1 if the end of the armored data has been reached.
+     */
+    public int read(
+        byte[] b,
+        int    off,
+        int    len)
+        throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        // the first byte takes care of any header processing
+        int c = read();
+
+        if (c < 0)
+        {
+            return -1;
+        }
+
+        b[off] = (byte)c;
+
+        int count = 1;
+
+        if (clearText)
+        {
+            while (count < len && clearText && !start)
+            {
+                c = read();
+                if (c < 0)
                 {
-                    c = readIgnoreSpace();
+                    endPending = true;
+                    break;
                 }
 
-                if (c < 0)                // EOF
+                b[off + count++] = (byte)c;
+            }
+
+            return count;
+        }
+
+        int crcOff = count;
+
+        while (count < len)
+        {
+            if (bufPtr <= 2)
+            {
+                b[off + count++] = (byte)outBuf[bufPtr++];
+                continue;
+            }
+
+            if (crcFound)
+            {
+                break;
+            }
+
+            c = readIgnoreSpace();
+
+            if (c < 0 || c == '\r' || c == '\n')
+            {
+                // end of line - the next line may hold the CRC, so it has to be up to date.
+                crc.update(b, off + crcOff, count - crcOff);
+                crcOff = count;
+
+                if (!fillBuffer(c))
                 {
-                    isEndOfStream = true;
-                    return -1;
+                    endPending = true;
+                    break;
                 }
 
-                if (c == '=')            // crc reached
-                {
-                    bufPtr = decode(readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), outBuf);
-                    if (bufPtr == 0)
-                    {
-                        int i = ((outBuf[0] & 0xff) << 16)
-                                | ((outBuf[1] & 0xff) << 8)
-                                | (outBuf[2] & 0xff);
+                continue;
+            }
 
-                        crcFound = true;
+            int c1 = readIgnoreSpace();
+            int c2 = readIgnoreSpace();
+            int c3 = readIgnoreSpace();
 
-                        if (i != crc.getValue())
-                        {
-                            throw new IOException("crc check failed in armored message.");
-                        }
-                        return read();
-                    }
-                    else
-                    {
-                        throw new IOException("no crc found in armored message.");
-                    }
-                }
-                else if (c == '-')        // end of record reached
-                {
-                    while ((c = in.read()) >= 0)
-                    {
-                        if (c == '\n' || c == '\r')
-                        {
-                            break;
-                        }
-                    }
+            if (len - count >= 3 && c2 != '=' && c3 != '=' && c3 >= 0)
+            {
+                int b1 = decodingTable[c];
+                int b2 = decodingTable[c1];
+                int b3 = decodingTable[c2];
+                int b4 = decodingTable[c3];
+
+                b[off + count++] = (byte)((b1 << 2) | (b2 >> 4));
+                b[off + count++] = (byte)((b2 << 4) | (b3 >> 2));
+                b[off + count++] = (byte)((b3 << 6) | b4);
+            }
+            else
+            {
+                bufPtr = decode(c, c1, c2, c3, outBuf);
+            }
+        }
 
-                    if (!crcFound)
-                    {
-                        throw new IOException("crc check not found.");
-                    }
+        crc.update(b, off + crcOff, count - crcOff);
 
-                    crcFound = false;
-                    start = true;
-                    bufPtr = 3;
+        return count;
+    }
+
+    /**
+     * Fill outBuf starting with the base64 character c, handling any line
+     * ends, the CRC and the end of the armored data.
+     *
+     * @return true if outBuf has data, false if the end of the armored data was reached.
+     */
+    private boolean fillBuffer(
+        int c)
+        throws IOException
+    {
+        if (c == '\r' || c == '\n')
+        {
+            c = readIgnoreSpace();
+
+            while (c == '\n' || c == '\r')
+            {
+                c = readIgnoreSpace();
+            }
+
+            if (c < 0)                // EOF
+            {
+                isEndOfStream = true;
+                return false;
+            }
+
+            if (c == '=')            // crc reached
+            {
+                bufPtr = decode(readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), outBuf);
+                if (bufPtr == 0)
+                {
+                    int i = ((outBuf[0] & 0xff) << 16)
+                            | ((outBuf[1] & 0xff) << 8)
+                            | (outBuf[2] & 0xff);
 
-                    if (c < 0)
+                    crcFound = true;
+
+                    if (i != crc.getValue())
                     {
-                        isEndOfStream = true;
+                        throw new IOException("crc check failed in armored message.");
                     }
-
-                    return -1;
+                    return fillBuffer(readIgnoreSpace());
                 }
-                else                   // data
+                else
                 {
-                    bufPtr = decode(c, readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), outBuf);
+                    throw new IOException("no crc found in armored message.");
                 }
             }
-            else
+            else if (c == '-')        // end of record reached
             {
-                if (c >= 0)
+                while ((c = in.read()) >= 0)
                 {
-                    bufPtr = decode(c, readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), outBuf);
+                    if (c == '\n' || c == '\r')
+                    {
+                        break;
+                    }
                 }
-                else
+
+                if (!crcFound)
+                {
+                    throw new IOException("crc check not found.");
+                }
+
+                crcFound = false;
+                start = true;
+                bufPtr = 3;
+
+                if (c < 0)
                 {
                     isEndOfStream = true;
-                    return -1;
                 }
+
+                return false;
+            }
+            else                   // data
+            {
+                bufPtr = decode(c, readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), outBuf);
+            }
+        }
+        else
+        {
+            if (c >= 0)
+            {
+                bufPtr = decode(c, readIgnoreSpace(), readIgnoreSpace(), readIgnoreSpace(), outBuf);
+            }
+            else
+            {
+                isEndOfStream = true;
+                return false;
             }
         }
 
-        c = outBuf[bufPtr++];
-
-        crc.update(c);
-
-        return c;
+        return true;
     }
     
     public void close()
@@ -5,6 +5,8 @@
 import java.util.Enumeration;
 import java.util.Hashtable;
 
+import org.bouncycastle.util.Strings;
+
 /**
  * Basic output stream.
  */
@@ -74,12 +76,15 @@ private void encode(
         }
     }
 
+    private static final int ENC_BUF_SIZE = 4096;
+
     OutputStream    out;
     int[]           buf = new int[3];
     int             bufPtr = 0;
     CRC24           crc = new CRC24();
     int             chunkCount = 0;
     int             lastb;
+    byte[]          encBuf;
 
     boolean         start = true;
     boolean         clearText = false;
@@ -346,6 +351,112 @@ public void write(
         crc.update(b);
         buf[bufPtr++] = b & 0xff;
     }
+
+    /**
+     * Write len bytes from b - outside of clear text, whole groups of three bytes are
+     * encoded into an internal buffer which is written to the underlying stream in bulk.
+     *
+     * @param b the array holding the data.
+     * @param off the offset into b the data starts at.
+     * @param len the length of the data.
+     */
+    public void write(
+        byte[] b,
+        int    off,
+        int    len)
+        throws IOException
+    {
+        if (clearText)
+        {
+            for (int i = 0; i != len; i++)
+            {
+                this.write(b[off + i]);
+            }
+            return;
+        }
+
+        if (len == 0)
+        {
+            return;
+        }
+
+        if (start)
+        {
+            // the first byte determines the armor header.
+            this.write(b[off]);
+            off++;
+            len--;
+        }
+
+        crc.update(b, off, len);
+
+        // top up any partial group left from earlier writes.
+        while (len > 0 && bufPtr < 3)
+        {
+            buf[bufPtr++] = b[off++] & 0xff;
+            len--;
+        }
+
+        if (len == 0)
+        {
+            return;
+        }
+
+        byte[] nlBytes = Strings.toByteArray(nl);
+        int    outPtr = 0;
+
+        if (encBuf == null || encBuf.length < ENC_BUF_SIZE + nlBytes.length)
+        {
+            encBuf = new byte[ENC_BUF_SIZE + nlBytes.length];
+        }
+
+        outPtr = encodeGroup(buf[0], buf[1], buf[2], nlBytes, outPtr);
+
+        // the last group is always held back, as close() has to see it.
+        while (len > 3)
+        {
+            if (outPtr > ENC_BUF_SIZE - 4)
+            {
+                out.write(encBuf, 0, outPtr);
+                outPtr = 0;
+            }
+
+            outPtr = encodeGroup(b[off] & 0xff, b[off + 1] & 0xff, b[off + 2] & 0xff, nlBytes, outPtr);
+
+            off += 3;
+            len -= 3;
+        }
+
+        out.write(encBuf, 0, outPtr);
+
+        bufPtr = 0;
+        while (len > 0)
+        {
+            buf[bufPtr++] = b[off++] & 0xff;
+            len--;
+        }
+    }
+
+    private int encodeGroup(
+        int     d1,
+        int     d2,
+        int     d3,
+        byte[]  nlBytes,
+        int     outPtr)
+    {
+        encBuf[outPtr++] = encodingTable[(d1 >>> 2) & 0x3f];
+        encBuf[outPtr++] = encodingTable[((d1 << 4) | (d2 >>> 4)) & 0x3f];
+        encBuf[outPtr++] = encodingTable[((d2 << 2) | (d3 >>> 6)) & 0x3f];
+        encBuf[outPtr++] = encodingTable[d3 & 0x3f];
+
+        if ((++chunkCount & 0xf) == 0)
+        {
+            System.arraycopy(nlBytes, 0, encBuf, outPtr, nlBytes.length);
+            outPtr += nlBytes.length;
+        }
+
+        return outPtr;
+    }
     
     public void flush()
         throws IOException
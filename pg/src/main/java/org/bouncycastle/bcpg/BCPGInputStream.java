@@ -1,5 +1,6 @@
 package org.bouncycastle.bcpg;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -151,15 +152,107 @@ public Packet readPacket()
             throw new IOException("invalid header encountered");
         }
 
+        int                tag = getTag(hdr);
+        BCPGInputStream    objStream = getBodyStream(hdr);
+
+        switch (tag)
+        {
+        case RESERVED:
+            return new InputStreamPacket(objStream);
+        case PUBLIC_KEY_ENC_SESSION:
+            return new PublicKeyEncSessionPacket(objStream);
+        case SIGNATURE:
+            return new SignaturePacket(objStream);
+        case SYMMETRIC_KEY_ENC_SESSION:
+            return new SymmetricKeyEncSessionPacket(objStream);
+        case ONE_PASS_SIGNATURE:
+            return new OnePassSignaturePacket(objStream);
+        case SECRET_KEY:
+            return new SecretKeyPacket(objStream);
+        case PUBLIC_KEY:
+            return new PublicKeyPacket(objStream);
+        case SECRET_SUBKEY:
+            return new SecretSubkeyPacket(objStream);
+        case COMPRESSED_DATA:
+            return new CompressedDataPacket(objStream);
+        case SYMMETRIC_KEY_ENC:
+            return new SymmetricEncDataPacket(objStream);
+        case MARKER:
+            return new MarkerPacket(objStream);
+        case LITERAL_DATA:
+            return new LiteralDataPacket(objStream);
+        case TRUST:
+            return new TrustPacket(objStream);
+        case USER_ID:
+            return new UserIDPacket(objStream);
+        case USER_ATTRIBUTE:
+            return new UserAttributePacket(objStream);
+        case PUBLIC_SUBKEY:
+            return new PublicSubkeyPacket(objStream);
+        case SYM_ENC_INTEGRITY_PRO:
+            return new SymmetricEncIntegrityPacket(objStream);
+        case MOD_DETECTION_CODE:
+            return new ModDetectionCodePacket(objStream);
+        case EXPERIMENTAL_1:
+        case EXPERIMENTAL_2:
+        case EXPERIMENTAL_3:
+        case EXPERIMENTAL_4:
+            return new ExperimentalPacket(tag, objStream);
+        default:
+            throw new IOException("unknown packet type encountered: " + tag);
+        }
+    }
+    
+    /**
+     * Read the next packet without parsing its body, returning the packet's encoding. The
+     * encoding can be turned into a packet later by reading it from a new BCPGInputStream.
+     *
+     * @return the encoding of the packet, null if the end of the stream has been reached.
+     * @throws IOException if the packet header is invalid or the packet is truncated.
+     */
+    public byte[] readPacketEncoding()
+        throws IOException
+    {
+        int    hdr = this.read();
+
+        if (hdr < 0)
+        {
+            return null;
+        }
+
+        if ((hdr & 0x80) == 0)
+        {
+            throw new IOException("invalid header encountered");
+        }
+
+        int                   tag = getTag(hdr);
+        byte[]                body = Streams.readAll(getBodyStream(hdr));
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream(body.length + 6);
+
+        new BCPGOutputStream(bOut).writePacket(tag, body, false);
+
+        return bOut.toByteArray();
+    }
+
+    private static int getTag(int hdr)
+    {
+        if ((hdr & 0x40) != 0)
+        {
+            return hdr & 0x3f;
+        }
+
+        return (hdr & 0x3f) >> 2;
+    }
+
+    private BCPGInputStream getBodyStream(int hdr)
+        throws IOException
+    {
         boolean    newPacket = (hdr & 0x40) != 0;
-        int        tag = 0;
         int        bodyLen = 0;
         boolean    partial = false;
         
         if (newPacket)
         {
-            tag = hdr & 0x3f;
-            
             int    l = this.read();
 
             if (l < 192)
@@ -185,8 +278,6 @@ else if (l == 255)
         else
         {
             int lengthType = hdr & 0x3;
-            
-            tag = (hdr & 0x3f) >> 2;
 
             switch (lengthType)
             {
@@ -207,63 +298,12 @@ else if (l == 255)
             }
         }
 
-        BCPGInputStream    objStream;
-        
         if (bodyLen == 0 && partial)
         {
-            objStream = this;
-        }
-        else
-        {
-            objStream = new BCPGInputStream(new PartialInputStream(this, partial, bodyLen));
+            return this;
         }
 
-        switch (tag)
-        {
-        case RESERVED:
-            return new InputStreamPacket(objStream);
-        case PUBLIC_KEY_ENC_SESSION:
-            return new PublicKeyEncSessionPacket(objStream);
-        case SIGNATURE:
-            return new SignaturePacket(objStream);
-        case SYMMETRIC_KEY_ENC_SESSION:
-            return new SymmetricKeyEncSessionPacket(objStream);
-        case ONE_PASS_SIGNATURE:
-            return new OnePassSignaturePacket(objStream);
-        case SECRET_KEY:
-            return new SecretKeyPacket(objStream);
-        case PUBLIC_KEY:
-            return new PublicKeyPacket(objStream);
-        case SECRET_SUBKEY:
-            return new SecretSubkeyPacket(objStream);
-        case COMPRESSED_DATA:
-            return new CompressedDataPacket(objStream);
-        case SYMMETRIC_KEY_ENC:
-            return new SymmetricEncDataPacket(objStream);
-        case MARKER:
-            return new MarkerPacket(objStream);
-        case LITERAL_DATA:
-            return new LiteralDataPacket(objStream);
-        case TRUST:
-            return new TrustPacket(objStream);
-        case USER_ID:
-            return new UserIDPacket(objStream);
-        case USER_ATTRIBUTE:
-            return new UserAttributePacket(objStream);
-        case PUBLIC_SUBKEY:
-            return new PublicSubkeyPacket(objStream);
-        case SYM_ENC_INTEGRITY_PRO:
-            return new SymmetricEncIntegrityPacket(objStream);
-        case MOD_DETECTION_CODE:
-            return new ModDetectionCodePacket(objStream);
-        case EXPERIMENTAL_1:
-        case EXPERIMENTAL_2:
-        case EXPERIMENTAL_3:
-        case EXPERIMENTAL_4:
-            return new ExperimentalPacket(tag, objStream);
-        default:
-            throw new IOException("unknown packet type encountered: " + tag);
-        }
+        return new BCPGInputStream(new PartialInputStream(this, partial, bodyLen));
     }
     
     public void close()
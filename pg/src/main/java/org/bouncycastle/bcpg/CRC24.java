@@ -4,9 +4,33 @@
 {
     private static final int CRC24_INIT = 0x0b704ce;
     private static final int CRC24_POLY = 0x1864cfb;
-                                                                                
+
+    /*
+     * the CRC register after shifting in each possible byte value, starting from 0.
+     */
+    private static final int[] TABLE = new int[256];
+
+    static
+    {
+        for (int i = 0; i != 256; i++)
+        {
+            int crc = i << 16;
+
+            for (int j = 0; j < 8; j++)
+            {
+                crc <<= 1;
+                if ((crc & 0x1000000) != 0)
+                {
+                    crc ^= CRC24_POLY;
+                }
+            }
+
+            TABLE[i] = crc;
+        }
+    }
+
     private int crc = CRC24_INIT;
-                                                                                
+
     public CRC24()
     {
     }
@@ -14,15 +38,22 @@ public CRC24()
     public void update(
         int b)
     {
-        crc ^= b << 16;
-        for (int i = 0; i < 8; i++)
+        crc = ((crc << 8) ^ TABLE[((crc >> 16) ^ b) & 0xff]) & 0xffffff;
+    }
+
+    public void update(
+        byte[] b,
+        int    off,
+        int    len)
+    {
+        int c = crc;
+
+        for (int i = off, end = off + len; i != end; i++)
         {
-            crc <<= 1;
-            if ((crc & 0x1000000) != 0)
-            {
-                crc ^= CRC24_POLY;
-            }
+            c = ((c << 8) ^ TABLE[((c >> 16) ^ b[i]) & 0xff]) & 0xffffff;
         }
+
+        crc = c;
     }
 
     public int getValue()
@@ -0,0 +1,70 @@
+package org.bouncycastle.openpgp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.SignaturePacket;
+import org.bouncycastle.bcpg.TrustPacket;
+
+/**
+ * A read only list of signatures which holds the encoding of each signature packet and only
+ * parses it into a PGPSignature the first time the signature is asked for.
+ */
+class LazySignatureList
+    extends AbstractList
+{
+    private final List sigs = new ArrayList();
+    private final List trusts = new ArrayList();
+
+    void addEncoding(byte[] sigEncoding, TrustPacket trust)
+    {
+        sigs.add(sigEncoding);
+        trusts.add(trust);
+    }
+
+    public int size()
+    {
+        return sigs.size();
+    }
+
+    /**
+     * Return the signature at index, parsing it if it has not been accessed before.
+     *
+     * @throws IllegalStateException if the signature packet cannot be parsed.
+     */
+    public synchronized Object get(int index)
+    {
+        Object sig = sigs.get(index);
+
+        if (sig instanceof byte[])
+        {
+            try
+            {
+                BCPGInputStream pIn = new BCPGInputStream(new ByteArrayInputStream((byte[])sig));
+
+                sig = new PGPSignature((SignaturePacket)pIn.readPacket(), (TrustPacket)trusts.get(index));
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("can't parse signature packet: " + e.getMessage());
+            }
+            catch (PGPException e)
+            {
+                throw new IllegalStateException("can't create signature object: " + e.getMessage());
+            }
+            catch (RuntimeException e)
+            {
+                throw new IllegalStateException("can't parse signature packet: " + e);
+            }
+
+            sigs.set(index, sig);
+            trusts.set(index, null);
+        }
+
+        return sig;
+    }
+}
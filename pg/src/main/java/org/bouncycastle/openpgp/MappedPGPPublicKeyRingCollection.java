@@ -0,0 +1,734 @@
+package org.bouncycastle.openpgp;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.bcpg.PublicKeyPacket;
+import org.bouncycastle.openpgp.operator.KeyFingerPrintCalculator;
+
+/**
+ * A read only view of a public key ring file, such as pubring.gpg, held in a memory mapped file,
+ * or other ByteBuffer.
+ * <p>
+ * Unlike PGPPublicKeyRingCollection the key rings are not read into memory. On construction the
+ * packet headers are scanned, only the key packets are parsed to calculate their key IDs, and an
+ * index of key IDs to key ring offsets is built in a buffer outside of the Java heap. Key rings
+ * are only parsed when they are looked up, and signatures and user attributes on the returned
+ * rings are parsed on demand (see {@link PGPPublicKeyRing#PGPPublicKeyRing(java.io.InputStream, KeyFingerPrintCalculator, boolean)}).
+ * </p>
+ * <p>
+ * The index can be saved to a file next to the key ring file, in which case later instances map
+ * the saved index rather than scanning the key ring file again. A saved index is rebuilt if the
+ * length or modification time of the key ring file has changed, or if any of its entries fall
+ * outside the key ring file. As a file can be rewritten without changing either, a ring found
+ * through a saved index is also checked to contain the key it was looked up by, and the key ring
+ * file is scanned again, and the saved index replaced, if it does not.
+ * </p>
+ * <p>
+ * Note: as the index uses int offsets a key ring file is limited to 2GB.
+ * </p>
+ */
+public class MappedPGPPublicKeyRingCollection
+{
+    private static final int INDEX_MAGIC = 0x42434b49;       // "BCKI"
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int RING_ENTRY_SIZE = 4 + 4;
+    private static final int KEY_ENTRY_SIZE = 8 + 4;
+
+    private final ByteBuffer buf;
+    private final KeyFingerPrintCalculator fingerPrintCalculator;
+    private final File indexFile;
+    private final long lastModified;
+
+    private volatile Index index;
+
+    private static ByteBuffer mapFile(File file)
+        throws IOException
+    {
+        FileInputStream fIn = new FileInputStream(file);
+
+        try
+        {
+            FileChannel channel = fIn.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("file too large to map: " + file);
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally
+        {
+            fIn.close();
+        }
+    }
+
+    /**
+     * Create a collection by memory mapping the passed in key ring file, building the index in memory.
+     *
+     * @param keyRingFile file containing a sequence of binary encoded public key rings.
+     * @param fingerPrintCalculator calculator to use in key finger print calculations.
+     * @throws IOException if the file cannot be read, or contains something other than public key rings.
+     * @throws PGPException if a key ID cannot be calculated.
+     */
+    public MappedPGPPublicKeyRingCollection(File keyRingFile, KeyFingerPrintCalculator fingerPrintCalculator)
+        throws IOException, PGPException
+    {
+        this(keyRingFile, null, fingerPrintCalculator);
+    }
+
+    /**
+     * Create a collection by memory mapping the passed in key ring file, using the index saved in indexFile
+     * if it is up to date, or building the index and saving it to indexFile if it is not.
+     *
+     * @param keyRingFile file containing a sequence of binary encoded public key rings.
+     * @param indexFile file the index is saved in, null if the index should only be held in memory.
+     * @param fingerPrintCalculator calculator to use in key finger print calculations.
+     * @throws IOException if the files cannot be read or written, or the key ring file contains something
+     * other than public key rings.
+     * @throws PGPException if a key ID cannot be calculated.
+     */
+    public MappedPGPPublicKeyRingCollection(File keyRingFile, File indexFile, KeyFingerPrintCalculator fingerPrintCalculator)
+        throws IOException, PGPException
+    {
+        this.buf = mapFile(keyRingFile);
+        this.fingerPrintCalculator = fingerPrintCalculator;
+        this.indexFile = indexFile;
+        this.lastModified = keyRingFile.lastModified();
+
+        long fileLength = keyRingFile.length();
+
+        ByteBuffer savedIndex = null;
+
+        if (indexFile != null && indexFile.exists())
+        {
+            savedIndex = mapFile(indexFile);
+
+            if (!isValidIndex(savedIndex, buf.limit(), lastModified))
+            {
+                savedIndex = null;
+            }
+        }
+
+        if (savedIndex != null)
+        {
+            this.index = new Index(savedIndex, true);
+        }
+        else
+        {
+            ByteBuffer newIndex = buildIndex(fileLength, lastModified);
+
+            if (indexFile != null)
+            {
+                writeIndex(newIndex, indexFile);
+            }
+
+            this.index = new Index(newIndex, false);
+        }
+    }
+
+    /**
+     * Create a collection from the contents of the passed in buffer, from its position to its limit.
+     *
+     * @param keyRings a buffer containing a sequence of binary encoded public key rings.
+     * @param fingerPrintCalculator calculator to use in key finger print calculations.
+     * @throws IOException if the buffer contains something other than public key rings.
+     * @throws PGPException if a key ID cannot be calculated.
+     */
+    public MappedPGPPublicKeyRingCollection(ByteBuffer keyRings, KeyFingerPrintCalculator fingerPrintCalculator)
+        throws IOException, PGPException
+    {
+        this.buf = keyRings.slice();
+        this.fingerPrintCalculator = fingerPrintCalculator;
+        this.indexFile = null;
+        this.lastModified = 0;
+        this.index = new Index(buildIndex(buf.limit(), 0), false);
+    }
+
+    private boolean isValidIndex(ByteBuffer savedIndex, long fileLength, long lastModified)
+    {
+        if (savedIndex.limit() < HEADER_SIZE
+            || savedIndex.getInt(0) != INDEX_MAGIC
+            || savedIndex.getInt(4) != INDEX_VERSION
+            || savedIndex.getLong(8) != fileLength
+            || savedIndex.getLong(16) != lastModified)
+        {
+            return false;
+        }
+
+        long rings = savedIndex.getInt(24);
+        long keys = savedIndex.getInt(28);
+
+        if (rings < 0 || keys < 0
+            || savedIndex.limit() != HEADER_SIZE + rings * RING_ENTRY_SIZE + keys * KEY_ENTRY_SIZE)
+        {
+            return false;
+        }
+
+        // the header may match a different file of the same length, so make sure every ring
+        // entry lies inside the key ring file and every key entry refers to a ring.
+        for (int i = 0; i != rings; i++)
+        {
+            long offset = savedIndex.getInt(HEADER_SIZE + i * RING_ENTRY_SIZE);
+            long length = savedIndex.getInt(HEADER_SIZE + i * RING_ENTRY_SIZE + 4);
+
+            if (offset < 0 || length <= 0 || offset + length > fileLength)
+            {
+                return false;
+            }
+        }
+
+        int keysStart = HEADER_SIZE + (int)rings * RING_ENTRY_SIZE;
+
+        for (int i = 0; i != keys; i++)
+        {
+            int ring = savedIndex.getInt(keysStart + i * KEY_ENTRY_SIZE + 8);
+
+            if (ring < 0 || ring >= rings)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * the index is written to a temporary file in the same directory which is then renamed over
+     * indexFile, so another instance never maps a partly written index.
+     */
+    private static void writeIndex(ByteBuffer index, File indexFile)
+        throws IOException
+    {
+        File tmpFile = File.createTempFile(indexFile.getName() + ".", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+
+        try
+        {
+            FileOutputStream fOut = new FileOutputStream(tmpFile);
+
+            try
+            {
+                ByteBuffer data = index.duplicate();
+
+                data.clear();
+
+                while (data.hasRemaining())
+                {
+                    fOut.getChannel().write(data);
+                }
+            }
+            finally
+            {
+                fOut.close();
+            }
+
+            if (!tmpFile.renameTo(indexFile))
+            {
+                // some platforms will not rename over an existing file.
+                indexFile.delete();
+
+                if (!tmpFile.renameTo(indexFile))
+                {
+                    throw new IOException("unable to replace index file: " + indexFile);
+                }
+            }
+        }
+        finally
+        {
+            // does nothing once the rename has succeeded.
+            tmpFile.delete();
+        }
+    }
+
+    private ByteBuffer buildIndex(long fileLength, long lastModified)
+        throws IOException, PGPException
+    {
+        int[] ringOffsets = new int[64];
+        int ringNum = 0;
+        KeyEntry[] keys = new KeyEntry[64];
+        int keyNum = 0;
+
+        int pos = 0;
+        int end = buf.limit();
+
+        while (pos < end)
+        {
+            int hdr = buf.get(pos) & 0xff;
+
+            if ((hdr & 0x80) == 0)
+            {
+                throw new IOException("invalid header encountered at offset " + pos);
+            }
+
+            int tag = ((hdr & 0x40) != 0) ? (hdr & 0x3f) : ((hdr & 0x3f) >> 2);
+            int packetEnd = packetEnd(pos, hdr);
+
+            if (tag == PacketTags.PUBLIC_KEY)
+            {
+                if (ringNum == ringOffsets.length)
+                {
+                    int[] tmp = new int[ringNum * 2];
+
+                    System.arraycopy(ringOffsets, 0, tmp, 0, ringNum);
+
+                    ringOffsets = tmp;
+                }
+
+                ringOffsets[ringNum++] = pos;
+            }
+            else if (ringNum == 0)
+            {
+                throw new IOException("public key ring doesn't start with public key tag: tag 0x" + Integer.toHexString(tag));
+            }
+
+            if (tag == PacketTags.PUBLIC_KEY || tag == PacketTags.PUBLIC_SUBKEY)
+            {
+                if (keyNum == keys.length)
+                {
+                    KeyEntry[] tmp = new KeyEntry[keyNum * 2];
+
+                    System.arraycopy(keys, 0, tmp, 0, keyNum);
+
+                    keys = tmp;
+                }
+
+                keys[keyNum++] = new KeyEntry(calculateKeyID(pos, packetEnd), ringNum - 1);
+            }
+
+            pos = packetEnd;
+        }
+
+        // stable, so a key appearing in more than one ring is found in the first ring it appears in.
+        Arrays.sort(keys, 0, keyNum, new Comparator()
+        {
+            public int compare(Object o1, Object o2)
+            {
+                long k1 = ((KeyEntry)o1).keyID;
+                long k2 = ((KeyEntry)o2).keyID;
+
+                return (k1 < k2) ? -1 : ((k1 == k2) ? 0 : 1);
+            }
+        });
+
+        ByteBuffer newIndex = ByteBuffer.allocateDirect(HEADER_SIZE + ringNum * RING_ENTRY_SIZE + keyNum * KEY_ENTRY_SIZE);
+
+        newIndex.putInt(INDEX_MAGIC);
+        newIndex.putInt(INDEX_VERSION);
+        newIndex.putLong(fileLength);
+        newIndex.putLong(lastModified);
+        newIndex.putInt(ringNum);
+        newIndex.putInt(keyNum);
+
+        for (int i = 0; i != ringNum; i++)
+        {
+            int ringEnd = (i + 1 < ringNum) ? ringOffsets[i + 1] : end;
+
+            newIndex.putInt(ringOffsets[i]);
+            newIndex.putInt(ringEnd - ringOffsets[i]);
+        }
+
+        for (int i = 0; i != keyNum; i++)
+        {
+            newIndex.putLong(keys[i].keyID);
+            newIndex.putInt(keys[i].ring);
+        }
+
+        newIndex.flip();
+
+        return newIndex;
+    }
+
+    /*
+     * return the offset of the end of the packet starting at pos, using the packet header only.
+     */
+    private int packetEnd(int pos, int hdr)
+        throws IOException
+    {
+        int end = buf.limit();
+        long bodyLen;
+        int bodyOffset;
+
+        try
+        {
+            if ((hdr & 0x40) != 0)
+            {
+                int l = buf.get(pos + 1) & 0xff;
+
+                if (l < 192)
+                {
+                    bodyLen = l;
+                    bodyOffset = pos + 2;
+                }
+                else if (l <= 223)
+                {
+                    bodyLen = ((l - 192) << 8) + (buf.get(pos + 2) & 0xff) + 192;
+                    bodyOffset = pos + 3;
+                }
+                else if (l == 255)
+                {
+                    bodyLen = buf.getInt(pos + 2) & 0xffffffffL;
+                    bodyOffset = pos + 6;
+                }
+                else
+                {
+                    throw new IOException("partial body length found in key ring at offset " + pos);
+                }
+            }
+            else
+            {
+                switch (hdr & 0x3)
+                {
+                case 0:
+                    bodyLen = buf.get(pos + 1) & 0xff;
+                    bodyOffset = pos + 2;
+                    break;
+                case 1:
+                    bodyLen = buf.getShort(pos + 1) & 0xffff;
+                    bodyOffset = pos + 3;
+                    break;
+                case 2:
+                    bodyLen = buf.getInt(pos + 1) & 0xffffffffL;
+                    bodyOffset = pos + 5;
+                    break;
+                default:
+                    throw new IOException("indeterminate length packet found in key ring at offset " + pos);
+                }
+            }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new IOException("truncated packet header at offset " + pos);
+        }
+
+        if (bodyOffset + bodyLen > end)
+        {
+            throw new IOException("truncated packet at offset " + pos);
+        }
+
+        return (int)(bodyOffset + bodyLen);
+    }
+
+    private long calculateKeyID(int start, int end)
+        throws IOException, PGPException
+    {
+        try
+        {
+            PublicKeyPacket pubPk = (PublicKeyPacket)new BCPGInputStream(new ByteArrayInputStream(getBytes(start, end))).readPacket();
+
+            return new PGPPublicKey(pubPk, fingerPrintCalculator).getKeyID();
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new IOException("malformed key packet at offset " + start);
+        }
+    }
+
+    private byte[] getBytes(int start, int end)
+    {
+        ByteBuffer data = buf.duplicate();
+        byte[] bytes = new byte[end - start];
+
+        data.clear();
+        data.position(start);
+        data.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Return the number of rings in this collection.
+     *
+     * @return size of the collection
+     */
+    public int size()
+    {
+        return index.ringCount;
+    }
+
+    /**
+     * Return true if a key with the passed in key ID is present in the collection.
+     *
+     * @param keyID the key ID of a master key or sub-key.
+     * @return true if the key is present, false otherwise.
+     * @throws PGPException if the key ring file has to be scanned again and cannot be.
+     */
+    public boolean contains(long keyID)
+        throws PGPException
+    {
+        Index idx = index;
+
+        if (idx.saved)
+        {
+            return getPublicKeyRing(keyID) != null;
+        }
+
+        return idx.findRing(keyID) >= 0;
+    }
+
+    /**
+     * Return the public key ring which contains the key referred to by keyID.
+     *
+     * @param keyID key ID to match against.
+     * @return the public key ring, null if there is no match.
+     * @throws PGPException if the key ring cannot be parsed.
+     */
+    public PGPPublicKeyRing getPublicKeyRing(long keyID)
+        throws PGPException
+    {
+        Index idx = index;
+        int ring = idx.findRing(keyID);
+
+        if (ring < 0)
+        {
+            return null;
+        }
+
+        if (idx.saved)
+        {
+            PGPPublicKeyRing keyRing;
+
+            try
+            {
+                keyRing = readRing(idx, ring);
+            }
+            catch (PGPException e)
+            {
+                keyRing = null;
+            }
+
+            if (keyRing != null && keyRing.getPublicKey(keyID) != null)
+            {
+                return keyRing;
+            }
+
+            // the saved index describes some other file of the same length and time stamp.
+            idx = rebuildIndex();
+            ring = idx.findRing(keyID);
+
+            if (ring < 0)
+            {
+                return null;
+            }
+        }
+
+        return readRing(idx, ring);
+    }
+
+    /**
+     * Return the PGP public key associated with the given key id.
+     *
+     * @param keyID key ID to match against.
+     * @return the public key, null if there is no match.
+     * @throws PGPException if the key ring containing the key cannot be parsed.
+     */
+    public PGPPublicKey getPublicKey(long keyID)
+        throws PGPException
+    {
+        PGPPublicKeyRing ring = getPublicKeyRing(keyID);
+
+        if (ring == null)
+        {
+            return null;
+        }
+
+        return ring.getPublicKey(keyID);
+    }
+
+    /**
+     * Return an iterator over the public key rings making up this collection, each ring is
+     * parsed as the iterator reaches it.
+     * <p>
+     * If a ring read through a saved index turns out not to be the ring the index describes the
+     * index is rebuilt, and the iterator throws an IllegalStateException as the rings it has
+     * already returned cannot be relied on.
+     * </p>
+     *
+     * @return an iterator of PGPPublicKeyRing objects.
+     */
+    public Iterator getKeyRings()
+    {
+        final Index idx = index;
+
+        return new Iterator()
+        {
+            private int next = 0;
+
+            public boolean hasNext()
+            {
+                return next < idx.ringCount;
+            }
+
+            public Object next()
+            {
+                if (next >= idx.ringCount)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                int ring = next++;
+
+                try
+                {
+                    if (idx.saved)
+                    {
+                        PGPPublicKeyRing keyRing;
+
+                        try
+                        {
+                            keyRing = readRing(idx, ring);
+                        }
+                        catch (PGPException e)
+                        {
+                            keyRing = null;
+                        }
+
+                        if (keyRing == null || idx.findRing(keyRing.getPublicKey().getKeyID()) != ring)
+                        {
+                            rebuildIndex();
+
+                            throw new IllegalStateException("saved index does not match key ring file, index rebuilt");
+                        }
+
+                        return keyRing;
+                    }
+
+                    return readRing(idx, ring);
+                }
+                catch (PGPException e)
+                {
+                    throw new IllegalStateException(e.getMessage());
+                }
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException("cannot remove from a MappedPGPPublicKeyRingCollection");
+            }
+        };
+    }
+
+    /*
+     * scan the key ring file again and replace the saved index, unless another thread already has.
+     */
+    private synchronized Index rebuildIndex()
+        throws PGPException
+    {
+        if (!index.saved)
+        {
+            return index;
+        }
+
+        try
+        {
+            ByteBuffer newIndex = buildIndex(buf.limit(), lastModified);
+
+            index = new Index(newIndex, false);
+
+            writeIndex(newIndex, indexFile);
+        }
+        catch (IOException e)
+        {
+            throw new PGPException("unable to rebuild index: " + e.getMessage(), e);
+        }
+
+        return index;
+    }
+
+    private PGPPublicKeyRing readRing(Index idx, int ring)
+        throws PGPException
+    {
+        int offset = idx.buf.getInt(HEADER_SIZE + ring * RING_ENTRY_SIZE);
+        int length = idx.buf.getInt(HEADER_SIZE + ring * RING_ENTRY_SIZE + 4);
+
+        try
+        {
+            return new PGPPublicKeyRing(new ByteArrayInputStream(getBytes(offset, offset + length)), fingerPrintCalculator, true);
+        }
+        catch (IOException e)
+        {
+            throw new PGPException("unable to read key ring at offset " + offset + ": " + e.getMessage(), e);
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new PGPException("unable to read key ring at offset " + offset + ": " + e.getMessage(), e);
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new PGPException("unable to read key ring at offset " + offset + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * An index buffer and its counts, replaced as a whole when a saved index is rebuilt.
+     */
+    private static class Index
+    {
+        final ByteBuffer buf;
+        final boolean saved;
+        final int ringCount;
+        final int keyCount;
+        final int keysOffset;
+
+        Index(ByteBuffer buf, boolean saved)
+        {
+            this.buf = buf;
+            this.saved = saved;
+            this.ringCount = buf.getInt(24);
+            this.keyCount = buf.getInt(28);
+            this.keysOffset = HEADER_SIZE + ringCount * RING_ENTRY_SIZE;
+        }
+
+        int findRing(long keyID)
+        {
+            int low = 0;
+            int high = keyCount;
+
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+
+                if (buf.getLong(keysOffset + mid * KEY_ENTRY_SIZE) < keyID)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+
+            if (low < keyCount && buf.getLong(keysOffset + low * KEY_ENTRY_SIZE) == keyID)
+            {
+                return buf.getInt(keysOffset + low * KEY_ENTRY_SIZE + 8);
+            }
+
+            return -1;
+        }
+    }
+
+    private static class KeyEntry
+    {
+        final long keyID;
+        final int ring;
+
+        KeyEntry(long keyID, int ring)
+        {
+            this.keyID = keyID;
+            this.ring = ring;
+        }
+    }
+}
@@ -17,6 +17,8 @@
 public class PGPCompressedData 
     implements CompressionAlgorithmTags
 {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
     CompressedDataPacket    data;
     
     public PGPCompressedData(
@@ -62,7 +64,7 @@ public InputStream getDataStream()
       }
       if (this.getAlgorithm() == ZIP)
       {
-          return new InflaterInputStream(this.getInputStream(), new Inflater(true)) 
+          return new InflaterInputStream(this.getInputStream(), new Inflater(true), BUFFER_SIZE)
           {
               // If the "nowrap" inflater option is used the stream can 
               // apparently overread - we override fill() and provide
@@ -95,7 +97,7 @@ protected void fill() throws IOException
       }
       if (this.getAlgorithm() == ZLIB)
       {
-          return new InflaterInputStream(this.getInputStream())
+          return new InflaterInputStream(this.getInputStream(), new Inflater(), BUFFER_SIZE)
           {
               // If the "nowrap" inflater option is used the stream can 
               // apparently overread - we override fill() and provide
@@ -1,12 +1,14 @@
 package org.bouncycastle.openpgp;
 
 import org.bouncycastle.apache.bzip2.CBZip2OutputStream;
+import org.bouncycastle.apache.bzip2.ParallelBZip2OutputStream;
 import org.bouncycastle.bcpg.BCPGOutputStream;
 import org.bouncycastle.bcpg.CompressionAlgorithmTags;
 import org.bouncycastle.bcpg.PacketTags;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -18,6 +20,7 @@ public class PGPCompressedDataGenerator
 {
     private int                     algorithm;
     private int                     compression;
+    private ExecutorService         executor;
 
     private OutputStream            dOut;
     private BCPGOutputStream        pkOut;
@@ -55,6 +58,24 @@ public PGPCompressedDataGenerator(
         this.compression = compression;
     }
 
+    /**
+     * Create a generator which, for BZIP2, compresses blocks in parallel on the passed in
+     * executor. The executor is ignored for the other algorithms.
+     *
+     * @param algorithm the compression algorithm to use.
+     * @param compression the compression level for ZIP and ZLIB.
+     * @param executor the executor BZIP2 blocks are compressed on.
+     */
+    public PGPCompressedDataGenerator(
+        int                    algorithm,
+        int                    compression,
+        ExecutorService        executor)
+    {
+        this(algorithm, compression);
+
+        this.executor = executor;
+    }
+
     /**
      * Return an OutputStream which will save the data being written to 
      * the compressed object.
@@ -139,7 +160,14 @@ private void doOpen() throws IOException
                 dOut = new SafeDeflaterOutputStream(pkOut, compression, false);
                 break;
             case CompressionAlgorithmTags.BZIP2:
-                dOut = new SafeCBZip2OutputStream(pkOut);
+                if (executor != null)
+                {
+                    dOut = new SafeParallelBZip2OutputStream(pkOut, executor);
+                }
+                else
+                {
+                    dOut = new SafeCBZip2OutputStream(pkOut);
+                }
                 break;
             default:
                 // Constructor should guard against this possibility
@@ -185,6 +213,19 @@ public void close() throws IOException
         }
     }
 
+    private static class SafeParallelBZip2OutputStream extends ParallelBZip2OutputStream
+    {
+        public SafeParallelBZip2OutputStream(OutputStream output, ExecutorService executor) throws IOException
+        {
+            super(output, executor);
+        }
+
+        public void close() throws IOException
+        {
+            finish();
+        }
+    }
+
     private class SafeDeflaterOutputStream extends DeflaterOutputStream
     {
         public SafeDeflaterOutputStream(OutputStream output, int compression, boolean nowrap)
@@ -16,7 +16,10 @@
 {
     protected class TruncatedStream extends InputStream
     {
-        int[]         lookAhead = new int[22];
+        private static final int LOOK_AHEAD = 22;
+
+        byte[]        lookAhead = new byte[LOOK_AHEAD];
+        byte[]        spare = new byte[LOOK_AHEAD];
         int           bufPtr;
         InputStream   in;
         
@@ -24,12 +27,18 @@ protected class TruncatedStream extends InputStream
             InputStream    in) 
             throws IOException
         {
-            for (int i = 0; i != lookAhead.length; i++)
+            int off = 0;
+
+            while (off != lookAhead.length)
             {
-                if ((lookAhead[i] = in.read()) < 0)
+                int len = in.read(lookAhead, off, lookAhead.length - off);
+
+                if (len < 0)
                 {
                     throw new EOFException();
                 }
+
+                off += len;
             }
             
             bufPtr = 0;
@@ -43,9 +52,9 @@ public int read()
             
             if (ch >= 0)
             {
-                int    c = lookAhead[bufPtr];
+                int    c = lookAhead[bufPtr] & 0xff;
                 
-                lookAhead[bufPtr] = ch;
+                lookAhead[bufPtr] = (byte)ch;
                 bufPtr = (bufPtr + 1) % lookAhead.length;
                 
                 return c;
@@ -53,25 +62,75 @@ public int read()
             
             return -1;
         }
-        
-        int[] getLookAhead()
+
+        public int read(
+            byte[] buf,
+            int    off,
+            int    len)
+            throws IOException
         {
-            int[]    tmp = new int[lookAhead.length];
-            int    count = 0;
-            
-            for (int i = bufPtr; i != lookAhead.length; i++)
+            if (len == 0)
             {
-                tmp[count++] = lookAhead[i];
+                return 0;
             }
-            for (int i = 0; i != bufPtr; i++)
+
+            int    count = in.read(buf, off, len);
+
+            if (count < 0)
+            {
+                return -1;
+            }
+
+            if (count < lookAhead.length)
             {
-                tmp[count++] = lookAhead[i];
+                for (int i = off; i != off + count; i++)
+                {
+                    byte    c = lookAhead[bufPtr];
+
+                    lookAhead[bufPtr] = buf[i];
+                    buf[i] = c;
+                    bufPtr = (bufPtr + 1) % lookAhead.length;
+                }
             }
+            else
+            {
+                //
+                // the last bytes read become the look ahead, everything else moves along
+                // to make room for the current look ahead at the front.
+                //
+                byte[] tmp = spare;
+                int    first = lookAhead.length - bufPtr;
+
+                System.arraycopy(buf, off + count - lookAhead.length, tmp, 0, lookAhead.length);
+                System.arraycopy(buf, off, buf, off + lookAhead.length, count - lookAhead.length);
+                System.arraycopy(lookAhead, bufPtr, buf, off, first);
+                System.arraycopy(lookAhead, 0, buf, off + first, bufPtr);
+
+                spare = lookAhead;
+                lookAhead = tmp;
+                bufPtr = 0;
+            }
+
+            return count;
+        }
+        
+        byte[] getLookAhead()
+        {
+            byte[]    tmp = new byte[lookAhead.length];
+            int       first = lookAhead.length - bufPtr;
+
+            System.arraycopy(lookAhead, bufPtr, tmp, 0, first);
+            System.arraycopy(lookAhead, 0, tmp, first, bufPtr);
             
             return tmp;
         }
     }
     
+    /**
+     * Size of the buffers used when data is read through in bulk.
+     */
+    static final int BUFFER_SIZE = 16 * 1024;
+
     InputStreamPacket        encData;
     InputStream              encStream;
     TruncatedStream          truncStream;
@@ -119,7 +178,9 @@ public boolean verify()
         //
         // make sure we are at the end.
         //
-        while (encStream.read() >= 0)
+        byte[] buf = new byte[BUFFER_SIZE];
+
+        while (encStream.read(buf, 0, buf.length) >= 0)
         {
             // do nothing
         }
@@ -127,20 +188,16 @@ public boolean verify()
         //
         // process the MDC packet
         //
-        int[] lookAhead = truncStream.getLookAhead();
+        byte[] lookAhead = truncStream.getLookAhead();
 
         OutputStream dOut = integrityCalculator.getOutputStream();
 
-        dOut.write((byte)lookAhead[0]);
-        dOut.write((byte)lookAhead[1]);
+        dOut.write(lookAhead, 0, 2);
 
         byte[] digest = integrityCalculator.getDigest();
         byte[] streamDigest = new byte[digest.length];
 
-        for (int i = 0; i != streamDigest.length; i++)
-        {
-            streamDigest[i] = (byte)lookAhead[i + 2];
-        }
+        System.arraycopy(lookAhead, 2, streamDigest, 0, streamDigest.length);
 
         return Arrays.constantTimeAreEqual(digest, streamDigest);
     }
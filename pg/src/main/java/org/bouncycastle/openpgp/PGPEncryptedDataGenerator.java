@@ -7,6 +7,7 @@
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.bouncycastle.bcpg.BCPGOutputStream;
 import org.bouncycastle.bcpg.HashAlgorithmTags;
@@ -66,7 +67,21 @@
     private int             defAlgorithm;
     private SecureRandom    rand;
 
+    private ExecutorService         executor;
+    private PipelinedOutputStream   pipeIn;
+    private PipelinedOutputStream   pipeOut;
+
     private static Provider        defProvider;
+
+    /**
+     * Size of the chunks passed between pipeline stages when no buffer is given to open().
+     */
+    private static final int PIPELINE_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The number of chunks that can be waiting for each pipeline stage.
+     */
+    private static final int PIPELINE_DEPTH = 4;
     
    /**
        * Base constructor.
@@ -199,6 +214,27 @@ public PGPEncryptedDataGenerator(PGPDataEncryptorBuilder encryptorBuilder, boole
         this.rand = dataEncryptorBuilder.getSecureRandom();
     }
 
+    /**
+     * Create a generator which pipelines its output: data written to the stream returned by
+     * open() is encrypted on one executor thread, and the encrypted packets are written to the
+     * underlying stream on another, so the caller can carry on producing, and compressing, the
+     * next chunk of data. The output is the same as a generator without an executor would produce.
+     * <p>
+     * Each stage holds a thread while the stream is open. If the executor has no thread free for a
+     * stage when the stream needs it, that stage is run on the writing thread instead, so a small or
+     * busy executor reduces the overlap rather than blocking the stream.
+     * </p>
+     *
+     * @param encryptorBuilder builder to create actual data encryptor.
+     * @param executor the executor to run the encryption and output stages on.
+     */
+    public PGPEncryptedDataGenerator(PGPDataEncryptorBuilder encryptorBuilder, ExecutorService executor)
+    {
+        this(encryptorBuilder, false);
+
+        this.executor = executor;
+    }
+
     /**
      * Add a PBE encryption method to the encrypted object using the default algorithm (S2K_SHA1).
      * 
@@ -374,6 +410,12 @@ private OutputStream open(
             PGPDataEncryptor dataEncryptor = dataEncryptorBuilder.build(key);
 
             digestCalc = dataEncryptor.getIntegrityCalculator();
+
+            if (executor != null)
+            {
+                // chunks match the partial packet size, if there is one.
+                out = pipeOut = new PipelinedOutputStream(out, executor, (buffer != null) ? buffer.length : PIPELINE_CHUNK_SIZE, PIPELINE_DEPTH);
+            }
             
             if (buffer == null)
             {
@@ -418,10 +460,19 @@ private OutputStream open(
 
             genOut.write(inLineIv);
 
+            if (executor != null)
+            {
+                pipeIn = new PipelinedOutputStream(genOut, executor, (buffer != null) ? buffer.length : PIPELINE_CHUNK_SIZE, PIPELINE_DEPTH);
+
+                return new WrappedGeneratorStream(pipeIn, this);
+            }
+
             return new WrappedGeneratorStream(genOut, this);
         }
         catch (Exception e)
         {
+            abortPipelines();
+
             throw new PGPException("Exception creating cipher", e);
         }
     }
@@ -486,24 +537,56 @@ public void close()
     {
         if (cOut != null)
         {    
-            if (digestCalc != null)
+            try
             {
-                //
-                // hand code a mod detection packet
-                //
-                BCPGOutputStream bOut = new BCPGOutputStream(genOut, PacketTags.MOD_DETECTION_CODE, 20);
+                if (pipeIn != null)
+                {
+                    pipeIn.finish();
+                }
+
+                if (digestCalc != null)
+                {
+                    //
+                    // hand code a mod detection packet
+                    //
+                    BCPGOutputStream bOut = new BCPGOutputStream(genOut, PacketTags.MOD_DETECTION_CODE, 20);
+
+                    bOut.flush();
+
+                    byte[] dig = digestCalc.getDigest();
 
-                bOut.flush();
+                    cOut.write(dig);
+                }
 
-                byte[] dig = digestCalc.getDigest();
+                cOut.close();
 
-                cOut.write(dig);
+                if (pipeOut != null)
+                {
+                    pipeOut.finish();
+                }
             }
+            finally
+            {
+                // a no-op for a stage which finished, otherwise releases its executor thread.
+                abortPipelines();
 
-            cOut.close();
+                cOut = null;
+                pOut = null;
+            }
+        }
+    }
 
-            cOut = null;
-            pOut = null;
+    private void abortPipelines()
+    {
+        if (pipeIn != null)
+        {
+            pipeIn.abort();
+            pipeIn = null;
+        }
+        if (pipeOut != null)
+        {
+            pipeOut.abort();
+            pipeOut = null;
         }
     }
 
@@ -44,6 +44,33 @@ static List readSignaturesAndTrust(
         BCPGInputStream pIn)
         throws IOException
     {
+        return readSignaturesAndTrust(pIn, false);
+    }
+
+    /**
+     * Read the signatures, and any trust packets, at the current position in the stream. If lazy
+     * is true only the packet encodings are kept and each signature is parsed when first accessed.
+     */
+    static List readSignaturesAndTrust(
+        BCPGInputStream pIn,
+        boolean lazy)
+        throws IOException
+    {
+        if (lazy)
+        {
+            LazySignatureList sigList = new LazySignatureList();
+
+            while (pIn.nextPacketTag() == PacketTags.SIGNATURE)
+            {
+                byte[]      sigEncoding = pIn.readPacketEncoding();
+                TrustPacket trustPacket = readOptionalTrustPacket(pIn);
+
+                sigList.addEncoding(sigEncoding, trustPacket);
+            }
+
+            return sigList;
+        }
+
         try
         {
             List sigList = new ArrayList();
@@ -71,24 +98,43 @@ static void readUserIDs(
         List idTrusts,
         List idSigs)
         throws IOException
+    {
+        readUserIDs(pIn, ids, idTrusts, idSigs, false);
+    }
+
+    static void readUserIDs(
+        BCPGInputStream pIn,
+        List ids,
+        List idTrusts,
+        List idSigs,
+        boolean lazy)
+        throws IOException
     {
         while (pIn.nextPacketTag() == PacketTags.USER_ID
             || pIn.nextPacketTag() == PacketTags.USER_ATTRIBUTE)
         {
-            Packet obj = pIn.readPacket();
-            if (obj instanceof UserIDPacket)
+            if (lazy && pIn.nextPacketTag() == PacketTags.USER_ATTRIBUTE)
             {
-                UserIDPacket id = (UserIDPacket)obj;
-                ids.add(id.getID());
+                // attributes such as photo IDs can be large, leave the subpackets till needed.
+                ids.add(new PGPUserAttributeSubpacketVector(pIn.readPacketEncoding()));
             }
             else
             {
-                UserAttributePacket user = (UserAttributePacket)obj;
-                ids.add(new PGPUserAttributeSubpacketVector(user.getSubpackets()));
+                Packet obj = pIn.readPacket();
+                if (obj instanceof UserIDPacket)
+                {
+                    UserIDPacket id = (UserIDPacket)obj;
+                    ids.add(id.getID());
+                }
+                else
+                {
+                    UserAttributePacket user = (UserAttributePacket)obj;
+                    ids.add(new PGPUserAttributeSubpacketVector(user.getSubpackets()));
+                }
             }
 
             idTrusts.add(readOptionalTrustPacket(pIn));
-            idSigs.add(readSignaturesAndTrust(pIn));
+            idSigs.add(readSignaturesAndTrust(pIn, lazy));
         }
     }
 
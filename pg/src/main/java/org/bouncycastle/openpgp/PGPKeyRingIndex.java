@@ -0,0 +1,545 @@
+package org.bouncycastle.openpgp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.bouncycastle.util.Strings;
+
+/**
+ * A mutable index over public and secret key rings which supports lookups by the key ID
+ * or fingerprint of any key in a ring, master or sub-key, and by user ID.
+ * <p>
+ * User IDs can be matched exactly, by prefix, or by substring - substring matches are answered
+ * using an index of the three character sequences making up each user ID, so only user IDs
+ * sharing all the sequences in the search string need to be checked. Search strings of less than
+ * three characters fall back to checking every user ID.
+ * </p>
+ * <p>
+ * Rings can be added and removed at any time, results are returned in the order the rings
+ * were added. The space used by removed rings is reclaimed by rebuilding the index once the
+ * removed rings outnumber those remaining. The class is thread safe.
+ * </p>
+ */
+public class PGPKeyRingIndex
+{
+    private static final int GRAM_SIZE = 3;
+
+    private final List rings = new ArrayList();
+    private final Map ringIds = new IdentityHashMap();
+    private int size;
+    private int removed;
+
+    private final Map keyIDs = new HashMap();
+    private final Map fingerprints = new HashMap();
+
+    private final List userIDs = new ArrayList();
+    private final IntList userIDRings = new IntList();
+    private final IntList ringUserIDStarts = new IntList();
+    private final IntList ringUserIDEnds = new IntList();
+    private final Map exactUserIDs = new HashMap();
+    private final SortedMap lowerUserIDs = new TreeMap();
+    private final Map grams = new HashMap();
+
+    /**
+     * Create an empty index.
+     */
+    public PGPKeyRingIndex()
+    {
+    }
+
+    /**
+     * Create an index containing the key rings in the passed in public key ring collection.
+     *
+     * @param pubRings the rings to be indexed.
+     */
+    public PGPKeyRingIndex(PGPPublicKeyRingCollection pubRings)
+    {
+        addKeyRings(pubRings.getKeyRings());
+    }
+
+    /**
+     * Create an index containing the key rings in the passed in secret key ring collection.
+     *
+     * @param secRings the rings to be indexed.
+     */
+    public PGPKeyRingIndex(PGPSecretKeyRingCollection secRings)
+    {
+        addKeyRings(secRings.getKeyRings());
+    }
+
+    /**
+     * Add each of the key rings returned by the passed in iterator to the index.
+     *
+     * @param keyRings an iterator of PGPKeyRing objects.
+     */
+    public synchronized void addKeyRings(Iterator keyRings)
+    {
+        while (keyRings.hasNext())
+        {
+            addKeyRing((PGPKeyRing)keyRings.next());
+        }
+    }
+
+    /**
+     * Add a key ring to the index. Adding a ring that is already present has no effect.
+     *
+     * @param keyRing the public or secret key ring to add.
+     */
+    public synchronized void addKeyRing(PGPKeyRing keyRing)
+    {
+        if (ringIds.containsKey(keyRing))
+        {
+            return;
+        }
+
+        int ringId = rings.size();
+
+        rings.add(keyRing);
+        ringIds.put(keyRing, new Integer(ringId));
+        size++;
+
+        for (Iterator it = keyRing.getPublicKeys(); it.hasNext();)
+        {
+            PGPPublicKey key = (PGPPublicKey)it.next();
+
+            add(keyIDs, new Long(key.getKeyID()), ringId);
+            add(fingerprints, new Fingerprint(key.getFingerprint()), ringId);
+        }
+
+        // a ring's user IDs are given consecutive entries, so they can be found again on removal.
+        ringUserIDStarts.add(userIDs.size());
+
+        for (Iterator it = keyRing.getPublicKey().getUserIDs(); it.hasNext();)
+        {
+            String userID = (String)it.next();
+            String lower = Strings.toLowerCase(userID);
+            int    entry = userIDs.size();
+
+            userIDs.add(userID);
+            userIDRings.add(ringId);
+
+            add(exactUserIDs, userID, entry);
+            add(lowerUserIDs, lower, entry);
+
+            for (int i = 0; i + GRAM_SIZE <= lower.length(); i++)
+            {
+                Long   gram = gramKey(lower, i);
+                IntList entries = (IntList)grams.get(gram);
+
+                if (entries == null)
+                {
+                    entries = new IntList();
+                    grams.put(gram, entries);
+                }
+
+                // a sequence may occur more than once in a user ID, it only needs to be listed once.
+                if (entries.count == 0 || entries.values[entries.count - 1] != entry)
+                {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        ringUserIDEnds.add(userIDs.size());
+    }
+
+    /**
+     * Remove a key ring from the index.
+     *
+     * @param keyRing the key ring to remove.
+     * @return true if the ring was present, false otherwise.
+     */
+    public synchronized boolean removeKeyRing(PGPKeyRing keyRing)
+    {
+        Integer id = (Integer)ringIds.remove(keyRing);
+
+        if (id == null)
+        {
+            return false;
+        }
+
+        int ringId = id.intValue();
+
+        rings.set(ringId, null);
+        size--;
+
+        for (Iterator it = keyRing.getPublicKeys(); it.hasNext();)
+        {
+            PGPPublicKey key = (PGPPublicKey)it.next();
+
+            remove(keyIDs, new Long(key.getKeyID()), ringId);
+            remove(fingerprints, new Fingerprint(key.getFingerprint()), ringId);
+        }
+
+        // user ID entries are dropped from the exact and prefix indexes, the substring index
+        // is left alone as its candidates are always checked against the live entries.
+        for (int entry = ringUserIDStarts.values[ringId]; entry != ringUserIDEnds.values[ringId]; entry++)
+        {
+            String userID = (String)userIDs.get(entry);
+
+            remove(exactUserIDs, userID, entry);
+            remove(lowerUserIDs, Strings.toLowerCase(userID), entry);
+
+            userIDs.set(entry, null);
+            userIDRings.values[entry] = -1;
+        }
+
+        if (++removed > size)
+        {
+            compact();
+        }
+
+        return true;
+    }
+
+    /**
+     * Rebuild the index from the remaining rings, in the order they were added, dropping the
+     * slots and substring index entries left behind by removed rings.
+     */
+    private void compact()
+    {
+        List remaining = new ArrayList(size);
+
+        for (Iterator it = rings.iterator(); it.hasNext();)
+        {
+            Object ring = it.next();
+
+            if (ring != null)
+            {
+                remaining.add(ring);
+            }
+        }
+
+        rings.clear();
+        ringIds.clear();
+        size = 0;
+        removed = 0;
+
+        keyIDs.clear();
+        fingerprints.clear();
+
+        userIDs.clear();
+        userIDRings.clear();
+        ringUserIDStarts.clear();
+        ringUserIDEnds.clear();
+        exactUserIDs.clear();
+        lowerUserIDs.clear();
+        grams.clear();
+
+        for (Iterator it = remaining.iterator(); it.hasNext();)
+        {
+            addKeyRing((PGPKeyRing)it.next());
+        }
+    }
+
+    /**
+     * Return the number of key rings in the index.
+     *
+     * @return the number of key rings.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Return the key ring containing the key with the passed in key ID.
+     *
+     * @param keyID the key ID of the master key or one of the sub-keys.
+     * @return the key ring, null if there is no match.
+     */
+    public synchronized PGPKeyRing getKeyRing(long keyID)
+    {
+        IntList ids = (IntList)keyIDs.get(new Long(keyID));
+
+        return (ids == null) ? null : (PGPKeyRing)rings.get(ids.values[0]);
+    }
+
+    /**
+     * Return all the key rings containing a key with the passed in key ID.
+     *
+     * @param keyID the key ID of the master key or one of the sub-keys.
+     * @return an iterator (possibly empty) of the matching key rings.
+     */
+    public synchronized Iterator getKeyRings(long keyID)
+    {
+        return toRings((IntList)keyIDs.get(new Long(keyID)));
+    }
+
+    /**
+     * Return the key with the passed in key ID.
+     *
+     * @param keyID the key ID of the master key or one of the sub-keys.
+     * @return the public key, null if there is no match.
+     */
+    public synchronized PGPPublicKey getPublicKey(long keyID)
+    {
+        PGPKeyRing ring = getKeyRing(keyID);
+
+        return (ring == null) ? null : ring.getPublicKey(keyID);
+    }
+
+    /**
+     * Return the key ring containing the key with the passed in fingerprint.
+     *
+     * @param fingerprint the fingerprint of the master key or one of the sub-keys.
+     * @return the key ring, null if there is no match.
+     */
+    public synchronized PGPKeyRing getKeyRing(byte[] fingerprint)
+    {
+        IntList ids = (IntList)fingerprints.get(new Fingerprint(fingerprint));
+
+        return (ids == null) ? null : (PGPKeyRing)rings.get(ids.values[0]);
+    }
+
+    /**
+     * Return the key rings with a user ID matching the passed in user ID.
+     *
+     * @param userID the user ID to be matched.
+     * @param matchPartial if true userID need only be a substring of an actual ID string to match.
+     * @param ignoreCase if true case is ignored in user ID comparisons.
+     * @return an iterator (possibly empty) of the matching key rings.
+     */
+    public synchronized Iterator getKeyRings(String userID, boolean matchPartial, boolean ignoreCase)
+    {
+        String lower = Strings.toLowerCase(userID);
+
+        if (!matchPartial)
+        {
+            if (ignoreCase)
+            {
+                return entriesToRings((IntList)lowerUserIDs.get(lower));
+            }
+
+            return entriesToRings((IntList)exactUserIDs.get(userID));
+        }
+
+        IntList candidates = null;
+
+        if (lower.length() >= GRAM_SIZE)
+        {
+            for (int i = 0; i + GRAM_SIZE <= lower.length(); i++)
+            {
+                IntList entries = (IntList)grams.get(gramKey(lower, i));
+
+                if (entries == null)
+                {
+                    return new ArrayList().iterator();
+                }
+
+                if (candidates == null || entries.count < candidates.count)
+                {
+                    candidates = entries;
+                }
+            }
+        }
+
+        String  match = ignoreCase ? lower : userID;
+        IntList found = new IntList();
+        int     count = (candidates == null) ? userIDs.size() : candidates.count;
+
+        for (int i = 0; i != count; i++)
+        {
+            int    entry = (candidates == null) ? i : candidates.values[i];
+            String next = (String)userIDs.get(entry);
+
+            if (next != null)
+            {
+                if (ignoreCase)
+                {
+                    next = Strings.toLowerCase(next);
+                }
+
+                if (next.indexOf(match) > -1)
+                {
+                    found.add(entry);
+                }
+            }
+        }
+
+        return entriesToRings(found);
+    }
+
+    /**
+     * Return the key rings with a user ID starting with the passed in prefix.
+     *
+     * @param prefix the start of the user ID.
+     * @param ignoreCase if true case is ignored in user ID comparisons.
+     * @return an iterator (possibly empty) of the matching key rings.
+     */
+    public synchronized Iterator getKeyRingsByUserIDPrefix(String prefix, boolean ignoreCase)
+    {
+        String  lower = Strings.toLowerCase(prefix);
+        IntList found = new IntList();
+
+        for (Iterator it = lowerUserIDs.subMap(lower, lower + '\uffff').values().iterator(); it.hasNext();)
+        {
+            IntList entries = (IntList)it.next();
+
+            for (int i = 0; i != entries.count; i++)
+            {
+                int entry = entries.values[i];
+
+                if (ignoreCase || ((String)userIDs.get(entry)).startsWith(prefix))
+                {
+                    found.add(entry);
+                }
+            }
+        }
+
+        return entriesToRings(found);
+    }
+
+    /**
+     * Convert user ID entries to the distinct rings they belong to in the order the rings were added.
+     */
+    private Iterator entriesToRings(IntList entries)
+    {
+        if (entries == null)
+        {
+            return new ArrayList().iterator();
+        }
+
+        IntList ringIds = new IntList();
+
+        for (int i = 0; i != entries.count; i++)
+        {
+            ringIds.add(userIDRings.values[entries.values[i]]);
+        }
+
+        return toRings(ringIds);
+    }
+
+    /**
+     * Convert ring IDs to the distinct rings they refer to in the order the rings were added.
+     */
+    private Iterator toRings(IntList ringIds)
+    {
+        List result = new ArrayList();
+
+        if (ringIds == null)
+        {
+            return result.iterator();
+        }
+
+        int[] ringList = new int[ringIds.count];
+        int   count = ringIds.count;
+
+        System.arraycopy(ringIds.values, 0, ringList, 0, count);
+
+        Arrays.sort(ringList, 0, count);
+
+        int last = -1;
+        for (int i = 0; i != count; i++)
+        {
+            if (ringList[i] != last && ringList[i] >= 0)
+            {
+                result.add(rings.get(ringList[i]));
+                last = ringList[i];
+            }
+        }
+
+        return result.iterator();
+    }
+
+    private static Long gramKey(String s, int off)
+    {
+        return new Long(((long)s.charAt(off) << 32) | ((long)s.charAt(off + 1) << 16) | s.charAt(off + 2));
+    }
+
+    private static void add(Map index, Object key, int value)
+    {
+        IntList values = (IntList)index.get(key);
+
+        if (values == null)
+        {
+            values = new IntList();
+            index.put(key, values);
+        }
+
+        values.add(value);
+    }
+
+    private static void remove(Map index, Object key, int value)
+    {
+        IntList values = (IntList)index.get(key);
+
+        if (values != null)
+        {
+            values.remove(value);
+
+            if (values.count == 0)
+            {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static class IntList
+    {
+        int[] values = new int[1];
+        int   count;
+
+        void add(int value)
+        {
+            if (count == values.length)
+            {
+                int[] tmp = new int[count * 2];
+
+                System.arraycopy(values, 0, tmp, 0, count);
+
+                values = tmp;
+            }
+
+            values[count++] = value;
+        }
+
+        void clear()
+        {
+            values = new int[1];
+            count = 0;
+        }
+
+        void remove(int value)
+        {
+            for (int i = 0; i != count; i++)
+            {
+                if (values[i] == value)
+                {
+                    System.arraycopy(values, i + 1, values, i, count - i - 1);
+                    count--;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class Fingerprint
+    {
+        private final byte[] fingerprint;
+        private final int hashCode;
+
+        Fingerprint(byte[] fingerprint)
+        {
+            this.fingerprint = fingerprint;
+            this.hashCode = org.bouncycastle.util.Arrays.hashCode(fingerprint);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public boolean equals(Object o)
+        {
+            return (o instanceof Fingerprint) && org.bouncycastle.util.Arrays.areEqual(fingerprint, ((Fingerprint)o).fingerprint);
+        }
+    }
+}
@@ -188,7 +188,7 @@ public PGPPublicKey(PublicKeyPacket publicKeyPacket, KeyFingerPrintCalculator fi
         this.idSigs = new ArrayList(pubKey.idSigs.size());
         for (int i = 0; i != pubKey.idSigs.size(); i++)
         {
-            this.idSigs.add(new ArrayList((ArrayList)pubKey.idSigs.get(i)));
+            this.idSigs.add(new ArrayList((List)pubKey.idSigs.get(i)));
         }
        
         if (pubKey.subSigs != null)
@@ -496,7 +496,7 @@ public Iterator getSignaturesForID(
         {
             if (id.equals(ids.get(i)))
             {
-                return ((ArrayList)idSigs.get(i)).iterator();
+                return ((List)idSigs.get(i)).iterator();
             }
         }
         
@@ -516,7 +516,7 @@ public Iterator getSignaturesForUserAttribute(
         {
             if (userAttributes.equals(ids.get(i)))
             {
-                return ((ArrayList)idSigs.get(i)).iterator();
+                return ((List)idSigs.get(i)).iterator();
             }
         }
         
@@ -69,6 +69,26 @@ public PGPPublicKeyRing(
         InputStream    in,
         KeyFingerPrintCalculator fingerPrintCalculator)
         throws IOException
+    {
+        this(in, fingerPrintCalculator, false);
+    }
+
+    /**
+     * Create a key ring from the passed in stream. If lazy is true the signature packets and user
+     * attributes in the ring are only parsed when they are first accessed, so reading a ring costs
+     * little more than reading the packets. In this case a malformed signature or attribute will
+     * result in an IllegalStateException when it is accessed, rather than an IOException here.
+     *
+     * @param in the stream the key ring is read from.
+     * @param fingerPrintCalculator calculator to use in key finger print calculations.
+     * @param lazy true if signatures and user attributes should be parsed on demand.
+     * @throws IOException if the key ring cannot be read.
+     */
+    public PGPPublicKeyRing(
+        InputStream    in,
+        KeyFingerPrintCalculator fingerPrintCalculator,
+        boolean        lazy)
+        throws IOException
     {
         this.keys = new ArrayList();
 
@@ -86,12 +106,12 @@ public PGPPublicKeyRing(
         TrustPacket     trustPk = readOptionalTrustPacket(pIn);
 
         // direct signatures and revocations
-        List keySigs = readSignaturesAndTrust(pIn);
+        List keySigs = readSignaturesAndTrust(pIn, lazy);
 
         List ids = new ArrayList();
         List idTrusts = new ArrayList();
         List idSigs = new ArrayList();
-        readUserIDs(pIn, ids, idTrusts, idSigs);
+        readUserIDs(pIn, ids, idTrusts, idSigs, lazy);
 
         try
         {
@@ -100,7 +120,7 @@ public PGPPublicKeyRing(
             // Read subkeys
             while (pIn.nextPacketTag() == PacketTags.PUBLIC_SUBKEY)
             {
-                keys.add(readSubkey(pIn, fingerPrintCalculator));
+                keys.add(readSubkey(pIn, fingerPrintCalculator, lazy));
             }
         }
         catch (PGPException e)
@@ -261,12 +281,18 @@ public static PGPPublicKeyRing removePublicKey(
 
     static PGPPublicKey readSubkey(BCPGInputStream in, KeyFingerPrintCalculator fingerPrintCalculator)
         throws IOException, PGPException
+    {
+        return readSubkey(in, fingerPrintCalculator, false);
+    }
+
+    static PGPPublicKey readSubkey(BCPGInputStream in, KeyFingerPrintCalculator fingerPrintCalculator, boolean lazy)
+        throws IOException, PGPException
     {
         PublicKeyPacket pk = (PublicKeyPacket)in.readPacket();
         TrustPacket     kTrust = readOptionalTrustPacket(in);
 
         // PGP 8 actually leaves out the signature.
-        List sigList = readSignaturesAndTrust(in);
+        List sigList = readSignaturesAndTrust(in, lazy);
 
         return new PGPPublicKey(pk, kTrust, sigList, fingerPrintCalculator);
     }
@@ -1,6 +1,9 @@
 package org.bouncycastle.openpgp;
 
+import org.bouncycastle.bcpg.BCPGInputStream;
 import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.openpgp.operator.KeyFingerPrintCalculator;
 import org.bouncycastle.util.Strings;
 
 import java.io.ByteArrayInputStream;
@@ -68,6 +71,41 @@ public PGPPublicKeyRingCollection(
         }
     }
     
+    /**
+     * Build a PGPPublicKeyRingCollection from the passed in input stream. If lazy is true the
+     * signatures and user attributes in each ring are only parsed when first accessed, see
+     * {@link PGPPublicKeyRing#PGPPublicKeyRing(InputStream, KeyFingerPrintCalculator, boolean)}.
+     *
+     * @param in  input stream containing data
+     * @param fingerPrintCalculator calculator to use in key finger print calculations.
+     * @param lazy true if signatures and user attributes should be parsed on demand.
+     * @throws IOException if a problem parsing the base stream occurs
+     * @throws PGPException if an object is encountered which isn't a PGPPublicKeyRing
+     */
+    public PGPPublicKeyRingCollection(
+        InputStream    in,
+        KeyFingerPrintCalculator fingerPrintCalculator,
+        boolean        lazy)
+        throws IOException, PGPException
+    {
+        BCPGInputStream pIn = new BCPGInputStream(in);
+        int             tag;
+
+        while ((tag = pIn.nextPacketTag()) >= 0)
+        {
+            if (tag != PacketTags.PUBLIC_KEY)
+            {
+                throw new PGPException("packet with tag " + tag + " found where PGPPublicKeyRing expected");
+            }
+
+            PGPPublicKeyRing    pgpPub = new PGPPublicKeyRing(pIn, fingerPrintCalculator, lazy);
+            Long    key = new Long(pgpPub.getPublicKey().getKeyID());
+
+            pubRings.put(key, pgpPub);
+            order.add(key);
+        }
+    }
+    
     public PGPPublicKeyRingCollection(
         Collection    collection)
         throws IOException, PGPException
@@ -727,7 +727,7 @@ public void encode(
                     out.writePacket((ContainedPacket)pub.idTrusts.get(i));
                 }
                 
-                List         sigs = (ArrayList)pub.idSigs.get(i);
+                List         sigs = (List)pub.idSigs.get(i);
                 
                 for (int j = 0; j != sigs.size(); j++)
                 {
@@ -0,0 +1,458 @@
+package org.bouncycastle.openpgp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.openpgp.operator.PGPContentVerifier;
+import org.bouncycastle.openpgp.operator.PGPContentVerifierBuilder;
+import org.bouncycastle.openpgp.operator.PGPContentVerifierBuilderProvider;
+
+/**
+ * Checks large numbers of signatures - the certifications on key rings, or a list of detached
+ * signatures - spreading the work over an executor.
+ * <p>
+ * Signatures are grouped by issuer, and each group is checked by a single task, so a verifier
+ * set up for an issuer's key is reused for each of that issuer's signatures in the group rather
+ * than being rebuilt for every signature. This relies on a verifier resetting itself after
+ * verify() is called, as verifiers based on JCA signatures and the lightweight signers do.
+ * </p>
+ * <p>
+ * As checking a signature changes its state, a signature should not be checked by anything else
+ * while a batch including it is being run. Results are returned in the order the signatures are
+ * found in the key ring or list.
+ * </p>
+ */
+public class PGPSignatureBatchVerifier
+{
+    private static final int MAX_BATCH_SIZE = 32;
+
+    private final PGPContentVerifierBuilderProvider verifierBuilderProvider;
+    private final ExecutorService                   executor;
+
+    /**
+     * Base constructor.
+     *
+     * @param verifierBuilderProvider provider for the signature verifiers.
+     * @param executor the executor to run the checks on, null if they should be run in the calling thread.
+     */
+    public PGPSignatureBatchVerifier(
+        PGPContentVerifierBuilderProvider verifierBuilderProvider,
+        ExecutorService                   executor)
+    {
+        this.verifierBuilderProvider = verifierBuilderProvider;
+        this.executor = executor;
+    }
+
+    /**
+     * Check the certifications on a key ring: user ID and user attribute certifications, key
+     * revocations, and subkey bindings and revocations. Direct key signatures are not checked.
+     *
+     * @param keyRing the key ring to check.
+     * @param issuers key rings to look for issuers that are not in keyRing, may be null.
+     * @return a list of PGPSignatureVerificationResult objects.
+     * @throws PGPException if the checks cannot be run.
+     */
+    public List verifyKeyRing(
+        PGPPublicKeyRing            keyRing,
+        PGPPublicKeyRingCollection  issuers)
+        throws PGPException
+    {
+        List checks = new ArrayList();
+
+        addKeyRingChecks(checks, keyRing, issuers);
+
+        return runChecks(checks);
+    }
+
+    /**
+     * Check the certifications on all the key rings in a collection, with issuers looked up in
+     * the same collection.
+     *
+     * @param keyRings the key rings to check.
+     * @return a list of PGPSignatureVerificationResult objects.
+     * @throws PGPException if the checks cannot be run.
+     */
+    public List verifyKeyRings(
+        PGPPublicKeyRingCollection  keyRings)
+        throws PGPException
+    {
+        List checks = new ArrayList();
+
+        for (Iterator it = keyRings.getKeyRings(); it.hasNext();)
+        {
+            addKeyRingChecks(checks, (PGPPublicKeyRing)it.next(), keyRings);
+        }
+
+        return runChecks(checks);
+    }
+
+    /**
+     * Check a list of detached signatures over the passed in data.
+     *
+     * @param signatures the signatures to check.
+     * @param data the data that was signed.
+     * @param issuers key rings to look for the signers' keys in.
+     * @return a list of PGPSignatureVerificationResult objects.
+     * @throws PGPException if the checks cannot be run.
+     */
+    public List verifyDetached(
+        PGPSignatureList            signatures,
+        byte[]                      data,
+        PGPPublicKeyRingCollection  issuers)
+        throws PGPException
+    {
+        List checks = new ArrayList();
+
+        for (int i = 0; i != signatures.size(); i++)
+        {
+            PGPSignature sig = signatures.get(i);
+
+            checks.add(new Check(new PGPSignatureVerificationResult(sig, null, null, findIssuer(sig, null, issuers)), data));
+        }
+
+        return runChecks(checks);
+    }
+
+    private void addKeyRingChecks(
+        List                        checks,
+        PGPPublicKeyRing            keyRing,
+        PGPPublicKeyRingCollection  issuers)
+        throws PGPException
+    {
+        PGPPublicKey masterKey = null;
+
+        for (Iterator keys = keyRing.getPublicKeys(); keys.hasNext();)
+        {
+            PGPPublicKey key = (PGPPublicKey)keys.next();
+
+            if (key.isMasterKey())
+            {
+                masterKey = key;
+
+                // a repeated user ID shares its signatures with the first one, only check them once.
+                HashSet seen = new HashSet();
+
+                for (Iterator it = key.getSignaturesOfType(PGPSignature.KEY_REVOCATION); it.hasNext();)
+                {
+                    addCheck(checks, (PGPSignature)it.next(), null, key, null, keyRing, issuers);
+                }
+
+                for (Iterator ids = key.getUserIDs(); ids.hasNext();)
+                {
+                    String id = (String)ids.next();
+
+                    if (!seen.add(id))
+                    {
+                        continue;
+                    }
+
+                    for (Iterator it = key.getSignaturesForID(id); it.hasNext();)
+                    {
+                        addCheck(checks, (PGPSignature)it.next(), null, key, id, keyRing, issuers);
+                    }
+                }
+
+                for (Iterator attrs = key.getUserAttributes(); attrs.hasNext();)
+                {
+                    PGPUserAttributeSubpacketVector attr = (PGPUserAttributeSubpacketVector)attrs.next();
+
+                    if (!seen.add(attr))
+                    {
+                        continue;
+                    }
+
+                    for (Iterator it = key.getSignaturesForUserAttribute(attr); it.hasNext();)
+                    {
+                        addCheck(checks, (PGPSignature)it.next(), null, key, attr, keyRing, issuers);
+                    }
+                }
+            }
+            else if (masterKey != null)
+            {
+                for (Iterator it = key.getSignatures(); it.hasNext();)
+                {
+                    addCheck(checks, (PGPSignature)it.next(), masterKey, key, null, keyRing, issuers);
+                }
+            }
+        }
+    }
+
+    private void addCheck(
+        List                        checks,
+        PGPSignature                sig,
+        PGPPublicKey                masterKey,
+        PGPPublicKey                signedKey,
+        Object                      userID,
+        PGPPublicKeyRing            keyRing,
+        PGPPublicKeyRingCollection  issuers)
+        throws PGPException
+    {
+        PGPPublicKey issuerKey = findIssuer(sig, keyRing, issuers);
+
+        checks.add(new Check(new PGPSignatureVerificationResult(sig, signedKey, userID, issuerKey), masterKey));
+    }
+
+    private PGPPublicKey findIssuer(
+        PGPSignature                sig,
+        PGPPublicKeyRing            keyRing,
+        PGPPublicKeyRingCollection  issuers)
+        throws PGPException
+    {
+        PGPPublicKey issuerKey = null;
+
+        if (keyRing != null)
+        {
+            issuerKey = keyRing.getPublicKey(sig.getKeyID());
+        }
+
+        if (issuerKey == null && issuers != null)
+        {
+            issuerKey = issuers.getPublicKey(sig.getKeyID());
+        }
+
+        return issuerKey;
+    }
+
+    private List runChecks(List checks)
+        throws PGPException
+    {
+        List batches = createBatches(checks);
+        List results = new ArrayList(checks.size());
+
+        if (executor == null || batches.size() < 2)
+        {
+            for (int i = 0; i != batches.size(); i++)
+            {
+                ((Batch)batches.get(i)).call();
+            }
+        }
+        else
+        {
+            List futures = new ArrayList(batches.size());
+
+            try
+            {
+                for (int i = 0; i != batches.size(); i++)
+                {
+                    futures.add(executor.submit((Batch)batches.get(i)));
+                }
+
+                for (int i = 0; i != futures.size(); i++)
+                {
+                    ((Future)futures.get(i)).get();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                cancel(futures);
+                Thread.currentThread().interrupt();
+
+                throw new PGPException("interrupted waiting for signature checks", e);
+            }
+            catch (ExecutionException e)
+            {
+                cancel(futures);
+
+                throw new PGPException("exception checking signatures: " + e.getCause(), e);
+            }
+            catch (RuntimeException e)
+            {
+                cancel(futures);
+
+                throw new PGPException("unable to schedule signature checks: " + e.getMessage(), e);
+            }
+        }
+
+        for (int i = 0; i != checks.size(); i++)
+        {
+            results.add(((Check)checks.get(i)).result);
+        }
+
+        return results;
+    }
+
+    private static void cancel(List futures)
+    {
+        for (int i = 0; i != futures.size(); i++)
+        {
+            ((Future)futures.get(i)).cancel(true);
+        }
+    }
+
+    /**
+     * Group the checks that have an issuer key by issuer, splitting large groups so a single
+     * prolific issuer does not leave the executor idle.
+     */
+    private List createBatches(List checks)
+    {
+        Map  byIssuer = new LinkedHashMap();
+        List batches = new ArrayList();
+
+        for (int i = 0; i != checks.size(); i++)
+        {
+            Check check = (Check)checks.get(i);
+
+            if (check.result.getIssuerKey() == null)
+            {
+                continue;
+            }
+
+            Long  issuerID = new Long(check.result.getIssuerKey().getKeyID());
+            Batch batch = (Batch)byIssuer.get(issuerID);
+
+            if (batch == null || batch.checks.size() == MAX_BATCH_SIZE)
+            {
+                batch = new Batch();
+                byIssuer.put(issuerID, batch);
+                batches.add(batch);
+            }
+
+            batch.checks.add(check);
+        }
+
+        return batches;
+    }
+
+    private static class Check
+    {
+        final PGPSignatureVerificationResult result;
+        final PGPPublicKey                   masterKey;
+        final byte[]                         data;
+
+        Check(PGPSignatureVerificationResult result, PGPPublicKey masterKey)
+        {
+            this.result = result;
+            this.masterKey = masterKey;
+            this.data = null;
+        }
+
+        Check(PGPSignatureVerificationResult result, byte[] data)
+        {
+            this.result = result;
+            this.masterKey = null;
+            this.data = data;
+        }
+
+        boolean verify(PGPContentVerifierBuilderProvider provider)
+            throws Exception
+        {
+            PGPSignature sig = result.getSignature();
+
+            sig.init(provider, result.getIssuerKey());
+
+            if (data != null)
+            {
+                sig.update(data);
+
+                return sig.verify();
+            }
+            if (masterKey != null)
+            {
+                return sig.verifyCertification(masterKey, result.getSignedKey());
+            }
+            if (result.getUserID() != null)
+            {
+                return sig.verifyCertification(result.getUserID(), result.getSignedKey());
+            }
+            if (result.getUserAttributes() != null)
+            {
+                return sig.verifyCertification(result.getUserAttributes(), result.getSignedKey());
+            }
+
+            return sig.verifyCertification(result.getSignedKey());
+        }
+    }
+
+    private class Batch
+        implements Callable
+    {
+        final List checks = new ArrayList();
+
+        public Object call()
+        {
+            CachingVerifierBuilderProvider provider = new CachingVerifierBuilderProvider(verifierBuilderProvider);
+
+            for (int i = 0; i != checks.size(); i++)
+            {
+                Check check = (Check)checks.get(i);
+
+                try
+                {
+                    check.result.setVerified(check.verify(provider));
+                }
+                catch (Exception e)
+                {
+                    // the verifier may have been left part way through a signature.
+                    provider.discard();
+                    check.result.setException(e);
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Hands back the verifier it built last time for the same key and algorithms, the batches
+     * check one signature at a time so it will have been reset by the previous verify().
+     */
+    private static class CachingVerifierBuilderProvider
+        implements PGPContentVerifierBuilderProvider
+    {
+        private final PGPContentVerifierBuilderProvider provider;
+        private final Map                               verifiers = new HashMap();
+
+        CachingVerifierBuilderProvider(PGPContentVerifierBuilderProvider provider)
+        {
+            this.provider = provider;
+        }
+
+        void discard()
+        {
+            verifiers.clear();
+        }
+
+        public PGPContentVerifierBuilder get(final int keyAlgorithm, final int hashAlgorithm)
+            throws PGPException
+        {
+            return new PGPContentVerifierBuilder()
+            {
+                public PGPContentVerifier build(PGPPublicKey publicKey)
+                    throws PGPException
+                {
+                    Integer         algs = new Integer((keyAlgorithm << 8) | hashAlgorithm);
+                    CachedVerifier  cached = (CachedVerifier)verifiers.get(algs);
+
+                    if (cached == null || cached.key != publicKey)
+                    {
+                        cached = new CachedVerifier(publicKey, provider.get(keyAlgorithm, hashAlgorithm).build(publicKey));
+                        verifiers.put(algs, cached);
+                    }
+
+                    return cached.verifier;
+                }
+            };
+        }
+    }
+
+    private static class CachedVerifier
+    {
+        final PGPPublicKey       key;
+        final PGPContentVerifier verifier;
+
+        CachedVerifier(PGPPublicKey key, PGPContentVerifier verifier)
+        {
+            this.key = key;
+            this.verifier = verifier;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.bouncycastle.openpgp;
+
+/**
+ * The outcome of checking a single signature with a {@link PGPSignatureBatchVerifier}.
+ */
+public class PGPSignatureVerificationResult
+{
+    private final PGPSignature  signature;
+    private final PGPPublicKey  signedKey;
+    private final Object        userID;
+    private final PGPPublicKey  issuerKey;
+
+    private boolean             verified;
+    private Exception           exception;
+
+    PGPSignatureVerificationResult(
+        PGPSignature    signature,
+        PGPPublicKey    signedKey,
+        Object          userID,
+        PGPPublicKey    issuerKey)
+    {
+        this.signature = signature;
+        this.signedKey = signedKey;
+        this.userID = userID;
+        this.issuerKey = issuerKey;
+    }
+
+    void setVerified(boolean verified)
+    {
+        this.verified = verified;
+    }
+
+    void setException(Exception exception)
+    {
+        this.exception = exception;
+    }
+
+    /**
+     * Return the signature that was checked.
+     *
+     * @return the signature.
+     */
+    public PGPSignature getSignature()
+    {
+        return signature;
+    }
+
+    /**
+     * Return the key the signature certifies, null for a detached signature.
+     *
+     * @return the signed key, if there is one.
+     */
+    public PGPPublicKey getSignedKey()
+    {
+        return signedKey;
+    }
+
+    /**
+     * Return the user ID the signature certifies, if it is a user ID certification.
+     *
+     * @return the user ID, or null.
+     */
+    public String getUserID()
+    {
+        return (userID instanceof String) ? (String)userID : null;
+    }
+
+    /**
+     * Return the user attributes the signature certifies, if it is a user attribute certification.
+     *
+     * @return the user attribute vector, or null.
+     */
+    public PGPUserAttributeSubpacketVector getUserAttributes()
+    {
+        return (userID instanceof PGPUserAttributeSubpacketVector) ? (PGPUserAttributeSubpacketVector)userID : null;
+    }
+
+    /**
+     * Return the key the signature was checked against, null if the issuer could not be found.
+     *
+     * @return the issuer's public key, or null.
+     */
+    public PGPPublicKey getIssuerKey()
+    {
+        return issuerKey;
+    }
+
+    /**
+     * Return true if the issuer's key was found.
+     *
+     * @return true if the signature could be checked, false otherwise.
+     */
+    public boolean isIssuerFound()
+    {
+        return issuerKey != null;
+    }
+
+    /**
+     * Return true if the signature was checked and is valid.
+     *
+     * @return true if the signature verified, false otherwise.
+     */
+    public boolean isVerified()
+    {
+        return verified;
+    }
+
+    /**
+     * Return any exception thrown while checking the signature.
+     *
+     * @return the exception, or null if the check ran to completion.
+     */
+    public Exception getException()
+    {
+        return exception;
+    }
+}
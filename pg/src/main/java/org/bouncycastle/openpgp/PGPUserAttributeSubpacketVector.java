@@ -1,5 +1,10 @@
 package org.bouncycastle.openpgp;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.UserAttributePacket;
 import org.bouncycastle.bcpg.UserAttributeSubpacket;
 import org.bouncycastle.bcpg.UserAttributeSubpacketTags;
 import org.bouncycastle.bcpg.attr.ImageAttribute;
@@ -10,16 +15,49 @@
 public class PGPUserAttributeSubpacketVector
 {
     UserAttributeSubpacket[]        packets;
+    private byte[]                  encoding;
     
     PGPUserAttributeSubpacketVector(
         UserAttributeSubpacket[]    packets)
     {
         this.packets = packets;
     }
+
+    /**
+     * Create a vector from the encoding of a user attribute packet, the subpackets
+     * are parsed when first accessed.
+     */
+    PGPUserAttributeSubpacketVector(
+        byte[]    encoding)
+    {
+        this.encoding = encoding;
+    }
+
+    private synchronized UserAttributeSubpacket[] getPackets()
+    {
+        if (packets == null)
+        {
+            try
+            {
+                BCPGInputStream pIn = new BCPGInputStream(new ByteArrayInputStream(encoding));
+
+                packets = ((UserAttributePacket)pIn.readPacket()).getSubpackets();
+                encoding = null;
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("can't parse user attribute packet: " + e.getMessage());
+            }
+        }
+
+        return packets;
+    }
     
     public UserAttributeSubpacket getSubpacket(
         int    type)
     {
+        UserAttributeSubpacket[] packets = getPackets();
+
         for (int i = 0; i != packets.length; i++)
         {
             if (packets[i].getType() == type)
@@ -45,7 +83,7 @@ public ImageAttribute getImageAttribute()
     
     UserAttributeSubpacket[] toSubpacketArray()
     {
-        return packets;
+        return getPackets();
     }
     
     public boolean equals(
@@ -59,15 +97,17 @@ public boolean equals(
         if (o instanceof PGPUserAttributeSubpacketVector)
         {
             PGPUserAttributeSubpacketVector    other = (PGPUserAttributeSubpacketVector)o;
+            UserAttributeSubpacket[]           packets = getPackets();
+            UserAttributeSubpacket[]           otherPackets = other.getPackets();
             
-            if (other.packets.length != packets.length)
+            if (otherPackets.length != packets.length)
             {
                 return false;
             }
             
             for (int i = 0; i != packets.length; i++)
             {
-                if (!other.packets[i].equals(packets[i]))
+                if (!otherPackets[i].equals(packets[i]))
                 {
                     return false;
                 }
@@ -81,6 +121,7 @@ public boolean equals(
     
     public int hashCode()
     {
+        UserAttributeSubpacket[] packets = getPackets();
         int    code = 0;
         
         for (int i = 0; i != packets.length; i++)
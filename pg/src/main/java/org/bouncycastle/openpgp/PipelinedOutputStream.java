@@ -0,0 +1,412 @@
+package org.bouncycastle.openpgp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An output stream which hands what is written to it on to another stream from a task running on
+ * an executor, so the work done by the other stream overlaps with the writer's. Data is passed
+ * across in chunks taken from a fixed pool of buffers, so a slow consumer holds the writer up
+ * rather than letting data pile up. The bytes reaching the other stream are exactly those
+ * written, in the same order.
+ * <p>
+ * The task holds an executor thread until the stream is finished, or aborted, or until the other
+ * stream fails. If the task has not started by the time the writer has to wait on it, because the
+ * executor has no thread free, the writer claims the task and writes to the other stream itself
+ * from then on, so a busy executor slows a pipeline down rather than stopping it.
+ * </p>
+ */
+class PipelinedOutputStream
+    extends OutputStream
+{
+    private static final int DATA = 0;
+    private static final int FLUSH = 1;
+    private static final int END = 2;
+    private static final int ABORT = 3;
+
+    private static final long POLL_MILLIS = 100;
+
+    private final OutputStream  out;
+    private final BlockingQueue chunks = new LinkedBlockingQueue();
+    private final BlockingQueue buffers;
+    private final Future        task;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private byte[]              buf;
+    private int                 bufOff;
+    private boolean             finished;
+    private boolean             inline;
+
+    private volatile Throwable  failure;
+
+    /**
+     * Base constructor.
+     *
+     * @param out the stream the data is written on to.
+     * @param executor the executor to run the writing task on.
+     * @param chunkSize the size of the chunks passed between threads.
+     * @param depth the number of chunks that can be waiting to be written.
+     */
+    PipelinedOutputStream(OutputStream out, ExecutorService executor, int chunkSize, int depth)
+    {
+        this.out = out;
+        this.buffers = new LinkedBlockingQueue();
+
+        // one more than the depth, so there is always a buffer to fill while the rest wait.
+        for (int i = 0; i <= depth; i++)
+        {
+            buffers.add(new byte[chunkSize]);
+        }
+
+        this.task = executor.submit(new Writer());
+    }
+
+    public void write(int b)
+        throws IOException
+    {
+        if (buf == null)
+        {
+            nextBuffer();
+        }
+
+        buf[bufOff++] = (byte)b;
+
+        if (bufOff == buf.length)
+        {
+            sendBuffer(DATA);
+        }
+    }
+
+    public void write(byte[] b, int off, int len)
+        throws IOException
+    {
+        while (len > 0)
+        {
+            if (buf == null)
+            {
+                nextBuffer();
+            }
+
+            int count = Math.min(len, buf.length - bufOff);
+
+            System.arraycopy(b, off, buf, bufOff, count);
+
+            bufOff += count;
+            off += count;
+            len -= count;
+
+            if (bufOff == buf.length)
+            {
+                sendBuffer(DATA);
+            }
+        }
+    }
+
+    /**
+     * Pass on anything buffered and wait for it to be written and the other stream flushed.
+     */
+    public void flush()
+        throws IOException
+    {
+        checkOpen();
+
+        Chunk chunk = sendBuffer(FLUSH);
+
+        try
+        {
+            while (!chunk.written.await(POLL_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                if (!runInline())
+                {
+                    checkRunning();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("interrupted waiting for flush");
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Pass on anything buffered and wait for everything to be written, the other stream is left open.
+     */
+    public void finish()
+        throws IOException
+    {
+        if (finished)
+        {
+            return;
+        }
+
+        finished = true;
+
+        sendBuffer(END);
+
+        try
+        {
+            if (!runInline())
+            {
+                task.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("interrupted waiting for pipeline to finish");
+        }
+        catch (ExecutionException e)
+        {
+            failure = e.getCause();
+        }
+
+        buffers.clear();
+
+        checkFailure();
+    }
+
+    /**
+     * Stop the pipeline without waiting for anything buffered to be written, for use when the
+     * stream is being abandoned after a failure. The other stream is left open.
+     */
+    public void abort()
+    {
+        if (finished)
+        {
+            return;
+        }
+
+        finished = true;
+
+        chunks.add(new Chunk(ABORT, null, 0));
+
+        if (claimed.compareAndSet(false, true))
+        {
+            // never started, so there is nothing to wait for.
+            task.cancel(false);
+        }
+
+        buf = null;
+    }
+
+    public void close()
+        throws IOException
+    {
+        finish();
+
+        out.close();
+    }
+
+    private void nextBuffer()
+        throws IOException
+    {
+        checkOpen();
+
+        try
+        {
+            while ((buf = (byte[])buffers.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null)
+            {
+                if (!runInline())
+                {
+                    checkRunning();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("interrupted waiting for buffer");
+        }
+
+        bufOff = 0;
+    }
+
+    private Chunk sendBuffer(int type)
+        throws IOException
+    {
+        Chunk chunk = new Chunk(type, buf, bufOff);
+
+        buf = null;
+        bufOff = 0;
+
+        chunks.add(chunk);
+
+        if (inline)
+        {
+            drain();
+        }
+
+        checkFailure();
+
+        return chunk;
+    }
+
+    /**
+     * Write any waiting chunks on the calling thread if the task has not started, or has been
+     * claimed already.
+     *
+     * @return true if the chunks are now written on the calling thread, false if the task is running.
+     */
+    private boolean runInline()
+    {
+        if (!inline)
+        {
+            if (!claimed.compareAndSet(false, true))
+            {
+                return false;
+            }
+
+            task.cancel(false);
+            inline = true;
+        }
+
+        drain();
+
+        return true;
+    }
+
+    private void drain()
+    {
+        Chunk chunk;
+
+        while ((chunk = (Chunk)chunks.poll()) != null)
+        {
+            process(chunk);
+        }
+    }
+
+    /**
+     * Write out a chunk and return its buffer to the pool.
+     *
+     * @return true if nothing more should be written.
+     */
+    private boolean process(Chunk chunk)
+    {
+        if (failure == null && chunk.type != ABORT)
+        {
+            try
+            {
+                if (chunk.length != 0)
+                {
+                    out.write(chunk.data, 0, chunk.length);
+                }
+                if (chunk.type == FLUSH)
+                {
+                    out.flush();
+                }
+            }
+            catch (Throwable e)
+            {
+                failure = e;
+            }
+        }
+
+        if (chunk.data != null)
+        {
+            buffers.add(chunk.data);
+        }
+
+        chunk.written.countDown();
+
+        return failure != null || chunk.type == END || chunk.type == ABORT;
+    }
+
+    private void checkOpen()
+        throws IOException
+    {
+        if (finished)
+        {
+            throw new IOException("pipelined stream already finished");
+        }
+    }
+
+    private void checkRunning()
+        throws IOException
+    {
+        checkFailure();
+
+        if (task.isDone())
+        {
+            throw new IOException("pipelined stream writer stopped");
+        }
+    }
+
+    private void checkFailure()
+        throws IOException
+    {
+        Throwable t = failure;
+
+        if (t != null)
+        {
+            if (t instanceof IOException)
+            {
+                throw (IOException)t;
+            }
+            if (t instanceof RuntimeException)
+            {
+                throw (RuntimeException)t;
+            }
+            if (t instanceof Error)
+            {
+                throw (Error)t;
+            }
+
+            throw new IOException("exception in pipelined stream: " + t);
+        }
+    }
+
+    private static class Chunk
+    {
+        final int            type;
+        final byte[]         data;
+        final int            length;
+        final CountDownLatch written = new CountDownLatch(1);
+
+        Chunk(int type, byte[] data, int length)
+        {
+            this.type = type;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private class Writer
+        implements Callable
+    {
+        public Object call()
+            throws Exception
+        {
+            if (!claimed.compareAndSet(false, true))
+            {
+                // the stream is writing inline, or was aborted before we started.
+                return null;
+            }
+
+            // after a failure the writer stops - the stream sees the task is done and reports the failure.
+            for (;;)
+            {
+                if (process((Chunk)chunks.take()))
+                {
+                    return null;
+                }
+            }
+        }
+    }
+}
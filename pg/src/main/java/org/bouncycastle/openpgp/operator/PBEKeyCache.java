@@ -0,0 +1,225 @@
+package org.bouncycastle.openpgp.operator;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.bouncycastle.bcpg.S2K;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.BoundedLRUMap;
+import org.bouncycastle.util.Strings;
+
+/**
+ * A bounded cache of keys derived from pass phrases using an S2K, for use where the same secret
+ * keys are unlocked repeatedly. Keys are looked up by the S2K parameters, the symmetric algorithm,
+ * and a digest of the pass phrase - the pass phrase itself is not stored. The digest includes a
+ * random value created with the cache, so it is no use outside of the cache that created it.
+ * <p>
+ * A cache can be shared between decryptors and threads. Entries are dropped when they are older
+ * than the maximum age, or on a least recently used basis when the cache is full.
+ * </p>
+ */
+public class PBEKeyCache
+{
+    private final int maxEntries;
+    private final long maxAge;
+    private final byte[] cacheSecret = new byte[32];
+    private final Map entries;
+
+    /**
+     * Base constructor.
+     *
+     * @param maxEntries the maximum number of keys held in the cache.
+     * @param maxAge the maximum time, in milliseconds, a key is held in the cache.
+     */
+    public PBEKeyCache(int maxEntries, long maxAge)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.entries = new EntryMap(maxEntries);
+
+        new SecureRandom().nextBytes(cacheSecret);
+    }
+
+    /**
+     * Return the maximum number of keys held in the cache.
+     *
+     * @return the maximum cache size.
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Return the number of keys currently held in the cache.
+     *
+     * @return the number of cached keys.
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Remove, and zero, all the keys in the cache.
+     */
+    public synchronized void clear()
+    {
+        for (Iterator it = entries.values().iterator(); it.hasNext();)
+        {
+            ((CacheEntry)it.next()).clear();
+        }
+
+        entries.clear();
+    }
+
+    /**
+     * Return the key for the passed in S2K and pass phrase, deriving and caching it if required.
+     */
+    byte[] makeKeyFromPassPhrase(PGPDigestCalculatorProvider calculatorProvider, int keyAlgorithm, S2K s2k, char[] passPhrase)
+        throws PGPException
+    {
+        if (s2k == null)
+        {
+            // the simple MD5 case has no iterations worth saving.
+            return PGPUtil.makeKeyFromPassPhrase(calculatorProvider, keyAlgorithm, s2k, passPhrase);
+        }
+
+        CacheKey key = new CacheKey(calculateID(keyAlgorithm, s2k, passPhrase));
+        long     now = System.currentTimeMillis();
+
+        synchronized (this)
+        {
+            CacheEntry entry = (CacheEntry)entries.get(key);
+
+            if (entry != null)
+            {
+                if (now - entry.created <= maxAge)
+                {
+                    return Arrays.clone(entry.keyBytes);
+                }
+
+                entries.remove(key);
+                entry.clear();
+            }
+        }
+
+        // derive outside the lock, so slow derivations don't hold up lookups for other keys.
+        byte[] keyBytes = PGPUtil.makeKeyFromPassPhrase(calculatorProvider, keyAlgorithm, s2k, passPhrase);
+
+        synchronized (this)
+        {
+            CacheEntry old = (CacheEntry)entries.put(key, new CacheEntry(Arrays.clone(keyBytes), now));
+
+            // another thread may have derived the same key while we were.
+            if (old != null)
+            {
+                old.clear();
+            }
+        }
+
+        return keyBytes;
+    }
+
+    private byte[] calculateID(int keyAlgorithm, S2K s2k, char[] passPhrase)
+    {
+        Digest digest = new SHA256Digest();
+        byte[] pBytes = Strings.toUTF8ByteArray(passPhrase);
+        byte[] iv = s2k.getIV();
+
+        digest.update(cacheSecret, 0, cacheSecret.length);
+        digest.update((byte)keyAlgorithm);
+        digest.update((byte)s2k.getType());
+        digest.update((byte)s2k.getHashAlgorithm());
+        if (iv != null)
+        {
+            digest.update((byte)iv.length);
+            digest.update(iv, 0, iv.length);
+        }
+        if (s2k.getType() == S2K.SALTED_AND_ITERATED)
+        {
+            long count = s2k.getIterationCount();
+
+            for (int i = 56; i >= 0; i -= 8)
+            {
+                digest.update((byte)(count >>> i));
+            }
+        }
+        digest.update(pBytes, 0, pBytes.length);
+
+        Arrays.fill(pBytes, (byte)0);
+
+        byte[] id = new byte[digest.getDigestSize()];
+
+        digest.doFinal(id, 0);
+
+        return id;
+    }
+
+    private static class CacheKey
+    {
+        private final byte[] id;
+        private final int hashCode;
+
+        CacheKey(byte[] id)
+        {
+            this.id = id;
+            this.hashCode = Arrays.hashCode(id);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public boolean equals(Object o)
+        {
+            return (o instanceof CacheKey) && Arrays.areEqual(id, ((CacheKey)o).id);
+        }
+    }
+
+    private static class CacheEntry
+    {
+        final byte[] keyBytes;
+        final long created;
+
+        CacheEntry(byte[] keyBytes, long created)
+        {
+            this.keyBytes = keyBytes;
+            this.created = created;
+        }
+
+        void clear()
+        {
+            Arrays.fill(keyBytes, (byte)0);
+        }
+    }
+
+    /**
+     * Clears the key held by an entry as it is evicted.
+     */
+    private static class EntryMap
+        extends BoundedLRUMap
+    {
+        private static final long serialVersionUID = 1L;
+
+        EntryMap(int maxEntries)
+        {
+            super(maxEntries);
+        }
+
+        protected void evicted(Object key, Object value)
+        {
+            ((CacheEntry)value).clear();
+        }
+    }
+}
@@ -7,11 +7,26 @@
 {
     private char[] passPhrase;
     private PGPDigestCalculatorProvider calculatorProvider;
+    private PBEKeyCache keyCache;
 
     protected PBESecretKeyDecryptor(char[] passPhrase, PGPDigestCalculatorProvider calculatorProvider)
+    {
+        this(passPhrase, calculatorProvider, null);
+    }
+
+    /**
+     * Create a decryptor which looks up keys derived from the pass phrase in keyCache before
+     * deriving them, and adds any keys it derives.
+     *
+     * @param passPhrase the pass phrase protecting the secret keys.
+     * @param calculatorProvider provider for the S2K digests.
+     * @param keyCache the cache of derived keys, null if keys should always be derived.
+     */
+    protected PBESecretKeyDecryptor(char[] passPhrase, PGPDigestCalculatorProvider calculatorProvider, PBEKeyCache keyCache)
     {
         this.passPhrase = passPhrase;
         this.calculatorProvider = calculatorProvider;
+        this.keyCache = keyCache;
     }
 
     public PGPDigestCalculator getChecksumCalculator(int hashAlgorithm)
@@ -23,6 +38,11 @@ public PGPDigestCalculator getChecksumCalculator(int hashAlgorithm)
     public byte[] makeKeyFromPassPhrase(int keyAlgorithm, S2K s2k)
         throws PGPException
     {
+        if (keyCache != null)
+        {
+            return keyCache.makeKeyFromPassPhrase(calculatorProvider, keyAlgorithm, s2k, passPhrase);
+        }
+
         return PGPUtil.makeKeyFromPassPhrase(calculatorProvider, keyAlgorithm, s2k, passPhrase);
     }
 
@@ -7,6 +7,7 @@
 import org.bouncycastle.bcpg.S2K;
 import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Strings;
 
 /**
@@ -15,6 +16,11 @@
 class PGPUtil
     implements HashAlgorithmTags
 {
+    /*
+     * size of the buffer the salt and pass phrase are expanded into for iterated S2K hashing.
+     */
+    private static final int ITERATED_BUF_SIZE = 8192;
+
     static byte[] makeKeyFromPassPhrase(
         PGPDigestCalculator digestCalculator,
         int     algorithm,
@@ -117,36 +123,7 @@ static byte[] makeKeyFromPassPhrase(
                         dOut.write(pBytes);
                         break;
                     case S2K.SALTED_AND_ITERATED:
-                        long    count = s2k.getIterationCount();
-                        dOut.write(iv);
-                        dOut.write(pBytes);
-
-                        count -= iv.length + pBytes.length;
-
-                        while (count > 0)
-                        {
-                            if (count < iv.length)
-                            {
-                                dOut.write(iv, 0, (int)count);
-                                break;
-                            }
-                            else
-                            {
-                                dOut.write(iv);
-                                count -= iv.length;
-                            }
-
-                            if (count < pBytes.length)
-                            {
-                                dOut.write(pBytes, 0, (int)count);
-                                count = 0;
-                            }
-                            else
-                            {
-                                dOut.write(pBytes);
-                                count -= pBytes.length;
-                            }
-                        }
+                        writeIterated(dOut, iv, pBytes, s2k.getIterationCount());
                         break;
                     default:
                         throw new PGPException("unknown S2K type: " + s2k.getType());
@@ -193,6 +170,48 @@ static byte[] makeKeyFromPassPhrase(
         return keyBytes;
     }
 
+    /**
+     * Write count bytes of the repeated salt and pass phrase, and at least one full copy of them,
+     * to the digest stream. Rather than alternating writes of the salt and the pass phrase, the
+     * pair is expanded into a buffer a whole number of copies long so the digest sees a small
+     * number of large writes.
+     */
+    private static void writeIterated(OutputStream dOut, byte[] iv, byte[] pBytes, long count)
+        throws IOException
+    {
+        int     unitLen = iv.length + pBytes.length;
+        long    remaining = Math.max(count, unitLen);
+        int     bufLen = unitLen * Math.max(1, ITERATED_BUF_SIZE / unitLen);
+
+        if (remaining < bufLen)
+        {
+            bufLen = (int)remaining;
+        }
+
+        byte[]  buf = new byte[bufLen];
+
+        for (int off = 0; off < bufLen; off += unitLen)
+        {
+            System.arraycopy(iv, 0, buf, off, Math.min(iv.length, bufLen - off));
+
+            if (off + iv.length < bufLen)
+            {
+                System.arraycopy(pBytes, 0, buf, off + iv.length, Math.min(pBytes.length, bufLen - off - iv.length));
+            }
+        }
+
+        while (remaining >= bufLen)
+        {
+            dOut.write(buf, 0, bufLen);
+            remaining -= bufLen;
+        }
+
+        // the buffer starts on a copy boundary, so what is left is a prefix of it.
+        dOut.write(buf, 0, (int)remaining);
+
+        Arrays.fill(buf, (byte)0);
+    }
+
     public static byte[] makeKeyFromPassPhrase(
         PGPDigestCalculatorProvider digCalcProvider,
         int     algorithm,
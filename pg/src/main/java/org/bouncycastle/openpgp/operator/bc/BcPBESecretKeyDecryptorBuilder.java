@@ -3,21 +3,37 @@
 import org.bouncycastle.crypto.BufferedBlockCipher;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.operator.PBEKeyCache;
 import org.bouncycastle.openpgp.operator.PBESecretKeyDecryptor;
 import org.bouncycastle.openpgp.operator.PGPDigestCalculatorProvider;
 
 public class BcPBESecretKeyDecryptorBuilder
 {
     private PGPDigestCalculatorProvider calculatorProvider;
+    private PBEKeyCache keyCache;
 
     public BcPBESecretKeyDecryptorBuilder(PGPDigestCalculatorProvider calculatorProvider)
     {
         this.calculatorProvider = calculatorProvider;
     }
 
+    /**
+     * Set a cache for keys derived from pass phrases, so secret keys which are unlocked repeatedly
+     * only pay for the S2K derivation once.
+     *
+     * @param keyCache the cache to use, null if keys should always be derived.
+     * @return the current builder.
+     */
+    public BcPBESecretKeyDecryptorBuilder setKeyCache(PBEKeyCache keyCache)
+    {
+        this.keyCache = keyCache;
+
+        return this;
+    }
+
     public PBESecretKeyDecryptor build(char[] passPhrase)
     {
-        return new PBESecretKeyDecryptor(passPhrase, calculatorProvider)
+        return new PBESecretKeyDecryptor(passPhrase, calculatorProvider, keyCache)
         {
             public byte[] recoverKeyData(int encAlgorithm, byte[] key, byte[] iv, byte[] keyData, int keyOff, int keyLen)
                 throws PGPException
@@ -14,6 +14,9 @@
 
 class BcUtil
 {
+    // large enough that decryption works through whole buffers rather than a few blocks at a time.
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
     static BufferedBlockCipher createStreamCipher(boolean forEncryption, BlockCipher engine, boolean withIntegrityPacket, byte[] key)
     {
         BufferedBlockCipher c;
@@ -49,7 +52,7 @@ public static PGPDataDecryptor createDataDecryptor(boolean withIntegrityPacket,
         {
             public InputStream getInputStream(InputStream in)
             {
-                return new CipherInputStream(in, c);
+                return new CipherInputStream(in, c, STREAM_BUFFER_SIZE);
             }
 
             public int getBlockSize()
@@ -13,6 +13,7 @@
 import org.bouncycastle.jcajce.NamedJcaJceHelper;
 import org.bouncycastle.jcajce.ProviderJcaJceHelper;
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.operator.PBEKeyCache;
 import org.bouncycastle.openpgp.operator.PBESecretKeyDecryptor;
 import org.bouncycastle.openpgp.operator.PGPDigestCalculatorProvider;
 
@@ -20,6 +21,7 @@
 {
     private OperatorHelper helper = new OperatorHelper(new DefaultJcaJceHelper());
     private PGPDigestCalculatorProvider calculatorProvider;
+    private PBEKeyCache keyCache;
 
     private JcaPGPDigestCalculatorProviderBuilder calculatorProviderBuilder;
 
@@ -57,6 +59,20 @@ public JcePBESecretKeyDecryptorBuilder setProvider(String providerName)
         return this;
     }
 
+    /**
+     * Set a cache for keys derived from pass phrases, so secret keys which are unlocked repeatedly
+     * only pay for the S2K derivation once.
+     *
+     * @param keyCache the cache to use, null if keys should always be derived.
+     * @return the current builder.
+     */
+    public JcePBESecretKeyDecryptorBuilder setKeyCache(PBEKeyCache keyCache)
+    {
+        this.keyCache = keyCache;
+
+        return this;
+    }
+
     public PBESecretKeyDecryptor build(char[] passPhrase)
         throws PGPException
     {
@@ -65,7 +81,7 @@ public PBESecretKeyDecryptor build(char[] passPhrase)
             calculatorProvider = calculatorProviderBuilder.build();
         }
 
-        return new PBESecretKeyDecryptor(passPhrase, calculatorProvider)
+        return new PBESecretKeyDecryptor(passPhrase, calculatorProvider, keyCache)
         {
             public byte[] recoverKeyData(int encAlgorithm, byte[] key, byte[] iv, byte[] keyData, int keyOff, int keyLen)
                 throws PGPException
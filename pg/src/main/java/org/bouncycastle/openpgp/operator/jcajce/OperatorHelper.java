@@ -1,5 +1,6 @@
 package org.bouncycastle.openpgp.operator.jcajce;
 
+import java.io.BufferedInputStream;
 import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
@@ -22,6 +23,9 @@
 
 class OperatorHelper
 {
+    // CipherInputStream only asks for small chunks, so read ahead from the packet in bulk.
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
     private JcaJceHelper helper;
 
     OperatorHelper(JcaJceHelper helper)
@@ -62,7 +66,7 @@ PGPDataDecryptor createDataDecryptor(boolean withIntegrityPacket, int encAlgorit
             {
                 public InputStream getInputStream(InputStream in)
                 {
-                    return new CipherInputStream(in, c);
+                    return new CipherInputStream(new BufferedInputStream(in, STREAM_BUFFER_SIZE), c);
                 }
 
                 public int getBlockSize()
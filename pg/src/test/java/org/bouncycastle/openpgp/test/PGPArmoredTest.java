@@ -2,6 +2,7 @@
 
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 
 import org.bouncycastle.bcpg.ArmoredOutputStream;
 import org.bouncycastle.bcpg.ArmoredInputStream;
@@ -240,6 +241,101 @@ public void performTest()
         }
 
         blankLineTest();
+        bulkTest();
+    }
+
+    private void bulkTest()
+        throws Exception
+    {
+        int[] sizes = { 1, 2, 3, 4, 47, 48, 49, 50, 1000, 10000 };
+        int[] chunks = { 1, 2, 5, 48, 49, 4096 };
+
+        for (int i = 0; i != sizes.length; i++)
+        {
+            byte[] data = new byte[sizes[i]];
+            for (int j = 0; j != data.length; j++)
+            {
+                data[j] = (byte)(j * 31 + i);
+            }
+            data[0] = (byte)0x99;
+
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+            ArmoredOutputStream aOut = new ArmoredOutputStream(bOut);
+            for (int j = 0; j != data.length; j++)
+            {
+                aOut.write(data[j]);
+            }
+            aOut.close();
+
+            byte[] expected = bOut.toByteArray();
+
+            for (int c = 0; c != chunks.length; c++)
+            {
+                bOut = new ByteArrayOutputStream();
+                aOut = new ArmoredOutputStream(bOut);
+                for (int off = 0; off < data.length; off += chunks[c])
+                {
+                    aOut.write(data, off, Math.min(chunks[c], data.length - off));
+                }
+                aOut.close();
+
+                if (!Arrays.areEqual(expected, bOut.toByteArray()))
+                {
+                    fail("bulk write mismatch for size " + sizes[i] + " chunk " + chunks[c]);
+                }
+
+                // two blocks so the end of each block is seen
+                byte[] twoBlocks = Arrays.concatenate(expected, expected);
+                ArmoredInputStream aIn = new ArmoredInputStream(new ByteArrayInputStream(twoBlocks));
+
+                for (int block = 0; block != 2; block++)
+                {
+                    ByteArrayOutputStream rOut = new ByteArrayOutputStream();
+                    byte[] buf = new byte[chunks[c]];
+                    int len;
+
+                    while ((len = aIn.read(buf, 0, buf.length)) >= 0)
+                    {
+                        rOut.write(buf, 0, len);
+                    }
+
+                    if (!Arrays.areEqual(data, rOut.toByteArray()))
+                    {
+                        fail("bulk read mismatch for size " + sizes[i] + " chunk " + chunks[c] + " block " + block);
+                    }
+                }
+
+                if (aIn.read() >= 0 || !aIn.isEndOfStream())
+                {
+                    fail("bulk read end of stream not found");
+                }
+            }
+
+            // corrupt the first base64 character of the data, and check the crc picks it up.
+            byte[] corrupt = Arrays.clone(expected);
+            int pos = Strings.fromByteArray(corrupt).indexOf("\nm");
+            corrupt[pos + 1] = (byte)'n';
+
+            try
+            {
+                ArmoredInputStream aIn = new ArmoredInputStream(new ByteArrayInputStream(corrupt));
+                byte[] buf = new byte[4096];
+
+                while (aIn.read(buf, 0, buf.length) >= 0)
+                {
+                    // ignore
+                }
+
+                fail("corrupted data not detected for size " + sizes[i]);
+            }
+            catch (IOException e)
+            {
+                if (!e.getMessage().startsWith("crc check failed"))
+                {
+                    fail("wrong exception for corrupted data: " + e.getMessage());
+                }
+            }
+        }
     }
 
     public String getName()
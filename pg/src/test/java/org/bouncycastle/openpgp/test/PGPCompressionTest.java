@@ -1,18 +1,25 @@
 package org.bouncycastle.openpgp.test;
 
+import org.bouncycastle.apache.bzip2.CBZip2InputStream;
+import org.bouncycastle.apache.bzip2.ParallelBZip2OutputStream;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.PGPCompressedData;
 import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPObjectFactory;
+import org.bouncycastle.util.io.Streams;
 import org.bouncycastle.util.test.SimpleTest;
 import org.bouncycastle.util.test.UncloseableOutputStream;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.Security;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
 
 public class PGPCompressionTest 
     extends SimpleTest
@@ -24,6 +31,7 @@ public void performTest()
         testCompression(PGPCompressedData.ZIP);
         testCompression(PGPCompressedData.ZLIB);
         testCompression(PGPCompressedData.BZIP2);
+        testParallelBZip2();
 
         //
         // new style - using stream close
@@ -128,6 +136,103 @@ private void testCompression(
         }
     }
 
+    private void testParallelBZip2()
+        throws Exception
+    {
+        // a mix of long runs and noise, so runs cross the chunk boundaries.
+        byte[] data = new byte[2 * 1000 * 1000 + 12345];
+        int    seed = 1;
+        for (int i = 0; i < data.length;)
+        {
+            seed = seed * 1103515245 + 12345;
+
+            int  len = (seed >>> 16) & 0x3ff;
+            byte b = (byte)(seed >>> 8);
+            for (int j = 0; j != len && i < data.length; j++)
+            {
+                data[i++] = ((seed & 1) == 0) ? b : (byte)(b + j);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+            PGPCompressedDataGenerator cPacket = new PGPCompressedDataGenerator(PGPCompressedData.BZIP2, Deflater.DEFAULT_COMPRESSION, executor);
+
+            OutputStream out = cPacket.open(new UncloseableOutputStream(bOut));
+
+            out.write(data, 0, 1000);
+            for (int i = 1000; i != 2000; i++)
+            {
+                out.write(data[i]);
+            }
+            out.write(data, 2000, data.length - 2000);
+
+            out.close();
+
+            PGPObjectFactory pgpFact = new PGPObjectFactory(bOut.toByteArray());
+            PGPCompressedData c1 = (PGPCompressedData)pgpFact.nextObject();
+
+            if (!areEqual(data, Streams.readAll(c1.getDataStream())))
+            {
+                fail("parallel bzip2 compression test failed");
+            }
+
+            // small blocks, and a single slot so the writer has to wait on the workers.
+            bOut = new ByteArrayOutputStream();
+            out = new ParallelBZip2OutputStream(bOut, 1, executor, 1);
+
+            out.write(data);
+
+            out.close();
+
+            byte[] compressed = bOut.toByteArray();
+            InputStream cIn = new CBZip2InputStream(new ByteArrayInputStream(compressed));
+
+            if (!areEqual(data, Streams.readAll(cIn)))
+            {
+                fail("parallel bzip2 small block test failed");
+            }
+
+            // bulk writes have to break the chunks in the same places as single byte writes.
+            bOut = new ByteArrayOutputStream();
+            out = new ParallelBZip2OutputStream(bOut, 1, executor, 1);
+
+            for (int i = 0; i != data.length; i++)
+            {
+                out.write(data[i]);
+            }
+
+            out.close();
+
+            if (!areEqual(compressed, bOut.toByteArray()))
+            {
+                fail("parallel bzip2 single byte writes differ");
+            }
+
+            bOut = new ByteArrayOutputStream();
+            out = new ParallelBZip2OutputStream(bOut, 1, executor, 1);
+
+            for (int i = 0; i < data.length; i += 4097)
+            {
+                out.write(data, i, Math.min(4097, data.length - i));
+            }
+
+            out.close();
+
+            if (!areEqual(compressed, bOut.toByteArray()))
+            {
+                fail("parallel bzip2 partial writes differ");
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
     public String getName()
     {
         return "PGPCompressionTest";
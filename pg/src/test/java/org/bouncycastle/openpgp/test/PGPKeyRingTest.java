@@ -1,13 +1,22 @@
 package org.bouncycastle.openpgp.test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.crypto.Cipher;
 
@@ -18,6 +27,9 @@
 import org.bouncycastle.openpgp.PGPEncryptedData;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRing;
+import org.bouncycastle.openpgp.PGPKeyRingIndex;
+import org.bouncycastle.openpgp.MappedPGPPublicKeyRingCollection;
 import org.bouncycastle.openpgp.PGPKeyRingGenerator;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
@@ -27,11 +39,21 @@
 import org.bouncycastle.openpgp.PGPSecretKeyRing;
 import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
 import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureBatchVerifier;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPSignatureVerificationResult;
+import org.bouncycastle.openpgp.operator.PBEKeyCache;
 import org.bouncycastle.openpgp.operator.PGPDigestCalculatorProvider;
+import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
 import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentVerifierBuilderProvider;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyEncryptorBuilder;
+import org.bouncycastle.util.Strings;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.encoders.Hex;
 import org.bouncycastle.util.test.SimpleTest;
@@ -2495,6 +2517,500 @@ private void testUmlaut()
         }
     }
 
+    private void testKeyRingIndex()
+        throws Exception
+    {
+        PGPPublicKeyRingCollection pubRings = new PGPPublicKeyRingCollection(pub1);
+        PGPSecretKeyRingCollection secRings = new PGPSecretKeyRingCollection(sec1);
+        PGPPublicKeyRing           pubRing = (PGPPublicKeyRing)pubRings.getKeyRings().next();
+        PGPSecretKeyRing           secRing = (PGPSecretKeyRing)secRings.getKeyRings().next();
+        PGPPublicKeyRing           umlautRing = new PGPPublicKeyRing(umlautKeySig);
+
+        PGPKeyRingIndex index = new PGPKeyRingIndex(pubRings);
+
+        index.addKeyRing(secRing);
+        index.addKeyRing(umlautRing);
+        index.addKeyRing(umlautRing);
+
+        isTrue("wrong index size", index.size() == 3);
+
+        for (Iterator it = pubRing.getPublicKeys(); it.hasNext();)
+        {
+            PGPPublicKey key = (PGPPublicKey)it.next();
+
+            isTrue("key ID lookup failed", index.getKeyRing(key.getKeyID()) == pubRing);
+            isTrue("fingerprint lookup failed", index.getKeyRing(key.getFingerprint()) == pubRing);
+            isTrue("public key lookup failed", areEqual(index.getPublicKey(key.getKeyID()).getEncoded(), key.getEncoded()));
+            isTrue("key ID rings lookup failed", countRings(index.getKeyRings(key.getKeyID())) == ((secRing.getPublicKey(key.getKeyID()) != null) ? 2 : 1));
+        }
+
+        PGPPublicKey umlautKey = umlautRing.getPublicKey();
+        String       umlautID = (String)umlautKey.getUserIDs().next();
+
+        isTrue("umlaut key ID lookup failed", index.getKeyRing(umlautKey.getKeyID()) == umlautRing);
+        isTrue("umlaut user ID lookup failed", index.getKeyRings(umlautID, false, false).next() == umlautRing);
+        isTrue("unknown key ID found", index.getKeyRing(0x1234567890abcdefL) == null);
+        isTrue("unknown fingerprint found", index.getKeyRing(new byte[20]) == null);
+
+        String[] userIDs = { "test (Test key) <test@ubicall.com>", "test", "TEST@ubicall.com", "est (t", "(Test", "ub", "nothing like it" };
+
+        for (int i = 0; i != userIDs.length; i++)
+        {
+            for (int j = 0; j != 4; j++)
+            {
+                boolean matchPartial = (j & 1) != 0;
+                boolean ignoreCase = (j & 2) != 0;
+
+                int expected = countRings(pubRings.getKeyRings(userIDs[i], matchPartial, ignoreCase))
+                             + countRings(secRings.getKeyRings(userIDs[i], matchPartial, ignoreCase))
+                             + countRings(new PGPPublicKeyRingCollection(umlautKeySig).getKeyRings(userIDs[i], matchPartial, ignoreCase));
+
+                isTrue("user ID lookup failed for " + userIDs[i] + " " + j, countRings(index.getKeyRings(userIDs[i], matchPartial, ignoreCase)) == expected);
+            }
+        }
+
+        isTrue("prefix lookup failed", countRings(index.getKeyRingsByUserIDPrefix("test (", false)) == 2);
+        isTrue("prefix ignore case lookup failed", countRings(index.getKeyRingsByUserIDPrefix("TEST (", true)) == 2);
+        isTrue("prefix case lookup failed", countRings(index.getKeyRingsByUserIDPrefix("TEST (", false)) == 0);
+
+        Iterator it = index.getKeyRings("test", true, false);
+
+        isTrue("wrong ring order", it.next() == pubRing);
+        isTrue("wrong ring order", it.next() == secRing);
+
+        isTrue("removal failed", index.removeKeyRing(pubRing));
+        isTrue("second removal succeeded", !index.removeKeyRing(pubRing));
+        isTrue("wrong index size after removal", index.size() == 2);
+        isTrue("secret ring not found after removal", index.getKeyRing(pubRing.getPublicKey().getKeyID()) == secRing);
+        isTrue("removed ring found", countRings(index.getKeyRings("test", true, true)) == 1);
+
+        index.removeKeyRing(secRing);
+
+        isTrue("removed key found", index.getKeyRing(pubRing.getPublicKey().getKeyID()) == null);
+        isTrue("removed user ID found", !index.getKeyRingsByUserIDPrefix("test", false).hasNext());
+
+        // repeated removals reclaim the space of removed rings, which must not disturb the lookups or ordering.
+        index.addKeyRing(secRing);
+        index.addKeyRing(pubRing);
+
+        for (int i = 0; i != 10; i++)
+        {
+            PGPKeyRing ring = ((i & 1) == 0) ? (PGPKeyRing)secRing : (PGPKeyRing)pubRing;
+
+            isTrue("removal failed", index.removeKeyRing(ring));
+            index.addKeyRing(ring);
+
+            isTrue("wrong index size after re-adding", index.size() == 3);
+        }
+
+        it = index.getKeyRings("test", true, false);
+
+        isTrue("wrong ring order after re-adding", it.next() == secRing);
+        isTrue("wrong ring order after re-adding", it.next() == pubRing);
+        isTrue("wrong ring count after re-adding", !it.hasNext());
+        isTrue("umlaut ring lost", index.getKeyRings(umlautID, false, false).next() == umlautRing);
+        isTrue("prefix lookup failed after re-adding", countRings(index.getKeyRingsByUserIDPrefix("test (", false)) == 2);
+        isTrue("key ID lookup failed after re-adding", index.getKeyRing(umlautKey.getKeyID()) == umlautRing);
+        isTrue("key ID rings lookup failed after re-adding", countRings(index.getKeyRings(secRing.getPublicKey().getKeyID())) == 2);
+    }
+
+    private void testMappedKeyRings()
+        throws Exception
+    {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+
+        bOut.write(pub1);
+        bOut.write(pub2);
+        bOut.write(pub5);
+
+        byte[]                     keyRings = bOut.toByteArray();
+        PGPPublicKeyRingCollection pubRings = new PGPPublicKeyRingCollection(keyRings);
+
+        checkMappedKeyRings(pubRings, new MappedPGPPublicKeyRingCollection(ByteBuffer.wrap(keyRings), new JcaKeyFingerprintCalculator()));
+
+        File keyRingFile = File.createTempFile("bcpg", ".gpg");
+        File indexFile = new File(keyRingFile.getPath() + ".idx");
+
+        try
+        {
+            FileOutputStream fOut = new FileOutputStream(keyRingFile);
+
+            fOut.write(keyRings);
+            fOut.close();
+
+            checkMappedKeyRings(pubRings, new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()));
+
+            isTrue("index file not written", indexFile.length() > 0);
+
+            // second open uses the saved index.
+            checkMappedKeyRings(pubRings, new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()));
+
+            // a changed key ring file invalidates the saved index.
+            fOut = new FileOutputStream(keyRingFile, true);
+
+            fOut.write(pub3);
+            fOut.close();
+
+            bOut.write(pub3);
+
+            checkMappedKeyRings(new PGPPublicKeyRingCollection(bOut.toByteArray()), new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()));
+
+            // a truncated key ring file behind an index whose header still matches it.
+            truncateKeyRings(keyRingFile, indexFile, keyRings.length - pub5.length);
+
+            bOut.reset();
+            bOut.write(pub1);
+            bOut.write(pub2);
+
+            pubRings = new PGPPublicKeyRingCollection(bOut.toByteArray());
+
+            checkMappedKeyRings(pubRings, new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()));
+
+            // the rebuilt index is saved and used.
+            checkMappedKeyRings(pubRings, new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()));
+
+            // the same rings in a different order, so length and modification time still match the saved index.
+            long pub1KeyID = new PGPPublicKeyRing(pub1, new JcaKeyFingerprintCalculator()).getPublicKey().getKeyID();
+
+            rewriteKeyRings(keyRingFile, pub2, pub1);
+
+            MappedPGPPublicKeyRingCollection mappedRings = new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator());
+
+            isTrue("stale index used", areEqual(pub1, mappedRings.getPublicKeyRing(pub1KeyID).getEncoded()));
+
+            checkMappedKeyRings(pubRings, mappedRings);
+
+            // the index was saved again when it was rebuilt.
+            checkMappedKeyRings(pubRings, new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()));
+
+            rewriteKeyRings(keyRingFile, pub1, pub2);
+
+            try
+            {
+                for (Iterator it = new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()).getKeyRings(); it.hasNext();)
+                {
+                    it.next();
+                }
+
+                fail("stale index iterated");
+            }
+            catch (IllegalStateException e)
+            {
+                // expected
+            }
+
+            checkMappedKeyRings(pubRings, new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator()));
+
+            truncateKeyRings(keyRingFile, indexFile, pub1.length + pub2.length / 2);
+
+            try
+            {
+                new MappedPGPPublicKeyRingCollection(keyRingFile, indexFile, new JcaKeyFingerprintCalculator());
+
+                fail("truncated key ring file accepted");
+            }
+            catch (IOException e)
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            keyRingFile.delete();
+            indexFile.delete();
+        }
+
+        try
+        {
+            new MappedPGPPublicKeyRingCollection(ByteBuffer.wrap(sec1), new JcaKeyFingerprintCalculator());
+
+            fail("secret key ring accepted");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    /*
+     * truncate keyRingFile to length, updating the header of the saved index so it is not
+     * rejected just because the length and modification time of the file have changed.
+     */
+    private void truncateKeyRings(File keyRingFile, File indexFile, int length)
+        throws Exception
+    {
+        RandomAccessFile rFile = new RandomAccessFile(keyRingFile, "rw");
+
+        rFile.setLength(length);
+        rFile.close();
+
+        rFile = new RandomAccessFile(indexFile, "rw");
+
+        rFile.seek(8);
+        rFile.writeLong(keyRingFile.length());
+        rFile.writeLong(keyRingFile.lastModified());
+        rFile.close();
+    }
+
+    /*
+     * replace the contents of keyRingFile, keeping its modification time.
+     */
+    private void rewriteKeyRings(File keyRingFile, byte[] first, byte[] second)
+        throws Exception
+    {
+        long lastModified = keyRingFile.lastModified();
+
+        FileOutputStream fOut = new FileOutputStream(keyRingFile);
+
+        fOut.write(first);
+        fOut.write(second);
+        fOut.close();
+
+        keyRingFile.setLastModified(lastModified);
+    }
+
+    private void checkMappedKeyRings(PGPPublicKeyRingCollection pubRings, MappedPGPPublicKeyRingCollection mappedRings)
+        throws Exception
+    {
+        isTrue("wrong mapped size", mappedRings.size() == pubRings.size());
+
+        int count = 0;
+
+        for (Iterator mIt = mappedRings.getKeyRings(); mIt.hasNext();)
+        {
+            PGPPublicKeyRing mappedRing = (PGPPublicKeyRing)mIt.next();
+
+            isTrue("mapped ring mismatch", areEqual(pubRings.getPublicKeyRing(mappedRing.getPublicKey().getKeyID()).getEncoded(), mappedRing.getEncoded()));
+            count++;
+        }
+
+        isTrue("wrong mapped ring count", count == pubRings.size());
+
+        for (Iterator rIt = pubRings.getKeyRings(); rIt.hasNext();)
+        {
+            PGPPublicKeyRing ring = (PGPPublicKeyRing)rIt.next();
+
+            for (Iterator kIt = ring.getPublicKeys(); kIt.hasNext();)
+            {
+                PGPPublicKey key = (PGPPublicKey)kIt.next();
+
+                isTrue("mapped key not found", mappedRings.contains(key.getKeyID()));
+                isTrue("mapped key ring mismatch", areEqual(pubRings.getPublicKeyRing(key.getKeyID()).getEncoded(), mappedRings.getPublicKeyRing(key.getKeyID()).getEncoded()));
+                isTrue("mapped key mismatch", areEqual(key.getEncoded(), mappedRings.getPublicKey(key.getKeyID()).getEncoded()));
+            }
+        }
+
+        isTrue("unknown mapped key found", mappedRings.getPublicKeyRing(0x1234567890abcdefL) == null);
+    }
+
+    private void testKeyCache()
+        throws Exception
+    {
+        char[]           passPhrase = "hello".toCharArray();
+        KeyPairGenerator rsaKpg = KeyPairGenerator.getInstance("RSA", "BC");
+
+        rsaKpg.initialize(1024);
+
+        PGPKeyPair          rsaKeyPair1 = new PGPKeyPair(PGPPublicKey.RSA_GENERAL, rsaKpg.generateKeyPair(), new Date());
+        PGPKeyPair          rsaKeyPair2 = new PGPKeyPair(PGPPublicKey.RSA_GENERAL, rsaKpg.generateKeyPair(), new Date());
+        PGPKeyRingGenerator keyRingGen = new PGPKeyRingGenerator(PGPSignature.POSITIVE_CERTIFICATION, rsaKeyPair1,
+                "test", PGPEncryptedData.AES_256, passPhrase, null, null, new SecureRandom(), "BC");
+
+        keyRingGen.addSubKey(rsaKeyPair2);
+
+        PGPSecretKeyRing secRing = keyRingGen.generateSecretKeyRing();
+        PBEKeyCache      keyCache = new PBEKeyCache(10, 60000);
+
+        for (int i = 0; i != 2; i++)
+        {
+            for (Iterator it = secRing.getSecretKeys(); it.hasNext();)
+            {
+                PGPSecretKey  k = (PGPSecretKey)it.next();
+                PGPPrivateKey expected = k.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(passPhrase));
+                PGPPrivateKey jcePriv = k.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").setKeyCache(keyCache).build(passPhrase));
+                PGPPrivateKey bcPriv = k.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).setKeyCache(keyCache).build(passPhrase));
+
+                isTrue("cached key mismatch", areEqual(expected.getKey().getEncoded(), jcePriv.getKey().getEncoded()));
+                isTrue("bc cached key mismatch", bcPriv.getKeyID() == expected.getKeyID() && bcPriv.getPrivateKeyDataPacket() != null);
+
+                try
+                {
+                    k.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").setKeyCache(keyCache).build("wrong".toCharArray()));
+
+                    fail("wrong pass phrase accepted");
+                }
+                catch (PGPException e)
+                {
+                    // expected
+                }
+            }
+        }
+
+        // the generator uses the same S2K for both keys, so one entry for each pass phrase.
+        isTrue("wrong cache size: " + keyCache.size(), keyCache.size() == 2);
+
+        keyCache.clear();
+
+        isTrue("cache not cleared", keyCache.size() == 0);
+
+        // bounded cache
+        keyCache = new PBEKeyCache(1, 60000);
+
+        secRing.getSecretKey().extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").setKeyCache(keyCache).build(passPhrase));
+
+        try
+        {
+            secRing.getSecretKey().extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").setKeyCache(keyCache).build("wrong".toCharArray()));
+
+            fail("wrong pass phrase accepted");
+        }
+        catch (PGPException e)
+        {
+            // expected
+        }
+
+        isTrue("cache not bounded", keyCache.size() == 1);
+
+        secRing.getSecretKey().extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").setKeyCache(keyCache).build(passPhrase));
+
+        // expired entries are replaced, not added to.
+        keyCache = new PBEKeyCache(10, -1);
+
+        for (int i = 0; i != 2; i++)
+        {
+            secRing.getSecretKey().extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").setKeyCache(keyCache).build(passPhrase));
+        }
+
+        isTrue("expired entry kept", keyCache.size() == 1);
+    }
+
+    private void testBatchVerifier()
+        throws Exception
+    {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+
+        bOut.write(pub1);
+        bOut.write(pub2);
+        bOut.write(pub5);
+
+        PGPPublicKeyRingCollection        pubRings = new PGPPublicKeyRingCollection(bOut.toByteArray());
+        JcaPGPContentVerifierBuilderProvider verifierProvider = new JcaPGPContentVerifierBuilderProvider().setProvider("BC");
+        ExecutorService                   executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            List parallel = new PGPSignatureBatchVerifier(verifierProvider, executor).verifyKeyRings(pubRings);
+            List sequential = new PGPSignatureBatchVerifier(verifierProvider, null).verifyKeyRings(new PGPPublicKeyRingCollection(bOut.toByteArray()));
+            int  verified = 0;
+
+            isTrue("no signatures checked", parallel.size() != 0);
+            isTrue("result count mismatch", parallel.size() == sequential.size());
+
+            for (int i = 0; i != parallel.size(); i++)
+            {
+                PGPSignatureVerificationResult p = (PGPSignatureVerificationResult)parallel.get(i);
+                PGPSignatureVerificationResult s = (PGPSignatureVerificationResult)sequential.get(i);
+
+                isTrue("signature order mismatch", areEqual(p.getSignature().getEncoded(), s.getSignature().getEncoded()));
+                isTrue("result mismatch", p.isVerified() == s.isVerified() && p.isIssuerFound() == s.isIssuerFound());
+
+                if (p.isVerified())
+                {
+                    verified++;
+                }
+            }
+
+            isTrue("no signatures verified", verified != 0);
+
+            // generated ring - every certification should verify.
+            KeyPairGenerator rsaKpg = KeyPairGenerator.getInstance("RSA", "BC");
+
+            rsaKpg.initialize(1024);
+
+            PGPKeyPair          rsaKeyPair1 = new PGPKeyPair(PGPPublicKey.RSA_GENERAL, rsaKpg.generateKeyPair(), new Date());
+            PGPKeyPair          rsaKeyPair2 = new PGPKeyPair(PGPPublicKey.RSA_GENERAL, rsaKpg.generateKeyPair(), new Date());
+            PGPKeyRingGenerator keyRingGen = new PGPKeyRingGenerator(PGPSignature.POSITIVE_CERTIFICATION, rsaKeyPair1,
+                    "test", PGPEncryptedData.AES_256, "hello".toCharArray(), null, null, new SecureRandom(), "BC");
+
+            keyRingGen.addSubKey(rsaKeyPair2);
+
+            PGPPublicKeyRing pubRing = keyRingGen.generatePublicKeyRing();
+            List             results = new PGPSignatureBatchVerifier(verifierProvider, executor).verifyKeyRing(pubRing, null);
+
+            isTrue("wrong number of certifications: " + results.size(), results.size() == 2);
+
+            for (int i = 0; i != results.size(); i++)
+            {
+                PGPSignatureVerificationResult r = (PGPSignatureVerificationResult)results.get(i);
+
+                isTrue("certification failed: " + r.getException(), r.isVerified());
+            }
+
+            isTrue("user ID not reported", "test".equals(((PGPSignatureVerificationResult)results.get(0)).getUserID()));
+            isTrue("subkey not reported", ((PGPSignatureVerificationResult)results.get(1)).getSignedKey().getKeyID() == rsaKeyPair2.getKeyID());
+
+            // detached signatures, one over different data, one from an unknown key.
+            byte[]         data = Strings.toByteArray("hello world!");
+            PGPSignature[] sigs = new PGPSignature[3];
+
+            for (int i = 0; i != sigs.length; i++)
+            {
+                PGPKeyPair            signer = (i == 2) ? rsaKeyPair2 : rsaKeyPair1;
+                PGPSignatureGenerator sGen = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(PGPPublicKey.RSA_GENERAL, HashAlgorithmTags.SHA256).setProvider("BC"));
+
+                sGen.init(PGPSignature.BINARY_DOCUMENT, signer.getPrivateKey());
+                sGen.update(data);
+                if (i == 1)
+                {
+                    sGen.update((byte)0);
+                }
+
+                sigs[i] = sGen.generate();
+            }
+
+            PGPPublicKeyRingCollection issuers = new PGPPublicKeyRingCollection(
+                new PGPPublicKeyRing(pubRing.getPublicKey().getEncoded(), new JcaKeyFingerprintCalculator()).getEncoded());
+
+            results = new PGPSignatureBatchVerifier(verifierProvider, executor).verifyDetached(new PGPSignatureList(sigs), data, issuers);
+
+            PGPSignatureVerificationResult r0 = (PGPSignatureVerificationResult)results.get(0);
+            PGPSignatureVerificationResult r1 = (PGPSignatureVerificationResult)results.get(1);
+            PGPSignatureVerificationResult r2 = (PGPSignatureVerificationResult)results.get(2);
+
+            isTrue("detached signature failed", r0.isVerified() && r0.getException() == null);
+            isTrue("altered data verified", !r1.isVerified() && r1.isIssuerFound());
+            isTrue("unknown issuer found", !r2.isVerified() && !r2.isIssuerFound());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private void isTrue(String message, boolean condition)
+    {
+        if (!condition)
+        {
+            fail(message);
+        }
+    }
+
+    private int countRings(Iterator it)
+    {
+        int count = 0;
+
+        while (it.hasNext())
+        {
+            if (!(it.next() instanceof PGPKeyRing))
+            {
+                fail("non-key ring returned");
+            }
+            count++;
+        }
+
+        return count;
+    }
+
     private void checkSecretKeyRingWithPersonalCertificate(byte[] keyRing)
         throws Exception
     {
@@ -2580,6 +3096,10 @@ public void performTest()
             testSecretKeyRingWithPersonalCertificate();
             insertMasterTest();
             testUmlaut();
+            testKeyRingIndex();
+            testMappedKeyRings();
+            testKeyCache();
+            testBatchVerifier();
         }
         catch (PGPException e)
         {
@@ -10,17 +10,23 @@
 import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
 import org.bouncycastle.openpgp.PGPObjectFactory;
 import org.bouncycastle.openpgp.PGPPBEEncryptedData;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBEKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.encoders.Hex;
 import org.bouncycastle.util.test.SimpleTest;
 import org.bouncycastle.util.test.UncloseableOutputStream;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class PGPPBETest
     extends SimpleTest
@@ -148,6 +154,280 @@ private byte[] decryptMessageBuffered(
         return bOut.toByteArray();
     }
 
+    /**
+     * read a large integrity protected message back in chunks of assorted sizes, mixed
+     * with single byte reads, checking the MDC still lines up.
+     */
+    private void testBulkDecryption()
+        throws Exception
+    {
+        SecureRandom rand = new SecureRandom();
+        byte[]       test = new byte[100000];
+
+        rand.nextBytes(test);
+
+        ByteArrayOutputStream   bOut = new ByteArrayOutputStream();
+        PGPLiteralDataGenerator lData = new PGPLiteralDataGenerator();
+        OutputStream            ldOut = lData.open(new UncloseableOutputStream(bOut),
+            PGPLiteralData.BINARY, PGPLiteralData.CONSOLE, TEST_DATE, new byte[1 << 12]);
+
+        ldOut.write(test);
+
+        ldOut.close();
+
+        ByteArrayOutputStream     cbOut = new ByteArrayOutputStream();
+        PGPEncryptedDataGenerator cPk = new PGPEncryptedDataGenerator(PGPEncryptedData.AES_128, true, rand, "BC");
+
+        cPk.addMethod(pass);
+
+        OutputStream cOut = cPk.open(new UncloseableOutputStream(cbOut), new byte[1 << 12]);
+
+        cOut.write(bOut.toByteArray());
+
+        cOut.close();
+
+        byte[] message = cbOut.toByteArray();
+
+        if (!decryptInChunks(message, test))
+        {
+            fail("integrity check failed on bulk read");
+        }
+
+        message[message.length / 2] ^= 1;
+
+        if (decryptInChunks(message, test))
+        {
+            fail("integrity check passed on altered message");
+        }
+    }
+
+    private boolean decryptInChunks(
+        byte[]    message,
+        byte[]    expected)
+        throws Exception
+    {
+        PGPObjectFactory     pgpF = new PGPObjectFactory(message);
+        PGPEncryptedDataList enc = (PGPEncryptedDataList)pgpF.nextObject();
+        PGPPBEEncryptedData  pbe = (PGPPBEEncryptedData)enc.get(0);
+
+        PGPObjectFactory     pgpFact = new PGPObjectFactory(pbe.getDataStream(pass, "BC"));
+        PGPLiteralData       ld = (PGPLiteralData)pgpFact.nextObject();
+
+        InputStream           unc = ld.getInputStream();
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        int[]                 sizes = { 1, 7, 21, 22, 23, 512, 4096, 65536 };
+        byte[]                buf = new byte[65536];
+
+        for (int i = 0; ; i++)
+        {
+            int ch = unc.read();
+
+            if (ch < 0)
+            {
+                break;
+            }
+
+            bOut.write(ch);
+
+            int len = unc.read(buf, 0, sizes[i % sizes.length]);
+
+            if (len < 0)
+            {
+                break;
+            }
+
+            bOut.write(buf, 0, len);
+        }
+
+        boolean verified = pbe.verify();
+
+        if (verified && !areEqual(bOut.toByteArray(), expected))
+        {
+            fail("wrong plain text on bulk read");
+        }
+
+        return verified;
+    }
+
+    /**
+     * the pipelined generator should produce exactly what the sequential one does.
+     */
+    private void testPipelinedEncryption()
+        throws Exception
+    {
+        byte[]       test = new byte[1000000];
+        SecureRandom rand = new SecureRandom();
+
+        // half random, half repeated, so there is something to compress.
+        rand.nextBytes(test);
+        System.arraycopy(test, 0, test, test.length / 2, test.length / 2);
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        try
+        {
+            for (int i = 0; i != 2; i++)
+            {
+                byte[] buffer = (i == 0) ? new byte[1 << 12] : null;
+                byte[] sequential = encryptDeterministic(test, buffer, null);
+                byte[] pipelined = encryptDeterministic(test, buffer, executor);
+
+                if (!areEqual(sequential, pipelined))
+                {
+                    fail("pipelined output differs from sequential output");
+                }
+
+                if (!areEqual(decryptMessageBuffered(pipelined, TEST_DATE), test))
+                {
+                    fail("wrong plain text in pipelined message");
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        //
+        // an executor with a single thread can only run one stage, the other runs inline.
+        //
+        executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            if (!areEqual(encryptDeterministic(test, null, null), encryptDeterministic(test, null, executor)))
+            {
+                fail("single thread pipelined output differs from sequential output");
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        //
+        // a failure writing the output releases both stages' threads.
+        //
+        executor = Executors.newCachedThreadPool();
+
+        try
+        {
+            PGPEncryptedDataGenerator cPk = new PGPEncryptedDataGenerator(
+                new JcePGPDataEncryptorBuilder(PGPEncryptedData.AES_128).setWithIntegrityPacket(true).setSecureRandom(rand).setProvider("BC"), executor);
+
+            cPk.addMethod(new JcePBEKeyEncryptionMethodGenerator(pass).setProvider("BC"));
+
+            OutputStream cOut = cPk.open(new FailingOutputStream(100000), new byte[1 << 12]);
+            boolean      failed = false;
+
+            try
+            {
+                for (int off = 0; off < test.length; off += 1001)
+                {
+                    cOut.write(test, off, Math.min(1001, test.length - off));
+                }
+            }
+            catch (IOException e)
+            {
+                failed = true;
+            }
+
+            try
+            {
+                cOut.close();
+            }
+            catch (IOException e)
+            {
+                failed = true;
+            }
+
+            if (!failed)
+            {
+                fail("output failure not reported");
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS))
+        {
+            fail("pipeline stage left running after failure");
+        }
+    }
+
+    private static class FailingOutputStream
+        extends OutputStream
+    {
+        private int remaining;
+
+        FailingOutputStream(int limit)
+        {
+            this.remaining = limit;
+        }
+
+        public void write(int b)
+            throws IOException
+        {
+            if (--remaining < 0)
+            {
+                throw new IOException("output failed");
+            }
+        }
+    }
+
+    private byte[] encryptDeterministic(
+        byte[]          data,
+        byte[]          buffer,
+        ExecutorService executor)
+        throws Exception
+    {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+
+        PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(PGPCompressedData.ZIP);
+        OutputStream               comOut = comData.open(bOut);
+        OutputStream               ldOut = new PGPLiteralDataGenerator().open(comOut, PGPLiteralData.BINARY, PGPLiteralData.CONSOLE, data.length, TEST_DATE);
+
+        ldOut.write(data);
+        ldOut.close();
+        comOut.close();
+
+        byte[]                     compressed = bOut.toByteArray();
+        SecureRandom               rand = new DeterministicRandom();
+        JcePGPDataEncryptorBuilder encBuilder = new JcePGPDataEncryptorBuilder(PGPEncryptedData.AES_128).setWithIntegrityPacket(true).setSecureRandom(rand).setProvider("BC");
+        PGPEncryptedDataGenerator  cPk = (executor != null) ? new PGPEncryptedDataGenerator(encBuilder, executor) : new PGPEncryptedDataGenerator(encBuilder);
+
+        cPk.addMethod(new JcePBEKeyEncryptionMethodGenerator(pass).setProvider("BC").setSecureRandom(rand));
+
+        ByteArrayOutputStream cbOut = new ByteArrayOutputStream();
+        OutputStream          cOut = (buffer != null) ? cPk.open(cbOut, buffer) : cPk.open(cbOut, compressed.length);
+
+        // odd sized writes, so chunks don't line up with anything.
+        for (int off = 0; off < compressed.length; off += 1001)
+        {
+            cOut.write(compressed, off, Math.min(1001, compressed.length - off));
+        }
+
+        cOut.close();
+
+        return cbOut.toByteArray();
+    }
+
+    private static class DeterministicRandom
+        extends SecureRandom
+    {
+        private int counter;
+
+        public void nextBytes(byte[] bytes)
+        {
+            for (int i = 0; i != bytes.length; i++)
+            {
+                bytes[i] = (byte)(counter++ * 31 + 7);
+            }
+        }
+    }
+
     public void performTest()
         throws Exception
     {
@@ -379,6 +659,9 @@ public void performTest()
         {
             fail("wrong plain text in buffer generated packet");
         }
+
+        testBulkDecryption();
+        testPipelinedEncryption();
     }
 
     public String getName()
@@ -29,6 +29,7 @@
 import org.bouncycastle.openpgp.PGPEncryptedData;
 import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
 import org.bouncycastle.openpgp.PGPEncryptedDataList;
+import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
 import org.bouncycastle.openpgp.PGPKeyRingGenerator;
 import org.bouncycastle.openpgp.PGPLiteralData;
@@ -41,6 +42,7 @@
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPPublicKeyEncryptedData;
 import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
 import org.bouncycastle.openpgp.PGPSecretKey;
 import org.bouncycastle.openpgp.PGPSecretKeyRing;
 import org.bouncycastle.openpgp.PGPSignature;
@@ -547,6 +549,77 @@ private void existingEmbeddedJpegTest()
         }
     }
 
+    private void lazyParsingTest()
+        throws Exception
+    {
+        PGPPublicKeyRing eagerRing = new PGPPublicKeyRing(embeddedJPEGKey, new JcaKeyFingerprintCalculator());
+        PGPPublicKeyRing lazyRing = new PGPPublicKeyRing(new ByteArrayInputStream(embeddedJPEGKey), new JcaKeyFingerprintCalculator(), true);
+
+        PGPPublicKey pubKey = lazyRing.getPublicKey();
+        Iterator     it = pubKey.getUserAttributes();
+        PGPUserAttributeSubpacketVector attributes = (PGPUserAttributeSubpacketVector)it.next();
+
+        if (!attributes.equals(eagerRing.getPublicKey().getUserAttributes().next()))
+        {
+            fail("lazy user attribute mismatch");
+        }
+
+        if (!areEqual(attributes.getImageAttribute().getImageData(),
+            ((PGPUserAttributeSubpacketVector)eagerRing.getPublicKey().getUserAttributes().next()).getImageAttribute().getImageData()))
+        {
+            fail("lazy image data mismatch");
+        }
+
+        PGPSignature sig = (PGPSignature)pubKey.getSignaturesForUserAttribute(attributes).next();
+
+        sig.initVerify(pubKey, "BC");
+
+        if (!sig.verifyCertification(attributes, pubKey))
+        {
+            fail("lazy signature failed verification");
+        }
+
+        if (!areEqual(eagerRing.getEncoded(), lazyRing.getEncoded()))
+        {
+            fail("lazy ring encoding mismatch");
+        }
+
+        //
+        // a collection with sub-keys, modified after a lazy read.
+        //
+        PGPPublicKeyRingCollection lazyRings = new PGPPublicKeyRingCollection(new ByteArrayInputStream(subPubKey), new JcaKeyFingerprintCalculator(), true);
+        PGPPublicKeyRingCollection eagerRings = new PGPPublicKeyRingCollection(subPubKey);
+
+        if (lazyRings.size() != eagerRings.size() || !areEqual(lazyRings.getEncoded(), eagerRings.getEncoded()))
+        {
+            fail("lazy collection encoding mismatch");
+        }
+
+        PGPPublicKey masterKey = ((PGPPublicKeyRing)lazyRings.getKeyRings().next()).getPublicKey();
+        PGPPublicKey revoked = PGPPublicKey.removeCertification(masterKey, (String)masterKey.getUserIDs().next());
+
+        if (revoked == null || revoked.getSignaturesForID((String)masterKey.getUserIDs().next()) != null)
+        {
+            fail("lazy key certification removal failed");
+        }
+
+        if (!masterKey.getSignatures().hasNext())
+        {
+            fail("lazy key lost signatures");
+        }
+
+        try
+        {
+            new PGPPublicKeyRingCollection(new ByteArrayInputStream(sig1), new JcaKeyFingerprintCalculator(), true);
+
+            fail("non key ring accepted");
+        }
+        catch (PGPException e)
+        {
+            // expected
+        }
+    }
+
     private void embeddedJpegTest()
         throws Exception
     {
@@ -1411,6 +1484,7 @@ public void performTest()
         
         fingerPrintTest();
         existingEmbeddedJpegTest();
+        lazyParsingTest();
         embeddedJpegTest();
         sigsubpacketTest();
         multipleExpiryTest();
@@ -0,0 +1,196 @@
+package org.bouncycastle.openpgp.test.speedy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.MappedPGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRingIndex;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.operator.KeyFingerPrintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+
+/**
+ * Microbenchmark of parsing a large key ring file, and of looking keys up in it, using the
+ * collection classes and the key ring index.
+ */
+public class PGPKeyRingThroughputTest
+{
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final int RING_COUNT = 2000;
+    private static final int LOOKUP_COUNT = 200000;
+    private static final int LINEAR_LOOKUP_COUNT = 2000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        Security.addProvider(new BouncyCastleProvider());
+
+        int ringCount = (args.length > 0) ? Integer.parseInt(args[0]) : RING_COUNT;
+
+        System.out.println("=========================");
+
+        long   start = System.nanoTime();
+        long[] keyIDs = new long[ringCount];
+        byte[] keyRings = createKeyRings(keyIDs);
+
+        System.out.printf("Generated %,d key rings, %,d bytes, in %,d ms\n", ringCount, keyRings.length, (System.nanoTime() - start) / 1000000);
+
+        KeyFingerPrintCalculator calculator = new JcaKeyFingerprintCalculator();
+
+        PGPPublicKeyRingCollection eager = null;
+        PGPPublicKeyRingCollection lazy = null;
+        MappedPGPPublicKeyRingCollection mapped = null;
+        PGPKeyRingIndex index = null;
+
+        long eagerTime = Long.MAX_VALUE;
+        long lazyTime = Long.MAX_VALUE;
+        long mappedTime = Long.MAX_VALUE;
+        long indexTime = Long.MAX_VALUE;
+
+        for (int run = 0; run != RUNS; run++)
+        {
+            start = System.nanoTime();
+            eager = new PGPPublicKeyRingCollection(new ByteArrayInputStream(keyRings), calculator, false);
+            eagerTime = Math.min(eagerTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            lazy = new PGPPublicKeyRingCollection(new ByteArrayInputStream(keyRings), calculator, true);
+            lazyTime = Math.min(lazyTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            mapped = new MappedPGPPublicKeyRingCollection(ByteBuffer.wrap(keyRings), calculator);
+            mappedTime = Math.min(mappedTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            index = new PGPKeyRingIndex(eager);
+            indexTime = Math.min(indexTime, System.nanoTime() - start);
+        }
+
+        System.out.println("=========================");
+        reportParse("Parse collection", eagerTime, keyRings.length);
+        reportParse("Parse lazy collection", lazyTime, keyRings.length);
+        reportParse("Build mapped index", mappedTime, keyRings.length);
+        reportParse("Build key ring index", indexTime, keyRings.length);
+
+        System.out.println("=========================");
+
+        start = System.nanoTime();
+        for (int i = 0; i != LINEAR_LOOKUP_COUNT; i++)
+        {
+            check(eager.getPublicKey(keyIDs[RANDOM.nextInt(keyIDs.length)]));
+        }
+        reportLookup("Collection key ID", System.nanoTime() - start, LINEAR_LOOKUP_COUNT);
+
+        start = System.nanoTime();
+        for (int i = 0; i != LOOKUP_COUNT; i++)
+        {
+            check(index.getPublicKey(keyIDs[RANDOM.nextInt(keyIDs.length)]));
+        }
+        reportLookup("Index key ID", System.nanoTime() - start, LOOKUP_COUNT);
+
+        start = System.nanoTime();
+        for (int i = 0; i != LOOKUP_COUNT / 10; i++)
+        {
+            check(mapped.getPublicKey(keyIDs[RANDOM.nextInt(keyIDs.length)]));
+        }
+        reportLookup("Mapped key ID", System.nanoTime() - start, LOOKUP_COUNT / 10);
+
+        start = System.nanoTime();
+        for (int i = 0; i != LINEAR_LOOKUP_COUNT; i++)
+        {
+            check(eager.getKeyRings("user" + RANDOM.nextInt(keyIDs.length) + "@", true));
+        }
+        reportLookup("Collection user ID", System.nanoTime() - start, LINEAR_LOOKUP_COUNT);
+
+        start = System.nanoTime();
+        for (int i = 0; i != LOOKUP_COUNT; i++)
+        {
+            check(index.getKeyRings("user" + RANDOM.nextInt(keyIDs.length) + "@", true, false));
+        }
+        reportLookup("Index user ID", System.nanoTime() - start, LOOKUP_COUNT);
+
+        start = System.nanoTime();
+        for (int i = 0; i != LOOKUP_COUNT; i++)
+        {
+            check(index.getKeyRingsByUserIDPrefix("User " + RANDOM.nextInt(keyIDs.length) + " ", true));
+        }
+        reportLookup("Index user ID prefix", System.nanoTime() - start, LOOKUP_COUNT);
+    }
+
+    /**
+     * Create a key ring file of ECDSA keys, each with one self signed user ID.
+     */
+    private static byte[] createKeyRings(long[] keyIDs)
+        throws Exception
+    {
+        KeyPairGenerator kpGen = KeyPairGenerator.getInstance("ECDSA", "BC");
+
+        kpGen.initialize(new ECGenParameterSpec("P-256"), RANDOM);
+
+        JcaPGPContentSignerBuilder signerBuilder = new JcaPGPContentSignerBuilder(PublicKeyAlgorithmTags.ECDSA, HashAlgorithmTags.SHA256).setProvider("BC").setSecureRandom(RANDOM);
+        ByteArrayOutputStream      bOut = new ByteArrayOutputStream();
+        Date                       now = new Date();
+
+        for (int i = 0; i != keyIDs.length; i++)
+        {
+            PGPKeyPair            keyPair = new JcaPGPKeyPair(PublicKeyAlgorithmTags.ECDSA, kpGen.generateKeyPair(), now);
+            PGPSignatureGenerator sGen = new PGPSignatureGenerator(signerBuilder);
+            String                id = "User " + i + " <user" + i + "@example.org>";
+
+            sGen.init(PGPSignature.POSITIVE_CERTIFICATION, keyPair.getPrivateKey());
+
+            PGPPublicKey pubKey = PGPPublicKey.addCertification(keyPair.getPublicKey(), id, sGen.generateCertification(id, keyPair.getPublicKey()));
+
+            pubKey.encode(bOut);
+
+            keyIDs[i] = pubKey.getKeyID();
+        }
+
+        return bOut.toByteArray();
+    }
+
+    private static void check(Object o)
+    {
+        if (o == null)
+        {
+            throw new IllegalStateException("lookup failed");
+        }
+    }
+
+    private static void check(Iterator it)
+    {
+        if (!it.hasNext())
+        {
+            throw new IllegalStateException("lookup failed");
+        }
+    }
+
+    private static void reportParse(String name, long nanos, long bytes)
+    {
+        System.out.printf("%-22s run time: %,d ms\n", name, nanos / 1000000);
+        System.out.printf("%-22s speed:    %,.1f MB/s\n", name, (double)bytes / nanos * 1000000000 / (1024 * 1024));
+    }
+
+    private static void reportLookup(String name, long nanos, int count)
+    {
+        System.out.printf("%-22s average time: %,.2f us\n", name, (double)nanos / count / 1000);
+    }
+}
@@ -0,0 +1,287 @@
+package org.bouncycastle.openpgp.test.speedy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.Date;
+
+import org.bouncycastle.bcpg.ArmoredInputStream;
+import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.S2K;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPCompressedData;
+import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
+import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
+import org.bouncycastle.openpgp.PGPEncryptedDataList;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
+import org.bouncycastle.openpgp.PGPObjectFactory;
+import org.bouncycastle.openpgp.PGPPBEEncryptedData;
+import org.bouncycastle.openpgp.operator.bc.BcPBEDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.bc.BcPBEKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDataEncryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+
+/**
+ * Microbenchmark of armoring, message encryption and decryption for each symmetric and
+ * compression algorithm, and S2K key derivation.
+ */
+public class PGPMessageThroughputTest
+{
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final char[] PASS = "benchmark".toCharArray();
+
+    private static final int MESSAGE_SIZE = 8 * 1024 * 1024;
+    private static final int ARMOR_SIZE = 4 * 1024 * 1024;
+    private static final int RUNS = 5;
+
+    // the smallest S2K count, so the message figures aren't swamped by key derivation.
+    private static final int MESSAGE_S2K_COUNT = 0x00;
+
+    private static final int[] SYMMETRIC_ALGORITHMS = {
+        SymmetricKeyAlgorithmTags.TRIPLE_DES, SymmetricKeyAlgorithmTags.CAST5, SymmetricKeyAlgorithmTags.BLOWFISH,
+        SymmetricKeyAlgorithmTags.AES_128, SymmetricKeyAlgorithmTags.AES_192, SymmetricKeyAlgorithmTags.AES_256,
+        SymmetricKeyAlgorithmTags.TWOFISH };
+
+    private static final String[] SYMMETRIC_NAMES = {
+        "3DES", "CAST5", "Blowfish", "AES-128", "AES-192", "AES-256", "Twofish" };
+
+    private static final int[] COMPRESSION_ALGORITHMS = {
+        CompressionAlgorithmTags.UNCOMPRESSED, CompressionAlgorithmTags.ZIP, CompressionAlgorithmTags.ZLIB,
+        CompressionAlgorithmTags.BZIP2 };
+
+    private static final String[] COMPRESSION_NAMES = {
+        "none", "ZIP", "ZLIB", "BZIP2" };
+
+    private static final int[] S2K_COUNTS = { 0x60, 0x90, 0xc0, 0xff };
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        byte[] message = createMessage(MESSAGE_SIZE);
+
+        testArmor(createMessage(ARMOR_SIZE));
+
+        for (int i = 0; i != SYMMETRIC_ALGORITHMS.length; i++)
+        {
+            testMessage(SYMMETRIC_NAMES[i], SYMMETRIC_ALGORITHMS[i], "none", CompressionAlgorithmTags.UNCOMPRESSED, message);
+        }
+
+        // uncompressed AES-128 is covered above.
+        for (int i = 1; i != COMPRESSION_ALGORITHMS.length; i++)
+        {
+            testMessage("AES-128", SymmetricKeyAlgorithmTags.AES_128, COMPRESSION_NAMES[i], COMPRESSION_ALGORITHMS[i], message);
+        }
+
+        testS2K("SHA-1", HashAlgorithmTags.SHA1);
+        testS2K("SHA-256", HashAlgorithmTags.SHA256);
+    }
+
+    /**
+     * Something between text and noise - random words from a small vocabulary, so the
+     * compression figures mean something.
+     */
+    private static byte[] createMessage(int size)
+    {
+        String[]              words = { "the ", "quick ", "brown ", "fox ", "jumps ", "over ", "lazy ", "dog ", "\n", "0x3f ", "Bouncy ", "Castle " };
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream(size + 16);
+        byte[]                noise = new byte[8];
+
+        while (bOut.size() < size)
+        {
+            byte[] word = words[RANDOM.nextInt(words.length)].getBytes();
+
+            bOut.write(word, 0, word.length);
+
+            if (RANDOM.nextInt(16) == 0)
+            {
+                RANDOM.nextBytes(noise);
+                bOut.write(noise, 0, noise.length);
+            }
+        }
+
+        byte[] message = new byte[size];
+
+        System.arraycopy(bOut.toByteArray(), 0, message, 0, size);
+
+        return message;
+    }
+
+    private static void testArmor(byte[] data)
+        throws IOException
+    {
+        System.out.println("=========================");
+
+        byte[] armored = null;
+        long   encodeTime = Long.MAX_VALUE;
+        long   decodeTime = Long.MAX_VALUE;
+
+        for (int run = 0; run != RUNS; run++)
+        {
+            long start = System.nanoTime();
+
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream(data.length * 4 / 3 + 1024);
+            ArmoredOutputStream   aOut = new ArmoredOutputStream(bOut);
+
+            aOut.write(data);
+            aOut.close();
+
+            armored = bOut.toByteArray();
+
+            encodeTime = Math.min(encodeTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+
+            if (!drain(new ArmoredInputStream(new ByteArrayInputStream(armored)), data.length))
+            {
+                throw new IllegalStateException("armor round trip failed");
+            }
+
+            decodeTime = Math.min(decodeTime, System.nanoTime() - start);
+        }
+
+        report("Armor encode", encodeTime, data.length);
+        report("Armor decode", decodeTime, data.length);
+    }
+
+    private static void testMessage(String symName, int symAlgorithm, String compName, int compAlgorithm, byte[] data)
+        throws Exception
+    {
+        System.out.println("=========================");
+
+        String name = symName + "/" + compName;
+        byte[] encrypted = null;
+        long   encryptTime = Long.MAX_VALUE;
+        long   decryptTime = Long.MAX_VALUE;
+
+        for (int run = 0; run != RUNS; run++)
+        {
+            long start = System.nanoTime();
+
+            encrypted = encrypt(symAlgorithm, compAlgorithm, data);
+
+            encryptTime = Math.min(encryptTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+
+            decrypt(encrypted, data.length);
+
+            decryptTime = Math.min(decryptTime, System.nanoTime() - start);
+        }
+
+        report(name + " encrypt", encryptTime, data.length);
+        report(name + " decrypt", decryptTime, data.length);
+        System.out.printf("%s message size:     %,d bytes\n", name, encrypted.length);
+    }
+
+    private static byte[] encrypt(int symAlgorithm, int compAlgorithm, byte[] data)
+        throws IOException, PGPException
+    {
+        ByteArrayOutputStream     bOut = new ByteArrayOutputStream(data.length + 1024);
+        PGPEncryptedDataGenerator encGen = new PGPEncryptedDataGenerator(
+            new BcPGPDataEncryptorBuilder(symAlgorithm).setWithIntegrityPacket(true).setSecureRandom(RANDOM));
+
+        encGen.addMethod(new BcPBEKeyEncryptionMethodGenerator(PASS, MESSAGE_S2K_COUNT));
+
+        OutputStream encOut = encGen.open(bOut, new byte[1 << 16]);
+        OutputStream litTarget = encOut;
+        PGPCompressedDataGenerator comGen = null;
+
+        if (compAlgorithm != CompressionAlgorithmTags.UNCOMPRESSED)
+        {
+            comGen = new PGPCompressedDataGenerator(compAlgorithm);
+            litTarget = comGen.open(encOut, new byte[1 << 16]);
+        }
+
+        OutputStream litOut = new PGPLiteralDataGenerator().open(litTarget, PGPLiteralData.BINARY, PGPLiteralData.CONSOLE, new Date(), new byte[1 << 16]);
+
+        litOut.write(data);
+        litOut.close();
+
+        if (comGen != null)
+        {
+            comGen.close();
+        }
+
+        encOut.close();
+
+        return bOut.toByteArray();
+    }
+
+    private static void decrypt(byte[] encrypted, int expectedLength)
+        throws Exception
+    {
+        PGPObjectFactory     pgpF = new PGPObjectFactory(encrypted);
+        PGPEncryptedDataList encList = (PGPEncryptedDataList)pgpF.nextObject();
+        PGPPBEEncryptedData  pbe = (PGPPBEEncryptedData)encList.get(0);
+        InputStream          clear = pbe.getDataStream(new BcPBEDataDecryptorFactory(PASS, new BcPGPDigestCalculatorProvider()));
+
+        Object o = new PGPObjectFactory(clear).nextObject();
+
+        if (o instanceof PGPCompressedData)
+        {
+            o = new PGPObjectFactory(((PGPCompressedData)o).getDataStream()).nextObject();
+        }
+
+        if (!drain(((PGPLiteralData)o).getInputStream(), expectedLength) || !pbe.verify())
+        {
+            throw new IllegalStateException("message round trip failed");
+        }
+    }
+
+    private static void testS2K(String digestName, int hashAlgorithm)
+        throws PGPException
+    {
+        System.out.println("=========================");
+
+        BcPBEDataDecryptorFactory factory = new BcPBEDataDecryptorFactory(PASS, new BcPGPDigestCalculatorProvider());
+        byte[]                    iv = new byte[8];
+
+        RANDOM.nextBytes(iv);
+
+        for (int i = 0; i != S2K_COUNTS.length; i++)
+        {
+            S2K  s2k = new S2K(hashAlgorithm, iv, S2K_COUNTS[i]);
+            long best = Long.MAX_VALUE;
+
+            for (int run = 0; run != RUNS; run++)
+            {
+                long start = System.nanoTime();
+
+                factory.makeKeyFromPassPhrase(SymmetricKeyAlgorithmTags.AES_256, s2k);
+
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            System.out.printf("S2K %s count %,12d: %,d us\n", digestName, s2k.getIterationCount(), best / 1000);
+        }
+    }
+
+    private static boolean drain(InputStream in, int expectedLength)
+        throws IOException
+    {
+        byte[] buf = new byte[1 << 16];
+        long   total = 0;
+        int    len;
+
+        while ((len = in.read(buf, 0, buf.length)) >= 0)
+        {
+            total += len;
+        }
+
+        return total == expectedLength;
+    }
+
+    private static void report(String name, long nanos, long bytes)
+    {
+        System.out.printf("%-24s run time: %,d ms\n", name, nanos / 1000000);
+        System.out.printf("%-24s speed:    %,.1f MB/s\n", name, (double)bytes / nanos * 1000000000 / (1024 * 1024));
+    }
+}
@@ -0,0 +1,122 @@
+package org.bouncycastle.openpgp.test.speedy;
+
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentVerifierBuilderProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+
+/**
+ * Microbenchmark of OpenPGP signature generation and verification for each signature algorithm.
+ */
+public class PGPSignatureThroughputTest
+{
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final byte[] MESSAGE = new byte[1024];
+    static
+    {
+        RANDOM.nextBytes(MESSAGE);
+    }
+
+    private static final int WARMUP_COUNT = 50;
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        Security.addProvider(new BouncyCastleProvider());
+
+        KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "BC");
+
+        kpGen.initialize(2048, RANDOM);
+
+        testSignature("RSA-2048", new JcaPGPKeyPair(PublicKeyAlgorithmTags.RSA_GENERAL, kpGen.generateKeyPair(), new Date()), 200, 5000);
+
+        kpGen = KeyPairGenerator.getInstance("DSA", "BC");
+
+        kpGen.initialize(1024, RANDOM);
+
+        testSignature("DSA-1024", new JcaPGPKeyPair(PublicKeyAlgorithmTags.DSA, kpGen.generateKeyPair(), new Date()), 2000, 1000);
+
+        kpGen = KeyPairGenerator.getInstance("ECDSA", "BC");
+
+        kpGen.initialize(new ECGenParameterSpec("P-256"), RANDOM);
+
+        testSignature("ECDSA-P256", new JcaPGPKeyPair(PublicKeyAlgorithmTags.ECDSA, kpGen.generateKeyPair(), new Date()), 1000, 500);
+    }
+
+    private static void testSignature(String name, PGPKeyPair keyPair, int signCount, int verifyCount)
+        throws Exception
+    {
+        System.out.println("=========================");
+
+        JcaPGPContentSignerBuilder           signerBuilder = new JcaPGPContentSignerBuilder(keyPair.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA256).setProvider("BC").setSecureRandom(RANDOM);
+        JcaPGPContentVerifierBuilderProvider verifierProvider = new JcaPGPContentVerifierBuilderProvider().setProvider("BC");
+
+        PGPSignature sig = null;
+
+        for (int i = 0; i != WARMUP_COUNT; i++)
+        {
+            sig = sign(signerBuilder, keyPair);
+            verify(verifierProvider, keyPair, sig);
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i != signCount; i++)
+        {
+            sig = sign(signerBuilder, keyPair);
+        }
+
+        report(name + " sign", System.nanoTime() - start, signCount);
+
+        start = System.nanoTime();
+
+        for (int i = 0; i != verifyCount; i++)
+        {
+            verify(verifierProvider, keyPair, sig);
+        }
+
+        report(name + " verify", System.nanoTime() - start, verifyCount);
+    }
+
+    private static PGPSignature sign(JcaPGPContentSignerBuilder signerBuilder, PGPKeyPair keyPair)
+        throws Exception
+    {
+        PGPSignatureGenerator sGen = new PGPSignatureGenerator(signerBuilder);
+
+        sGen.init(PGPSignature.BINARY_DOCUMENT, keyPair.getPrivateKey());
+        sGen.update(MESSAGE);
+
+        return sGen.generate();
+    }
+
+    private static void verify(JcaPGPContentVerifierBuilderProvider verifierProvider, PGPKeyPair keyPair, PGPSignature sig)
+        throws Exception
+    {
+        sig.init(verifierProvider, keyPair.getPublicKey());
+        sig.update(MESSAGE);
+
+        if (!sig.verify())
+        {
+            throw new IllegalStateException("signature failed to verify");
+        }
+    }
+
+    private static void report(String name, long nanos, int count)
+    {
+        System.out.printf("%-20s run time:     %,d ms\n", name, nanos / 1000000);
+        System.out.printf("%-20s average time: %,d us\n", name, nanos / count / 1000);
+        System.out.printf("%-20s rate:         %,.1f ops/s\n", name, (double)count * 1000000000 / nanos);
+    }
+}
@@ -0,0 +1,701 @@
+package org.bouncycastle.cert;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+
+/**
+ * A read only view of a DER encoded X.509 CRL held in a memory mapped file, or other ByteBuffer.
+ * <p>
+ * Unlike X509CRLHolder, the revoked certificates are not parsed into an object graph. On construction the
+ * encoding is walked using the ASN.1 length headers only, and a compact index of serial number hashes and
+ * entry offsets is built. Entries are only parsed when they are looked up, and the signature is verified by
+ * streaming the TBSCertList bytes directly from the buffer.
+ * </p>
+ * <p>
+ * Note: the CRL must use definite length encodings, and as the index uses int offsets a CRL is limited to 2GB.
+ * </p>
+ */
+public class MappedX509CRL
+{
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_EXTENSIONS = 0xa0;
+
+    private final ByteBuffer buf;
+    private final int tbsOffset;
+    private final int tbsEnd;
+    private final AlgorithmIdentifier tbsSigAlgId;
+    private final AlgorithmIdentifier sigAlgId;
+    private final byte[] signature;
+    private final X500Name issuer;
+    private final Time thisUpdate;
+    private final Time nextUpdate;
+    private final Extensions extensions;
+    private final boolean isIndirect;
+    private final GeneralNames issuerName;
+
+    private int[] hashes;
+    private int[] positions;
+    private int[] offsets;
+    private int[] issuerPositions;
+    private GeneralNames[] issuers;
+
+    private static ByteBuffer mapFile(File file)
+        throws IOException
+    {
+        FileInputStream fIn = new FileInputStream(file);
+
+        try
+        {
+            FileChannel channel = fIn.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new CertIOException("CRL file too large to map: " + file);
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally
+        {
+            fIn.close();
+        }
+    }
+
+    /**
+     * Create a MappedX509CRL by memory mapping the passed in file.
+     *
+     * @param crlFile file containing a DER encoded CRL.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public MappedX509CRL(File crlFile)
+        throws IOException
+    {
+        this(mapFile(crlFile));
+    }
+
+    /**
+     * Create a MappedX509CRL from the contents of the passed in buffer, from its position to its limit.
+     *
+     * @param crlEncoding a buffer containing a DER encoded CRL.
+     * @throws IOException in the event of corrupted data, or an incorrect structure.
+     */
+    public MappedX509CRL(ByteBuffer crlEncoding)
+        throws IOException
+    {
+        this.buf = crlEncoding.slice();
+
+        try
+        {
+            int crlEnd = checkTag(0, TAG_SEQUENCE, "CertificateList");
+
+            if (crlEnd != buf.limit())
+            {
+                throw new CertIOException("malformed data: trailing data after CertificateList");
+            }
+
+            this.tbsOffset = contentOffset(0);
+            this.tbsEnd = checkTag(tbsOffset, TAG_SEQUENCE, "TBSCertList");
+
+            int sigAlgEnd = checkTag(tbsEnd, TAG_SEQUENCE, "signatureAlgorithm");
+
+            this.sigAlgId = AlgorithmIdentifier.getInstance(readObject(tbsEnd));
+            this.signature = DERBitString.getInstance(readObject(sigAlgEnd)).getBytes();
+
+            int pos = contentOffset(tbsOffset);
+
+            if (tag(pos) == TAG_INTEGER)
+            {
+                pos = endOffset(pos);      // version
+            }
+
+            this.tbsSigAlgId = AlgorithmIdentifier.getInstance(readObject(pos));
+            pos = endOffset(pos);
+            this.issuer = X500Name.getInstance(readObject(pos));
+            pos = endOffset(pos);
+            this.thisUpdate = Time.getInstance(readObject(pos));
+            pos = endOffset(pos);
+
+            Time next = null;
+            int revokedOffset = -1;
+            Extensions exts = null;
+
+            if (pos < tbsEnd && tag(pos) != TAG_SEQUENCE && tag(pos) != TAG_EXTENSIONS)
+            {
+                next = Time.getInstance(readObject(pos));
+                pos = endOffset(pos);
+            }
+
+            if (pos < tbsEnd && tag(pos) == TAG_SEQUENCE)
+            {
+                revokedOffset = pos;
+                pos = endOffset(pos);
+            }
+
+            if (pos < tbsEnd && tag(pos) == TAG_EXTENSIONS)
+            {
+                exts = Extensions.getInstance(ASN1TaggedObject.getInstance(readObject(pos)), true);
+                pos = endOffset(pos);
+            }
+
+            if (pos != tbsEnd)
+            {
+                throw new CertIOException("malformed data: unknown object in TBSCertList");
+            }
+
+            this.nextUpdate = next;
+            this.extensions = exts;
+            this.isIndirect = isIndirectCRL(exts);
+            this.issuerName = new GeneralNames(new GeneralName(issuer));
+
+            buildIndex(revokedOffset);
+        }
+        catch (CertIOException e)
+        {
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isIndirectCRL(Extensions extensions)
+    {
+        if (extensions == null)
+        {
+            return false;
+        }
+
+        Extension ext = extensions.getExtension(Extension.issuingDistributionPoint);
+
+        return ext != null && IssuingDistributionPoint.getInstance(ext.getParsedValue()).isIndirectCRL();
+    }
+
+    private void buildIndex(int revokedOffset)
+        throws IOException
+    {
+        int[] entryHashes = new int[64];
+        int[] entryOffsets = new int[64];
+        int count = 0;
+        int[] changes = new int[0];
+        GeneralNames[] names = new GeneralNames[0];
+        int changeCount = 0;
+
+        if (revokedOffset >= 0)
+        {
+            int end = endOffset(revokedOffset);
+
+            for (int pos = contentOffset(revokedOffset); pos < end; pos = endOffset(pos))
+            {
+                int entryEnd = checkTag(pos, TAG_SEQUENCE, "CRLEntry");
+                int serial = contentOffset(pos);
+
+                if (checkTag(serial, TAG_INTEGER, "userCertificate") == contentOffset(serial))
+                {
+                    throw new CertIOException("malformed data: empty userCertificate");
+                }
+
+                if (count == entryHashes.length)
+                {
+                    int[] tmpHashes = new int[count * 2];
+                    int[] tmpOffsets = new int[count * 2];
+
+                    System.arraycopy(entryHashes, 0, tmpHashes, 0, count);
+                    System.arraycopy(entryOffsets, 0, tmpOffsets, 0, count);
+
+                    entryHashes = tmpHashes;
+                    entryOffsets = tmpOffsets;
+                }
+
+                entryHashes[count] = hashSerial(serial);
+                entryOffsets[count] = pos;
+
+                if (isIndirect)
+                {
+                    int extOffset = endOffset(endOffset(serial));
+
+                    if (extOffset < entryEnd)
+                    {
+                        Extension currentCaName = Extensions.getInstance(readObject(extOffset)).getExtension(Extension.certificateIssuer);
+
+                        if (currentCaName != null)
+                        {
+                            if (changeCount == changes.length)
+                            {
+                                int[] tmpChanges = new int[changeCount * 2 + 1];
+                                GeneralNames[] tmpNames = new GeneralNames[tmpChanges.length];
+
+                                System.arraycopy(changes, 0, tmpChanges, 0, changeCount);
+                                System.arraycopy(names, 0, tmpNames, 0, changeCount);
+
+                                changes = tmpChanges;
+                                names = tmpNames;
+                            }
+
+                            changes[changeCount] = count;
+                            names[changeCount] = GeneralNames.getInstance(currentCaName.getParsedValue());
+                            changeCount++;
+                        }
+                    }
+                }
+
+                count++;
+            }
+
+            if (end > tbsEnd)
+            {
+                throw new CertIOException("malformed data: revokedCertificates overruns TBSCertList");
+            }
+        }
+
+        // the entry number is in the low order bits, so entries sharing a hash stay in CRL order.
+        long[] keys = new long[count];
+
+        for (int i = 0; i != count; i++)
+        {
+            keys[i] = ((long)entryHashes[i] << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        this.hashes = new int[count];
+        this.positions = new int[count];
+        this.offsets = new int[count];
+
+        for (int i = 0; i != count; i++)
+        {
+            hashes[i] = (int)(keys[i] >> 32);
+            positions[i] = (int)keys[i];
+        }
+
+        System.arraycopy(entryOffsets, 0, offsets, 0, count);
+
+        this.issuerPositions = new int[changeCount];
+        this.issuers = new GeneralNames[changeCount];
+
+        System.arraycopy(changes, 0, issuerPositions, 0, changeCount);
+        System.arraycopy(names, 0, issuers, 0, changeCount);
+    }
+
+    /**
+     * Return the issuer of this CRL.
+     *
+     * @return the CRL issuer.
+     */
+    public X500Name getIssuer()
+    {
+        return issuer;
+    }
+
+    /**
+     * Return the thisUpdate field of the CRL.
+     *
+     * @return the date the CRL was issued.
+     */
+    public Date getThisUpdate()
+    {
+        return thisUpdate.getDate();
+    }
+
+    /**
+     * Return the nextUpdate field of the CRL if present.
+     *
+     * @return the date of the next CRL, null if not available.
+     */
+    public Date getNextUpdate()
+    {
+        if (nextUpdate != null)
+        {
+            return nextUpdate.getDate();
+        }
+
+        return null;
+    }
+
+    /**
+     * Return whether or not the CRL contains extensions.
+     *
+     * @return true if extension are present, false otherwise.
+     */
+    public boolean hasExtensions()
+    {
+        return extensions != null;
+    }
+
+    /**
+     * Look up the extension associated with the passed in OID.
+     *
+     * @param oid the OID of the extension of interest.
+     *
+     * @return the extension if present, null otherwise.
+     */
+    public Extension getExtension(ASN1ObjectIdentifier oid)
+    {
+        if (extensions != null)
+        {
+            return extensions.getExtension(oid);
+        }
+
+        return null;
+    }
+
+    /**
+     * Return the extensions block associated with this CRL if there is one.
+     *
+     * @return the extensions block, null otherwise.
+     */
+    public Extensions getExtensions()
+    {
+        return extensions;
+    }
+
+    /**
+     * Return the number of revoked certificates on the CRL.
+     *
+     * @return the number of CRL entries.
+     */
+    public int getRevokedCertificateCount()
+    {
+        return offsets.length;
+    }
+
+    /**
+     * Return the entry for the passed in serial number, if it is present on the CRL.
+     *
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return the CRL entry for the serial number, null if there isn't one.
+     */
+    public X509CRLEntryHolder getRevokedCertificate(BigInteger serialNumber)
+    {
+        byte[] serial = serialNumber.toByteArray();
+        int hash = hashSerial(serial, 0, serial.length);
+        int low = 0;
+        int high = hashes.length;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (hashes[mid] < hash)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < hashes.length && hashes[i] == hash; i++)
+        {
+            int entry = positions[i];
+
+            if (serialNumber.equals(new BigInteger(readContent(contentOffset(offsets[entry])))))
+            {
+                return getEntry(entry);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Return an iterator of X509CRLEntryHolder objects, in CRL order, giving the details of the revoked
+     * certificates that appear on this CRL. Each entry is only parsed as the iterator reaches it.
+     *
+     * @return an iterator over the CRL entries.
+     */
+    public Iterator getRevokedCertificateIterator()
+    {
+        return new Iterator()
+        {
+            private int index = 0;
+
+            public boolean hasNext()
+            {
+                return index < offsets.length;
+            }
+
+            public Object next()
+            {
+                if (index >= offsets.length)
+                {
+                    throw new NoSuchElementException("no more CRL entries");
+                }
+
+                return getEntry(index++);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException("cannot remove CRL entries");
+            }
+        };
+    }
+
+    /**
+     * Validate the signature on the CRL. The TBSCertList is passed to the verifier directly from the underlying buffer.
+     *
+     * @param verifierProvider a ContentVerifierProvider that can generate a verifier for the signature.
+     * @return true if the signature is valid, false otherwise.
+     * @throws CertException if the signature cannot be processed or is inappropriate.
+     */
+    public boolean isSignatureValid(ContentVerifierProvider verifierProvider)
+        throws CertException
+    {
+        if (!CertUtils.isAlgIdEqual(tbsSigAlgId, sigAlgId))
+        {
+            throw new CertException("signature invalid - algorithm identifier mismatch");
+        }
+
+        ContentVerifier verifier;
+
+        try
+        {
+            verifier = verifierProvider.get(tbsSigAlgId);
+
+            OutputStream sOut = verifier.getOutputStream();
+            ByteBuffer tbs = buf.duplicate();
+            byte[] block = new byte[Math.min(64 * 1024, tbsEnd - tbsOffset)];
+
+            tbs.limit(tbsEnd);
+            tbs.position(tbsOffset);
+
+            while (tbs.hasRemaining())
+            {
+                int len = Math.min(block.length, tbs.remaining());
+
+                tbs.get(block, 0, len);
+                sOut.write(block, 0, len);
+            }
+
+            sOut.close();
+        }
+        catch (Exception e)
+        {
+            throw new CertException("unable to process signature: " + e.getMessage(), e);
+        }
+
+        return verifier.verify(signature);
+    }
+
+    private X509CRLEntryHolder getEntry(int entry)
+    {
+        GeneralNames currentCA = issuerName;
+
+        if (isIndirect)
+        {
+            int low = 0;
+            int high = issuerPositions.length;
+
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+
+                if (issuerPositions[mid] <= entry)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+
+            if (low != 0)
+            {
+                currentCA = issuers[low - 1];
+            }
+        }
+
+        return new X509CRLEntryHolder(TBSCertList.CRLEntry.getInstance(readObject(offsets[entry])), isIndirect, currentCA);
+    }
+
+    private int hashSerial(int offset)
+    {
+        int start = contentOffset(offset);
+
+        return hashSerial(null, start, endOffset(offset) - start);
+    }
+
+    /*
+     * hash the two's complement content octets of an INTEGER, ignoring any redundant leading octets so
+     * that the hash matches that of BigInteger.toByteArray().
+     */
+    private int hashSerial(byte[] data, int off, int len)
+    {
+        while (len > 1)
+        {
+            int b0 = get(data, off);
+            int b1 = get(data, off + 1);
+
+            if ((b0 == 0 && (b1 & 0x80) == 0) || (b0 == 0xff && (b1 & 0x80) != 0))
+            {
+                off++;
+                len--;
+            }
+            else
+            {
+                break;
+            }
+        }
+
+        int hash = 0;
+
+        for (int i = 0; i != len; i++)
+        {
+            hash = 31 * hash + get(data, off + i);
+        }
+
+        return hash;
+    }
+
+    private int get(byte[] data, int off)
+    {
+        if (data != null)
+        {
+            return data[off] & 0xff;
+        }
+
+        return buf.get(off) & 0xff;
+    }
+
+    private ASN1Primitive readObject(int offset)
+    {
+        int end = endOffset(offset);
+        byte[] encoding = new byte[end - offset];
+        ByteBuffer obj = buf.duplicate();
+
+        obj.position(offset);
+        obj.get(encoding);
+
+        try
+        {
+            return ASN1Primitive.fromByteArray(encoding);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("unable to parse object at offset " + offset + ": " + e.getMessage());
+        }
+    }
+
+    private byte[] readContent(int offset)
+    {
+        int start = contentOffset(offset);
+        byte[] content = new byte[endOffset(offset) - start];
+        ByteBuffer obj = buf.duplicate();
+
+        obj.position(start);
+        obj.get(content);
+
+        return content;
+    }
+
+    private int tag(int offset)
+    {
+        return buf.get(offset) & 0xff;
+    }
+
+    private int checkTag(int offset, int tag, String name)
+        throws CertIOException
+    {
+        if (offset >= buf.limit() || tag(offset) != tag)
+        {
+            throw new CertIOException("malformed data: " + name + " not found");
+        }
+
+        return endOffset(offset);
+    }
+
+    private int lengthOffset(int offset)
+    {
+        if ((buf.get(offset++) & 0x1f) == 0x1f)
+        {
+            while ((buf.get(offset++) & 0x80) != 0)
+            {
+                // skip high tag number octets
+            }
+        }
+
+        return offset;
+    }
+
+    private int contentOffset(int offset)
+    {
+        int lengthOffset = lengthOffset(offset);
+        int length = buf.get(lengthOffset) & 0xff;
+
+        if (length < 0x80)
+        {
+            return lengthOffset + 1;
+        }
+
+        return lengthOffset + 1 + (length & 0x7f);
+    }
+
+    private int endOffset(int offset)
+    {
+        int lengthOffset = lengthOffset(offset);
+        int length = buf.get(lengthOffset) & 0xff;
+        int start = lengthOffset + 1;
+
+        if (length == 0x80)
+        {
+            throw new IllegalArgumentException("indefinite length encoding not supported");
+        }
+
+        if (length > 0x80)
+        {
+            int size = length & 0x7f;
+
+            if (size > 4)
+            {
+                throw new IllegalArgumentException("length too large at offset " + offset);
+            }
+
+            length = 0;
+            for (int i = 0; i != size; i++)
+            {
+                length = (length << 8) | (buf.get(start++) & 0xff);
+            }
+
+            if (length < 0)
+            {
+                throw new IllegalArgumentException("negative length at offset " + offset);
+            }
+        }
+
+        if (length > buf.limit() - start)
+        {
+            throw new IllegalArgumentException("length beyond end of data at offset " + offset);
+        }
+
+        return start + length;
+    }
+}
@@ -7,6 +7,7 @@
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Set;
@@ -21,7 +22,9 @@
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.RevokedCertificatesIndex;
 import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.operator.ContentVerifier;
 import org.bouncycastle.operator.ContentVerifierProvider;
 
@@ -34,6 +37,7 @@
     private boolean isIndirect;
     private Extensions extensions;
     private GeneralNames issuerName;
+    private volatile RevokedCertificatesIndex revokedIndex;
 
     private static CertificateList parseStream(InputStream stream)
         throws IOException
@@ -123,30 +127,62 @@ public X500Name getIssuer()
         return X500Name.getInstance(x509CRL.getIssuer());
     }
 
-    public X509CRLEntryHolder getRevokedCertificate(BigInteger serialNumber)
+    /**
+     * Return the date on which this CRL was issued.
+     *
+     * @return the thisUpdate date of the CRL.
+     */
+    public Date getThisUpdate()
     {
-        GeneralNames currentCA = issuerName;
-        for (Enumeration en = x509CRL.getRevokedCertificateEnumeration(); en.hasMoreElements();)
+        return x509CRL.getThisUpdate().getDate();
+    }
+
+    /**
+     * Return the date by which the next CRL will be issued.
+     *
+     * @return the nextUpdate date of the CRL, null if it is not set.
+     */
+    public Date getNextUpdate()
+    {
+        Time update = x509CRL.getNextUpdate();
+
+        if (update != null)
         {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)en.nextElement();
+            return update.getDate();
+        }
 
-            if (entry.getUserCertificate().getValue().equals(serialNumber))
-            {
-                return new X509CRLEntryHolder(entry, isIndirect, currentCA);
-            }
+        return null;
+    }
+
+    /**
+     * Return the entry for the passed in serial number, if it is present on the CRL.
+     * <p>
+     * Note: lookups are done using an index of the revoked certificates which is built on first use.
+     * </p>
+     *
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return the CRL entry for the serial number, null if there isn't one.
+     */
+    public X509CRLEntryHolder getRevokedCertificate(BigInteger serialNumber)
+    {
+        RevokedCertificatesIndex index = revokedIndex;
+
+        if (index == null)
+        {
+            index = new RevokedCertificatesIndex(x509CRL.getTBSCertList(), isIndirect);
+            revokedIndex = index;
+        }
 
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+        int[] positions = index.getEntryPositions(serialNumber);
 
-                if (currentCaName != null)
-                {
-                    currentCA = GeneralNames.getInstance(currentCaName.getParsedValue());
-                }
-            }
+        if (positions.length == 0)
+        {
+            return null;
         }
 
-        return null;
+        GeneralNames currentCA = index.getCertificateIssuer(positions[0]);
+
+        return new X509CRLEntryHolder(index.getEntry(positions[0]), isIndirect, (currentCA != null) ? currentCA : issuerName);
     }
 
     /**
@@ -0,0 +1,340 @@
+package org.bouncycastle.cert.ocsp;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * An OCSP responder front end which signs the response for each certificate once per validity
+ * period, rather than once per request.
+ * <p>
+ * Signed single certificate responses are cached as complete OCSPResp encodings, keyed by
+ * CertificateID, until their nextUpdate time, and requests for a single certificate without a
+ * nonce are answered straight from the cache. Requests with a nonce, or for several certificates,
+ * are signed as they arrive. Certificates can be registered so their responses are signed ahead
+ * of time, by calling refresh() or scheduling it on an executor with scheduleRefresh(): once three
+ * quarters of a registered response's validity period have passed it is signed again, so busy
+ * certificates never wait on a signature.
+ * </p>
+ * <p>
+ * The cache knows nothing of revocation as it happens, invalidate() must be called when the
+ * status of a certificate changes if the change is to be seen before the cached response expires.
+ * A response which was being signed when invalidate() was called is never cached, as its status
+ * may have been read before the change.
+ * </p>
+ */
+public class CachingOCSPResponder
+{
+    private final RespID                    responderID;
+    private final ContentSigner             signer;
+    private final X509CertificateHolder[]   chain;
+    private final CertificateStatusProvider statusProvider;
+    private final long                      validityPeriod;
+
+    private final ConcurrentMap cache = new ConcurrentHashMap();
+    private final Map registered = new ConcurrentHashMap();
+
+    /**
+     * Base constructor.
+     *
+     * @param responderID the ID of the responder.
+     * @param signer the signer for responses, calls on it are serialised.
+     * @param chain the certificate chain to include in responses, null if none.
+     * @param statusProvider the source of certificate status.
+     * @param validityPeriod the time in milliseconds from a response's thisUpdate to its nextUpdate.
+     */
+    public CachingOCSPResponder(
+        RespID                    responderID,
+        ContentSigner             signer,
+        X509CertificateHolder[]   chain,
+        CertificateStatusProvider statusProvider,
+        long                      validityPeriod)
+    {
+        if (validityPeriod <= 0)
+        {
+            throw new IllegalArgumentException("validityPeriod must be positive");
+        }
+
+        this.responderID = responderID;
+        this.signer = signer;
+        this.chain = chain;
+        this.statusProvider = statusProvider;
+        this.validityPeriod = validityPeriod;
+    }
+
+    /**
+     * Return an encoded OCSPResp answering the passed in request.
+     *
+     * @param request the request to respond to.
+     * @return the DER encoding of an OCSPResp.
+     * @throws OCSPException if a response cannot be generated.
+     */
+    public byte[] getResponse(
+        OCSPReq request)
+        throws OCSPException
+    {
+        Req[] requests = request.getRequestList();
+
+        if (requests.length == 0)
+        {
+            return encode(new OCSPRespBuilder().build(OCSPRespBuilder.MALFORMED_REQUEST, null));
+        }
+
+        Extension nonce = request.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+
+        if (nonce == null && requests.length == 1)
+        {
+            return getResponse(requests[0].getCertID());
+        }
+
+        CertificateID[] ids = new CertificateID[requests.length];
+
+        for (int i = 0; i != ids.length; i++)
+        {
+            ids[i] = requests[i].getCertID();
+        }
+
+        Extensions responseExtensions = null;
+        if (nonce != null)
+        {
+            responseExtensions = new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, nonce.getExtnValue()));
+        }
+
+        return buildResponse(ids, responseExtensions, System.currentTimeMillis());
+    }
+
+    /**
+     * Return an encoded OCSPResp for a single certificate, from the cache if a current one is present.
+     *
+     * @param certID the ID of the certificate of interest.
+     * @return the DER encoding of an OCSPResp.
+     * @throws OCSPException if a response cannot be generated.
+     */
+    public byte[] getResponse(
+        CertificateID certID)
+        throws OCSPException
+    {
+        long  now = System.currentTimeMillis();
+        Entry entry = (Entry)cache.get(certID);
+
+        if (entry == null || entry.encoding == null || now >= entry.expiry)
+        {
+            entry = sign(certID, now);
+        }
+
+        return Arrays.clone(entry.encoding);
+    }
+
+    /**
+     * Register a certificate to have its response signed ahead of time by refresh().
+     *
+     * @param certID the ID of the certificate of interest.
+     */
+    public void register(
+        CertificateID certID)
+    {
+        registered.put(certID, certID);
+    }
+
+    /**
+     * Stop signing ahead of time for a certificate, any cached response is left in place.
+     *
+     * @param certID the ID of the certificate of interest.
+     */
+    public void unregister(
+        CertificateID certID)
+    {
+        registered.remove(certID);
+    }
+
+    /**
+     * Discard any cached response for a certificate, for use when its status changes. If the
+     * certificate is registered a new response is signed immediately.
+     *
+     * @param certID the ID of the certificate of interest.
+     * @throws OCSPException if a new response cannot be generated.
+     */
+    public void invalidate(
+        CertificateID certID)
+        throws OCSPException
+    {
+        long now = System.currentTimeMillis();
+
+        // replace rather than remove the entry, so a signing already in progress cannot store its
+        // response. A response signed before now will have expired by the time the marker does.
+        cache.put(certID, new Entry(null, now + validityPeriod, now));
+
+        if (registered.containsKey(certID))
+        {
+            sign(certID, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Sign new responses for registered certificates whose responses are missing or due for
+     * renewal, and drop expired responses for certificates which are not registered.
+     *
+     * @return the number of responses signed.
+     * @throws OCSPException the first failure, after every registered certificate has been tried.
+     */
+    public int refresh()
+        throws OCSPException
+    {
+        long          now = System.currentTimeMillis();
+        int           count = 0;
+        OCSPException failure = null;
+
+        for (Iterator it = registered.keySet().iterator(); it.hasNext();)
+        {
+            CertificateID certID = (CertificateID)it.next();
+            Entry         entry = (Entry)cache.get(certID);
+
+            if (entry == null || now >= entry.renewal)
+            {
+                try
+                {
+                    sign(certID, now);
+                    count++;
+                }
+                catch (OCSPException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e;
+                    }
+                }
+            }
+        }
+
+        for (Iterator it = cache.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry e = (Map.Entry)it.next();
+
+            if (now >= ((Entry)e.getValue()).expiry && !registered.containsKey(e.getKey()))
+            {
+                it.remove();
+            }
+        }
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+
+        return count;
+    }
+
+    /**
+     * Run refresh() on an executor at a fixed interval. A failed refresh is retried at the next
+     * interval.
+     *
+     * @param executor the executor to run on.
+     * @param period the interval between refreshes.
+     * @param unit the units period is in.
+     * @return the future for the scheduled task, cancel it to stop the refreshes.
+     */
+    public ScheduledFuture scheduleRefresh(
+        ScheduledExecutorService executor,
+        long                     period,
+        TimeUnit                 unit)
+    {
+        return executor.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    refresh();
+                }
+                catch (OCSPException e)
+                {
+                    // ignore - entries that failed will be tried again on the next run.
+                }
+            }
+        }, 0, period, unit);
+    }
+
+    private Entry sign(CertificateID certID, long now)
+        throws OCSPException
+    {
+        // the entry must be read before the status, if it has changed by the time the response is
+        // signed another response or an invalidation got there first and the response is not cached.
+        Entry observed = (Entry)cache.get(certID);
+        Entry entry = new Entry(buildResponse(new CertificateID[] { certID }, null, now), now + validityPeriod, now + validityPeriod * 3 / 4);
+
+        if (observed == null)
+        {
+            cache.putIfAbsent(certID, entry);
+        }
+        else
+        {
+            cache.replace(certID, observed, entry);
+        }
+
+        return entry;
+    }
+
+    private byte[] buildResponse(CertificateID[] ids, Extensions responseExtensions, long now)
+        throws OCSPException
+    {
+        Date                 thisUpdate = new Date(now);
+        Date                 nextUpdate = new Date(now + validityPeriod);
+        BasicOCSPRespBuilder respBuilder = new BasicOCSPRespBuilder(responderID);
+
+        for (int i = 0; i != ids.length; i++)
+        {
+            respBuilder.addResponse(ids[i], statusProvider.getStatus(ids[i]), thisUpdate, nextUpdate, null);
+        }
+
+        respBuilder.setResponseExtensions(responseExtensions);
+
+        BasicOCSPResp basicResp;
+
+        synchronized (signer)
+        {
+            basicResp = respBuilder.build(signer, chain, thisUpdate);
+        }
+
+        return encode(new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResp));
+    }
+
+    private static byte[] encode(OCSPResp resp)
+        throws OCSPException
+    {
+        try
+        {
+            return resp.getEncoded();
+        }
+        catch (IOException e)
+        {
+            throw new OCSPException("can't encode response: " + e.getMessage(), e);
+        }
+    }
+
+    private static class Entry
+    {
+        final byte[] encoding;      // null for an invalidated entry
+        final long   expiry;
+        final long   renewal;
+
+        Entry(byte[] encoding, long expiry, long renewal)
+        {
+            this.encoding = encoding;
+            this.expiry = expiry;
+            this.renewal = renewal;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.bouncycastle.cert.ocsp;
+
+/**
+ * Source of the current status of certificates, for use by an OCSP responder.
+ */
+public interface CertificateStatusProvider
+{
+    /**
+     * Return the status of the certificate identified by certID.
+     *
+     * @param certID the ID of the certificate of interest.
+     * @return CertificateStatus.GOOD (null), a RevokedStatus, or an UnknownStatus.
+     * @throws OCSPException if the status cannot be determined.
+     */
+    CertificateStatus getStatus(CertificateID certID)
+        throws OCSPException;
+}
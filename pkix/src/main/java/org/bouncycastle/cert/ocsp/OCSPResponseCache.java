@@ -0,0 +1,185 @@
+package org.bouncycastle.cert.ocsp;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.bouncycastle.util.PKIXRevocationCache;
+import org.bouncycastle.util.StoreException;
+
+/**
+ * A client side cache of OCSP responses, so the status of a certificate is only fetched again once
+ * its response is due for update.
+ * <p>
+ * Responses are held in a PKIXRevocationCache keyed by CertificateID, between the thisUpdate and
+ * nextUpdate times of the SingleResp for the certificate. Responses without a nextUpdate time are
+ * never cached, as they indicate newer status information is always available. If the revocation
+ * cache has an executor, responses in regular use are fetched again in the background before
+ * their nextUpdate is reached.
+ * </p>
+ * <p>
+ * The cache does not check responses, the source is expected to return only responses whose
+ * signature and responder have been verified.
+ * </p>
+ */
+public class OCSPResponseCache
+{
+    /**
+     * Source of OCSP responses for a cache, typically a client for an OCSP responder.
+     */
+    public interface ResponseSource
+    {
+        /**
+         * Fetch a verified response covering the certificate identified by certID.
+         *
+         * @param certID the ID of the certificate of interest.
+         * @return a response containing a SingleResp for certID, null if none is available.
+         * @throws OCSPException if the response cannot be fetched.
+         */
+        BasicOCSPResp getResponse(CertificateID certID)
+            throws OCSPException;
+    }
+
+    private final PKIXRevocationCache revocationCache;
+    private final ResponseSource source;
+
+    /**
+     * Base constructor.
+     *
+     * @param revocationCache the cache to hold the responses in.
+     * @param source the source of responses which are not in the cache.
+     */
+    public OCSPResponseCache(
+        PKIXRevocationCache revocationCache,
+        ResponseSource      source)
+    {
+        this.revocationCache = revocationCache;
+        this.source = source;
+    }
+
+    /**
+     * Return a current response covering the certificate identified by certID, fetching one from the
+     * source if none is held.
+     *
+     * @param certID the ID of the certificate of interest.
+     * @return a response containing a SingleResp for certID.
+     * @throws OCSPException if no response can be found.
+     */
+    public BasicOCSPResp getResponse(
+        CertificateID certID)
+        throws OCSPException
+    {
+        ResponseLoader loader = new ResponseLoader();
+        Collection     responses;
+
+        try
+        {
+            responses = revocationCache.get(certID, null, loader);
+        }
+        catch (StoreException e)
+        {
+            if (e.getCause() instanceof OCSPException)
+            {
+                throw (OCSPException)e.getCause();
+            }
+
+            throw new OCSPException("unable to fetch response: " + e.getMessage(), e);
+        }
+
+        if (responses != null)
+        {
+            return (BasicOCSPResp)responses.iterator().next();
+        }
+
+        if (loader.response == null)
+        {
+            throw new OCSPException("no response available for certificate");
+        }
+
+        return loader.response;
+    }
+
+    /**
+     * Return the SingleResp for the certificate identified by certID from a current response.
+     *
+     * @param certID the ID of the certificate of interest.
+     * @return the SingleResp for certID.
+     * @throws OCSPException if no response can be found.
+     */
+    public SingleResp getSingleResp(
+        CertificateID certID)
+        throws OCSPException
+    {
+        SingleResp singleResp = findSingleResp(getResponse(certID), certID);
+
+        if (singleResp == null)
+        {
+            throw new OCSPException("response does not cover certificate");
+        }
+
+        return singleResp;
+    }
+
+    /**
+     * Discard any response held for the certificate identified by certID.
+     *
+     * @param certID the ID of the certificate of interest.
+     */
+    public void invalidate(
+        CertificateID certID)
+    {
+        revocationCache.invalidate(certID, null);
+    }
+
+    private static SingleResp findSingleResp(BasicOCSPResp response, CertificateID certID)
+    {
+        SingleResp[] responses = response.getResponses();
+
+        for (int i = 0; i != responses.length; i++)
+        {
+            if (certID.equals(responses[i].getCertID()))
+            {
+                return responses[i];
+            }
+        }
+
+        return null;
+    }
+
+    private class ResponseLoader
+        implements PKIXRevocationCache.Loader
+    {
+        BasicOCSPResp response;
+
+        public void load(PKIXRevocationCache cache, Object issuer, Object distributionPoint)
+            throws StoreException
+        {
+            CertificateID certID = (CertificateID)issuer;
+
+            try
+            {
+                response = source.getResponse(certID);
+            }
+            catch (OCSPException e)
+            {
+                throw new StoreException("unable to fetch response: " + e.getMessage(), e);
+            }
+
+            if (response == null)
+            {
+                return;
+            }
+
+            SingleResp singleResp = findSingleResp(response, certID);
+
+            if (singleResp == null)
+            {
+                throw new StoreException("response does not cover certificate", new OCSPException("response does not cover certificate"));
+            }
+
+            if (singleResp.getNextUpdate() != null && singleResp.getNextUpdate().after(singleResp.getThisUpdate()))
+            {
+                cache.put(certID, distributionPoint, Collections.singletonList(response), singleResp.getThisUpdate(), singleResp.getNextUpdate());
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.bouncycastle.cert.path.validations;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 
 import org.bouncycastle.asn1.x500.X500Name;
@@ -10,39 +11,61 @@
 import org.bouncycastle.cert.path.CertPathValidationContext;
 import org.bouncycastle.cert.path.CertPathValidationException;
 import org.bouncycastle.util.Memoable;
+import org.bouncycastle.util.PKIXRevocationCache;
 import org.bouncycastle.util.Selector;
 import org.bouncycastle.util.Store;
+import org.bouncycastle.util.StoreException;
 
 public class CRLValidation
     implements CertPathValidation
 {
     private Store crls;
     private X500Name workingIssuerName;
+    private PKIXRevocationCache revocationCache;
 
     public CRLValidation(X500Name trustAnchorName, Store crls)
+    {
+        this(trustAnchorName, crls, null);
+    }
+
+    /**
+     * Create a validation which keeps the CRLs found in the store for each issuer in a revocation
+     * cache, so the store is only searched again once the CRLs are due for update. An issuer whose
+     * CRLs have all passed their nextUpdate is looked up in the store each time.
+     *
+     * @param trustAnchorName the name of the trust anchor.
+     * @param crls the store to find the CRLs in.
+     * @param revocationCache the cache for the CRLs found, null if none.
+     */
+    public CRLValidation(X500Name trustAnchorName, Store crls, PKIXRevocationCache revocationCache)
     {
         this.workingIssuerName = trustAnchorName;
         this.crls = crls;
+        this.revocationCache = revocationCache;
     }
 
     public void validate(CertPathValidationContext context, X509CertificateHolder certificate)
         throws CertPathValidationException
     {
         // TODO: add handling of delta CRLs
-        Collection matches = crls.getMatches(new Selector()
+        Collection matches = null;
+
+        if (revocationCache != null)
         {
-            public boolean match(Object obj)
+            try
             {
-                X509CRLHolder crl = (X509CRLHolder)obj;
-
-                return (crl.getIssuer().equals(workingIssuerName));
+                matches = revocationCache.get(workingIssuerName, null, new CRLLoader(crls));
             }
-
-            public Object clone()
+            catch (StoreException e)
             {
-                return this;
+                throw new CertPathValidationException("unable to find CRLs for " + workingIssuerName + ": " + e.getMessage(), e);
             }
-        });
+        }
+
+        if (matches == null)
+        {
+            matches = findCRLs(crls, workingIssuerName);
+        }
 
         if (matches.isEmpty())
         {
@@ -65,7 +88,7 @@ public Object clone()
 
     public Memoable copy()
     {
-        return new CRLValidation(workingIssuerName, crls);
+        return new CRLValidation(workingIssuerName, crls, revocationCache);
     }
 
     public void reset(Memoable other)
@@ -74,5 +97,58 @@ public void reset(Memoable other)
 
         this.workingIssuerName = v.workingIssuerName;
         this.crls = v.crls;
+        this.revocationCache = v.revocationCache;
+    }
+
+    private static Collection findCRLs(Store crls, final X500Name issuerName)
+    {
+        return crls.getMatches(new Selector()
+        {
+            public boolean match(Object obj)
+            {
+                X509CRLHolder crl = (X509CRLHolder)obj;
+
+                return (crl.getIssuer().equals(issuerName));
+            }
+
+            public Object clone()
+            {
+                return this;
+            }
+        });
+    }
+
+    private static final PKIXRevocationCache.UpdateTimes CRL_UPDATE_TIMES = new PKIXRevocationCache.UpdateTimes()
+    {
+        public Date getThisUpdate(Object value)
+        {
+            return ((X509CRLHolder)value).getThisUpdate();
+        }
+
+        public Date getNextUpdate(Object value)
+        {
+            return ((X509CRLHolder)value).getNextUpdate();
+        }
+    };
+
+    /**
+     * Fetch the CRLs for an issuer from a store, they are cached until the earliest nextUpdate of those
+     * which are still current.
+     */
+    private static class CRLLoader
+        implements PKIXRevocationCache.Loader
+    {
+        private final Store crls;
+
+        CRLLoader(Store crls)
+        {
+            this.crls = crls;
+        }
+
+        public void load(PKIXRevocationCache cache, Object issuer, Object distributionPoint)
+            throws StoreException
+        {
+            cache.putCurrent(issuer, distributionPoint, findCRLs(crls, (X500Name)issuer), CRL_UPDATE_TIMES);
+        }
     }
 }
@@ -4,7 +4,8 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1OctetString;
@@ -39,6 +40,12 @@
  *                                              .setProvider("BC").build());
  *
  * </pre>
+ * <p>
+ * If the generator is constructed with an ExecutorService and there is more than one recipient
+ * generator, each recipient info is generated by its own task while the content is encrypted.
+ * Key agreement recipients using the same originator key should be added to a single
+ * KeyAgreeRecipientInfoGenerator, which shares one originator (or ephemeral) key between them.
+ * </p>
  */
 public class CMSEnvelopedDataGenerator
     extends CMSEnvelopedGenerator
@@ -50,6 +57,18 @@ public CMSEnvelopedDataGenerator()
     {
     }
 
+    /**
+     * Constructor for a generator which wraps the content encryption key for each of its
+     * recipients concurrently on the threads of an executor, while the content is encrypted
+     * on the calling thread.
+     *
+     * @param executor the executor to run the key wrapping on, null to do everything on the calling thread.
+     */
+    public CMSEnvelopedDataGenerator(ExecutorService executor)
+    {
+        super(executor);
+    }
+
     private CMSEnvelopedData doGenerate(
         CMSTypedData content,
         OutputEncryptor contentEncryptor)
@@ -60,11 +79,17 @@ private CMSEnvelopedData doGenerate(
             throw new IllegalStateException("can only use addRecipientGenerator() with this method");
         }
 
-        ASN1EncodableVector     recipientInfos = new ASN1EncodableVector();
+        ASN1EncodableVector     recipientInfos;
         AlgorithmIdentifier     encAlgId;
         ASN1OctetString         encContent;
 
+        GenericKey encKey = contentEncryptor.getKey();
+
+        // the key is fixed, so with an executor the recipients can be done while the content is encrypted.
+        Future[] pendingRecipientInfos = submitRecipientInfos(encKey);
+
         ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        boolean               encrypted = false;
 
         try
         {
@@ -73,11 +98,20 @@ private CMSEnvelopedData doGenerate(
             content.write(cOut);
 
             cOut.close();
+
+            encrypted = true;
         }
         catch (IOException e)
         {
             throw new CMSException("");
         }
+        finally
+        {
+            if (!encrypted)
+            {
+                cancelRecipientInfos(pendingRecipientInfos);
+            }
+        }
 
         byte[] encryptedContent = bOut.toByteArray();
 
@@ -85,14 +119,7 @@ private CMSEnvelopedData doGenerate(
 
         encContent = new BEROctetString(encryptedContent);
 
-        GenericKey encKey = contentEncryptor.getKey();
-
-        for (Iterator it = recipientInfoGenerators.iterator(); it.hasNext();)
-        {
-            RecipientInfoGenerator recipient = (RecipientInfoGenerator)it.next();
-
-            recipientInfos.add(recipient.generate(encKey));
-        }
+        recipientInfos = collectRecipientInfos(encKey, pendingRecipientInfos);
 
         EncryptedContentInfo  eci = new EncryptedContentInfo(
                         content.getContentType(),
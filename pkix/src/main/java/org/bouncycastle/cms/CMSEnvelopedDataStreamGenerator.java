@@ -3,7 +3,7 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Integer;
@@ -53,6 +53,18 @@ public CMSEnvelopedDataStreamGenerator()
     {
     }
 
+    /**
+     * Constructor for a generator which wraps the content encryption key for each of its
+     * recipients concurrently on the threads of an executor. The recipient infos precede the
+     * content in the encoding, so open() returns once they are all done.
+     *
+     * @param executor the executor to run the key wrapping on, null to do everything on the calling thread.
+     */
+    public CMSEnvelopedDataStreamGenerator(ExecutorService executor)
+    {
+        super(executor);
+    }
+
     /**
      * Set the underlying string size for encapsulated data
      * 
@@ -91,16 +103,8 @@ private OutputStream doOpen(
         OutputEncryptor      encryptor)
         throws IOException, CMSException
     {
-        ASN1EncodableVector recipientInfos = new ASN1EncodableVector();
         GenericKey encKey = encryptor.getKey();
-        Iterator it = recipientInfoGenerators.iterator();
-
-        while (it.hasNext())
-        {
-            RecipientInfoGenerator recipient = (RecipientInfoGenerator)it.next();
-
-            recipientInfos.add(recipient.generate(encKey));
-        }
+        ASN1EncodableVector recipientInfos = collectRecipientInfos(encKey, submitRecipientInfos(encKey));
 
         return open(dataType, out, recipientInfos, encryptor);
     }
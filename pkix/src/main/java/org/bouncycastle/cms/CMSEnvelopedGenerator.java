@@ -2,13 +2,20 @@
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.cms.OriginatorInfo;
 import org.bouncycastle.asn1.kisa.KISAObjectIdentifiers;
 import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
 import org.bouncycastle.asn1.ntt.NTTObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.operator.GenericKey;
 
 /**
  * General class for generating a CMS enveloped-data message.
@@ -46,11 +53,25 @@
 
     protected OriginatorInfo originatorInfo;
 
+    final ExecutorService executor;
+
     /**
      * base constructor
      */
     public CMSEnvelopedGenerator()
     {
+        this(null);
+    }
+
+    /**
+     * Constructor for a generator which wraps the content encryption key for each of its
+     * recipients concurrently on the threads of an executor.
+     *
+     * @param executor the executor to run the key wrapping on, null to do everything on the calling thread.
+     */
+    public CMSEnvelopedGenerator(ExecutorService executor)
+    {
+        this.executor = executor;
     }
 
     public void setUnprotectedAttributeGenerator(CMSAttributeTableGenerator unprotectedAttributeGenerator)
@@ -72,4 +93,112 @@ public void addRecipientInfoGenerator(RecipientInfoGenerator recipientGenerator)
     {
         recipientInfoGenerators.add(recipientGenerator);
     }
+
+    /**
+     * Start generating the recipient infos for encKey on the executor.
+     *
+     * @return the pending recipient infos, null if they are to be generated on the calling thread.
+     */
+    Future[] submitRecipientInfos(final GenericKey encKey)
+    {
+        if (executor == null || recipientInfoGenerators.size() < 2)
+        {
+            return null;
+        }
+
+        Future[] results = new Future[recipientInfoGenerators.size()];
+
+        for (int i = 0; i != results.length; i++)
+        {
+            final RecipientInfoGenerator recipient = (RecipientInfoGenerator)recipientInfoGenerators.get(i);
+
+            results[i] = executor.submit(new Callable()
+            {
+                public Object call()
+                    throws CMSException
+                {
+                    return recipient.generate(encKey);
+                }
+            });
+        }
+
+        return results;
+    }
+
+    /**
+     * Return the recipient infos for encKey, in the order their generators were added.
+     *
+     * @param encKey the content encryption key.
+     * @param pending the result of submitRecipientInfos(), null to generate on the calling thread.
+     */
+    ASN1EncodableVector collectRecipientInfos(GenericKey encKey, Future[] pending)
+        throws CMSException
+    {
+        ASN1EncodableVector recipientInfos = new ASN1EncodableVector();
+
+        if (pending == null)
+        {
+            for (int i = 0; i != recipientInfoGenerators.size(); i++)
+            {
+                RecipientInfoGenerator recipient = (RecipientInfoGenerator)recipientInfoGenerators.get(i);
+
+                recipientInfos.add(recipient.generate(encKey));
+            }
+
+            return recipientInfos;
+        }
+
+        for (int i = 0; i != pending.length; i++)
+        {
+            try
+            {
+                recipientInfos.add((ASN1Encodable)pending[i].get());
+            }
+            catch (InterruptedException e)
+            {
+                cancelRecipientInfos(pending);
+
+                Thread.currentThread().interrupt();
+
+                throw new CMSException("interrupted waiting for recipients", e);
+            }
+            catch (ExecutionException e)
+            {
+                cancelRecipientInfos(pending);
+
+                Throwable cause = e.getCause();
+
+                if (cause instanceof CMSException)
+                {
+                    throw (CMSException)cause;
+                }
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException)cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error)cause;
+                }
+
+                throw new CMSException("exception generating recipients: " + cause.getMessage(), (Exception)cause);
+            }
+        }
+
+        return recipientInfos;
+    }
+
+    /**
+     * Cancel any recipient infos still waiting to be generated.
+     */
+    static void cancelRecipientInfos(Future[] pending)
+    {
+        if (pending != null)
+        {
+            for (int i = 0; i != pending.length; i++)
+            {
+                pending[i].cancel(true);
+            }
+        }
+    }
 }
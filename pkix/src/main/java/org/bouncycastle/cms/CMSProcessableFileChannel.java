@@ -0,0 +1,174 @@
+package org.bouncycastle.cms;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.util.io.Streams;
+
+/**
+ * a holding class for a file of data to be processed using NIO.
+ * <p>
+ * The file is either read through a FileChannel into a direct buffer, or memory mapped, and the
+ * buffer is handed to the output stream as a ByteBuffer where the stream supports it. The digest and
+ * signature streams produced by the JCA operators accept ByteBuffers, so when signing or digesting
+ * a file with them the data is passed to the MessageDigest or Signature without being copied
+ * into a byte array first. Other streams are written to in the usual way.
+ * </p>
+ * <p>
+ * The direct buffer is allocated on the first call to write() and kept for later calls, so an
+ * instance should not be held on to longer than it is needed.
+ * </p>
+ */
+public class CMSProcessableFileChannel
+    implements CMSTypedData, CMSReadable
+{
+    private static final int DEFAULT_BUF_SIZE = 1024 * 1024;
+
+    private final ASN1ObjectIdentifier type;
+    private final File file;
+    private final int bufSize;
+    private final boolean mapFile;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Create a processable for file reading it into a 1MB direct buffer.
+     *
+     * @param file the file of data.
+     */
+    public CMSProcessableFileChannel(
+        File file)
+    {
+        this(file, DEFAULT_BUF_SIZE);
+    }
+
+    /**
+     * Create a processable for file reading it into a direct buffer of bufSize bytes.
+     *
+     * @param file the file of data.
+     * @param bufSize the size of the buffer to read into.
+     */
+    public CMSProcessableFileChannel(
+        File file,
+        int  bufSize)
+    {
+        this(new ASN1ObjectIdentifier(CMSObjectIdentifiers.data.getId()), file, bufSize, false);
+    }
+
+    /**
+     * Create a processable for file of the given content type.
+     *
+     * @param type the content type of the data.
+     * @param file the file of data.
+     * @param bufSize the size of the buffer to read into if the file is not mapped.
+     * @param mapFile true if the file should be memory mapped rather than read into a buffer.
+     */
+    public CMSProcessableFileChannel(
+        ASN1ObjectIdentifier type,
+        File                 file,
+        int                  bufSize,
+        boolean              mapFile)
+    {
+        if (bufSize < 1)
+        {
+            throw new IllegalArgumentException("bufSize must be at least 1");
+        }
+
+        this.type = type;
+        this.file = file;
+        this.bufSize = bufSize;
+        this.mapFile = mapFile;
+    }
+
+    public InputStream getInputStream()
+        throws IOException, CMSException
+    {
+        return new BufferedInputStream(new FileInputStream(file), 32 * 1024);
+    }
+
+    public void write(OutputStream zOut)
+        throws IOException, CMSException
+    {
+        if (mapFile)
+        {
+            MappedFile mapped = new MappedFile(file);
+
+            mapped.write(zOut, 0, mapped.length());
+
+            return;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer  buf = takeBuffer(channel.size());
+
+            try
+            {
+                while (channel.read(buf) >= 0)
+                {
+                    buf.flip();
+                    Streams.writeBuffer(buf, zOut);
+                    buf.clear();
+                }
+            }
+            finally
+            {
+                returnBuffer(buf);
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /*
+     * direct buffers are expensive to allocate, so one is kept between writes - a write running
+     * at the same time as another gets a buffer of its own.
+     */
+    private synchronized ByteBuffer takeBuffer(long fileSize)
+    {
+        ByteBuffer buf = buffer;
+
+        buffer = null;
+
+        if (buf == null)
+        {
+            buf = ByteBuffer.allocateDirect((int)Math.max(1, Math.min(bufSize, fileSize)));
+        }
+
+        return buf;
+    }
+
+    private synchronized void returnBuffer(ByteBuffer buf)
+    {
+        buf.clear();
+
+        buffer = buf;
+    }
+
+    /**
+     * Return the file handle.
+     */
+    public Object getContent()
+    {
+        return file;
+    }
+
+    public ASN1ObjectIdentifier getContentType()
+    {
+        return type;
+    }
+}
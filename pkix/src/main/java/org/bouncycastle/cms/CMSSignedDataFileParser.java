@@ -0,0 +1,638 @@
+package org.bouncycastle.cms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.SignerInfo;
+import org.bouncycastle.util.Store;
+
+/**
+ * Parsing class for a CMS Signed Data object held in a file, which memory maps the file rather
+ * than reading it as a stream.
+ * <p>
+ * On construction the parser walks the ASN.1 headers of the SignedData to find where the
+ * encapsulated content, certificates, CRLs and signer infos are in the file. Where the content
+ * has a definite length encoding it is stepped over in one go, where it has been written as an
+ * indefinite length constructed OCTET STRING only the header of each chunk is read. The
+ * certificates, CRLs and signer infos can then be got at in any order without the content being
+ * read at all.
+ * </p>
+ * <p>
+ * The content is only read when a signer is verified, or when getSignedContent() is read, in
+ * which case the content digest is calculated straight from the mapped file. Unlike the
+ * CMSSignedDataParser any number of signers can be verified, with the content being read once
+ * for each.
+ * </p>
+ * <pre>
+ *      CMSSignedDataFileParser sp = new CMSSignedDataFileParser(sigFile);
+ *
+ *      Store                   certStore = sp.getCertificates();
+ *      SignerInformationStore  signers = sp.getSignerInfos();
+ *
+ *      for (Iterator it = signers.getSigners().iterator(); it.hasNext();)
+ *      {
+ *          SignerInformation     signer = (SignerInformation)it.next();
+ *          X509CertificateHolder cert = (X509CertificateHolder)certStore.getMatches(signer.getSID()).iterator().next();
+ *
+ *          System.out.println("verify returns: " + signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider("BC").build(cert)));
+ *      }
+ * </pre>
+ */
+public class CMSSignedDataFileParser
+{
+    private static final CMSSignedHelper HELPER = CMSSignedHelper.INSTANCE;
+
+    private static final int SEQUENCE = BERTags.SEQUENCE | BERTags.CONSTRUCTED;
+    private static final int SET = BERTags.SET | BERTags.CONSTRUCTED;
+    private static final int TAGGED_0 = BERTags.TAGGED | BERTags.CONSTRUCTED;
+    private static final int TAGGED_1 = BERTags.TAGGED | BERTags.CONSTRUCTED | 1;
+
+    private final MappedFile            sigData;
+    private final int                   version;
+    private final ASN1ObjectIdentifier  signedContentType;
+    private final MappedContent         signedContent;
+    private final ASN1Set               signerInfos;
+
+    private ASN1Set                     certSet;
+    private ASN1Set                     crlSet;
+    private SignerInformationStore      signerInfoStore;
+
+    /**
+     * Base constructor - with encapsulated content.
+     *
+     * @param sigData the file containing the signed data object.
+     * @throws CMSException if the file cannot be mapped or does not contain a signed data object.
+     */
+    public CMSSignedDataFileParser(
+        File sigData)
+        throws CMSException
+    {
+        this(null, sigData);
+    }
+
+    /**
+     * Constructor for detached content, the content file is mapped as well.
+     *
+     * @param signedContent the file containing the content that was signed, null if the content is encapsulated.
+     * @param sigData the file containing the signed data object.
+     * @throws CMSException if a file cannot be mapped or does not contain a signed data object.
+     */
+    public CMSSignedDataFileParser(
+        File signedContent,
+        File sigData)
+        throws CMSException
+    {
+        try
+        {
+            this.sigData = new MappedFile(sigData);
+
+            Header contentInfo = readHeader(0, SEQUENCE);
+            Header contentType = readHeader(contentInfo.contentStart, BERTags.OBJECT_IDENTIFIER);
+
+            if (!CMSObjectIdentifiers.signedData.equals(readObject(contentType)))
+            {
+                throw new CMSException("file does not contain signed data");
+            }
+
+            Header content = readHeader(end(contentType), TAGGED_0);
+            Header signedData = readHeader(content.contentStart, SEQUENCE);
+
+            Header versionHdr = readHeader(signedData.contentStart, BERTags.INTEGER);
+            Header digestAlgs = readHeader(end(versionHdr), SET);
+            Header encapContentInfo = readHeader(end(digestAlgs), SEQUENCE);
+            Header eContentType = readHeader(encapContentInfo.contentStart, BERTags.OBJECT_IDENTIFIER);
+
+            this.version = ASN1Integer.getInstance(readObject(versionHdr)).getValue().intValue();
+            this.signedContentType = ASN1ObjectIdentifier.getInstance(readObject(eContentType));
+
+            long pos = end(eContentType);
+
+            if (signedContent != null)
+            {
+                MappedFile contentFile = new MappedFile(signedContent);
+
+                this.signedContent = new MappedContent(signedContentType, contentFile, -1);
+            }
+            else if (!isEndOfContents(encapContentInfo, pos))
+            {
+                Header eContent = readHeader(pos, TAGGED_0);
+
+                this.signedContent = new MappedContent(signedContentType, this.sigData, eContent.contentStart);
+            }
+            else
+            {
+                this.signedContent = null;
+            }
+
+            pos = end(encapContentInfo);
+
+            ASN1Set signerInfos = null;
+
+            while (!isEndOfContents(signedData, pos))
+            {
+                Header hdr = readHeader(pos);
+
+                switch (hdr.tag)
+                {
+                case TAGGED_0:
+                    certSet = ASN1Set.getInstance((ASN1TaggedObject)readObject(hdr), false);
+                    break;
+                case TAGGED_1:
+                    crlSet = ASN1Set.getInstance((ASN1TaggedObject)readObject(hdr), false);
+                    break;
+                case SET:
+                    signerInfos = ASN1Set.getInstance(readObject(hdr));
+                    break;
+                default:
+                    throw new CMSException("unknown tag in signed data: " + hdr.tag);
+                }
+
+                pos = end(hdr);
+            }
+
+            if (signerInfos == null)
+            {
+                throw new CMSException("signed data has no signer infos");
+            }
+
+            this.signerInfos = signerInfos;
+        }
+        catch (IOException e)
+        {
+            throw new CMSException("io exception: " + e.getMessage(), e);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new CMSException("malformed signed data: " + e.getMessage(), e);
+        }
+        catch (ClassCastException e)
+        {
+            throw new CMSException("malformed signed data: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Return the version number for the SignedData object
+     *
+     * @return the version number
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Return the a string representation of the OID associated with the
+     * encapsulated content info structure carried in the signed data.
+     *
+     * @return the OID for the content type.
+     */
+    public String getSignedContentTypeOID()
+    {
+        return signedContentType.getId();
+    }
+
+    /**
+     * Return a stream reading the signed content from the mapped file.
+     *
+     * @return the signed content, null if there is none.
+     */
+    public CMSTypedStream getSignedContent()
+        throws CMSException
+    {
+        if (signedContent == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new CMSTypedStream(signedContentType, signedContent.getInputStream());
+        }
+        catch (IOException e)
+        {
+            throw new CMSException("unable to read content: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * return the collection of signers that are associated with the
+     * signatures for the message. The content digest for each signer is
+     * calculated from the mapped file when the signer is verified.
+     */
+    public SignerInformationStore getSignerInfos()
+    {
+        if (signerInfoStore == null)
+        {
+            List infos = new ArrayList();
+
+            for (int i = 0; i != signerInfos.size(); i++)
+            {
+                SignerInfo info = SignerInfo.getInstance(signerInfos.getObjectAt(i));
+
+                infos.add(new SignerInformation(info, signedContentType, signedContent, null));
+            }
+
+            signerInfoStore = new SignerInformationStore(infos);
+        }
+
+        return signerInfoStore;
+    }
+
+    /**
+     * Return any X.509 certificate objects in this SignedData structure as a Store of X509CertificateHolder objects.
+     *
+     * @return a Store of X509CertificateHolder objects.
+     */
+    public Store getCertificates()
+    {
+        return HELPER.getCertificates(certSet);
+    }
+
+    /**
+     * Return any X.509 CRL objects in this SignedData structure as a Store of X509CRLHolder objects.
+     *
+     * @return a Store of X509CRLHolder objects.
+     */
+    public Store getCRLs()
+    {
+        return HELPER.getCRLs(crlSet);
+    }
+
+    /**
+     * Return any X.509 attribute certificate objects in this SignedData structure as a Store of X509AttributeCertificateHolder objects.
+     *
+     * @return a Store of X509AttributeCertificateHolder objects.
+     */
+    public Store getAttributeCertificates()
+    {
+        return HELPER.getAttributeCertificates(certSet);
+    }
+
+    /**
+     * Return any OtherRevocationInfo OtherRevInfo objects of the type indicated by otherRevocationInfoFormat in
+     * this SignedData structure.
+     *
+     * @param otherRevocationInfoFormat OID of the format type been looked for.
+     *
+     * @return a Store of ASN1Encodable objects representing any objects of otherRevocationInfoFormat found.
+     */
+    public Store getOtherRevocationInfo(ASN1ObjectIdentifier otherRevocationInfoFormat)
+    {
+        return HELPER.getOtherRevocationInfo(otherRevocationInfoFormat, crlSet);
+    }
+
+    private Header readHeader(long pos, int expectedTag)
+        throws IOException
+    {
+        Header hdr = readHeader(sigData, pos);
+
+        if (hdr.tag != expectedTag)
+        {
+            throw new IOException("unexpected tag " + hdr.tag + " at offset " + pos);
+        }
+
+        return hdr;
+    }
+
+    private Header readHeader(long pos)
+        throws IOException
+    {
+        return readHeader(sigData, pos);
+    }
+
+    private long end(Header hdr)
+        throws IOException
+    {
+        return end(sigData, hdr);
+    }
+
+    private boolean isEndOfContents(Header parent, long pos)
+        throws IOException
+    {
+        if (parent.length < 0)
+        {
+            return sigData.get(pos) == 0 && sigData.get(pos + 1) == 0;
+        }
+
+        return pos >= parent.contentStart + parent.length;
+    }
+
+    private ASN1Primitive readObject(Header hdr)
+        throws IOException
+    {
+        long len = end(hdr) - hdr.start;
+
+        if (len > Integer.MAX_VALUE)
+        {
+            throw new IOException("object at offset " + hdr.start + " too large");
+        }
+
+        return new ASN1InputStream(sigData.getInputStream(hdr.start, len), (int)len).readObject();
+    }
+
+    /**
+     * Read the tag and length of the object starting at pos. High tag numbers are not needed for
+     * the structures read here, so they are rejected.
+     */
+    private static Header readHeader(MappedFile file, long pos)
+        throws IOException
+    {
+        int  tag = file.get(pos);
+        long p = pos + 1;
+
+        if ((tag & 0x1f) == 0x1f)
+        {
+            throw new IOException("high tag number at offset " + pos + " not supported");
+        }
+
+        int  first = file.get(p++);
+        long length;
+
+        if (first == 0x80)
+        {
+            if ((tag & BERTags.CONSTRUCTED) == 0)
+            {
+                throw new IOException("indefinite length primitive encoding at offset " + pos);
+            }
+
+            length = -1;
+        }
+        else if (first < 0x80)
+        {
+            length = first;
+        }
+        else
+        {
+            int size = first & 0x7f;
+
+            if (size > 7)
+            {
+                throw new IOException("length too large at offset " + pos);
+            }
+
+            length = 0;
+            for (int i = 0; i != size; i++)
+            {
+                length = (length << 8) | file.get(p++);
+            }
+        }
+
+        if (length > file.length() - p)
+        {
+            throw new IOException("length at offset " + pos + " runs past end of file");
+        }
+
+        return new Header(tag, pos, p, length);
+    }
+
+    /**
+     * Return the offset just past the end of the object, for an indefinite length object this
+     * means walking the headers of its contents.
+     */
+    private static long end(MappedFile file, Header hdr)
+        throws IOException
+    {
+        if (hdr.length >= 0)
+        {
+            return hdr.contentStart + hdr.length;
+        }
+
+        long pos = hdr.contentStart;
+
+        while (file.get(pos) != 0 || file.get(pos + 1) != 0)
+        {
+            pos = end(file, readHeader(file, pos));
+        }
+
+        return pos + 2;
+    }
+
+    private static class Header
+    {
+        final int  tag;
+        final long start;
+        final long contentStart;
+        final long length;
+
+        Header(int tag, long start, long contentStart, long length)
+        {
+            this.tag = tag;
+            this.start = start;
+            this.contentStart = contentStart;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Content in a mapped file, either a whole file or an OCTET STRING, primitive or
+     * constructed, starting at a given offset.
+     */
+    private static class MappedContent
+        implements CMSTypedData, CMSReadable
+    {
+        private final ASN1ObjectIdentifier type;
+        private final MappedFile           file;
+        private final long                 octetsPos;
+
+        MappedContent(ASN1ObjectIdentifier type, MappedFile file, long octetsPos)
+        {
+            this.type = type;
+            this.file = file;
+            this.octetsPos = octetsPos;
+        }
+
+        public InputStream getInputStream()
+            throws IOException
+        {
+            if (octetsPos < 0)
+            {
+                return file.getInputStream(0, file.length());
+            }
+
+            return new ChunkInputStream(file, octetsPos);
+        }
+
+        public void write(OutputStream out)
+            throws IOException
+        {
+            if (octetsPos < 0)
+            {
+                file.write(out, 0, file.length());
+                return;
+            }
+
+            ChunkWalker walker = new ChunkWalker(file, octetsPos);
+            Header      chunk;
+
+            while ((chunk = walker.next()) != null)
+            {
+                file.write(out, chunk.contentStart, chunk.length);
+            }
+        }
+
+        public Object getContent()
+        {
+            return null;
+        }
+
+        public ASN1ObjectIdentifier getContentType()
+        {
+            return type;
+        }
+    }
+
+    /**
+     * Walk an OCTET STRING returning the header of each primitive chunk in turn.
+     */
+    private static class ChunkWalker
+    {
+        private final MappedFile file;
+        private final List       ends = new ArrayList();
+
+        private long    pos;
+        private boolean started;
+
+        ChunkWalker(MappedFile file, long pos)
+        {
+            this.file = file;
+            this.pos = pos;
+        }
+
+        Header next()
+            throws IOException
+        {
+            for (;;)
+            {
+                if (!ends.isEmpty())
+                {
+                    long end = ((Long)ends.get(ends.size() - 1)).longValue();
+
+                    if (end < 0 ? (file.get(pos) == 0 && file.get(pos + 1) == 0) : pos >= end)
+                    {
+                        if (end < 0)
+                        {
+                            pos += 2;
+                        }
+
+                        ends.remove(ends.size() - 1);
+
+                        if (ends.isEmpty())
+                        {
+                            return null;
+                        }
+
+                        continue;
+                    }
+                }
+                else if (started)
+                {
+                    return null;
+                }
+
+                Header hdr = readHeader(file, pos);
+
+                started = true;
+
+                if ((hdr.tag & ~BERTags.CONSTRUCTED) != BERTags.OCTET_STRING)
+                {
+                    throw new IOException("unexpected tag " + hdr.tag + " in octet string at offset " + pos);
+                }
+
+                if ((hdr.tag & BERTags.CONSTRUCTED) != 0)
+                {
+                    ends.add(new Long((hdr.length < 0) ? -1 : hdr.contentStart + hdr.length));
+                    pos = hdr.contentStart;
+                }
+                else
+                {
+                    pos = hdr.contentStart + hdr.length;
+
+                    return hdr;
+                }
+            }
+        }
+    }
+
+    private static class ChunkInputStream
+        extends InputStream
+    {
+        private final MappedFile  file;
+        private final ChunkWalker walker;
+
+        private long pos;
+        private long remaining;
+
+        ChunkInputStream(MappedFile file, long octetsPos)
+        {
+            this.file = file;
+            this.walker = new ChunkWalker(file, octetsPos);
+        }
+
+        private boolean nextChunk()
+            throws IOException
+        {
+            while (remaining == 0)
+            {
+                Header chunk = walker.next();
+
+                if (chunk == null)
+                {
+                    return false;
+                }
+
+                pos = chunk.contentStart;
+                remaining = chunk.length;
+            }
+
+            return true;
+        }
+
+        public int read()
+            throws IOException
+        {
+            if (!nextChunk())
+            {
+                return -1;
+            }
+
+            remaining--;
+
+            return file.get(pos++);
+        }
+
+        public int read(byte[] buf, int off, int len)
+            throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+
+            if (!nextChunk())
+            {
+                return -1;
+            }
+
+            int count = (int)Math.min(len, remaining);
+
+            file.read(pos, buf, off, count);
+            pos += count;
+            remaining -= count;
+
+            return count;
+        }
+    }
+}
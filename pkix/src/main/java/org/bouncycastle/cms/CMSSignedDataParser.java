@@ -9,6 +9,7 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
@@ -35,6 +36,7 @@
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.util.Store;
 import org.bouncycastle.util.io.Streams;
+import org.bouncycastle.util.io.TeeInputStream;
 
 /**
  * Parsing class for an CMS Signed Data object from an input stream.
@@ -79,6 +81,11 @@
  *          CMSSignedDataParser     ep = new CMSSignedDataParser(new BufferedInputStream(encapSigData, bufSize));
  *  </pre>
  *  where bufSize is a suitably large buffer size.
+ * <p>
+ * If the parser is constructed with an ExecutorService and the message uses more than one digest
+ * algorithm, the content is collected into large buffers as it is read and each digest is
+ * updated by its own task.
+ * </p>
  */
 public class CMSSignedDataParser
     extends CMSContentInfoParser
@@ -89,6 +96,8 @@
     private ASN1ObjectIdentifier    _signedContentType;
     private CMSTypedStream          _signedContent;
     private Map                     digests;
+    private ExecutorService         executor;
+    private ParallelOutputStream    parallelDigests;
 
     private SignerInformationStore  _signerInfoStore;
     private ASN1Set                 _certSet, _crlSet;
@@ -134,11 +143,30 @@ public CMSSignedDataParser(
         CMSTypedStream  signedContent,
         InputStream     sigData)
         throws CMSException
+    {
+        this(digestCalculatorProvider, signedContent, sigData, null);
+    }
+
+    /**
+     * Constructor for a parser which updates the content digests on the threads of an executor.
+     *
+     * @param digestCalculatorProvider for generating accumulating digests
+     * @param signedContent the content that was signed, null if the content is encapsulated.
+     * @param sigData the signature object stream.
+     * @param executor the executor to run the digest calculations on, null to do everything on the calling thread.
+     */
+    public CMSSignedDataParser(
+        DigestCalculatorProvider digestCalculatorProvider,
+        CMSTypedStream  signedContent,
+        InputStream     sigData,
+        ExecutorService executor)
+        throws CMSException
     {
         super(sigData);
         
         try
         {
+            this.executor = executor;
             _signedContent = signedContent;
             _signedData = SignedDataParser.getInstance(_contentInfo.getContent(BERTags.SEQUENCE));
             digests = new HashMap();
@@ -228,6 +256,19 @@ public SignerInformationStore getSignerInfos()
             
             List      signerInfos = new ArrayList();
             Map       hashes = new HashMap();
+
+            if (parallelDigests != null)
+            {
+                try
+                {
+                    // make sure everything read has reached the digests.
+                    parallelDigests.close();
+                }
+                catch (IOException e)
+                {
+                    throw new CMSException("exception calculating digests: " + e.getMessage(), e);
+                }
+            }
             
             Iterator  it = digests.keySet().iterator();
             while (it.hasNext())
@@ -357,12 +398,71 @@ public CMSTypedStream getSignedContent()
             return null;
         }
 
-        InputStream digStream = CMSUtils.attachDigestsToInputStream(
-            digests.values(), _signedContent.getContentStream());
+        InputStream digStream;
+
+        if (executor != null && digests.size() > 1)
+        {
+            digStream = new TeeInputStream(_signedContent.getContentStream(), createParallelDigests());
+        }
+        else
+        {
+            digStream = CMSUtils.attachDigestsToInputStream(
+                digests.values(), _signedContent.getContentStream());
+        }
 
         return new CMSTypedStream(_signedContent.getContentType(), digStream);
     }
 
+    /**
+     * Update the content digests by having the signed content write itself to them, rather than
+     * by reading it through the stream returned by getSignedContent(). This allows detached content
+     * which is produced by a writer, such as a MIME body part which is canonicalised as it is
+     * written, to be verified without first being copied to a buffer or a file.
+     * <p>
+     * This method must be called before getSignerInfos(), and the parser should have been created
+     * with an empty stream for the signed content so the content is only digested once.
+     * </p>
+     * @param content the content that was signed.
+     * @throws CMSException if the content cannot be written.
+     */
+    public void digestContent(CMSProcessable content)
+        throws CMSException
+    {
+        OutputStream digOut;
+
+        if (executor != null && digests.size() > 1)
+        {
+            digOut = createParallelDigests();
+        }
+        else
+        {
+            digOut = CMSUtils.attachDigestsToOutputStream(digests.values(), null);
+        }
+
+        try
+        {
+            content.write(CMSUtils.getSafeOutputStream(digOut));
+        }
+        catch (IOException e)
+        {
+            throw new CMSException("unable to write content for verification: " + e.getMessage(), e);
+        }
+    }
+
+    private OutputStream createParallelDigests()
+    {
+        List outs = new ArrayList();
+
+        for (Iterator it = digests.values().iterator(); it.hasNext();)
+        {
+            outs.add(((DigestCalculator)it.next()).getOutputStream());
+        }
+
+        parallelDigests = new ParallelOutputStream(outs, executor, ParallelOutputStream.DEFAULT_BUFFER_SIZE);
+
+        return parallelDigests;
+    }
+
     /**
      * Replace the signerinformation store associated with the passed
      * in message contained in the stream original with the new one passed in.
@@ -1,9 +1,16 @@
 package org.bouncycastle.cms;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Integer;
@@ -15,6 +22,8 @@
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
 import org.bouncycastle.asn1.cms.SignerInfo;
+import org.bouncycastle.util.io.ByteBufferSink;
+import org.bouncycastle.util.io.Streams;
 
 /**
  * General class for generating a pkcs7-signature message stream.
@@ -43,10 +52,17 @@
  *      
  *      sigOut.close();
  * </pre>
+ * <p>
+ * If the generator is constructed with an ExecutorService and there is more than one signer, the
+ * content is collected into large buffers and each signer's digest is updated by its own task,
+ * and the final signatures are also calculated concurrently.
+ * </p>
  */
 public class CMSSignedDataStreamGenerator
     extends CMSSignedGenerator
 {
+    private final ExecutorService executor;
+
     private int  _bufferSize;
 
     /**
@@ -54,6 +70,18 @@
      */
     public CMSSignedDataStreamGenerator()
     {
+        this(null);
+    }
+
+    /**
+     * Constructor for a generator which shares the digest and signature calculations for
+     * multiple signers out across the threads of an executor.
+     *
+     * @param executor the executor to run the calculations on, null to do everything on the calling thread.
+     */
+    public CMSSignedDataStreamGenerator(ExecutorService executor)
+    {
+        this.executor = executor;
     }
 
     /**
@@ -223,7 +251,28 @@ public OutputStream open(
         OutputStream contentStream = CMSUtils.getSafeTeeOutputStream(dataOutputStream, encapStream);
 
         // Let all the signers see the data as it is written
-        OutputStream sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream);
+        OutputStream sigStream;
+
+        if (executor != null && signerGens.size() > 1)
+        {
+            List outs = new ArrayList();
+
+            for (Iterator it = signerGens.iterator(); it.hasNext();)
+            {
+                outs.add(((SignerInfoGenerator)it.next()).getCalculatingOutputStream());
+            }
+
+            if (encapStream != null || dataOutputStream != null)
+            {
+                outs.add(contentStream);
+            }
+
+            sigStream = new ParallelOutputStream(outs, executor, ParallelOutputStream.DEFAULT_BUFFER_SIZE);
+        }
+        else
+        {
+            sigStream = CMSUtils.attachSignersToOutputStream(signerGens, contentStream);
+        }
 
         return new CmsSignedDataOutputStream(sigStream, eContentType, sGen, sigGen, eiGen);
     }
@@ -349,8 +398,84 @@ private boolean checkForVersion3(List signerInfos, List signerInfoGens)
         return false;
     }
 
+    private SignerInfo[] generateSignerInfos(final ASN1ObjectIdentifier contentOID)
+        throws IOException
+    {
+        SignerInfo[] signerInfos = new SignerInfo[signerGens.size()];
+
+        if (executor == null || signerInfos.length < 2)
+        {
+            for (int i = 0; i != signerInfos.length; i++)
+            {
+                try
+                {
+                    signerInfos[i] = ((SignerInfoGenerator)signerGens.get(i)).generate(contentOID);
+                }
+                catch (CMSException e)
+                {
+                    throw new CMSStreamException("exception generating signers: " + e.getMessage(), e);
+                }
+            }
+
+            return signerInfos;
+        }
+
+        Future[] results = new Future[signerInfos.length];
+
+        for (int i = 0; i != results.length; i++)
+        {
+            final SignerInfoGenerator sigGen = (SignerInfoGenerator)signerGens.get(i);
+
+            results[i] = executor.submit(new Callable()
+            {
+                public Object call()
+                    throws CMSException
+                {
+                    return sigGen.generate(contentOID);
+                }
+            });
+        }
+
+        for (int i = 0; i != results.length; i++)
+        {
+            try
+            {
+                signerInfos[i] = (SignerInfo)results[i].get();
+            }
+            catch (InterruptedException e)
+            {
+                for (int j = i; j != results.length; j++)
+                {
+                    results[j].cancel(true);
+                }
+
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("interrupted waiting for signers");
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException)cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error)cause;
+                }
+
+                throw new CMSStreamException("exception generating signers: " + cause.getMessage(), cause);
+            }
+        }
+
+        return signerInfos;
+    }
+
     private class CmsSignedDataOutputStream
         extends OutputStream
+        implements ByteBufferSink
     {
         private OutputStream         _out;
         private ASN1ObjectIdentifier _contentOID;
@@ -395,6 +520,13 @@ public void write(
             _out.write(bytes);
         }
         
+        public void write(
+            ByteBuffer buf)
+            throws IOException
+        {
+            Streams.writeBuffer(buf, _out);
+        }
+
         public void close()
             throws IOException
         {
@@ -426,23 +558,17 @@ public void close()
             // add the generated SignerInfo objects
             //
 
-            for (Iterator it = signerGens.iterator(); it.hasNext();)
-            {
-                SignerInfoGenerator sigGen = (SignerInfoGenerator)it.next();
+            SignerInfo[] generated = generateSignerInfos(_contentOID);
 
+            for (int i = 0; i != generated.length; i++)
+            {
+                SignerInfoGenerator sigGen = (SignerInfoGenerator)signerGens.get(i);
 
-                try
-                {
-                    signerInfos.add(sigGen.generate(_contentOID));
+                signerInfos.add(generated[i]);
 
-                    byte[] calculatedDigest = sigGen.getCalculatedDigest();
+                byte[] calculatedDigest = sigGen.getCalculatedDigest();
 
-                    digests.put(sigGen.getDigestAlgorithm().getAlgorithm().getId(), calculatedDigest);
-                }
-                catch (CMSException e)
-                {
-                    throw new CMSStreamException("exception generating signers: " + e.getMessage(), e);
-                }
+                digests.put(sigGen.getDigestAlgorithm().getAlgorithm().getId(), calculatedDigest);
             }
 
             //
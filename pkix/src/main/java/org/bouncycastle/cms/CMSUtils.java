@@ -226,6 +226,18 @@ static InputStream attachDigestsToInputStream(Collection digests, InputStream s)
         return result;
     }
 
+    static OutputStream attachDigestsToOutputStream(Collection digests, OutputStream s)
+    {
+        OutputStream result = s;
+        Iterator it = digests.iterator();
+        while (it.hasNext())
+        {
+            DigestCalculator digest = (DigestCalculator)it.next();
+            result = getSafeTeeOutputStream(result, digest.getOutputStream());
+        }
+        return result;
+    }
+
     static OutputStream attachSignersToOutputStream(Collection signers, OutputStream s)
     {
         OutputStream result = s;
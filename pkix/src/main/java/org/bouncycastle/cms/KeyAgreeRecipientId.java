@@ -44,6 +44,11 @@ public KeyAgreeRecipientId(X500Name issuer, BigInteger serialNumber, byte[] subj
         this(new X509CertificateHolderSelector(issuer, serialNumber, subjectKeyId));
     }
 
+    public X500Name getIssuer()
+    {
+        return baseSelector.getIssuer();
+    }
+
     public BigInteger getSerialNumber()
     {
         return baseSelector.getSerialNumber();
@@ -33,30 +33,36 @@ static void readRecipientInfo(List infos, KeyAgreeRecipientInfo info,
 
         for (int i = 0; i < s.size(); ++i)
         {
-            RecipientEncryptedKey id = RecipientEncryptedKey.getInstance(
-                s.getObjectAt(i));
+            infos.add(readRecipientInfo(info, i, messageAlgorithm, secureReadable, additionalData));
+        }
+    }
 
-            RecipientId rid;
+    static KeyAgreeRecipientInformation readRecipientInfo(KeyAgreeRecipientInfo info, int keyIndex,
+        AlgorithmIdentifier messageAlgorithm, CMSSecureReadable secureReadable, AuthAttributesProvider additionalData)
+    {
+        RecipientEncryptedKey id = RecipientEncryptedKey.getInstance(
+            info.getRecipientEncryptedKeys().getObjectAt(keyIndex));
 
-            KeyAgreeRecipientIdentifier karid = id.getIdentifier();
-            IssuerAndSerialNumber iAndSN = karid.getIssuerAndSerialNumber();
+        RecipientId rid;
 
-            if (iAndSN != null)
-            {
-                rid = new KeyAgreeRecipientId(iAndSN.getName(), iAndSN.getSerialNumber().getValue());
-            }
-            else
-            {
-                RecipientKeyIdentifier rKeyID = karid.getRKeyID();
+        KeyAgreeRecipientIdentifier karid = id.getIdentifier();
+        IssuerAndSerialNumber iAndSN = karid.getIssuerAndSerialNumber();
 
-                // Note: 'date' and 'other' fields of RecipientKeyIdentifier appear to be only informational
+        if (iAndSN != null)
+        {
+            rid = new KeyAgreeRecipientId(iAndSN.getName(), iAndSN.getSerialNumber().getValue());
+        }
+        else
+        {
+            RecipientKeyIdentifier rKeyID = karid.getRKeyID();
 
-                rid = new KeyAgreeRecipientId(rKeyID.getSubjectKeyIdentifier().getOctets());
-            }
+            // Note: 'date' and 'other' fields of RecipientKeyIdentifier appear to be only informational
 
-            infos.add(new KeyAgreeRecipientInformation(info, rid, id.getEncryptedKey(), messageAlgorithm,
-                secureReadable, additionalData));
+            rid = new KeyAgreeRecipientId(rKeyID.getSubjectKeyIdentifier().getOctets());
         }
+
+        return new KeyAgreeRecipientInformation(info, rid, id.getEncryptedKey(), messageAlgorithm,
+            secureReadable, additionalData);
     }
 
     KeyAgreeRecipientInformation(
@@ -0,0 +1,192 @@
+package org.bouncycastle.cms;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.bouncycastle.util.io.Streams;
+
+/**
+ * A read only memory mapping of a file. A single mapping cannot be more than 2GB so larger files
+ * are mapped as a series of regions, reads are done on duplicates of the region buffers so a
+ * MappedFile can be shared between threads.
+ */
+class MappedFile
+{
+    private static final int REGION_SIZE = 1 << 30;
+
+    private final long         length;
+    private final ByteBuffer[] regions;
+
+    MappedFile(File file)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try
+        {
+            FileChannel channel = raf.getChannel();
+
+            this.length = channel.size();
+            this.regions = new ByteBuffer[(int)((length + REGION_SIZE - 1) / REGION_SIZE)];
+
+            for (int i = 0; i != regions.length; i++)
+            {
+                long start = (long)i * REGION_SIZE;
+
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, length - start));
+            }
+        }
+        finally
+        {
+            // the mappings stay valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    long length()
+    {
+        return length;
+    }
+
+    /**
+     * Return the byte at pos as an unsigned value.
+     */
+    int get(long pos)
+        throws IOException
+    {
+        if (pos < 0 || pos >= length)
+        {
+            throw new EOFException("attempt to read past end of file");
+        }
+
+        return regions[(int)(pos / REGION_SIZE)].get((int)(pos % REGION_SIZE)) & 0xff;
+    }
+
+    /**
+     * Copy len bytes starting at pos into buf.
+     */
+    void read(long pos, byte[] buf, int off, int len)
+        throws IOException
+    {
+        if (pos < 0 || len < 0 || pos > length - len)
+        {
+            throw new EOFException("attempt to read past end of file");
+        }
+
+        while (len > 0)
+        {
+            ByteBuffer region = regions[(int)(pos / REGION_SIZE)].duplicate();
+            int        regionPos = (int)(pos % REGION_SIZE);
+            int        count = Math.min(len, region.limit() - regionPos);
+
+            region.position(regionPos);
+            region.get(buf, off, count);
+
+            pos += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Write len bytes starting at pos to out, passing the mapped regions straight to out if it
+     * can take a ByteBuffer.
+     */
+    void write(OutputStream out, long pos, long len)
+        throws IOException
+    {
+        if (pos < 0 || len < 0 || pos > length - len)
+        {
+            throw new EOFException("attempt to read past end of file");
+        }
+
+        while (len > 0)
+        {
+            ByteBuffer region = regions[(int)(pos / REGION_SIZE)].duplicate();
+            int        regionPos = (int)(pos % REGION_SIZE);
+            int        count = (int)Math.min(len, region.limit() - regionPos);
+
+            region.limit(regionPos + count);
+            region.position(regionPos);
+
+            Streams.writeBuffer(region, out);
+
+            pos += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Return a stream reading len bytes starting at pos.
+     */
+    InputStream getInputStream(long pos, long len)
+    {
+        return new RegionInputStream(pos, pos + len);
+    }
+
+    private class RegionInputStream
+        extends InputStream
+    {
+        private final long end;
+
+        private long pos;
+
+        RegionInputStream(long pos, long end)
+        {
+            this.pos = pos;
+            this.end = end;
+        }
+
+        public int read()
+            throws IOException
+        {
+            if (pos == end)
+            {
+                return -1;
+            }
+
+            return get(pos++);
+        }
+
+        public int read(byte[] buf, int off, int len)
+            throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+
+            if (pos == end)
+            {
+                return -1;
+            }
+
+            int count = (int)Math.min(len, end - pos);
+
+            MappedFile.this.read(pos, buf, off, count);
+            pos += count;
+
+            return count;
+        }
+
+        public long skip(long n)
+        {
+            long count = Math.max(0, Math.min(n, end - pos));
+
+            pos += count;
+
+            return count;
+        }
+
+        public int available()
+        {
+            return (int)Math.min(Integer.MAX_VALUE, end - pos);
+        }
+    }
+}
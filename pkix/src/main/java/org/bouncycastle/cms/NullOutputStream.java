@@ -5,9 +5,13 @@
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.bouncycastle.util.io.ByteBufferSink;
 
 class NullOutputStream
     extends OutputStream
+    implements ByteBufferSink
 {
     public void write(byte[] buf)
         throws IOException
@@ -21,6 +25,12 @@ public void write(byte[] buf, int off, int len)
         // do nothing
     }
     
+    public void write(ByteBuffer buf)
+        throws IOException
+    {
+        buf.position(buf.limit());
+    }
+
     public void write(int b) throws IOException
     {
         // do nothing
@@ -0,0 +1,231 @@
+package org.bouncycastle.cms;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An output stream which passes what is written to it on to several other streams, with each
+ * of the other streams updated by its own task on an executor. Data is gathered into a large
+ * buffer which is shared by all the tasks, while the tasks work through one buffer the next
+ * is filled, so a digest or signature calculation on each stream runs alongside the others and
+ * alongside the writer.
+ * <p>
+ * Each stream sees exactly the bytes written, in order. Nothing is guaranteed to have reached
+ * the other streams until flush() or close() returns.
+ * </p>
+ */
+class ParallelOutputStream
+    extends OutputStream
+{
+    static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+
+    private final OutputStream[]  outs;
+    private final ExecutorService executor;
+    private final Future[]        pending;
+
+    private byte[]  buf;
+    private byte[]  spare;
+    private int     bufOff;
+    private boolean pendingWrites;
+    private boolean closed;
+
+    /**
+     * Base constructor.
+     *
+     * @param outs the streams the data is written on to.
+     * @param executor the executor to run the updates on.
+     * @param bufferSize the size of the buffers passed to the tasks.
+     */
+    ParallelOutputStream(List outs, ExecutorService executor, int bufferSize)
+    {
+        this.outs = (OutputStream[])outs.toArray(new OutputStream[outs.size()]);
+        this.executor = executor;
+        this.pending = new Future[this.outs.length];
+        this.buf = new byte[bufferSize];
+        this.spare = new byte[bufferSize];
+    }
+
+    public void write(int b)
+        throws IOException
+    {
+        buf[bufOff++] = (byte)b;
+
+        if (bufOff == buf.length)
+        {
+            dispatch();
+        }
+    }
+
+    public void write(byte[] b, int off, int len)
+        throws IOException
+    {
+        while (len > 0)
+        {
+            int count = Math.min(len, buf.length - bufOff);
+
+            System.arraycopy(b, off, buf, bufOff, count);
+
+            bufOff += count;
+            off += count;
+            len -= count;
+
+            if (bufOff == buf.length)
+            {
+                dispatch();
+            }
+        }
+    }
+
+    public void flush()
+        throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        dispatch();
+        waitForPending();
+
+        for (int i = 0; i != outs.length; i++)
+        {
+            outs[i].flush();
+        }
+    }
+
+    /**
+     * Wait for everything written to be processed and close the other streams. Calling
+     * close() more than once has no further effect.
+     */
+    public void close()
+        throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        closed = true;
+
+        dispatch();
+        waitForPending();
+
+        for (int i = 0; i != outs.length; i++)
+        {
+            outs[i].close();
+        }
+    }
+
+    private void dispatch()
+        throws IOException
+    {
+        if (bufOff == 0)
+        {
+            return;
+        }
+
+        // the tasks must be done with the last buffer before its turn to be filled comes round.
+        waitForPending();
+
+        for (int i = 0; i != outs.length; i++)
+        {
+            pending[i] = executor.submit(new Update(outs[i], buf, bufOff));
+        }
+
+        pendingWrites = true;
+
+        byte[] tmp = buf;
+
+        buf = spare;
+        spare = tmp;
+        bufOff = 0;
+    }
+
+    private void waitForPending()
+        throws IOException
+    {
+        if (!pendingWrites)
+        {
+            return;
+        }
+
+        pendingWrites = false;
+
+        Throwable failure = null;
+
+        for (int i = 0; i != pending.length; i++)
+        {
+            try
+            {
+                pending[i].get();
+            }
+            catch (InterruptedException e)
+            {
+                for (int j = i; j != pending.length; j++)
+                {
+                    pending[j].cancel(true);
+                }
+
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("interrupted waiting for parallel update");
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = e.getCause();
+                }
+            }
+
+            pending[i] = null;
+        }
+
+        if (failure != null)
+        {
+            if (failure instanceof IOException)
+            {
+                throw (IOException)failure;
+            }
+            if (failure instanceof RuntimeException)
+            {
+                throw (RuntimeException)failure;
+            }
+            if (failure instanceof Error)
+            {
+                throw (Error)failure;
+            }
+
+            throw new CMSStreamException("exception in parallel update: " + failure.getMessage(), failure);
+        }
+    }
+
+    private static class Update
+        implements Callable
+    {
+        private final OutputStream out;
+        private final byte[]       data;
+        private final int          length;
+
+        Update(OutputStream out, byte[] data, int length)
+        {
+            this.out = out;
+            this.data = data;
+            this.length = length;
+        }
+
+        public Object call()
+            throws IOException
+        {
+            out.write(data, 0, length);
+
+            return null;
+        }
+    }
+}
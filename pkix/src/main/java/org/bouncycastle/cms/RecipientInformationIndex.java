@@ -0,0 +1,287 @@
+package org.bouncycastle.cms;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.cms.KEKRecipientInfo;
+import org.bouncycastle.asn1.cms.KeyAgreeRecipientInfo;
+import org.bouncycastle.asn1.cms.KeyTransRecipientInfo;
+import org.bouncycastle.asn1.cms.PasswordRecipientInfo;
+import org.bouncycastle.asn1.cms.RecipientInfo;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.util.Integers;
+
+/**
+ * A lazily read list of the recipients in a set of RecipientInfo structures. Only the serial number
+ * or subject key identifier of each key transport and key agreement recipient is read up front, to
+ * index them by, and the RecipientInformation for a recipient is only created the first time it is
+ * asked for.
+ */
+class RecipientInformationIndex
+{
+    private final AlgorithmIdentifier    messageAlgorithm;
+    private final CMSSecureReadable      secureReadable;
+    private final AuthAttributesProvider additionalData;
+
+    private final List infos = new ArrayList();         // RecipientInfo for each recipient
+    private final List keyIndexes = new ArrayList();    // Integer index of each key agreement recipient's encrypted key
+    private final List recipients = new ArrayList();    // RecipientInformation, null until read
+    private final Map keyTransIndex = new HashMap();    // ASN1Integer or ASN1OctetString -> List[Integer]
+    private final Map keyAgreeIndex = new HashMap();    // ASN1Integer or ASN1OctetString -> List[Integer]
+    private final List unindexed = new ArrayList();     // Integer positions of identifiers which could not be indexed
+
+    RecipientInformationIndex(
+        AlgorithmIdentifier    messageAlgorithm,
+        CMSSecureReadable      secureReadable,
+        AuthAttributesProvider additionalData)
+    {
+        this.messageAlgorithm = messageAlgorithm;
+        this.secureReadable = secureReadable;
+        this.additionalData = additionalData;
+    }
+
+    /**
+     * Add the recipients in info to the index, unrecognised recipient types are ignored.
+     */
+    void addRecipientInfo(RecipientInfo info)
+    {
+        ASN1Encodable recipInfo = info.getInfo();
+
+        if (recipInfo instanceof KeyTransRecipientInfo)
+        {
+            addRecipient(info, -1, keyTransIndex, getIndexKey(((KeyTransRecipientInfo)recipInfo).getRecipientIdentifier().toASN1Primitive()));
+        }
+        else if (recipInfo instanceof KeyAgreeRecipientInfo)
+        {
+            ASN1Sequence keys = ((KeyAgreeRecipientInfo)recipInfo).getRecipientEncryptedKeys();
+
+            for (int i = 0; i != keys.size(); i++)
+            {
+                ASN1Sequence encryptedKey = ASN1Sequence.getInstance(keys.getObjectAt(i));
+
+                addRecipient(info, i, keyAgreeIndex, getIndexKey(encryptedKey.getObjectAt(0).toASN1Primitive()));
+            }
+        }
+        else if (recipInfo instanceof KEKRecipientInfo || recipInfo instanceof PasswordRecipientInfo)
+        {
+            addRecipient(info, -1, null, null);
+        }
+    }
+
+    int size()
+    {
+        return infos.size();
+    }
+
+    /**
+     * Return all the recipients, in the order they were added.
+     */
+    List getRecipients()
+    {
+        List all = new ArrayList(infos.size());
+
+        for (int i = 0; i != infos.size(); i++)
+        {
+            all.add(getRecipient(i));
+        }
+
+        return all;
+    }
+
+    /**
+     * Return the recipients whose RecipientId is equal to selector, only reading the recipients
+     * with a matching serial number or subject key identifier if selector has one.
+     */
+    List getRecipients(RecipientId selector)
+    {
+        Collection positions;
+
+        if (selector instanceof KeyTransRecipientId)
+        {
+            KeyTransRecipientId id = (KeyTransRecipientId)selector;
+
+            positions = findPositions(keyTransIndex, id.getSerialNumber(), id.getSubjectKeyIdentifier());
+        }
+        else if (selector instanceof KeyAgreeRecipientId)
+        {
+            KeyAgreeRecipientId id = (KeyAgreeRecipientId)selector;
+
+            positions = findPositions(keyAgreeIndex, id.getSerialNumber(), id.getSubjectKeyIdentifier());
+        }
+        else
+        {
+            positions = null;
+        }
+
+        List results = new ArrayList();
+
+        if (positions == null)
+        {
+            for (int i = 0; i != infos.size(); i++)
+            {
+                addIfMatched(results, selector, i);
+            }
+        }
+        else
+        {
+            for (Iterator it = positions.iterator(); it.hasNext();)
+            {
+                addIfMatched(results, selector, ((Integer)it.next()).intValue());
+            }
+        }
+
+        return results;
+    }
+
+    private void addIfMatched(List results, RecipientId selector, int position)
+    {
+        RecipientInformation recipient = getRecipient(position);
+
+        if (selector.equals(recipient.getRID()))
+        {
+            results.add(recipient);
+        }
+    }
+
+    private synchronized RecipientInformation getRecipient(int position)
+    {
+        RecipientInformation recipient = (RecipientInformation)recipients.get(position);
+
+        if (recipient == null)
+        {
+            recipient = readRecipient((RecipientInfo)infos.get(position), ((Integer)keyIndexes.get(position)).intValue());
+
+            recipients.set(position, recipient);
+        }
+
+        return recipient;
+    }
+
+    private RecipientInformation readRecipient(RecipientInfo info, int keyIndex)
+    {
+        ASN1Encodable recipInfo = info.getInfo();
+
+        if (recipInfo instanceof KeyTransRecipientInfo)
+        {
+            return new KeyTransRecipientInformation(
+                (KeyTransRecipientInfo)recipInfo, messageAlgorithm, secureReadable, additionalData);
+        }
+        else if (recipInfo instanceof KEKRecipientInfo)
+        {
+            return new KEKRecipientInformation(
+                (KEKRecipientInfo)recipInfo, messageAlgorithm, secureReadable, additionalData);
+        }
+        else if (recipInfo instanceof KeyAgreeRecipientInfo)
+        {
+            return KeyAgreeRecipientInformation.readRecipientInfo(
+                (KeyAgreeRecipientInfo)recipInfo, keyIndex, messageAlgorithm, secureReadable, additionalData);
+        }
+        else
+        {
+            return new PasswordRecipientInformation(
+                (PasswordRecipientInfo)recipInfo, messageAlgorithm, secureReadable, additionalData);
+        }
+    }
+
+    private void addRecipient(RecipientInfo info, int keyIndex, Map index, Object indexKey)
+    {
+        Integer position = Integers.valueOf(infos.size());
+
+        infos.add(info);
+        keyIndexes.add(Integers.valueOf(keyIndex));
+        recipients.add(null);
+
+        if (index != null)
+        {
+            if (indexKey == null)
+            {
+                unindexed.add(position);
+                return;
+            }
+
+            List list = (List)index.get(indexKey);
+            if (list == null)
+            {
+                list = new ArrayList(1);
+                index.put(indexKey, list);
+            }
+
+            list.add(position);
+        }
+    }
+
+    private Collection findPositions(Map index, BigInteger serialNumber, byte[] subjectKeyId)
+    {
+        if (serialNumber == null && subjectKeyId == null)
+        {
+            return null;
+        }
+
+        TreeSet positions = new TreeSet(unindexed);
+
+        if (serialNumber != null)
+        {
+            addPositions(positions, index, new ASN1Integer(serialNumber));
+        }
+
+        if (subjectKeyId != null)
+        {
+            addPositions(positions, index, new DEROctetString(subjectKeyId));
+        }
+
+        return positions;
+    }
+
+    private static void addPositions(TreeSet positions, Map index, Object indexKey)
+    {
+        List list = (List)index.get(indexKey);
+
+        if (list != null)
+        {
+            positions.addAll(list);
+        }
+    }
+
+    /**
+     * Return the serial number from an IssuerAndSerialNumber, or the octets of an implicitly
+     * tagged subject key identifier, without parsing the issuer name.
+     */
+    private static Object getIndexKey(ASN1Primitive id)
+    {
+        try
+        {
+            if (id instanceof ASN1TaggedObject)
+            {
+                ASN1Primitive keyId = ((ASN1TaggedObject)id).getObject();
+
+                // a key agreement rKeyId is a RecipientKeyIdentifier, starting with the subject key identifier.
+                if (keyId instanceof ASN1Sequence)
+                {
+                    keyId = ((ASN1Sequence)keyId).getObjectAt(0).toASN1Primitive();
+                }
+
+                return new DEROctetString(ASN1OctetString.getInstance(keyId).getOctets());
+            }
+
+            return ASN1Integer.getInstance(ASN1Sequence.getInstance(id).getObjectAt(1));
+        }
+        catch (RuntimeException e)
+        {
+            // leave it to the full parse when the recipient is read.
+            return null;
+        }
+    }
+}
@@ -13,6 +13,7 @@
 {
     private final List all; //ArrayList[RecipientInformation]
     private final Map table = new HashMap(); // HashMap[RecipientID, ArrayList[RecipientInformation]]
+    private final RecipientInformationIndex index;
 
     public RecipientInformationStore(
         Collection recipientInfos)
@@ -35,6 +36,17 @@ public RecipientInformationStore(
         }
 
         this.all = new ArrayList(recipientInfos);
+        this.index = null;
+    }
+
+    /**
+     * Create a store which only reads the recipients it is asked for.
+     */
+    RecipientInformationStore(
+        RecipientInformationIndex index)
+    {
+        this.all = null;
+        this.index = index;
     }
 
     /**
@@ -59,6 +71,11 @@ public RecipientInformation get(
      */
     public int size()
     {
+        if (index != null)
+        {
+            return index.size();
+        }
+
         return all.size();
     }
 
@@ -69,6 +86,11 @@ public int size()
      */
     public Collection getRecipients()
     {
+        if (index != null)
+        {
+            return index.getRecipients();
+        }
+
         return new ArrayList(all);
     }
 
@@ -107,6 +129,28 @@ public Collection getRecipients(
                 return results;
             }
         }
+        else if (selector instanceof KeyAgreeRecipientId)
+        {
+            KeyAgreeRecipientId keyAgree = (KeyAgreeRecipientId)selector;
+
+            X500Name issuer = keyAgree.getIssuer();
+            byte[] subjectKeyId = keyAgree.getSubjectKeyIdentifier();
+
+            if (issuer != null && subjectKeyId != null)
+            {
+                List results = new ArrayList();
+
+                results.addAll(getRecipients(new KeyAgreeRecipientId(issuer, keyAgree.getSerialNumber())));
+                results.addAll(getRecipients(new KeyAgreeRecipientId(subjectKeyId)));
+
+                return results;
+            }
+        }
+
+        if (index != null)
+        {
+            return index.getRecipients(selector);
+        }
 
         List list = (ArrayList)table.get(selector);
 
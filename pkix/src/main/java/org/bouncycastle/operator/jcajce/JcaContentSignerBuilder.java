@@ -2,6 +2,7 @@
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.Provider;
@@ -18,6 +19,7 @@
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.OperatorStreamException;
 import org.bouncycastle.operator.RuntimeOperatorException;
+import org.bouncycastle.util.io.ByteBufferSink;
 
 public class JcaContentSignerBuilder
 {
@@ -104,6 +106,7 @@ public byte[] getSignature()
 
     private class SignatureOutputStream
         extends OutputStream
+        implements ByteBufferSink
     {
         private Signature sig;
 
@@ -138,6 +141,19 @@ public void write(byte[] bytes)
             }
         }
 
+        public void write(ByteBuffer buf)
+            throws IOException
+        {
+            try
+            {
+                sig.update(buf);
+            }
+            catch (SignatureException e)
+            {
+                throw new OperatorStreamException("exception in content signer: " + e.getMessage(), e);
+            }
+        }
+
         public void write(int b)
             throws IOException
         {
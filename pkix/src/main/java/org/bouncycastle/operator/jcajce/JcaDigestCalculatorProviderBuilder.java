@@ -2,6 +2,7 @@
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.Provider;
@@ -13,6 +14,7 @@
 import org.bouncycastle.operator.DigestCalculator;
 import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.util.io.ByteBufferSink;
 
 public class JcaDigestCalculatorProviderBuilder
 {
@@ -80,6 +82,7 @@ public byte[] getDigest()
 
     private class DigestOutputStream
         extends OutputStream
+        implements ByteBufferSink
     {
         private MessageDigest dig;
 
@@ -100,6 +103,12 @@ public void write(byte[] bytes)
            dig.update(bytes);
         }
 
+        public void write(ByteBuffer buf)
+            throws IOException
+        {
+            dig.update(buf);
+        }
+
         public void write(int b)
             throws IOException
         {
@@ -0,0 +1,169 @@
+package org.bouncycastle.tsp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.tsp.MessageImprint;
+import org.bouncycastle.operator.DigestCalculator;
+
+/**
+ * A Merkle tree over the message imprints of a batch of time stamp requests.
+ * <p>
+ * Leaves are hashed as H(0x00 || imprint || nonce) and interior nodes as H(0x01 || left || right),
+ * so a leaf can never be passed off as a node. Where a level has an odd number of nodes the last
+ * one is carried up to the next level unchanged.
+ * </p>
+ */
+class MerkleTree
+{
+    private static final int LEAF_PREFIX = 0x00;
+    private static final int NODE_PREFIX = 0x01;
+
+    private final List levels = new ArrayList();
+
+    /**
+     * Build a tree over the passed in leaf hashes.
+     *
+     * @param digestCalculator the calculator for the node hashes.
+     * @param leaves the leaf hashes, at least one.
+     */
+    MerkleTree(DigestCalculator digestCalculator, byte[][] leaves)
+        throws IOException
+    {
+        byte[][] level = leaves;
+
+        levels.add(level);
+
+        while (level.length > 1)
+        {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+
+            for (int i = 0; i != next.length; i++)
+            {
+                int left = 2 * i;
+
+                if (left + 1 < level.length)
+                {
+                    next[i] = hashNode(digestCalculator, level[left], level[left + 1]);
+                }
+                else
+                {
+                    next[i] = level[left];
+                }
+            }
+
+            levels.add(next);
+            level = next;
+        }
+    }
+
+    byte[] getRoot()
+    {
+        return ((byte[][])levels.get(levels.size() - 1))[0];
+    }
+
+    /**
+     * Return the sibling hashes needed to get from the leaf at index to the root.
+     */
+    byte[][] getPath(int index)
+    {
+        List path = new ArrayList();
+
+        for (int l = 0; l != levels.size() - 1; l++)
+        {
+            byte[][] level = (byte[][])levels.get(l);
+
+            if ((index & 1) != 0)
+            {
+                path.add(level[index - 1]);
+            }
+            else if (index + 1 < level.length)
+            {
+                path.add(level[index + 1]);
+            }
+
+            index >>= 1;
+        }
+
+        return (byte[][])path.toArray(new byte[path.size()][]);
+    }
+
+    static byte[] hashLeaf(DigestCalculator digestCalculator, MessageImprint messageImprint, BigInteger nonce)
+        throws IOException
+    {
+        OutputStream dOut = digestCalculator.getOutputStream();
+
+        dOut.write(LEAF_PREFIX);
+        dOut.write(messageImprint.getEncoded(ASN1Encoding.DER));
+
+        if (nonce != null)
+        {
+            dOut.write(new ASN1Integer(nonce).getEncoded(ASN1Encoding.DER));
+        }
+
+        dOut.close();
+
+        return digestCalculator.getDigest();
+    }
+
+    static byte[] hashNode(DigestCalculator digestCalculator, byte[] left, byte[] right)
+        throws IOException
+    {
+        OutputStream dOut = digestCalculator.getOutputStream();
+
+        dOut.write(NODE_PREFIX);
+        dOut.write(left);
+        dOut.write(right);
+
+        dOut.close();
+
+        return digestCalculator.getDigest();
+    }
+
+    /**
+     * Work out the root of a tree from a leaf hash and its path.
+     *
+     * @return the root, or null if the path does not fit a tree of treeSize leaves.
+     */
+    static byte[] calculateRoot(DigestCalculator digestCalculator, byte[] leaf, int index, int treeSize, byte[][] path)
+        throws IOException
+    {
+        if (index < 0 || index >= treeSize)
+        {
+            return null;
+        }
+
+        byte[] hash = leaf;
+        int    p = 0;
+
+        while (treeSize > 1)
+        {
+            if ((index & 1) != 0 || index + 1 < treeSize)
+            {
+                if (p == path.length)
+                {
+                    return null;
+                }
+
+                if ((index & 1) != 0)
+                {
+                    hash = hashNode(digestCalculator, path[p++], hash);
+                }
+                else
+                {
+                    hash = hashNode(digestCalculator, hash, path[p++]);
+                }
+            }
+
+            index >>= 1;
+            treeSize = (treeSize + 1) >> 1;
+        }
+
+        return (p == path.length) ? hash : null;
+    }
+}
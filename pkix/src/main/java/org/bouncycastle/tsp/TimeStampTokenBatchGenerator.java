@@ -0,0 +1,207 @@
+package org.bouncycastle.tsp;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.bc.BCObjectIdentifiers;
+import org.bouncycastle.asn1.cmp.PKIFailureInfo;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.tsp.MerkleInclusionProof;
+import org.bouncycastle.asn1.tsp.MessageImprint;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationStore;
+import org.bouncycastle.operator.DigestCalculator;
+
+/**
+ * Generator for time stamp tokens which covers a batch of requests with a single signature.
+ * <p>
+ * The message imprints (and nonces) of the requests are made the leaves of a Merkle tree, and one
+ * token is signed for the root of the tree in the usual way by a TimeStampTokenGenerator. Each
+ * request then gets a copy of that token with a MerkleInclusionProof for its own imprint added as
+ * an unsigned attribute (BCObjectIdentifiers.bc_tsp_merkleInclusionProof) of the TSA signer, so
+ * the cost of a batch is one signature plus about two hashes per request.
+ * </p>
+ * <p>
+ * The tokens for a batch share the TSTInfo, so they share a serial number and their message
+ * imprint is the root of the tree - they need to be checked with a TimeStampTokenBatchVerifier
+ * rather than by comparing the imprint in the TSTInfo with the request. Requests which need
+ * their own TSTInfo, those with extensions or a policy other than the batch's, are refused and
+ * should go through the standard TimeStampTokenGenerator or TimeStampResponseGenerator path.
+ * </p>
+ * <p>
+ * The generator does no timing of its own, a TSA would typically collect requests for a short
+ * interval and then call generate().
+ * </p>
+ */
+public class TimeStampTokenBatchGenerator
+{
+    private final TimeStampTokenGenerator tokenGenerator;
+    private final DigestCalculator        digestCalculator;
+
+    private final List           imprints = new ArrayList();
+    private final List           nonces = new ArrayList();
+    private final List           certReqs = new ArrayList();
+    private ASN1ObjectIdentifier batchPolicy;
+
+    /**
+     * Base constructor.
+     *
+     * @param tokenGenerator the generator for the signed token covering each batch.
+     * @param digestCalculator the calculator for the tree hashes, its algorithm is used for the root imprint.
+     */
+    public TimeStampTokenBatchGenerator(
+        TimeStampTokenGenerator tokenGenerator,
+        DigestCalculator        digestCalculator)
+    {
+        this.tokenGenerator = tokenGenerator;
+        this.digestCalculator = digestCalculator;
+    }
+
+    /**
+     * Add a request to the current batch.
+     *
+     * @param request the request to be time stamped.
+     * @return the position of the request's token in the array returned by the next call to generate().
+     * @throws TSPValidationException if the request cannot be covered by a batch token.
+     */
+    public int addRequest(
+        TimeStampRequest request)
+        throws TSPValidationException
+    {
+        if (request.hasExtensions())
+        {
+            throw new TSPValidationException("request with extensions cannot be batched.", PKIFailureInfo.unacceptedExtension);
+        }
+
+        ASN1ObjectIdentifier policy = request.getReqPolicy();
+
+        if (imprints.isEmpty())
+        {
+            batchPolicy = policy;
+        }
+        else if (policy == null ? batchPolicy != null : !policy.equals(batchPolicy))
+        {
+            throw new TSPValidationException("request policy does not match batch policy.", PKIFailureInfo.unacceptedPolicy);
+        }
+
+        AlgorithmIdentifier algID = new AlgorithmIdentifier(request.getMessageImprintAlgOID(), DERNull.INSTANCE);
+
+        imprints.add(new MessageImprint(algID, request.getMessageImprintDigest()));
+        nonces.add(request.getNonce());
+
+        certReqs.add(Boolean.valueOf(request.getCertReq()));
+
+        return imprints.size() - 1;
+    }
+
+    /**
+     * Return the number of requests waiting for the next call to generate().
+     *
+     * @return the size of the current batch.
+     */
+    public int getRequestCount()
+    {
+        return imprints.size();
+    }
+
+    /**
+     * Generate the tokens for the requests added since the last call and start a new batch. If the
+     * tokens cannot be generated the requests are kept, so generate() can be called for them again.
+     *
+     * @param serialNumber serial number for the batch's TSTInfo.
+     * @param genTime token generation time.
+     * @return the tokens, in the order the requests were added.
+     * @throws TSPException if the tokens cannot be generated.
+     */
+    public TimeStampToken[] generate(
+        BigInteger serialNumber,
+        Date       genTime)
+        throws TSPException
+    {
+        if (imprints.isEmpty())
+        {
+            return new TimeStampToken[0];
+        }
+
+        try
+        {
+            byte[][] leaves = new byte[imprints.size()][];
+
+            for (int i = 0; i != leaves.length; i++)
+            {
+                leaves[i] = MerkleTree.hashLeaf(digestCalculator, (MessageImprint)imprints.get(i), (BigInteger)nonces.get(i));
+            }
+
+            MerkleTree tree = new MerkleTree(digestCalculator, leaves);
+
+            TimeStampRequestGenerator reqGen = new TimeStampRequestGenerator();
+
+            // the root token carries the TSA certificates if any request asked for them,
+            // they are stripped from the tokens for requests which did not.
+            reqGen.setCertReq(certReqs.contains(Boolean.TRUE));
+            if (batchPolicy != null)
+            {
+                reqGen.setReqPolicy(batchPolicy);
+            }
+
+            TimeStampRequest rootRequest = reqGen.generate(digestCalculator.getAlgorithmIdentifier().getAlgorithm(), tree.getRoot());
+            CMSSignedData    rootToken = tokenGenerator.generate(rootRequest, serialNumber, genTime).toCMSSignedData();
+            SignerInformation signer = (SignerInformation)rootToken.getSignerInfos().getSigners().iterator().next();
+            AttributeTable   unsignedAttrs = signer.getUnsignedAttributes();
+
+            if (unsignedAttrs == null)
+            {
+                unsignedAttrs = new AttributeTable(new Hashtable());
+            }
+
+            CMSSignedData    noCertsToken = rootToken;
+
+            if (certReqs.contains(Boolean.TRUE) && certReqs.contains(Boolean.FALSE))
+            {
+                noCertsToken = CMSSignedData.replaceCertificatesAndCRLs(rootToken, null, null, rootToken.getCRLs());
+            }
+
+            TimeStampToken[] tokens = new TimeStampToken[leaves.length];
+
+            for (int i = 0; i != tokens.length; i++)
+            {
+                MerkleInclusionProof proof = new MerkleInclusionProof(i, leaves.length,
+                    (MessageImprint)imprints.get(i), tree.getPath(i), (BigInteger)nonces.get(i));
+
+                SignerInformation proofSigner = SignerInformation.replaceUnsignedAttributes(signer,
+                    unsignedAttrs.add(BCObjectIdentifiers.bc_tsp_merkleInclusionProof, proof));
+
+                CMSSignedData baseToken = ((Boolean)certReqs.get(i)).booleanValue() ? rootToken : noCertsToken;
+
+                tokens[i] = new TimeStampToken(CMSSignedData.replaceSigners(baseToken,
+                    new SignerInformationStore(Collections.singletonList(proofSigner))));
+            }
+
+            // only start a new batch once every token has been built, so a failure loses no requests.
+            imprints.clear();
+            nonces.clear();
+            certReqs.clear();
+            batchPolicy = null;
+
+            return tokens;
+        }
+        catch (CMSException e)
+        {
+            throw new TSPException("Exception generating batch tokens: " + e.getMessage(), e);
+        }
+        catch (IOException e)
+        {
+            throw new TSPException("Exception generating batch tokens: " + e.getMessage(), e);
+        }
+    }
+}
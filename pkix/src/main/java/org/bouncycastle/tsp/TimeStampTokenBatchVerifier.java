@@ -0,0 +1,160 @@
+package org.bouncycastle.tsp;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+import org.bouncycastle.asn1.bc.BCObjectIdentifiers;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.tsp.MerkleInclusionProof;
+import org.bouncycastle.cms.SignerInformationVerifier;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * Verifier for time stamp tokens produced by a TimeStampTokenBatchGenerator.
+ * <p>
+ * A batch token's TSTInfo carries the root of a Merkle tree as its message imprint, the
+ * verifier checks that the MerkleInclusionProof in the token's unsigned attributes links the
+ * imprint and nonce of the original request to that root. The signature and TSA certificate are
+ * checked by TimeStampToken.validate() as usual.
+ * </p>
+ */
+public class TimeStampTokenBatchVerifier
+{
+    private final DigestCalculatorProvider digestCalculatorProvider;
+
+    /**
+     * Base constructor.
+     *
+     * @param digestCalculatorProvider provider for the calculators for the tree hashes.
+     */
+    public TimeStampTokenBatchVerifier(
+        DigestCalculatorProvider digestCalculatorProvider)
+    {
+        this.digestCalculatorProvider = digestCalculatorProvider;
+    }
+
+    /**
+     * Return true if the token carries a Merkle inclusion proof.
+     *
+     * @param token the token of interest.
+     * @return true if the token is from a batch, false otherwise.
+     */
+    public static boolean isBatchToken(
+        TimeStampToken token)
+    {
+        return getProofAttribute(token) != null;
+    }
+
+    /**
+     * Return the Merkle inclusion proof carried by the token.
+     *
+     * @param token the token of interest.
+     * @return the token's proof, null if it is not from a batch.
+     */
+    public static MerkleInclusionProof getInclusionProof(
+        TimeStampToken token)
+    {
+        Attribute attr = getProofAttribute(token);
+
+        if (attr != null)
+        {
+            return MerkleInclusionProof.getInstance(attr.getAttrValues().getObjectAt(0));
+        }
+
+        return null;
+    }
+
+    /**
+     * Validate the signature on the token, and that the token covers the passed in request.
+     *
+     * @param token the token to be validated.
+     * @param request the request the token was issued for.
+     * @param sigVerifier the verifier for the TSA's signature.
+     * @throws TSPValidationException if the token is not valid or is not for the request.
+     * @throws TSPException if an exception occurs in processing the token.
+     */
+    public void validate(
+        TimeStampToken            token,
+        TimeStampRequest          request,
+        SignerInformationVerifier sigVerifier)
+        throws TSPException, TSPValidationException
+    {
+        token.validate(sigVerifier);
+
+        validate(token, request);
+    }
+
+    /**
+     * Validate that the token covers the passed in request, the signature on the token is not
+     * checked.
+     *
+     * @param token the token to be validated.
+     * @param request the request the token was issued for.
+     * @throws TSPValidationException if the token does not cover the request.
+     * @throws TSPException if an exception occurs in processing the token.
+     */
+    public void validate(
+        TimeStampToken   token,
+        TimeStampRequest request)
+        throws TSPException, TSPValidationException
+    {
+        MerkleInclusionProof proof = getInclusionProof(token);
+
+        if (proof == null)
+        {
+            throw new TSPValidationException("time stamp token has no inclusion proof.");
+        }
+
+        if (!proof.getMessageImprint().getHashAlgorithm().getAlgorithm().equals(request.getMessageImprintAlgOID())
+            || !Arrays.areEqual(proof.getMessageImprint().getHashedMessage(), request.getMessageImprintDigest()))
+        {
+            throw new TSPValidationException("time stamp token for different message imprint.");
+        }
+
+        BigInteger nonce = (proof.getNonce() != null) ? proof.getNonce().getValue() : null;
+
+        if (nonce == null ? request.getNonce() != null : !nonce.equals(request.getNonce()))
+        {
+            throw new TSPValidationException("nonce in inclusion proof does not match request.");
+        }
+
+        TimeStampTokenInfo tstInfo = token.getTimeStampInfo();
+
+        try
+        {
+            DigestCalculator digestCalculator = digestCalculatorProvider.get(tstInfo.getHashAlgorithm());
+
+            byte[] leaf = MerkleTree.hashLeaf(digestCalculator, proof.getMessageImprint(), nonce);
+            byte[] root = MerkleTree.calculateRoot(digestCalculator, leaf, proof.getLeafIndex(), proof.getTreeSize(), proof.getPath());
+
+            if (root == null || !Arrays.constantTimeAreEqual(root, tstInfo.getMessageImprintDigest()))
+            {
+                throw new TSPValidationException("inclusion proof does not match time stamp token.");
+            }
+        }
+        catch (OperatorCreationException e)
+        {
+            throw new TSPException("unable to create digest: " + e.getMessage(), e);
+        }
+        catch (IOException e)
+        {
+            throw new TSPException("problem processing inclusion proof: " + e.getMessage(), e);
+        }
+    }
+
+    private static Attribute getProofAttribute(TimeStampToken token)
+    {
+        AttributeTable unsignedAttrs = token.getUnsignedAttributes();
+
+        if (unsignedAttrs != null)
+        {
+            return unsignedAttrs.get(BCObjectIdentifiers.bc_tsp_merkleInclusionProof);
+        }
+
+        return null;
+    }
+}
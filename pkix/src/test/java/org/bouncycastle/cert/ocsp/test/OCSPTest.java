@@ -8,6 +8,8 @@
 import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1Exception;
@@ -23,23 +25,30 @@
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CachingOCSPResponder;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.CertificateStatusProvider;
 import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResponseCache;
 import org.bouncycastle.cert.ocsp.Req;
 import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
 import org.bouncycastle.cert.ocsp.SingleResp;
 import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
 import org.bouncycastle.jce.X509Principal;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.ocsp.test.OCSPTestUtil;
+import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.PKIXRevocationCache;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.test.SimpleTest;
 
@@ -695,6 +704,393 @@ public void testInvalidResp()
 
     }
 
+    private void testResponseCache()
+        throws Exception
+    {
+        String signDN = "O=Bouncy Castle, C=AU";
+        KeyPair signKP = OCSPTestUtil.makeKeyPair();
+        final X509CertificateHolder testCert = new JcaX509CertificateHolder(OCSPTestUtil.makeCertificate(signKP, signDN, signKP, signDN));
+        DigestCalculatorProvider digCalcProv = new JcaDigestCalculatorProviderBuilder().setProvider(BC).build();
+
+        final CertificateID goodID = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1), testCert, BigInteger.valueOf(1));
+        final CertificateID otherID = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1), testCert, BigInteger.valueOf(2));
+        final int[]         fetches = new int[1];
+
+        CertificateStatusProvider statusProvider = new CertificateStatusProvider()
+        {
+            public CertificateStatus getStatus(CertificateID certID)
+            {
+                return CertificateStatus.GOOD;
+            }
+        };
+
+        final CachingOCSPResponder responder = new CachingOCSPResponder(new RespID(testCert.getSubject()),
+            new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(signKP.getPrivate()),
+            null, statusProvider, 60 * 60 * 1000);
+        final BasicOCSPRespBuilder noNextUpdateBuilder = new BasicOCSPRespBuilder(new RespID(testCert.getSubject()));
+        final ContentSigner noNextUpdateSigner = new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(signKP.getPrivate());
+
+        noNextUpdateBuilder.addResponse(otherID, CertificateStatus.GOOD);
+
+        OCSPResponseCache cache = new OCSPResponseCache(new PKIXRevocationCache(16), new OCSPResponseCache.ResponseSource()
+        {
+            public BasicOCSPResp getResponse(CertificateID certID)
+                throws OCSPException
+            {
+                fetches[0]++;
+
+                if (certID.equals(otherID))
+                {
+                    return noNextUpdateBuilder.build(noNextUpdateSigner, null, new Date());
+                }
+
+                try
+                {
+                    return (BasicOCSPResp)new OCSPResp(responder.getResponse(certID)).getResponseObject();
+                }
+                catch (IOException e)
+                {
+                    throw new OCSPException("unable to parse response", e);
+                }
+            }
+        });
+
+        //
+        // responses with a nextUpdate are held until it is reached.
+        //
+        SingleResp singleResp = cache.getSingleResp(goodID);
+
+        if (!singleResp.getCertID().equals(goodID) || singleResp.getCertStatus() != CertificateStatus.GOOD)
+        {
+            fail("wrong single response");
+        }
+
+        BasicOCSPResp basicResp = cache.getResponse(goodID);
+
+        if (fetches[0] != 1)
+        {
+            fail("cached response fetched again");
+        }
+        if (!basicResp.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(BC).build(signKP.getPublic())))
+        {
+            fail("cached response signature failed");
+        }
+
+        cache.invalidate(goodID);
+        cache.getResponse(goodID);
+
+        if (fetches[0] != 2)
+        {
+            fail("invalidated response not fetched again");
+        }
+
+        //
+        // responses without a nextUpdate are never held.
+        //
+        cache.getSingleResp(otherID);
+        cache.getSingleResp(otherID);
+
+        if (fetches[0] != 4)
+        {
+            fail("response without next update cached");
+        }
+    }
+
+    private void testCachingResponder()
+        throws Exception
+    {
+        String signDN = "O=Bouncy Castle, C=AU";
+        KeyPair signKP = OCSPTestUtil.makeKeyPair();
+        X509CertificateHolder testCert = new JcaX509CertificateHolder(OCSPTestUtil.makeCertificate(signKP, signDN, signKP, signDN));
+        DigestCalculatorProvider digCalcProv = new JcaDigestCalculatorProviderBuilder().setProvider(BC).build();
+
+        final CertificateID goodID = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1), testCert, BigInteger.valueOf(1));
+        final CertificateID revokedID = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1), testCert, BigInteger.valueOf(2));
+        final Date          revocationTime = new Date((System.currentTimeMillis() / 1000 - 60) * 1000);
+        final int[]         lookups = new int[1];
+        final boolean[]     revoked = new boolean[1];
+
+        CertificateStatusProvider statusProvider = new CertificateStatusProvider()
+        {
+            public CertificateStatus getStatus(CertificateID certID)
+            {
+                lookups[0]++;
+
+                if (certID.equals(revokedID) && revoked[0])
+                {
+                    return new RevokedStatus(revocationTime, 1);
+                }
+
+                return CertificateStatus.GOOD;
+            }
+        };
+
+        CachingOCSPResponder responder = new CachingOCSPResponder(new RespID(testCert.getSubject()),
+            new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(signKP.getPrivate()),
+            new X509CertificateHolder[] { testCert }, statusProvider, 60 * 60 * 1000);
+
+        //
+        // requests without a nonce are answered from the cache.
+        //
+        OCSPReq req = new OCSPReqBuilder().addRequest(goodID).build();
+
+        byte[] enc1 = responder.getResponse(req);
+        byte[] enc2 = responder.getResponse(req);
+
+        if (!areEqual(enc1, enc2))
+        {
+            fail("cached response differs");
+        }
+        if (lookups[0] != 1)
+        {
+            fail("status looked up for cached response");
+        }
+
+        BasicOCSPResp basicResp = (BasicOCSPResp)new OCSPResp(enc1).getResponseObject();
+
+        if (!basicResp.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(BC).build(signKP.getPublic())))
+        {
+            fail("cached response signature failed");
+        }
+        if (!basicResp.getResponses()[0].getCertID().equals(goodID))
+        {
+            fail("wrong cert ID");
+        }
+        if (basicResp.getResponses()[0].getNextUpdate() == null)
+        {
+            fail("no next update");
+        }
+
+        //
+        // registered certificates are signed ahead of time.
+        //
+        responder.register(revokedID);
+
+        if (responder.refresh() != 1)
+        {
+            fail("wrong refresh count");
+        }
+        if (responder.refresh() != 0)
+        {
+            fail("wrong second refresh count");
+        }
+        if (lookups[0] != 2)
+        {
+            fail("wrong lookup count after refresh");
+        }
+
+        responder.getResponse(revokedID);
+
+        if (lookups[0] != 2)
+        {
+            fail("status looked up for pre-signed response");
+        }
+
+        //
+        // a status change is seen after invalidation.
+        //
+        revoked[0] = true;
+
+        basicResp = (BasicOCSPResp)new OCSPResp(responder.getResponse(revokedID)).getResponseObject();
+
+        if (basicResp.getResponses()[0].getCertStatus() != CertificateStatus.GOOD)
+        {
+            fail("stale response not from cache");
+        }
+
+        responder.invalidate(revokedID);
+
+        basicResp = (BasicOCSPResp)new OCSPResp(responder.getResponse(revokedID)).getResponseObject();
+
+        if (!(basicResp.getResponses()[0].getCertStatus() instanceof RevokedStatus))
+        {
+            fail("revocation not seen");
+        }
+
+        //
+        // requests with a nonce, or for more than one certificate, are signed as they arrive.
+        //
+        byte[] sampleNonce = new byte[16];
+
+        new Random().nextBytes(sampleNonce);
+
+        ExtensionsGenerator extGen = new ExtensionsGenerator();
+
+        extGen.addExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, new DEROctetString(sampleNonce));
+
+        req = new OCSPReqBuilder().addRequest(goodID).setRequestExtensions(extGen.generate()).build();
+
+        int count = lookups[0];
+
+        basicResp = (BasicOCSPResp)new OCSPResp(responder.getResponse(req)).getResponseObject();
+
+        if (lookups[0] != count + 1)
+        {
+            fail("nonce response not fresh");
+        }
+
+        Extension nonceExt = basicResp.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+
+        if (!areEqual(sampleNonce, ASN1OctetString.getInstance(nonceExt.getParsedValue()).getOctets()))
+        {
+            fail("nonce not echoed");
+        }
+
+        req = new OCSPReqBuilder().addRequest(goodID).addRequest(revokedID).build();
+
+        basicResp = (BasicOCSPResp)new OCSPResp(responder.getResponse(req)).getResponseObject();
+
+        if (basicResp.getResponses().length != 2)
+        {
+            fail("wrong response count");
+        }
+        if (!(basicResp.getResponses()[1].getCertStatus() instanceof RevokedStatus))
+        {
+            fail("revoked status lost");
+        }
+    }
+
+    private void testCachingResponderInvalidation()
+        throws Exception
+    {
+        String signDN = "O=Bouncy Castle, C=AU";
+        KeyPair signKP = OCSPTestUtil.makeKeyPair();
+        X509CertificateHolder testCert = new JcaX509CertificateHolder(OCSPTestUtil.makeCertificate(signKP, signDN, signKP, signDN));
+        DigestCalculatorProvider digCalcProv = new JcaDigestCalculatorProviderBuilder().setProvider(BC).build();
+
+        final CertificateID  certID = new CertificateID(digCalcProv.get(CertificateID.HASH_SHA1), testCert, BigInteger.valueOf(1));
+        final Date           revocationTime = new Date((System.currentTimeMillis() / 1000 - 60) * 1000);
+        final AtomicBoolean  revoked = new AtomicBoolean();
+        final AtomicBoolean  block = new AtomicBoolean();
+        final CountDownLatch[] latches = new CountDownLatch[2];
+
+        CertificateStatusProvider statusProvider = new CertificateStatusProvider()
+        {
+            public CertificateStatus getStatus(CertificateID id)
+            {
+                CertificateStatus status = revoked.get() ? new RevokedStatus(revocationTime, 1) : CertificateStatus.GOOD;
+
+                // hold the first lookup, with the status already read, until the test releases it.
+                if (block.getAndSet(false))
+                {
+                    latches[0].countDown();
+                    try
+                    {
+                        latches[1].await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                return status;
+            }
+        };
+
+        //
+        // an invalidation while a registered certificate is being refreshed.
+        //
+        final CachingOCSPResponder responder = new CachingOCSPResponder(new RespID(testCert.getSubject()),
+            new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(signKP.getPrivate()),
+            new X509CertificateHolder[] { testCert }, statusProvider, 60 * 60 * 1000);
+
+        responder.register(certID);
+
+        final Exception[] failure = new Exception[1];
+
+        Thread refresher = startBlocked(latches, block, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    responder.refresh();
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            }
+        });
+
+        revoked.set(true);
+        responder.invalidate(certID);
+
+        latches[1].countDown();
+        refresher.join();
+
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+
+        checkRevoked(responder, certID, "stale refresh response cached");
+
+        //
+        // an invalidation while an unregistered certificate's response is being signed.
+        //
+        revoked.set(false);
+
+        final CachingOCSPResponder unregResponder = new CachingOCSPResponder(new RespID(testCert.getSubject()),
+            new JcaContentSignerBuilder("SHA1withRSA").setProvider(BC).build(signKP.getPrivate()),
+            new X509CertificateHolder[] { testCert }, statusProvider, 60 * 60 * 1000);
+
+        Thread requester = startBlocked(latches, block, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    unregResponder.getResponse(certID);
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            }
+        });
+
+        revoked.set(true);
+        unregResponder.invalidate(certID);
+
+        latches[1].countDown();
+        requester.join();
+
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+
+        checkRevoked(unregResponder, certID, "stale response cached");
+    }
+
+    private Thread startBlocked(CountDownLatch[] latches, AtomicBoolean block, Runnable task)
+        throws InterruptedException
+    {
+        latches[0] = new CountDownLatch(1);
+        latches[1] = new CountDownLatch(1);
+        block.set(true);
+
+        Thread t = new Thread(task);
+
+        t.start();
+        latches[0].await();
+
+        return t;
+    }
+
+    private void checkRevoked(CachingOCSPResponder responder, CertificateID certID, String message)
+        throws Exception
+    {
+        BasicOCSPResp basicResp = (BasicOCSPResp)new OCSPResp(responder.getResponse(certID)).getResponseObject();
+
+        if (!(basicResp.getResponses()[0].getCertStatus() instanceof RevokedStatus))
+        {
+            fail(message);
+        }
+    }
+
     public void performTest()
         throws Exception
     {
@@ -932,6 +1328,10 @@ public void performTest()
         testRSA();
         testIrregularVersionReq();
         testInvalidResp();
+        testCachingResponder();
+        testCachingResponderInvalidation();
+
+        testResponseCache();
 
         //
         // Empty data test
@@ -18,6 +18,7 @@
 import org.bouncycastle.cert.path.validations.ParentCertIssuedValidation;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.CollectionStore;
+import org.bouncycastle.util.PKIXRevocationCache;
 import org.bouncycastle.util.Store;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.test.SimpleTest;
@@ -284,6 +285,22 @@ public void performTest()
             fail("basic validation (4) not working");
         }
 
+        PKIXRevocationCache revocationCache = new PKIXRevocationCache(16);
+
+        result = path.validate(new CertPathValidation[]{new ParentCertIssuedValidation(verifier), new BasicConstraintsValidation(), new KeyUsageValidation(), new CRLValidation(rootCert.getSubject(), crls, revocationCache)});
+
+        if (!result.isValid())
+        {
+            fail("cached CRL validation (1) not working");
+        }
+
+        result = path.validate(new CertPathValidation[]{new ParentCertIssuedValidation(verifier), new BasicConstraintsValidation(), new KeyUsageValidation(), new CRLValidation(rootCert.getSubject(), crls, revocationCache)});
+
+        if (!result.isValid())
+        {
+            fail("cached CRL validation (2) not working");
+        }
+
         path = new CertPath(new X509CertificateHolder[] { interCert, finalCert });
 
         result = path.validate(new CertPathValidation[]{new ParentCertIssuedValidation(verifier)});
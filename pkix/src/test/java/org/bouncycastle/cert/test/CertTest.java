@@ -1,9 +1,12 @@
 package org.bouncycastle.cert.test;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -39,7 +42,9 @@
 import org.bouncycastle.asn1.ASN1Enumerated;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERBitString;
 import org.bouncycastle.asn1.DEREnumerated;
+import org.bouncycastle.asn1.DERInteger;
 import org.bouncycastle.asn1.DERNull;
 import org.bouncycastle.asn1.DERObjectIdentifier;
 import org.bouncycastle.asn1.DEROctetString;
@@ -59,10 +64,13 @@
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.asn1.x509.X509CertificateStructure;
 import org.bouncycastle.asn1.x509.X509Extension;
 import org.bouncycastle.asn1.x509.X509Extensions;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.cert.CertIOException;
+import org.bouncycastle.cert.MappedX509CRL;
 import org.bouncycastle.cert.X509CRLEntryHolder;
 import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
@@ -2867,6 +2875,255 @@ private void testIndirect2()
         }
     }
 
+    private void testLargeIndirect()
+        throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+
+        ByteArrayInputStream input = new ByteArrayInputStream(testCAp12);
+
+        keyStore.load(input, "test".toCharArray());
+
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate("ca");
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey("ca", null);
+
+        X500Name crlIssuer = new X500Name("CN=CRL Issuer");
+        X500Name caName = X500Name.getInstance(certificate.getIssuerX500Principal().getEncoded());
+
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(crlIssuer, new Date());
+
+        builder.addExtension(Extension.issuingDistributionPoint, true, new IssuingDistributionPoint(null, true, false));
+
+        for (int i = 0; i != 1000; i++)
+        {
+            builder.addCRLEntry(BigInteger.valueOf(i * 7 + 1), new Date(), CRLReason.cACompromise);
+        }
+
+        ExtensionsGenerator extGen = new ExtensionsGenerator();
+
+        extGen.addExtension(Extension.reasonCode, false, CRLReason.lookup(CRLReason.cACompromise));
+        extGen.addExtension(Extension.certificateIssuer, true, new GeneralNames(new GeneralName(caName)));
+
+        builder.addCRLEntry(certificate.getSerialNumber(), new Date(), extGen.generate());
+
+        for (int i = 1000; i != 2000; i++)
+        {
+            builder.addCRLEntry(BigInteger.valueOf(i * 7 + 1), new Date(), CRLReason.cACompromise);
+        }
+
+        JcaContentSignerBuilder contentSignerBuilder = new JcaContentSignerBuilder("SHA256WithRSAEncryption");
+
+        contentSignerBuilder.setProvider("BC");
+
+        X509CRLHolder cRLHolder = builder.build(contentSignerBuilder.build(privateKey));
+
+        X509CRL crl = new JcaX509CRLConverter().setProvider("BC").getCRL(cRLHolder);
+
+        for (int i = 0; i != 2000; i++)
+        {
+            BigInteger serial = BigInteger.valueOf(i * 7 + 1);
+            GeneralNames expected = new GeneralNames(new GeneralName((i < 1000) ? crlIssuer : caName));
+
+            X509CRLEntryHolder cRLEntryHolder = cRLHolder.getRevokedCertificate(serial);
+
+            if (!cRLEntryHolder.getSerialNumber().equals(serial))
+            {
+                fail("serial number incorrect");
+            }
+
+            if (!cRLEntryHolder.getCertificateIssuer().equals(expected))
+            {
+                fail("certificate issuer incorrect");
+            }
+
+            X509CRLEntry crlEntry = crl.getRevokedCertificate(serial);
+
+            if (!crlEntry.getSerialNumber().equals(serial))
+            {
+                fail("JCA serial number incorrect");
+            }
+
+            if (i < 1000)
+            {
+                if (crlEntry.getCertificateIssuer() != null)
+                {
+                    fail("JCA certificate issuer should be null");
+                }
+            }
+            else if (!crlEntry.getCertificateIssuer().equals(new X500Principal(caName.getEncoded())))
+            {
+                fail("JCA certificate issuer incorrect");
+            }
+        }
+
+        if (cRLHolder.getRevokedCertificate(BigInteger.valueOf(3)) != null)
+        {
+            fail("unexpected entry found");
+        }
+
+        if (crl.getRevokedCertificate(BigInteger.valueOf(3)) != null)
+        {
+            fail("unexpected JCA entry found");
+        }
+
+        if (!crl.isRevoked(certificate))
+        {
+            fail("Certificate should be revoked");
+        }
+
+        CertificateFactory fac = CertificateFactory.getInstance("X.509", "BC");
+
+        X509CRL jceCRL = (X509CRL) fac.generateCRL(new ByteArrayInputStream(crl.getEncoded()));
+
+        if (!jceCRL.isRevoked(certificate))
+        {
+            fail("This certificate should also be revoked");
+        }
+
+        if (jceCRL.getRevokedCertificate(BigInteger.valueOf(1000 * 7 + 1)) == null)
+        {
+            fail("JCE entry not found");
+        }
+
+        MappedX509CRL mappedCRL = new MappedX509CRL(ByteBuffer.wrap(cRLHolder.getEncoded()));
+
+        if (!mappedCRL.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider("BC").build(certificate)))
+        {
+            fail("mapped CRL signature not valid");
+        }
+
+        if (!mappedCRL.getIssuer().equals(crlIssuer) || mappedCRL.getRevokedCertificateCount() != 2001)
+        {
+            fail("mapped CRL header incorrect");
+        }
+
+        if (mappedCRL.getRevokedCertificate(BigInteger.valueOf(3)) != null)
+        {
+            fail("unexpected mapped entry found");
+        }
+
+        X509CRLEntryHolder mappedEntry = mappedCRL.getRevokedCertificate(certificate.getSerialNumber());
+
+        if (!mappedEntry.getCertificateIssuer().equals(new GeneralNames(new GeneralName(caName))))
+        {
+            fail("mapped certificate issuer incorrect");
+        }
+
+        Iterator it = cRLHolder.getRevokedCertificates().iterator();
+        Iterator mappedIt = mappedCRL.getRevokedCertificateIterator();
+
+        while (it.hasNext())
+        {
+            X509CRLEntryHolder entry = (X509CRLEntryHolder)it.next();
+
+            mappedEntry = (X509CRLEntryHolder)mappedIt.next();
+
+            if (!entry.getSerialNumber().equals(mappedEntry.getSerialNumber())
+                || !entry.getCertificateIssuer().equals(mappedEntry.getCertificateIssuer()))
+            {
+                fail("mapped CRL entry mismatch");
+            }
+
+            if (!mappedCRL.getRevokedCertificate(entry.getSerialNumber()).getCertificateIssuer().equals(entry.getCertificateIssuer()))
+            {
+                fail("mapped CRL lookup mismatch");
+            }
+        }
+
+        if (mappedIt.hasNext())
+        {
+            fail("mapped CRL has too many entries");
+        }
+
+        //
+        // memory mapped from a file, checked against the heap parsed CRL.
+        //
+        File crlFile = File.createTempFile("bccrl", ".crl");
+
+        try
+        {
+            FileOutputStream fOut = new FileOutputStream(crlFile);
+
+            fOut.write(jceCRL.getEncoded());
+            fOut.close();
+
+            mappedCRL = new MappedX509CRL(crlFile);
+
+            if (!mappedCRL.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider("BC").build(certificate)))
+            {
+                fail("file mapped CRL signature not valid");
+            }
+
+            if (mappedCRL.getRevokedCertificateCount() != jceCRL.getRevokedCertificates().size())
+            {
+                fail("file mapped CRL entry count incorrect");
+            }
+
+            for (Iterator rIt = jceCRL.getRevokedCertificates().iterator(); rIt.hasNext();)
+            {
+                X509CRLEntry jceEntry = (X509CRLEntry)rIt.next();
+
+                mappedEntry = mappedCRL.getRevokedCertificate(jceEntry.getSerialNumber());
+
+                if (mappedEntry == null || !mappedEntry.getRevocationDate().equals(jceEntry.getRevocationDate()))
+                {
+                    fail("file mapped CRL lookup mismatch");
+                }
+            }
+
+            if (jceCRL.isRevoked(certificate) != (mappedCRL.getRevokedCertificate(certificate.getSerialNumber()) != null))
+            {
+                fail("file mapped CRL revocation mismatch");
+            }
+
+            if (jceCRL.getRevokedCertificate(BigInteger.valueOf(3)) != null || mappedCRL.getRevokedCertificate(BigInteger.valueOf(3)) != null)
+            {
+                fail("unexpected file mapped entry found");
+            }
+        }
+        finally
+        {
+            crlFile.delete();
+        }
+    }
+
+    // a zero length serial number is not a valid INTEGER, and is rejected while the index is built.
+    private void testMappedCRLEmptySerial()
+        throws Exception
+    {
+        AlgorithmIdentifier sigAlgId = new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE);
+        Time                now = new Time(new Date());
+
+        ASN1EncodableVector entry = new ASN1EncodableVector();
+
+        entry.add(new DERInteger(new byte[0]));
+        entry.add(now);
+
+        ASN1EncodableVector tbs = new ASN1EncodableVector();
+
+        tbs.add(sigAlgId);
+        tbs.add(new X500Name("CN=Test CA"));
+        tbs.add(now);
+        tbs.add(new DERSequence(new DERSequence(entry)));
+
+        ASN1EncodableVector crl = new ASN1EncodableVector();
+
+        crl.add(new DERSequence(tbs));
+        crl.add(sigAlgId);
+        crl.add(new DERBitString(new byte[1]));
+
+        try
+        {
+            new MappedX509CRL(ByteBuffer.wrap(new DERSequence(crl).getEncoded()));
+
+            fail("empty serial number accepted");
+        }
+        catch (CertIOException e)
+        {
+            // expected
+        }
+    }
+
     // issuing distribution point must be set for an indirect CRL to be recognised
     private void testMalformedIndirect()
         throws Exception
@@ -2930,7 +3187,9 @@ public void performTest()
         testDirect();
         testIndirect();
         testIndirect2();
+        testLargeIndirect();
         testMalformedIndirect();
+        testMappedCRLEmptySerial();
 
         checkCertificate(1, cert1);
         checkCertificate(2, cert2);
@@ -1,6 +1,8 @@
 package org.bouncycastle.cms.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyFactory;
@@ -16,6 +18,8 @@
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.OAEPParameterSpec;
@@ -34,6 +38,7 @@
 import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.cms.Attribute;
 import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.RecipientInfo;
 import org.bouncycastle.asn1.kisa.KISAObjectIdentifiers;
 import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
 import org.bouncycastle.asn1.ntt.NTTObjectIdentifiers;
@@ -47,14 +52,21 @@
 import org.bouncycastle.cms.CMSAlgorithm;
 import org.bouncycastle.cms.CMSEnvelopedData;
 import org.bouncycastle.cms.CMSEnvelopedDataGenerator;
+import org.bouncycastle.cms.CMSEnvelopedDataParser;
+import org.bouncycastle.cms.CMSEnvelopedDataStreamGenerator;
+import org.bouncycastle.cms.CMSEnvelopedGenerator;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.KEKRecipientId;
+import org.bouncycastle.cms.KeyAgreeRecipientId;
+import org.bouncycastle.cms.KeyTransRecipientId;
 import org.bouncycastle.cms.KeyTransRecipientInformation;
 import org.bouncycastle.cms.OriginatorInfoGenerator;
 import org.bouncycastle.cms.OriginatorInformation;
 import org.bouncycastle.cms.PasswordRecipient;
 import org.bouncycastle.cms.PasswordRecipientInformation;
 import org.bouncycastle.cms.RecipientId;
+import org.bouncycastle.cms.RecipientInfoGenerator;
 import org.bouncycastle.cms.RecipientInformation;
 import org.bouncycastle.cms.RecipientInformationStore;
 import org.bouncycastle.cms.SimpleAttributeTableGenerator;
@@ -72,6 +84,7 @@
 import org.bouncycastle.cms.jcajce.JcePasswordEnvelopedRecipient;
 import org.bouncycastle.cms.jcajce.JcePasswordRecipientInfoGenerator;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.GenericKey;
 import org.bouncycastle.operator.OutputEncryptor;
 import org.bouncycastle.operator.jcajce.JcaAlgorithmParametersConverter;
 import org.bouncycastle.util.encoders.Base64;
@@ -1206,6 +1219,180 @@ public void testECMQVKeyAgreeMultiple()
         confirmNumberRecipients(recipients, 2);
     }
 
+    public void testParallelRecipients()
+        throws Exception
+    {
+        byte[] data = new byte[20000];
+
+        for (int i = 0; i != data.length; i++)
+        {
+            data[i] = (byte)(i * 11);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try
+        {
+            //
+            // one shot generator, the recipients are done while the content is encrypted.
+            //
+            CMSEnvelopedDataGenerator edGen = new CMSEnvelopedDataGenerator(executor);
+
+            addParallelRecipients(edGen);
+
+            CMSEnvelopedData ed = edGen.generate(
+                new CMSProcessableByteArray(data),
+                new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES128_CBC).setProvider(BC).build());
+
+            checkParallelRecipients(ed.getRecipientInfos(), data);
+
+            //
+            // stream generator.
+            //
+            CMSEnvelopedDataStreamGenerator edStreamGen = new CMSEnvelopedDataStreamGenerator(executor);
+
+            addParallelRecipients(edStreamGen);
+
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+            OutputStream out = edStreamGen.open(bOut, new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES128_CBC).setProvider(BC).build());
+
+            out.write(data);
+            out.close();
+
+            checkParallelRecipients(new CMSEnvelopedData(bOut.toByteArray()).getRecipientInfos(), data);
+
+            //
+            // a failing recipient.
+            //
+            edGen = new CMSEnvelopedDataGenerator(executor);
+
+            edGen.addRecipientInfoGenerator(new JceKeyTransRecipientInfoGenerator(_reciCert).setProvider(BC));
+            edGen.addRecipientInfoGenerator(new RecipientInfoGenerator()
+            {
+                public RecipientInfo generate(GenericKey contentEncryptionKey)
+                    throws CMSException
+                {
+                    throw new CMSException("bad recipient");
+                }
+            });
+
+            try
+            {
+                edGen.generate(
+                    new CMSProcessableByteArray(data),
+                    new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES128_CBC).setProvider(BC).build());
+                fail("no exception for failing recipient");
+            }
+            catch (CMSException e)
+            {
+                assertEquals("bad recipient", e.getMessage());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testRecipientLookup()
+        throws Exception
+    {
+        byte[]    data = "WallaWallaWashington".getBytes();
+        SecretKey kek = CMSTestUtil.makeAESKey(128);
+
+        CMSEnvelopedDataGenerator edGen = new CMSEnvelopedDataGenerator();
+
+        for (int i = 0; i != 100; i++)
+        {
+            edGen.addRecipientInfoGenerator(new JceKeyTransRecipientInfoGenerator(new byte[] { (byte)(i >> 8), (byte)i, 1, 2 }, _reciCert.getPublicKey()).setProvider(BC));
+        }
+        edGen.addRecipientInfoGenerator(new JceKeyTransRecipientInfoGenerator(_reciCert).setProvider(BC));
+        edGen.addRecipientInfoGenerator(new JceKeyAgreeRecipientInfoGenerator(CMSAlgorithm.ECDH_SHA1KDF,
+            _origEcKP.getPrivate(), _origEcKP.getPublic(), CMSAlgorithm.AES128_WRAP).addRecipient(_reciEcCert).addRecipient(_reciEcCert2).setProvider(BC));
+        edGen.addRecipientInfoGenerator(new JceKEKRecipientInfoGenerator(new byte[] { 1, 2, 3, 4, 5 }, kek).setProvider(BC));
+
+        CMSEnvelopedData ed = edGen.generate(
+            new CMSProcessableByteArray(data),
+            new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES128_CBC).setProvider(BC).build());
+
+        checkRecipientLookup(ed.getRecipientInfos(), data, kek);
+        checkRecipientLookup(new CMSEnvelopedData(ed.getEncoded()).getRecipientInfos(), data, kek);
+
+        CMSEnvelopedDataParser ep = new CMSEnvelopedDataParser(ed.getEncoded());
+
+        RecipientInformationStore recipients = ep.getRecipientInfos();
+
+        assertEquals(104, recipients.size());
+
+        RecipientInformation recipient = recipients.get(new KeyTransRecipientId(new byte[] { 0, 77, 1, 2 }));
+
+        assertTrue(Arrays.equals(data, recipient.getContent(new JceKeyTransEnvelopedRecipient(_reciKP.getPrivate()).setProvider(BC))));
+
+        ep.close();
+    }
+
+    private void checkRecipientLookup(RecipientInformationStore recipients, byte[] data, SecretKey kek)
+        throws Exception
+    {
+        assertEquals(104, recipients.size());
+        assertEquals(104, recipients.getRecipients().size());
+
+        Collection matches = recipients.getRecipients(new KeyTransRecipientId(new byte[] { 0, 42, 1, 2 }));
+
+        assertEquals(1, matches.size());
+
+        RecipientInformation recipient = (RecipientInformation)matches.iterator().next();
+
+        assertTrue(Arrays.equals(new byte[] { 0, 42, 1, 2 }, ((KeyTransRecipientId)recipient.getRID()).getSubjectKeyIdentifier()));
+        assertTrue(Arrays.equals(data, recipient.getContent(new JceKeyTransEnvelopedRecipient(_reciKP.getPrivate()).setProvider(BC))));
+
+        // issuer and serial number, plus the certificate's subject key identifier which no recipient uses.
+        assertEquals(1, recipients.getRecipients(new JceKeyTransRecipientId(_reciCert)).size());
+        assertEquals(1, recipients.getRecipients(new KeyTransRecipientId(new X500Name(_reciCert.getIssuerX500Principal().getName()), _reciCert.getSerialNumber())).size());
+        assertEquals(0, recipients.getRecipients(new KeyTransRecipientId(new X500Name("CN=Nobody"), _reciCert.getSerialNumber())).size());
+        assertEquals(0, recipients.getRecipients(new KeyTransRecipientId(new byte[] { 1, 2, 3 })).size());
+        assertNull(recipients.get(new KeyAgreeRecipientId(new byte[] { 0, 42, 1, 2 })));
+
+        confirmDataReceived(recipients, data, _reciEcCert, _reciEcKP.getPrivate(), BC);
+        confirmDataReceived(recipients, data, _reciEcCert2, _reciEcKP2.getPrivate(), BC);
+
+        recipient = recipients.get(new KEKRecipientId(new byte[] { 1, 2, 3, 4, 5 }));
+
+        assertNotNull(recipient);
+        assertTrue(Arrays.equals(data, recipient.getContent(new JceKEKEnvelopedRecipient(kek).setProvider(BC))));
+    }
+
+    private void addParallelRecipients(CMSEnvelopedGenerator edGen)
+        throws Exception
+    {
+        edGen.addRecipientInfoGenerator(new JceKeyTransRecipientInfoGenerator(_reciCert).setProvider(BC));
+        edGen.addRecipientInfoGenerator(new JceKeyTransRecipientInfoGenerator(ASN1OctetString.getInstance(ASN1OctetString.getInstance(_reciCert.getExtensionValue(Extension.subjectKeyIdentifier.getId())).getOctets()).getOctets(), _reciCert.getPublicKey()).setProvider(BC));
+        edGen.addRecipientInfoGenerator(new JceKeyAgreeRecipientInfoGenerator(CMSAlgorithm.ECMQV_SHA1KDF,
+            _origEcKP.getPrivate(), _origEcKP.getPublic(), CMSAlgorithm.AES128_WRAP).addRecipient(_reciEcCert).addRecipient(_reciEcCert2).setProvider(BC));
+        edGen.addRecipientInfoGenerator(new JceKEKRecipientInfoGenerator(new byte[] { 1, 2, 3, 4, 5 }, CMSTestUtil.makeAESKey(128)).setProvider(BC));
+    }
+
+    private void checkParallelRecipients(RecipientInformationStore recipients, byte[] data)
+        throws Exception
+    {
+        // the two key agree recipients share one recipient info.
+        assertEquals(5, recipients.getRecipients().size());
+
+        Collection keyTrans = recipients.getRecipients(new JceKeyTransRecipientId(_reciCert));
+
+        assertEquals(2, keyTrans.size());
+
+        for (Iterator it = keyTrans.iterator(); it.hasNext();)
+        {
+            RecipientInformation recipient = (RecipientInformation)it.next();
+
+            assertTrue(Arrays.equals(data, recipient.getContent(new JceKeyTransEnvelopedRecipient(_reciKP.getPrivate()).setProvider(BC))));
+        }
+
+        confirmDataReceived(recipients, data, _reciEcCert, _reciEcKP.getPrivate(), BC);
+        confirmDataReceived(recipients, data, _reciEcCert2, _reciEcKP2.getPrivate(), BC);
+    }
+
     private static void confirmDataReceived(RecipientInformationStore recipients,
         byte[] expectedData, X509Certificate reciCert, PrivateKey reciPrivKey, String provider)
         throws CMSException, NoSuchProviderException, CertificateEncodingException, IOException
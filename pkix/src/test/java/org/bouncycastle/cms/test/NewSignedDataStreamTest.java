@@ -3,6 +3,8 @@
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.security.KeyPair;
 import java.security.MessageDigest;
@@ -16,10 +18,13 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import org.bouncycastle.asn1.ASN1Encoding;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.DEROctetString;
@@ -28,6 +33,7 @@
 import org.bouncycastle.asn1.cms.AttributeTable;
 import org.bouncycastle.asn1.cms.CMSAttributes;
 import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.ContentInfo;
 import org.bouncycastle.asn1.ocsp.OCSPResponse;
 import org.bouncycastle.cert.X509AttributeCertificateHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
@@ -36,10 +42,14 @@
 import org.bouncycastle.cert.jcajce.JcaX509CRLHolder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cms.CMSAbsentContent;
 import org.bouncycastle.cms.CMSAlgorithm;
 import org.bouncycastle.cms.CMSAttributeTableGenerator;
+import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSProcessableFileChannel;
 import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataFileParser;
 import org.bouncycastle.cms.CMSSignedDataGenerator;
 import org.bouncycastle.cms.CMSSignedDataParser;
 import org.bouncycastle.cms.CMSSignedDataStreamGenerator;
@@ -55,6 +65,7 @@
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.CollectionStore;
 import org.bouncycastle.util.Store;
 import org.bouncycastle.util.encoders.Base64;
@@ -115,6 +126,9 @@
     private static KeyPair         _origDsaKP;
     private static X509Certificate _origDsaCert;
 
+    private static KeyPair         _origEcKP;
+    private static X509Certificate _origEcCert;
+
     private static X509CRL         _signCrl;
     private static X509CRL         _origCrl;
 
@@ -147,6 +161,9 @@ private static void init()
     
             _origDsaKP   = CMSTestUtil.makeDsaKeyPair();
             _origDsaCert = CMSTestUtil.makeCertificate(_origDsaKP, _origDN, _signKP, _signDN);
+
+            _origEcKP   = CMSTestUtil.makeEcDsaKeyPair();
+            _origEcCert = CMSTestUtil.makeCertificate(_origEcKP, _origDN, _signKP, _signDN);
             
             _reciDN   = "CN=Doug, OU=Sales, O=Bouncy Castle, C=AU";
             _reciKP   = CMSTestUtil.makeKeyPair();
@@ -598,6 +615,318 @@ public void testSHA1AndMD5WithRSA()
         verifySignatures(sp);
     }
     
+    public void testParallelSHA256AndSHA512()
+        throws Exception
+    {
+        byte[] data = new byte[1024 * 1024 + 17];
+
+        for (int i = 0; i != data.length; i++)
+        {
+            data[i] = (byte)(i * 31 + (i >> 8));
+        }
+
+        List certList = new ArrayList();
+
+        certList.add(_origCert);
+        certList.add(_origEcCert);
+        certList.add(_signCert);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try
+        {
+            for (int encap = 0; encap != 2; encap++)
+            {
+                ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+
+                CMSSignedDataStreamGenerator gen = new CMSSignedDataStreamGenerator(executor);
+                JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+                ContentSigner rsaSigner = new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate());
+                ContentSigner ecSigner = new JcaContentSignerBuilder("SHA512withECDSA").setProvider(BC).build(_origEcKP.getPrivate());
+
+                gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(rsaSigner, _origCert));
+                gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(ecSigner, _origEcCert));
+
+                gen.addCertificates(new JcaCertStore(certList));
+
+                OutputStream sigOut = gen.open(bOut, encap == 1);
+
+                // a mix of write sizes, so data straddles the shared buffers.
+                int off = 0;
+                for (int len = 1; off < data.length; len = len * 3 + 1)
+                {
+                    int count = Math.min(len, data.length - off);
+
+                    if (count == 1)
+                    {
+                        sigOut.write(data[off]);
+                    }
+                    else
+                    {
+                        sigOut.write(data, off, count);
+                    }
+
+                    off += count;
+                }
+
+                sigOut.close();
+
+                // check with both the sequential and the parallel parser.
+                for (int par = 0; par != 2; par++)
+                {
+                    CMSTypedStream content = (encap == 1) ? null : new CMSTypedStream(new ByteArrayInputStream(data));
+                    CMSSignedDataParser sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(),
+                        content, new ByteArrayInputStream(bOut.toByteArray()), (par == 1) ? executor : null);
+
+                    sp.getSignedContent().drain();
+
+                    SignerInformationStore signers = sp.getSignerInfos();
+
+                    assertEquals(2, signers.size());
+
+                    for (Iterator it = signers.getSigners().iterator(); it.hasNext();)
+                    {
+                        SignerInformation signer = (SignerInformation)it.next();
+                        X509CertificateHolder cert = (X509CertificateHolder)sp.getCertificates().getMatches(signer.getSID()).iterator().next();
+                        String digestName = CMSAlgorithm.SHA256.equals(signer.getDigestAlgorithmID().getAlgorithm()) ? "SHA-256" : "SHA-512";
+
+                        assertTrue(signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(cert)));
+                        assertTrue(MessageDigest.isEqual(MessageDigest.getInstance(digestName, BC).digest(data), signer.getContentDigest()));
+                    }
+
+                    sp.close();
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testFileParser()
+        throws Exception
+    {
+        byte[] data = new byte[300 * 1024 + 3];
+
+        for (int i = 0; i != data.length; i++)
+        {
+            data[i] = (byte)(i * 7 + (i >> 10));
+        }
+
+        List certList = new ArrayList();
+        List crlList = new ArrayList();
+
+        certList.add(_origCert);
+        certList.add(_origEcCert);
+        certList.add(_signCert);
+
+        crlList.add(_signCrl);
+
+        JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+        ContentSigner rsaSigner = new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate());
+        ContentSigner ecSigner = new JcaContentSignerBuilder("SHA1withECDSA").setProvider(BC).build(_origEcKP.getPrivate());
+
+        File contentFile = File.createTempFile("bccms", ".dat");
+        File sigFile = File.createTempFile("bccms", ".p7s");
+
+        try
+        {
+            FileOutputStream fOut = new FileOutputStream(contentFile);
+
+            fOut.write(data);
+            fOut.close();
+
+            //
+            // indefinite length encodings from the stream generator, encapsulated and detached.
+            //
+            for (int encap = 0; encap != 2; encap++)
+            {
+                CMSSignedDataStreamGenerator gen = new CMSSignedDataStreamGenerator();
+
+                gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(rsaSigner, _origCert));
+                gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(ecSigner, _origEcCert));
+                gen.addCertificates(new JcaCertStore(certList));
+                gen.addCRLs(new JcaCRLStore(crlList));
+                gen.setBufferSize(1000);
+
+                fOut = new FileOutputStream(sigFile);
+
+                OutputStream sigOut = gen.open(fOut, encap == 1);
+
+                sigOut.write(data);
+                sigOut.close();
+                fOut.close();
+
+                checkFileParser(new CMSSignedDataFileParser((encap == 1) ? null : contentFile, sigFile), data, 3, 1);
+            }
+
+            //
+            // definite length encoding of encapsulated content.
+            //
+            CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+
+            gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(rsaSigner, _origCert));
+            gen.addCertificates(new JcaCertStore(certList));
+
+            CMSSignedData sd = gen.generate(new CMSProcessableByteArray(data), true);
+
+            fOut = new FileOutputStream(sigFile);
+
+            fOut.write(sd.toASN1Structure().getEncoded(ASN1Encoding.DER));
+            fOut.close();
+
+            checkFileParser(new CMSSignedDataFileParser(sigFile), data, 3, 0);
+
+            //
+            // certificates only.
+            //
+            gen = new CMSSignedDataGenerator();
+
+            gen.addCertificates(new JcaCertStore(certList));
+
+            fOut = new FileOutputStream(sigFile);
+
+            fOut.write(gen.generate(new CMSAbsentContent()).getEncoded());
+            fOut.close();
+
+            CMSSignedDataFileParser sp = new CMSSignedDataFileParser(sigFile);
+
+            assertNull(sp.getSignedContent());
+            assertEquals(0, sp.getSignerInfos().size());
+            assertEquals(3, sp.getCertificates().getMatches(null).size());
+
+            //
+            // not signed data.
+            //
+            fOut = new FileOutputStream(sigFile);
+
+            fOut.write(new ContentInfo(CMSObjectIdentifiers.data, new DEROctetString(data)).getEncoded());
+            fOut.close();
+
+            try
+            {
+                new CMSSignedDataFileParser(sigFile);
+                fail("no exception for data content info");
+            }
+            catch (CMSException e)
+            {
+                assertEquals("file does not contain signed data", e.getMessage());
+            }
+        }
+        finally
+        {
+            contentFile.delete();
+            sigFile.delete();
+        }
+    }
+
+    public void testProcessableFileChannel()
+        throws Exception
+    {
+        byte[] data = new byte[100 * 1024 + 7];
+
+        for (int i = 0; i != data.length; i++)
+        {
+            data[i] = (byte)(i * 3 + (i >> 8));
+        }
+
+        List certList = new ArrayList();
+
+        certList.add(_origCert);
+        certList.add(_origEcCert);
+
+        JcaSignerInfoGeneratorBuilder signerInfoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+        File contentFile = File.createTempFile("bccms", ".dat");
+
+        try
+        {
+            FileOutputStream fOut = new FileOutputStream(contentFile);
+
+            fOut.write(data);
+            fOut.close();
+
+            CMSTypedData[] processables = new CMSTypedData[] {
+                new CMSProcessableFileChannel(contentFile),
+                new CMSProcessableFileChannel(contentFile, 1000),
+                new CMSProcessableFileChannel(CMSObjectIdentifiers.data, contentFile, 1000, true) };
+
+            for (int i = 0; i != processables.length; i++)
+            {
+                ContentSigner rsaSigner = new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(_origKP.getPrivate());
+                ContentSigner ecSigner = new JcaContentSignerBuilder("SHA1withECDSA").setProvider(BC).build(_origEcKP.getPrivate());
+
+                //
+                // encapsulated, so the content also goes to a stream that cannot take a ByteBuffer.
+                //
+                CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+
+                gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(rsaSigner, _origCert));
+                gen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(ecSigner, _origEcCert));
+                gen.addCertificates(new JcaCertStore(certList));
+
+                CMSSignedData sd = gen.generate(processables[i], true);
+
+                assertTrue(Arrays.areEqual(data, (byte[])new CMSSignedData(sd.getEncoded()).getSignedContent().getContent()));
+
+                CMSSignedDataParser sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), sd.getEncoded());
+
+                sp.getSignedContent().drain();
+
+                verifySignatures(sp);
+
+                sp.close();
+
+                //
+                // detached, through the stream generator.
+                //
+                CMSSignedDataStreamGenerator sGen = new CMSSignedDataStreamGenerator();
+
+                sGen.addSignerInfoGenerator(signerInfoGeneratorBuilder.build(rsaSigner, _origCert));
+                sGen.addCertificates(new JcaCertStore(certList));
+
+                ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+                OutputStream sigOut = sGen.open(bOut, false);
+
+                processables[i].write(sigOut);
+                sigOut.close();
+
+                sp = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build(), new CMSTypedStream(new ByteArrayInputStream(data)), bOut.toByteArray());
+
+                sp.getSignedContent().drain();
+
+                verifySignatures(sp, MessageDigest.getInstance("SHA256", BC).digest(data));
+
+                sp.close();
+            }
+        }
+        finally
+        {
+            contentFile.delete();
+        }
+    }
+
+    private void checkFileParser(CMSSignedDataFileParser sp, byte[] data, int certCount, int crlCount)
+        throws Exception
+    {
+        // certificates and signers first, the content has not been read.
+        assertEquals(certCount, sp.getCertificates().getMatches(null).size());
+        assertEquals(crlCount, sp.getCRLs().getMatches(null).size());
+        assertEquals(CMSObjectIdentifiers.data.getId(), sp.getSignedContentTypeOID());
+
+        SignerInformationStore signers = sp.getSignerInfos();
+
+        for (Iterator it = signers.getSigners().iterator(); it.hasNext();)
+        {
+            SignerInformation signer = (SignerInformation)it.next();
+            X509CertificateHolder cert = (X509CertificateHolder)sp.getCertificates().getMatches(signer.getSID()).iterator().next();
+
+            assertTrue(signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(cert)));
+        }
+
+        assertTrue(Arrays.areEqual(data, CMSTestUtil.streamToByteArray(sp.getSignedContent().getContentStream())));
+    }
+
     public void testSHA1WithRSAEncapsulatedBufferedStream()
         throws Exception
     {
@@ -1,5 +1,6 @@
 package org.bouncycastle.tsp.test;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
@@ -25,16 +26,19 @@
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.IssuerSerial;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaCertStore;
 import org.bouncycastle.cms.CMSAttributeTableGenerationException;
 import org.bouncycastle.cms.CMSAttributeTableGenerator;
+import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.DefaultSignedAttributeTableGenerator;
 import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
 import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
 import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.DigestCalculator;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
@@ -47,6 +51,8 @@
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampResponseGenerator;
 import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenBatchGenerator;
+import org.bouncycastle.tsp.TimeStampTokenBatchVerifier;
 import org.bouncycastle.tsp.TimeStampTokenGenerator;
 import org.bouncycastle.tsp.TimeStampTokenInfo;
 import org.bouncycastle.util.Arrays;
@@ -92,6 +98,8 @@ public void testGeneral()
             testAccuracyZeroCerts(origKP.getPrivate(), origCert, certs);
             testAccuracyWithCertsAndOrdering(origKP.getPrivate(), origCert, certs);
             testNoNonse(origKP.getPrivate(), origCert, certs);
+            batchTest(origKP.getPrivate(), origCert, certs);
+            batchFailureTest(origKP.getPrivate(), origCert, certs);
     }
     
     private void basicTest(
@@ -824,4 +832,206 @@ private void testNoNonse(
         
         assertEquals(0, certificates.size());
     } 
+
+    private void batchTest(
+        PrivateKey      privateKey,
+        X509Certificate cert,
+        Store           certs)
+        throws Exception
+    {
+        TimeStampTokenGenerator tsTokenGen = new TimeStampTokenGenerator(
+                new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", privateKey, cert), new SHA256DigestCalculator(), new ASN1ObjectIdentifier("1.2"));
+
+        tsTokenGen.addCertificates(certs);
+
+        TimeStampTokenBatchGenerator batchGen = new TimeStampTokenBatchGenerator(tsTokenGen, new SHA256DigestCalculator());
+        TimeStampTokenBatchVerifier  batchVerifier = new TimeStampTokenBatchVerifier(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+        TimeStampRequestGenerator    reqGen = new TimeStampRequestGenerator();
+
+        // odd sized batches, so some leaves are carried up the tree without a sibling.
+        int[] batchSizes = { 1, 2, 7 };
+
+        for (int b = 0; b != batchSizes.length; b++)
+        {
+            TimeStampRequest[] requests = new TimeStampRequest[batchSizes[b]];
+
+            for (int i = 0; i != requests.length; i++)
+            {
+                byte[] digest = new byte[32];
+
+                digest[0] = (byte)b;
+                digest[1] = (byte)i;
+
+                reqGen.setCertReq(i == 1);
+
+                if (i % 3 == 0)
+                {
+                    requests[i] = reqGen.generate(TSPAlgorithms.SHA256, digest);
+                }
+                else
+                {
+                    requests[i] = reqGen.generate(TSPAlgorithms.SHA256, digest, BigInteger.valueOf(100 + i));
+                }
+
+                assertEquals(i, batchGen.addRequest(requests[i]));
+            }
+
+            TimeStampToken[] tokens = batchGen.generate(BigInteger.valueOf(42 + b), new Date());
+
+            assertEquals(0, batchGen.getRequestCount());
+            assertEquals(requests.length, tokens.length);
+
+            for (int i = 0; i != tokens.length; i++)
+            {
+                TimeStampToken token = new TimeStampToken(new CMSSignedData(tokens[i].getEncoded()));
+
+                assertTrue(TimeStampTokenBatchVerifier.isBatchToken(token));
+                assertEquals(BigInteger.valueOf(42 + b), token.getTimeStampInfo().getSerialNumber());
+                assertEquals(i, TimeStampTokenBatchVerifier.getInclusionProof(token).getLeafIndex());
+                assertEquals(requests[i].getCertReq(), token.getCertificates().getMatches(null).size() != 0);
+
+                batchVerifier.validate(token, requests[i], new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(cert));
+
+                if (requests.length > 1)
+                {
+                    try
+                    {
+                        batchVerifier.validate(token, requests[(i + 1) % requests.length]);
+                        fail("token validated for wrong request");
+                    }
+                    catch (TSPValidationException e)
+                    {
+                        // expected
+                    }
+                }
+            }
+        }
+
+        //
+        // a request asking for a different policy has to go in a different batch
+        //
+        batchGen.addRequest(reqGen.generate(TSPAlgorithms.SHA256, new byte[32]));
+
+        reqGen.setReqPolicy(new ASN1ObjectIdentifier("1.1"));
+
+        try
+        {
+            batchGen.addRequest(reqGen.generate(TSPAlgorithms.SHA256, new byte[32]));
+            fail("request with different policy accepted");
+        }
+        catch (TSPValidationException e)
+        {
+            assertEquals(PKIFailureInfo.unacceptedPolicy, e.getFailureCode());
+        }
+
+        assertEquals(1, batchGen.getRequestCount());
+
+        //
+        // a standard token has no proof
+        //
+        TimeStampToken token = tsTokenGen.generate(reqGen.generate(TSPAlgorithms.SHA256, new byte[32]), BigInteger.ONE, new Date());
+
+        assertFalse(TimeStampTokenBatchVerifier.isBatchToken(token));
+    }
+
+    private void batchFailureTest(
+        PrivateKey      privateKey,
+        X509Certificate cert,
+        Store           certs)
+        throws Exception
+    {
+        final boolean[]     fail = { true };
+        final ContentSigner contentSigner = new JcaContentSignerBuilder("SHA256withRSA").setProvider(BC).build(privateKey);
+
+        ContentSigner failingSigner = new ContentSigner()
+        {
+            public AlgorithmIdentifier getAlgorithmIdentifier()
+            {
+                return contentSigner.getAlgorithmIdentifier();
+            }
+
+            public OutputStream getOutputStream()
+            {
+                if (fail[0])
+                {
+                    return new OutputStream()
+                    {
+                        public void write(int b)
+                            throws IOException
+                        {
+                            throw new IOException("signer unavailable");
+                        }
+                    };
+                }
+
+                return contentSigner.getOutputStream();
+            }
+
+            public byte[] getSignature()
+            {
+                return contentSigner.getSignature();
+            }
+        };
+
+        JcaSignerInfoGeneratorBuilder infoGeneratorBuilder = new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+
+        TimeStampTokenGenerator tsTokenGen = new TimeStampTokenGenerator(infoGeneratorBuilder.build(failingSigner, cert), new SHA256DigestCalculator(), new ASN1ObjectIdentifier("1.2"));
+
+        tsTokenGen.addCertificates(certs);
+
+        TimeStampTokenBatchGenerator batchGen = new TimeStampTokenBatchGenerator(tsTokenGen, new SHA256DigestCalculator());
+        TimeStampTokenBatchVerifier  batchVerifier = new TimeStampTokenBatchVerifier(new JcaDigestCalculatorProviderBuilder().setProvider(BC).build());
+        TimeStampRequestGenerator    reqGen = new TimeStampRequestGenerator();
+        TimeStampRequest[]           requests = new TimeStampRequest[3];
+
+        reqGen.setReqPolicy(new ASN1ObjectIdentifier("1.1"));
+
+        for (int i = 0; i != requests.length; i++)
+        {
+            byte[] digest = new byte[32];
+
+            digest[0] = (byte)i;
+
+            requests[i] = reqGen.generate(TSPAlgorithms.SHA256, digest, BigInteger.valueOf(i));
+
+            batchGen.addRequest(requests[i]);
+        }
+
+        try
+        {
+            batchGen.generate(BigInteger.ONE, new Date());
+            fail("batch generated with failing signer");
+        }
+        catch (TSPException e)
+        {
+            // expected
+        }
+
+        //
+        // the batch, and its policy, survive the failure
+        //
+        assertEquals(requests.length, batchGen.getRequestCount());
+
+        try
+        {
+            batchGen.addRequest(new TimeStampRequestGenerator().generate(TSPAlgorithms.SHA256, new byte[32]));
+            fail("request with different policy accepted");
+        }
+        catch (TSPValidationException e)
+        {
+            assertEquals(PKIFailureInfo.unacceptedPolicy, e.getFailureCode());
+        }
+
+        fail[0] = false;
+
+        TimeStampToken[] tokens = batchGen.generate(BigInteger.valueOf(2), new Date());
+
+        assertEquals(0, batchGen.getRequestCount());
+        assertEquals(requests.length, tokens.length);
+
+        for (int i = 0; i != tokens.length; i++)
+        {
+            batchVerifier.validate(tokens[i], requests[i], new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC).build(cert));
+        }
+    }
 }
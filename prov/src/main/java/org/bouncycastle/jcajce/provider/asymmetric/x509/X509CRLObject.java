@@ -39,6 +39,7 @@
 import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.RevokedCertificatesIndex;
 import org.bouncycastle.asn1.x509.TBSCertList;
 import org.bouncycastle.jce.X509Principal;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -63,6 +64,7 @@
     private boolean isIndirect;
     private boolean isHashCodeSet = false;
     private int     hashCodeValue;
+    private volatile RevokedCertificatesIndex revokedIndex;
 
     static boolean isIndirectCRL(X509CRL crl)
         throws CRLException
@@ -300,32 +302,43 @@ private Set loadCRLEntries()
         return entrySet;
     }
 
-    public X509CRLEntry getRevokedCertificate(BigInteger serialNumber)
+    private RevokedCertificatesIndex getRevokedCertificatesIndex()
     {
-        Enumeration certs = c.getRevokedCertificateEnumeration();
+        RevokedCertificatesIndex index = revokedIndex;
 
-        X500Name previousCertificateIssuer = null; // the issuer
-        while (certs.hasMoreElements())
+        if (index == null)
         {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)certs.nextElement();
+            // the index is immutable, so it doesn't matter if two threads race to build it.
+            index = new RevokedCertificatesIndex(c.getTBSCertList(), isIndirect);
+            revokedIndex = index;
+        }
 
-            if (serialNumber.equals(entry.getUserCertificate().getValue()))
-            {
-                return new X509CRLEntryObject(entry, isIndirect, previousCertificateIssuer);
-            }
+        return index;
+    }
 
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+    private X500Name getCertificateIssuer(RevokedCertificatesIndex index, int position)
+    {
+        GeneralNames certificateIssuer = index.getCertificateIssuer(position);
 
-                if (currentCaName != null)
-                {
-                    previousCertificateIssuer = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                }
-            }
+        if (certificateIssuer == null)
+        {
+            return null;
         }
 
-        return null;
+        return X500Name.getInstance(certificateIssuer.getNames()[0].getName());
+    }
+
+    public X509CRLEntry getRevokedCertificate(BigInteger serialNumber)
+    {
+        RevokedCertificatesIndex index = getRevokedCertificatesIndex();
+        int[] positions = index.getEntryPositions(serialNumber);
+
+        if (positions.length == 0)
+        {
+            return null;
+        }
+
+        return new X509CRLEntryObject(index.getEntry(positions[0]), isIndirect, getCertificateIssuer(index, positions[0]));
     }
 
     public Set getRevokedCertificates()
@@ -524,55 +537,50 @@ public boolean isRevoked(Certificate cert)
             throw new RuntimeException("X.509 CRL used with non X.509 Cert");
         }
 
-        Enumeration certs = c.getRevokedCertificateEnumeration();
-
-        X500Name caName = c.getIssuer();
+        BigInteger serial = ((X509Certificate)cert).getSerialNumber();
+        RevokedCertificatesIndex index = getRevokedCertificatesIndex();
+        int[] positions = index.getEntryPositions(serial);
 
-        if (certs.hasMoreElements())
+        if (positions.length == 0)
         {
-            BigInteger serial = ((X509Certificate)cert).getSerialNumber();
-
-            while (certs.hasMoreElements())
-            {
-                TBSCertList.CRLEntry entry = TBSCertList.CRLEntry.getInstance(certs.nextElement());
+            return false;
+        }
 
-                if (isIndirect && entry.hasExtensions())
-                {
-                    Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+        X500Name issuer;
 
-                    if (currentCaName != null)
-                    {
-                        caName = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                    }
-                }
+        if (cert instanceof  X509Certificate)
+        {
+            issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
+        }
+        else
+        {
+            try
+            {
+                issuer = org.bouncycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
+            }
+            catch (CertificateEncodingException e)
+            {
+                throw new RuntimeException("Cannot process certificate");
+            }
+        }
 
-                if (entry.getUserCertificate().getValue().equals(serial))
-                {
-                    X500Name issuer;
+        for (int i = 0; i != positions.length; i++)
+        {
+            X500Name caName = null;
 
-                    if (cert instanceof  X509Certificate)
-                    {
-                        issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
-                    }
-                    else
-                    {
-                        try
-                        {
-                            issuer = org.bouncycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
-                        }
-                        catch (CertificateEncodingException e)
-                        {
-                            throw new RuntimeException("Cannot process certificate");
-                        }
-                    }
+            if (isIndirect)
+            {
+                caName = getCertificateIssuer(index, positions[i]);
+            }
 
-                    if (!caName.equals(issuer))
-                    {
-                        return false;
-                    }
+            if (caName == null)
+            {
+                caName = c.getIssuer();
+            }
 
-                    return true;
-                }
+            if (caName.equals(issuer))
+            {
+                return true;
             }
         }
 
@@ -68,6 +68,7 @@
 import org.bouncycastle.util.StoreException;
 import org.bouncycastle.x509.ExtendedPKIXBuilderParameters;
 import org.bouncycastle.x509.ExtendedPKIXParameters;
+import org.bouncycastle.x509.PKIXValidationCache;
 import org.bouncycastle.x509.X509AttributeCertStoreSelector;
 import org.bouncycastle.x509.X509AttributeCertificate;
 import org.bouncycastle.x509.X509CRLStoreSelector;
@@ -154,6 +155,32 @@ protected static TrustAnchor findTrustAnchor(
         Set trustAnchors,
         String sigProvider)
         throws AnnotatedException
+    {
+        return findTrustAnchor(cert, trustAnchors, sigProvider, null);
+    }
+
+    /**
+     * Search the given Set of TrustAnchor's for one that is the
+     * issuer of the given X509 certificate. Uses the specified
+     * provider for signature verification, or the default provider
+     * if null, and consults the validation cache, if not null, before
+     * verifying the signature.
+     *
+     * @param cert            the X509 certificate
+     * @param trustAnchors    a Set of TrustAnchor's
+     * @param sigProvider     the provider to use for signature verification
+     * @param validationCache the cache of verified signatures, may be null
+     * @return the <code>TrustAnchor</code> object if found or
+     *         <code>null</code> if not.
+     * @throws AnnotatedException if a TrustAnchor was found but the signature verification
+     * on the given certificate has thrown an exception.
+     */
+    protected static TrustAnchor findTrustAnchor(
+        X509Certificate cert,
+        Set trustAnchors,
+        String sigProvider,
+        PKIXValidationCache validationCache)
+        throws AnnotatedException
     {
         TrustAnchor trust = null;
         PublicKey trustPublicKey = null;
@@ -215,7 +242,7 @@ else if (trust.getCAName() != null
             {
                 try
                 {
-                    verifyX509Certificate(cert, trustPublicKey, sigProvider);
+                    verifyX509Certificate(cert, trustPublicKey, sigProvider, validationCache);
                 }
                 catch (Exception ex)
                 {
@@ -1073,6 +1100,24 @@ protected static Set getDeltaCRLs(Date currentDate,
                                       ExtendedPKIXParameters paramsPKIX, X509CRL completeCRL)
         throws AnnotatedException
     {
+        return getDeltaCRLs(currentDate, paramsPKIX, completeCRL, null);
+    }
+
+    /**
+     * Fetches delta CRLs according to RFC 3280 section 5.2.4.
+     *
+     * @param currentDate The date for which the delta CRLs must be valid.
+     * @param paramsPKIX  The extended PKIX parameters.
+     * @param completeCRL The complete CRL the delta CRL is for.
+     * @param dp          The distribution point the complete CRL was found for, may be <code>null</code>.
+     * @return A <code>Set</code> of <code>X509CRL</code>s with delta CRLs.
+     * @throws AnnotatedException if an exception occurs while picking the delta
+     * CRLs.
+     */
+    protected static Set getDeltaCRLs(Date currentDate,
+                                      ExtendedPKIXParameters paramsPKIX, X509CRL completeCRL, DistributionPoint dp)
+        throws AnnotatedException
+    {
 
         X509CRLStoreSelector deltaSelect = new X509CRLStoreSelector();
 
@@ -1128,7 +1173,7 @@ protected static Set getDeltaCRLs(Date currentDate,
         deltaSelect.setMaxBaseCRLNumber(completeCRLNumber);
 
         // find delta CRLs
-        Set temp = CRL_UTIL.findCRLs(deltaSelect, paramsPKIX, currentDate);
+        Set temp = CRL_UTIL.findCRLs(deltaSelect, paramsPKIX, currentDate, dp);
 
         Set result = new HashSet();
 
@@ -1207,7 +1252,7 @@ else if (cert instanceof X509AttributeCertificate)
 
         crlselect.setCompleteCRLEnabled(true);
 
-        Set crls = CRL_UTIL.findCRLs(crlselect, paramsPKIX, currentDate);
+        Set crls = CRL_UTIL.findCRLs(crlselect, paramsPKIX, currentDate, dp);
 
         if (crls.isEmpty())
         {
@@ -1423,4 +1468,20 @@ protected static void verifyX509Certificate(X509Certificate cert, PublicKey publ
             cert.verify(publicKey, sigProvider);
         }
     }
+
+    protected static void verifyX509Certificate(X509Certificate cert, PublicKey publicKey,
+                                                String sigProvider, PKIXValidationCache validationCache)
+        throws GeneralSecurityException
+    {
+        if (validationCache == null)
+        {
+            verifyX509Certificate(cert, publicKey, sigProvider);
+        }
+        else if (!validationCache.isSignatureVerified(cert, publicKey))
+        {
+            verifyX509Certificate(cert, publicKey, sigProvider);
+
+            validationCache.addVerifiedSignature(cert, publicKey);
+        }
+    }
 }
@@ -12,6 +12,8 @@
 
     Date revocationDate = null;
 
+    Date nextUpdate = null;
+
     /**
      * @return Returns the revocationDate.
      */
@@ -43,4 +45,23 @@ public void setCertStatus(int certStatus)
     {
         this.certStatus = certStatus;
     }
+
+    /**
+     * @return Returns the earliest next update of the CRLs the status is based on.
+     */
+    public Date getNextUpdate()
+    {
+        return nextUpdate;
+    }
+
+    /**
+     * @param nextUpdate The next update of a CRL the status is based on.
+     */
+    public void addNextUpdate(Date nextUpdate)
+    {
+        if (nextUpdate != null && (this.nextUpdate == null || nextUpdate.before(this.nextUpdate)))
+        {
+            this.nextUpdate = nextUpdate;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package org.bouncycastle.jce.provider;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.cert.CRL;
+import java.security.cert.CRLSelector;
+import java.security.cert.CertSelector;
+import java.security.cert.CertStoreException;
+import java.security.cert.CertStoreParameters;
+import java.security.cert.CertStoreSpi;
+import java.security.cert.Certificate;
+import java.security.cert.CollectionCertStoreParameters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bouncycastle.util.IndexedCollectionStore;
+
+/**
+ * A collection CertStore which indexes its certificates by subject, issuer, serial number,
+ * subject and authority key identifier, and its CRLs by issuer. Selectors constraining any of
+ * these are answered from the indexes rather than by checking every entry.
+ * <p>
+ * Unlike the "Collection" CertStore the collection is copied when the store is created, so later
+ * changes to the collection in the CollectionCertStoreParameters are not seen by the store.
+ */
+public class IndexedCertStoreCollectionSpi
+    extends CertStoreSpi
+{
+    private IndexedCollectionStore store;
+
+    public IndexedCertStoreCollectionSpi(CertStoreParameters params)
+        throws InvalidAlgorithmParameterException
+    {
+        super(params);
+
+        if (!(params instanceof CollectionCertStoreParameters))
+        {
+            throw new InvalidAlgorithmParameterException("org.bouncycastle.jce.provider.IndexedCertStoreCollectionSpi: parameter must be a CollectionCertStoreParameters object\n" +  params.toString());
+        }
+
+        this.store = new IndexedCollectionStore(((CollectionCertStoreParameters)params).getCollection(), new X509StoreIndexer());
+    }
+
+    public Collection engineGetCertificates(
+        CertSelector selector)
+        throws CertStoreException
+    {
+        List        col = new ArrayList();
+        Iterator    iter = store.getCandidates(selector).iterator();
+
+        while (iter.hasNext())
+        {
+            Object obj = iter.next();
+
+            if ((obj instanceof Certificate) && (selector == null || selector.match((Certificate)obj)))
+            {
+                col.add(obj);
+            }
+        }
+
+        return col;
+    }
+
+    public Collection engineGetCRLs(
+        CRLSelector selector)
+        throws CertStoreException
+    {
+        List        col = new ArrayList();
+        Iterator    iter = store.getCandidates(selector).iterator();
+
+        while (iter.hasNext())
+        {
+            Object obj = iter.next();
+
+            if ((obj instanceof CRL) && (selector == null || selector.match((CRL)obj)))
+            {
+                col.add(obj);
+            }
+        }
+
+        return col;
+    }
+}
@@ -12,6 +12,9 @@
 import java.util.List;
 import java.util.Set;
 
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.util.PKIXRevocationCache;
 import org.bouncycastle.util.StoreException;
 import org.bouncycastle.x509.ExtendedPKIXParameters;
 import org.bouncycastle.x509.X509CRLStoreSelector;
@@ -22,14 +25,33 @@
     public Set findCRLs(X509CRLStoreSelector crlselect, ExtendedPKIXParameters paramsPKIX, Date currentDate)
         throws AnnotatedException
     {
-        Set initialSet = new HashSet();
+        return findCRLs(crlselect, paramsPKIX, currentDate, null);
+    }
+
+    /**
+     * Find the CRLs matching crlselect which are valid at the validation date, using the revocation
+     * cache in the parameters, if there is one, to hold the CRLs found for each issuer and distribution point.
+     */
+    public Set findCRLs(X509CRLStoreSelector crlselect, ExtendedPKIXParameters paramsPKIX, Date currentDate, Object distributionPoint)
+        throws AnnotatedException
+    {
+        Set initialSet = null;
 
         // get complete CRL(s)
         try
         {
-            initialSet.addAll(findCRLs(crlselect, paramsPKIX.getAdditionalStores()));
-            initialSet.addAll(findCRLs(crlselect, paramsPKIX.getStores()));
-            initialSet.addAll(findCRLs(crlselect, paramsPKIX.getCertStores()));
+            if (paramsPKIX.getRevocationCache() != null)
+            {
+                initialSet = findCachedCRLs(crlselect, paramsPKIX, distributionPoint);
+            }
+
+            if (initialSet == null)
+            {
+                initialSet = new HashSet();
+                initialSet.addAll(findCRLs(crlselect, paramsPKIX.getAdditionalStores()));
+                initialSet.addAll(findCRLs(crlselect, paramsPKIX.getStores()));
+                initialSet.addAll(findCRLs(crlselect, paramsPKIX.getCertStores()));
+            }
         }
         catch (AnnotatedException e)
         {
@@ -88,7 +110,58 @@ public Set findCRLs(X509CRLStoreSelector crlselect, PKIXParameters paramsPKIX)
         return completeSet;
     }
 
-/**
+    /**
+     * Return the CRLs matching crlselect from the cache, fetching all the CRLs for an issuer from
+     * the stores if the cache holds none. Returns null if the selector does not name its issuers, or
+     * if no current CRLs can be found for an issuer, in which case the stores are searched directly.
+     */
+    private Set findCachedCRLs(X509CRLStoreSelector crlselect, ExtendedPKIXParameters paramsPKIX, Object distributionPoint)
+        throws AnnotatedException
+    {
+        Collection issuers = crlselect.getIssuers();
+
+        if (issuers == null || issuers.isEmpty())
+        {
+            return null;
+        }
+
+        PKIXRevocationCache revocationCache = paramsPKIX.getRevocationCache();
+        CRLLoader loader = new CRLLoader(paramsPKIX);
+        Set crls = new HashSet();
+
+        for (Iterator it = issuers.iterator(); it.hasNext();)
+        {
+            Collection issuerCRLs;
+
+            try
+            {
+                issuerCRLs = revocationCache.get(it.next(), distributionPoint, loader);
+            }
+            catch (StoreException e)
+            {
+                throw new AnnotatedException("Exception searching in X.509 CRL store.", e);
+            }
+
+            if (issuerCRLs == null)
+            {
+                return null;
+            }
+
+            for (Iterator crlIt = issuerCRLs.iterator(); crlIt.hasNext();)
+            {
+                Object crl = crlIt.next();
+
+                if (crlselect.match(crl))
+                {
+                    crls.add(crl);
+                }
+            }
+        }
+
+        return crls;
+    }
+
+    /**
      * Return a Collection of all CRLs found in the X509Store's that are
      * matching the crlSelect criteriums.
      *
@@ -152,4 +225,58 @@ private final Collection findCRLs(X509CRLStoreSelector crlSelect,
         return crls;
     }
 
+    private static final PKIXRevocationCache.UpdateTimes CRL_UPDATE_TIMES = new PKIXRevocationCache.UpdateTimes()
+    {
+        public Date getThisUpdate(Object value)
+        {
+            return ((X509CRL)value).getThisUpdate();
+        }
+
+        public Date getNextUpdate(Object value)
+        {
+            return ((X509CRL)value).getNextUpdate();
+        }
+    };
+
+    /**
+     * Fetch all the CRLs for an issuer from the stores in the parameters. The CRLs are cached until
+     * the earliest nextUpdate of those which are still current, and are not cached at all if none are.
+     */
+    private class CRLLoader
+        implements PKIXRevocationCache.Loader
+    {
+        private final List additionalStores;
+        private final List stores;
+        private final List certStores;
+
+        CRLLoader(ExtendedPKIXParameters paramsPKIX)
+        {
+            this.additionalStores = paramsPKIX.getAdditionalStores();
+            this.stores = paramsPKIX.getStores();
+            this.certStores = paramsPKIX.getCertStores();
+        }
+
+        public void load(PKIXRevocationCache cache, Object issuer, Object distributionPoint)
+            throws StoreException
+        {
+            X509CRLStoreSelector crlselect = new X509CRLStoreSelector();
+
+            crlselect.addIssuer((X500Principal)issuer);
+
+            Set crls = new HashSet();
+
+            try
+            {
+                crls.addAll(findCRLs(crlselect, additionalStores));
+                crls.addAll(findCRLs(crlselect, stores));
+                crls.addAll(findCRLs(crlselect, certStores));
+            }
+            catch (AnnotatedException e)
+            {
+                throw new StoreException("Exception obtaining CRLs: " + e.getMessage(), e);
+            }
+
+            cache.putCurrent(issuer, distributionPoint, crls, CRL_UPDATE_TIMES);
+        }
+    }
 }
@@ -15,8 +15,8 @@
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.bouncycastle.jce.exception.ExtCertPathBuilderException;
@@ -97,12 +97,24 @@ public CertPathBuilderResult engineBuild(CertPathParameters params)
 
         CertPathBuilderResult result = null;
 
-        // check all potential target certificates
-        targetIter = targets.iterator();
-        while (targetIter.hasNext() && result == null)
+        if (pkixParams.getExecutorService() != null)
         {
-            cert = (X509Certificate) targetIter.next();
-            result = build(cert, pkixParams, certPathList);
+            issuerFinder = new ParallelIssuerFinder(pkixParams.getExecutorService(), pkixParams);
+        }
+
+        try
+        {
+            // check all potential target certificates
+            targetIter = targets.iterator();
+            while (targetIter.hasNext() && result == null)
+            {
+                cert = (X509Certificate) targetIter.next();
+                result = build(cert, pkixParams, certPathList);
+            }
+        }
+        finally
+        {
+            issuerFinder = null;
         }
 
         if (result == null && certPathException != null)
@@ -127,6 +139,8 @@ public CertPathBuilderResult engineBuild(CertPathParameters params)
 
     private Exception certPathException;
 
+    private ParallelIssuerFinder issuerFinder;
+
     protected CertPathBuilderResult build(X509Certificate tbvCert,
         ExtendedPKIXBuilderParameters pkixParams, List tbvPath)
     {
@@ -220,12 +234,19 @@ protected CertPathBuilderResult build(X509Certificate tbvCert,
                         "No additiontal X.509 stores can be added from certificate locations.",
                         e);
                 }
-                Collection issuers = new HashSet();
+                Collection issuers = new LinkedHashSet();
                 // try to get the issuer certificate from one
                 // of the stores
                 try
                 {
-                    issuers.addAll(CertPathValidatorUtilities.findIssuerCerts(tbvCert, pkixParams));
+                    if (issuerFinder != null)
+                    {
+                        issuers.addAll(issuerFinder.findIssuerCerts(tbvCert));
+                    }
+                    else
+                    {
+                        issuers.addAll(CertPathValidatorUtilities.findIssuerCerts(tbvCert, pkixParams));
+                    }
                 }
                 catch (AnnotatedException e)
                 {
@@ -13,6 +13,7 @@
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -25,6 +26,7 @@
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.jce.exception.ExtCertPathValidatorException;
 import org.bouncycastle.x509.ExtendedPKIXParameters;
+import org.bouncycastle.x509.PKIXValidationCache;
 
 /**
  * CertPathValidatorSpi implementation for X.509 Certificate validation � la RFC
@@ -61,6 +63,16 @@ public CertPathValidatorResult engineValidate(
                     "trustAnchors is null, this is not allowed for certification path validation.");
         }
 
+        PKIXValidationCache validationCache = paramsPKIX.getValidationCache();
+        if (validationCache != null)
+        {
+            PKIXCertPathValidatorResult result = validationCache.getValidatedPath(certPath, paramsPKIX);
+            if (result != null)
+            {
+                return result;
+            }
+        }
+
         //
         // 6.1.1 - inputs
         //
@@ -93,7 +105,7 @@ public CertPathValidatorResult engineValidate(
         try
         {
             trust = CertPathValidatorUtilities.findTrustAnchor((X509Certificate) certs.get(certs.size() - 1),
-                    paramsPKIX.getTrustAnchors(), paramsPKIX.getSigProvider());
+                    paramsPKIX.getTrustAnchors(), paramsPKIX.getSigProvider(), validationCache);
         }
         catch (AnnotatedException e)
         {
@@ -248,6 +260,7 @@ public CertPathValidatorResult engineValidate(
         }
 
         X509Certificate cert = null;
+        Date revocationValidUntil = null;
 
         for (index = certs.size() - 1; index >= 0; index--)
         {
@@ -271,8 +284,14 @@ public CertPathValidatorResult engineValidate(
             // 6.1.3
             //
 
-            RFC3280CertPathUtilities.processCertA(certPath, paramsPKIX, index, workingPublicKey,
-                verificationAlreadyPerformed, workingIssuerName, sign);
+            Date certRevocationValidUntil = RFC3280CertPathUtilities.processCertA(certPath, paramsPKIX, index,
+                workingPublicKey, verificationAlreadyPerformed, workingIssuerName, sign);
+
+            if (certRevocationValidUntil != null
+                && (revocationValidUntil == null || certRevocationValidUntil.before(revocationValidUntil)))
+            {
+                revocationValidUntil = certRevocationValidUntil;
+            }
 
             RFC3280CertPathUtilities.processCertBC(certPath, index, nameConstraintValidator);
 
@@ -422,7 +441,14 @@ public CertPathValidatorResult engineValidate(
 
         if ((explicitPolicy > 0) || (intersection != null))
         {
-            return new PKIXCertPathValidatorResult(trust, intersection, cert.getPublicKey());
+            PKIXCertPathValidatorResult result = new PKIXCertPathValidatorResult(trust, intersection, cert.getPublicKey());
+
+            if (validationCache != null)
+            {
+                validationCache.addValidatedPath(certPath, paramsPKIX, result, revocationValidUntil);
+            }
+
+            return result;
         }
 
         throw new CertPathValidatorException("Path processing failed on policy.", null, certPath, index);
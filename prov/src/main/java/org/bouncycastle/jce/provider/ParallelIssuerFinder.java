@@ -0,0 +1,279 @@
+package org.bouncycastle.jce.provider;
+
+import java.io.IOException;
+import java.security.SignatureException;
+import java.security.cert.CertStore;
+import java.security.cert.CertStoreException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.util.StoreException;
+import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.x509.ExtendedPKIXBuilderParameters;
+import org.bouncycastle.x509.X509CertStoreSelector;
+import org.bouncycastle.x509.X509Store;
+
+/**
+ * Issuer certificate search for PKIXCertPathBuilderSpi which queries the certificate
+ * stores, and checks the signatures of the candidate issuers, in parallel on an executor.
+ * <p>
+ * The stores are queried with a subject selector, so stores which index their contents, such
+ * as the "IndexedCollection" CertStore, answer without a scan. Candidates whose subject key
+ * identifier matches the authority key identifier are tried first. Candidates whose signature
+ * check fails are dropped, candidates which verify are returned ahead of those which could not
+ * be checked (for example due to inherited DSA parameters).
+ * </p>
+ * <p>
+ * A task no worker has started by the time its result is needed is run on the calling thread,
+ * so a search never waits on work queued behind it - even when the build itself is running on
+ * one of the executor's threads and every other thread is busy.
+ * </p>
+ */
+class ParallelIssuerFinder
+{
+    private final ExecutorService executor;
+    private final ExtendedPKIXBuilderParameters pkixParams;
+
+    ParallelIssuerFinder(ExecutorService executor, ExtendedPKIXBuilderParameters pkixParams)
+    {
+        this.executor = executor;
+        this.pkixParams = pkixParams;
+    }
+
+    Collection findIssuerCerts(final X509Certificate cert)
+        throws AnnotatedException
+    {
+        final X509CertStoreSelector certSelect = new X509CertStoreSelector();
+        try
+        {
+            certSelect.setSubject(cert.getIssuerX500Principal().getEncoded());
+        }
+        catch (IOException ex)
+        {
+            throw new AnnotatedException(
+                "Subject criteria for certificate selector to find issuer certificate could not be set.", ex);
+        }
+
+        final String keyId = getAuthorityKeyIdentifier(cert);
+
+        List stores = new ArrayList();
+
+        stores.addAll(pkixParams.getCertStores());
+        stores.addAll(pkixParams.getStores());
+        stores.addAll(pkixParams.getAdditionalStores());
+
+        List lookups = new ArrayList(stores.size());
+        for (Iterator it = stores.iterator(); it.hasNext();)
+        {
+            final Object store = it.next();
+
+            lookups.add(submit(new Callable()
+            {
+                public Object call()
+                    throws Exception
+                {
+                    return findCertificates(store, certSelect);
+                }
+            }));
+        }
+
+        Set found = new LinkedHashSet();
+        for (Iterator it = lookups.iterator(); it.hasNext();)
+        {
+            found.addAll((Collection)getResult((FutureTask)it.next(), "Issuer certificate cannot be searched."));
+        }
+
+        // certificates matching the authority key identifier go first
+        Set candidates = new LinkedHashSet();
+        if (keyId != null)
+        {
+            for (Iterator it = found.iterator(); it.hasNext();)
+            {
+                X509Certificate issuer = (X509Certificate)it.next();
+
+                if (keyId.equals(getSubjectKeyIdentifier(issuer)))
+                {
+                    candidates.add(issuer);
+                }
+            }
+        }
+        candidates.addAll(found);
+
+        List checks = new ArrayList(candidates.size());
+        for (Iterator it = candidates.iterator(); it.hasNext();)
+        {
+            final X509Certificate issuer = (X509Certificate)it.next();
+
+            checks.add(submit(new Callable()
+            {
+                public Object call()
+                    throws Exception
+                {
+                    try
+                    {
+                        CertPathValidatorUtilities.verifyX509Certificate(cert, issuer.getPublicKey(),
+                            pkixParams.getSigProvider(), pkixParams.getValidationCache());
+
+                        return Boolean.TRUE;
+                    }
+                    catch (SignatureException e)
+                    {
+                        return Boolean.FALSE;
+                    }
+                    catch (Exception e)
+                    {
+                        // can't be checked in isolation, leave it to the validator.
+                        return null;
+                    }
+                }
+            }));
+        }
+
+        Set verified = new LinkedHashSet();
+        Set unchecked = new LinkedHashSet();
+        Iterator candIt = candidates.iterator();
+        for (Iterator it = checks.iterator(); it.hasNext();)
+        {
+            Object issuer = candIt.next();
+            Boolean result = (Boolean)getResult((FutureTask)it.next(), "Issuer certificate signature cannot be checked.");
+
+            if (result == null)
+            {
+                unchecked.add(issuer);
+            }
+            else if (result.booleanValue())
+            {
+                verified.add(issuer);
+            }
+        }
+
+        verified.addAll(unchecked);
+
+        return verified;
+    }
+
+    private Collection findCertificates(Object store, X509CertStoreSelector certSelect)
+        throws AnnotatedException
+    {
+        if (store instanceof X509Store)
+        {
+            try
+            {
+                return ((X509Store)store).getMatches(certSelect);
+            }
+            catch (StoreException e)
+            {
+                throw new AnnotatedException(
+                    "Problem while picking certificates from X.509 store.", e);
+            }
+        }
+
+        CertStore certStore = (CertStore)store;
+
+        try
+        {
+            return certStore.getCertificates(certSelect);
+        }
+        catch (CertStoreException e)
+        {
+            throw new AnnotatedException(
+                "Problem while picking certificates from certificate store.",
+                e);
+        }
+    }
+
+    private FutureTask submit(Callable task)
+    {
+        FutureTask future = new FutureTask(task);
+
+        try
+        {
+            executor.execute(future);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // the task is run by getResult() instead.
+        }
+
+        return future;
+    }
+
+    private static Object getResult(FutureTask future, String message)
+        throws AnnotatedException
+    {
+        // does nothing if a worker has already started the task.
+        future.run();
+
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new AnnotatedException(message, e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new AnnotatedException(message, e.getCause());
+        }
+    }
+
+    private static String getAuthorityKeyIdentifier(X509Certificate cert)
+    {
+        try
+        {
+            ASN1Primitive aki = CertPathValidatorUtilities.getExtensionValue(cert, Extension.authorityKeyIdentifier.getId());
+
+            if (aki != null)
+            {
+                byte[] keyId = AuthorityKeyIdentifier.getInstance(aki).getKeyIdentifier();
+
+                if (keyId != null)
+                {
+                    return new String(Hex.encode(keyId));
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            // ignore - the key identifier is only used to order the candidates.
+        }
+
+        return null;
+    }
+
+    private static String getSubjectKeyIdentifier(X509Certificate cert)
+    {
+        try
+        {
+            ASN1Primitive ski = CertPathValidatorUtilities.getExtensionValue(cert, Extension.subjectKeyIdentifier.getId());
+
+            if (ski != null)
+            {
+                return new String(Hex.encode(SubjectKeyIdentifier.getInstance(ski).getKeyIdentifier()));
+            }
+        }
+        catch (Exception e)
+        {
+            // ignore - the certificate will only be found by subject.
+        }
+
+        return null;
+    }
+}
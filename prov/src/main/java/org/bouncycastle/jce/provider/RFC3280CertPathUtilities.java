@@ -1446,7 +1446,13 @@ else if (_tmp instanceof DERObjectIdentifier)
         return null;
     }
 
-    protected static void processCertA(
+    /**
+     * Process (a) of 6.1.3 - signature, validity, revocation status and name chaining.
+     *
+     * @return the earliest next update of the CRLs used to check the revocation status,
+     *         <code>null</code> if revocation checking is disabled or none is available.
+     */
+    protected static Date processCertA(
         CertPath certPath,
         ExtendedPKIXParameters paramsPKIX,
         int index,
@@ -1468,7 +1474,7 @@ protected static void processCertA(
                 // (a) (1)
                 //
                 CertPathValidatorUtilities.verifyX509Certificate(cert, workingPublicKey,
-                    paramsPKIX.getSigProvider());
+                    paramsPKIX.getSigProvider(), paramsPKIX.getValidationCache());
             }
             catch (GeneralSecurityException e)
             {
@@ -1499,11 +1505,13 @@ protected static void processCertA(
         //
         // (a) (3)
         //
+        Date revocationValidUntil = null;
+
         if (paramsPKIX.isRevocationEnabled())
         {
             try
             {
-                checkCRLs(paramsPKIX, cert, CertPathValidatorUtilities.getValidCertDateFromValidityModel(paramsPKIX,
+                revocationValidUntil = checkCRLs(paramsPKIX, cert, CertPathValidatorUtilities.getValidCertDateFromValidityModel(paramsPKIX,
                     certPath, index), sign, workingPublicKey, certs);
             }
             catch (AnnotatedException e)
@@ -1526,6 +1534,8 @@ protected static void processCertA(
                 + ") does not match SubjectName(" + workingIssuerName + ") of signing certificate.", null,
                 certPath, index);
         }
+
+        return revocationValidUntil;
     }
 
     protected static int prepareNextCertI1(
@@ -1783,7 +1793,7 @@ private static void checkCRL(
                 if (paramsPKIX.isUseDeltasEnabled())
                 {
                     // get delta CRLs
-                    Set deltaCRLs = CertPathValidatorUtilities.getDeltaCRLs(currentDate, paramsPKIX, crl);
+                    Set deltaCRLs = CertPathValidatorUtilities.getDeltaCRLs(currentDate, paramsPKIX, crl, dp);
                     // we only want one valid delta CRL
                     // (h)
                     deltaCRL = RFC3280CertPathUtilities.processCRLH(deltaCRLs, key);
@@ -1838,6 +1848,13 @@ private static void checkCRL(
                 // update reasons mask
                 reasonMask.addReasons(interimReasonsMask);
 
+                // the status is only current until the CRLs used are replaced
+                certStatus.addNextUpdate(crl.getNextUpdate());
+                if (deltaCRL != null)
+                {
+                    certStatus.addNextUpdate(deltaCRL.getNextUpdate());
+                }
+
                 Set criticalExtensions = crl.getCriticalExtensionOIDs();
                 if (criticalExtensions != null)
                 {
@@ -1889,10 +1906,12 @@ private static void checkCRL(
      * @param sign             The issuer certificate of the certificate <code>cert</code>.
      * @param workingPublicKey The public key of the issuer certificate <code>sign</code>.
      * @param certPathCerts    The certificates of the certification path.
+     * @return the earliest next update of the CRLs used, <code>null</code> if none of
+     *         the CRLs have a next update.
      * @throws AnnotatedException if the certificate is revoked or the status cannot be checked
      *                            or some error occurs.
      */
-    protected static void checkCRLs(
+    protected static Date checkCRLs(
         ExtendedPKIXParameters paramsPKIX,
         X509Certificate cert,
         Date validDate,
@@ -2016,6 +2035,8 @@ protected static void checkCRLs(
         {
             throw new AnnotatedException("Certificate status could not be determined.");
         }
+
+        return certStatus.getNextUpdate();
     }
 
     protected static int prepareNextCertJ(
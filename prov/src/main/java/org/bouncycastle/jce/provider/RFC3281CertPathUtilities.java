@@ -629,7 +629,7 @@ private static void checkCRL(DistributionPoint dp,
                 {
                     // get delta CRLs
                     Set deltaCRLs = CertPathValidatorUtilities.getDeltaCRLs(
-                        currentDate, paramsPKIX, crl);
+                        currentDate, paramsPKIX, crl, dp);
                     // we only want one valid delta CRL
                     // (h)
                     deltaCRL = RFC3280CertPathUtilities.processCRLH(deltaCRLs,
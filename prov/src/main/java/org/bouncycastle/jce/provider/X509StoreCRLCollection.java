@@ -2,7 +2,7 @@
 
 import java.util.Collection;
 
-import org.bouncycastle.util.CollectionStore;
+import org.bouncycastle.util.IndexedCollectionStore;
 import org.bouncycastle.util.Selector;
 import org.bouncycastle.x509.X509CollectionStoreParameters;
 import org.bouncycastle.x509.X509StoreParameters;
@@ -11,7 +11,7 @@
 public class X509StoreCRLCollection
     extends X509StoreSpi
 {
-    private CollectionStore _store;
+    private IndexedCollectionStore _store;
 
     public X509StoreCRLCollection()
     {
@@ -24,7 +24,7 @@ public void engineInit(X509StoreParameters params)
             throw new IllegalArgumentException(params.toString());
         }
 
-        _store = new CollectionStore(((X509CollectionStoreParameters)params).getCollection());
+        _store = new IndexedCollectionStore(((X509CollectionStoreParameters)params).getCollection(), new X509StoreIndexer());
     }
 
     public Collection engineGetMatches(Selector selector)
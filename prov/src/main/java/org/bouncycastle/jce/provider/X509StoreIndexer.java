@@ -0,0 +1,160 @@
+package org.bouncycastle.jce.provider;
+
+import java.io.IOException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLSelector;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.util.StoreIndexer;
+import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.x509.X509CRLStoreSelector;
+import org.bouncycastle.x509.X509CertStoreSelector;
+
+/**
+ * Indexes X.509 certificates by subject, issuer, serial number, subject key identifier and
+ * authority key identifier, and X.509 CRLs by issuer.
+ * <p>
+ * Only the JCA and BC certificate and CRL selector classes are recognised - a subclass may
+ * change the meaning of match() so other selectors are always answered by a full scan.
+ */
+class X509StoreIndexer
+    implements StoreIndexer
+{
+    static final int SUBJECT = 0;
+    static final int ISSUER = 1;
+    static final int SERIAL = 2;
+    static final int SUBJECT_KEY_ID = 3;
+    static final int AUTHORITY_KEY_ID = 4;
+
+    public int getIndexCount()
+    {
+        return 5;
+    }
+
+    public Object getIndexKey(int index, Object obj)
+    {
+        if (obj instanceof X509Certificate)
+        {
+            X509Certificate cert = (X509Certificate)obj;
+
+            switch (index)
+            {
+            case SUBJECT:
+                return cert.getSubjectX500Principal();
+            case ISSUER:
+                return cert.getIssuerX500Principal();
+            case SERIAL:
+                return cert.getSerialNumber();
+            case SUBJECT_KEY_ID:
+                return getExtensionKey(cert, Extension.subjectKeyIdentifier.getId());
+            case AUTHORITY_KEY_ID:
+                return getExtensionKey(cert, Extension.authorityKeyIdentifier.getId());
+            }
+        }
+        else if (obj instanceof X509CRL)
+        {
+            if (index == ISSUER)
+            {
+                return ((X509CRL)obj).getIssuerX500Principal();
+            }
+        }
+
+        return null;
+    }
+
+    public Collection getSelectorKeys(int index, Object selector)
+    {
+        if (selector.getClass() == X509CertSelector.class || selector.getClass() == X509CertStoreSelector.class)
+        {
+            return getCertSelectorKeys(index, (X509CertSelector)selector);
+        }
+        if (selector.getClass() == X509CRLSelector.class || selector.getClass() == X509CRLStoreSelector.class)
+        {
+            if (index == ISSUER)
+            {
+                return ((X509CRLSelector)selector).getIssuers();
+            }
+        }
+
+        return null;
+    }
+
+    private Collection getCertSelectorKeys(int index, X509CertSelector selector)
+    {
+        try
+        {
+            switch (index)
+            {
+            case SUBJECT:
+                return getPrincipalKey(selector.getSubjectAsBytes());
+            case ISSUER:
+                return getPrincipalKey(selector.getIssuerAsBytes());
+            case SERIAL:
+                return (selector.getSerialNumber() != null) ? Collections.singleton(selector.getSerialNumber()) : null;
+            case SUBJECT_KEY_ID:
+                return getOctetsKey(selector.getSubjectKeyIdentifier());
+            case AUTHORITY_KEY_ID:
+                return getOctetsKey(selector.getAuthorityKeyIdentifier());
+            }
+        }
+        catch (IOException e)
+        {
+            // fall through - the selector will be applied to everything.
+        }
+        catch (IllegalArgumentException e)
+        {
+            // fall through - the selector will be applied to everything.
+        }
+
+        return null;
+    }
+
+    private static Collection getPrincipalKey(byte[] name)
+    {
+        if (name == null)
+        {
+            return null;
+        }
+
+        return Collections.singleton(new X500Principal(name));
+    }
+
+    private static Collection getOctetsKey(byte[] octets)
+    {
+        if (octets == null)
+        {
+            return null;
+        }
+
+        return Collections.singleton(new String(Hex.encode(octets)));
+    }
+
+    /*
+     * X509CertSelector compares the encoding of the extension's value, so that's what we index on.
+     */
+    private static Object getExtensionKey(X509Certificate cert, String oid)
+    {
+        byte[] extValue = cert.getExtensionValue(oid);
+
+        if (extValue == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new String(Hex.encode(ASN1OctetString.getInstance(extValue).getOctets()));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+}
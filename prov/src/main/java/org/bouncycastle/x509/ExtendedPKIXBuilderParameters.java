@@ -11,6 +11,7 @@
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This class contains extended parameters for PKIX certification path builders.
@@ -25,6 +26,8 @@ public class ExtendedPKIXBuilderParameters extends ExtendedPKIXParameters
 
     private Set excludedCerts = Collections.EMPTY_SET;
 
+    private ExecutorService executorService;
+
     /**
      * Excluded certificates are not used for building a certification path.
      * <p>
@@ -132,6 +135,38 @@ public int getMaxPathLength()
         return maxPathLength;
     }
 
+    /**
+     * Returns the executor used to search for issuer certificates in parallel.
+     *
+     * @return the executor, or <code>null</code> if path building is
+     *         done on the calling thread only.
+     */
+    public ExecutorService getExecutorService()
+    {
+        return executorService;
+    }
+
+    /**
+     * Sets an executor the PKIX <code>CertPathBuilder</code> can use to
+     * query the certificate stores for issuer certificates, and to check the
+     * signatures of the candidate issuers, in parallel. The path itself is
+     * still explored on the calling thread and building stops at the first
+     * valid path found.
+     * <p>
+     * A task no worker has started by the time its result is needed is run
+     * on the calling thread, so the executor may be the one the build itself
+     * is running on, and may be bounded.
+     * <p>
+     * The executor is shared, not copied, by <code>clone()</code>.
+     *
+     * @param executorService the executor to use, <code>null</code> to
+     *            build on the calling thread only.
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
     /**
      * Can alse handle <code>ExtendedPKIXBuilderParameters</code> and
      * <code>PKIXBuilderParameters</code>.
@@ -147,6 +182,7 @@ protected void setParams(PKIXParameters params)
             ExtendedPKIXBuilderParameters _params = (ExtendedPKIXBuilderParameters) params;
             maxPathLength = _params.maxPathLength;
             excludedCerts = new HashSet(_params.excludedCerts);
+            executorService = _params.executorService;
         }
         if (params instanceof PKIXBuilderParameters)
         {
@@ -1,5 +1,6 @@
 package org.bouncycastle.x509;
 
+import org.bouncycastle.util.PKIXRevocationCache;
 import org.bouncycastle.util.Selector;
 import org.bouncycastle.util.Store;
 
@@ -39,6 +40,11 @@
 
     private Set attrCertCheckers;
 
+    private PKIXValidationCache validationCache;
+    private Object validationCacheScope;
+
+    private PKIXRevocationCache revocationCache;
+
     /**
      * Creates an instance of <code>PKIXParameters</code> with the specified
      * <code>Set</code> of most-trusted CAs. Each element of the set is a
@@ -131,6 +137,9 @@ protected void setParams(PKIXParameters params)
             prohibitedACAttributes = new HashSet(_params.prohibitedACAttributes);
             necessaryACAttributes = new HashSet(_params.necessaryACAttributes);
             attrCertCheckers = new HashSet(_params.attrCertCheckers);
+            validationCache = _params.validationCache;
+            validationCacheScope = _params.validationCacheScope;
+            revocationCache = _params.revocationCache;
         }
     }
 
@@ -183,6 +192,79 @@ public void setUseDeltasEnabled(boolean useDeltas)
         this.useDeltas = useDeltas;
     }
 
+    /**
+     * Returns the cache of validated signatures and certification paths.
+     * Defaults to <code>null</code>.
+     *
+     * @return Returns the validation cache, or <code>null</code> if none is set.
+     */
+    public PKIXValidationCache getValidationCache()
+    {
+        return validationCache;
+    }
+
+    /**
+     * Sets a cache of validated signatures and certification paths which is
+     * consulted and updated during validation. The cache is shared, not
+     * copied, by <code>clone()</code>.
+     *
+     * @param validationCache the cache to use, <code>null</code> to disable caching.
+     */
+    public void setValidationCache(PKIXValidationCache validationCache)
+    {
+        this.validationCache = validationCache;
+    }
+
+    /**
+     * Returns the object standing in for the stores in the keys of the
+     * validation cache. Defaults to <code>null</code>.
+     *
+     * @return Returns the validation cache scope, or <code>null</code> if none is set.
+     */
+    public Object getValidationCacheScope()
+    {
+        return validationCacheScope;
+    }
+
+    /**
+     * Sets an object standing in for the certificate and CRL stores when
+     * results are looked up in the validation cache. Parameters with equal
+     * scopes (as determined by <code>equals()</code>) are taken to have
+     * stores with the same contents, so results are shared between them even
+     * if the stores are different instances. If no scope is set the stores
+     * themselves are used, which only match the same store instances.
+     *
+     * @param validationCacheScope the scope, <code>null</code> to use the stores.
+     */
+    public void setValidationCacheScope(Object validationCacheScope)
+    {
+        this.validationCacheScope = validationCacheScope;
+    }
+
+    /**
+     * Returns the cache of CRLs found in the stores. Defaults to
+     * <code>null</code>.
+     *
+     * @return Returns the revocation cache, or <code>null</code> if none is set.
+     */
+    public PKIXRevocationCache getRevocationCache()
+    {
+        return revocationCache;
+    }
+
+    /**
+     * Sets a cache of the CRLs found in the stores for each issuer and
+     * distribution point, so the stores are only searched again once the
+     * CRLs are due for update. The cache is shared, not copied, by
+     * <code>clone()</code>.
+     *
+     * @param revocationCache the cache to use, <code>null</code> to disable caching.
+     */
+    public void setRevocationCache(PKIXRevocationCache revocationCache)
+    {
+        this.revocationCache = revocationCache;
+    }
+
     /**
      * @return Returns the validity model.
      * @see #CHAIN_VALIDITY_MODEL
@@ -0,0 +1,440 @@
+package org.bouncycastle.x509;
+
+import java.security.PublicKey;
+import java.security.cert.CertPath;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.PKIXCertPathValidatorResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.BoundedLRUMap;
+
+/**
+ * A bounded cache of successful signature verifications and certification path validation results
+ * which can be passed to the PKIX CertPathValidator using
+ * {@link ExtendedPKIXParameters#setValidationCache(PKIXValidationCache)}.
+ * <p>
+ * Signature checks are keyed by a SHA-256 hash of the certificate encoding and the encoding of the
+ * issuer's public key. Path results are keyed by a SHA-256 hash of the certificates in the path and the
+ * contents of the trust anchors, together with the validation parameters that affect the result. Paths
+ * are not cached if the parameters contain certification path checkers or target constraints, as these
+ * may carry state the cache cannot see.
+ * </p>
+ * <p>
+ * The stores in the parameters cannot be compared by content, so by default a path result is only
+ * found again for parameters holding the same store instances. Where the parameters are rebuilt for
+ * each validation, {@link ExtendedPKIXParameters#setValidationCacheScope(Object)} can be used to
+ * declare an object which stands in for the stores instead.
+ * </p>
+ * <p>
+ * A path result is discarded once the maximum age passes, once any certificate in the path expires,
+ * or once the next update of any CRL used for revocation checking is reached, whichever happens first.
+ * Only successful validations are cached, the least recently used entries are evicted first.
+ * </p>
+ */
+public class PKIXValidationCache
+{
+    private final int maxEntries;
+    private final long maxAge;
+
+    private final Map signatures;
+    private final Map paths;
+
+    /**
+     * Base constructor.
+     *
+     * @param maxEntries the maximum number of entries to hold for both signatures and paths.
+     * @param maxAge the maximum time in milliseconds an entry will be used for.
+     */
+    public PKIXValidationCache(int maxEntries, long maxAge)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        if (maxAge < 0)
+        {
+            throw new IllegalArgumentException("maxAge cannot be negative");
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.signatures = new BoundedLRUMap(maxEntries);
+        this.paths = new BoundedLRUMap(maxEntries);
+    }
+
+    /**
+     * Return the maximum number of entries held for signatures and paths.
+     *
+     * @return the maximum number of entries.
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Return the maximum age of an entry in milliseconds.
+     *
+     * @return the maximum age of an entry.
+     */
+    public long getMaxAge()
+    {
+        return maxAge;
+    }
+
+    /**
+     * Return true if the signature on cert has already been verified with publicKey.
+     *
+     * @param cert the certificate of interest.
+     * @param publicKey the issuer's public key.
+     * @return true if a successful verification is recorded, false otherwise.
+     */
+    public boolean isSignatureVerified(X509Certificate cert, PublicKey publicKey)
+    {
+        CacheKey key = createSignatureKey(cert, publicKey);
+
+        if (key == null)
+        {
+            return false;
+        }
+
+        synchronized (signatures)
+        {
+            Date expiry = (Date)signatures.get(key);
+
+            if (expiry == null)
+            {
+                return false;
+            }
+
+            if (expiry.getTime() <= System.currentTimeMillis())
+            {
+                signatures.remove(key);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Record that the signature on cert has been verified with publicKey.
+     *
+     * @param cert the certificate that was verified.
+     * @param publicKey the public key it was verified with.
+     */
+    public void addVerifiedSignature(X509Certificate cert, PublicKey publicKey)
+    {
+        CacheKey key = createSignatureKey(cert, publicKey);
+
+        if (key != null)
+        {
+            synchronized (signatures)
+            {
+                signatures.put(key, new Date(System.currentTimeMillis() + maxAge));
+            }
+        }
+    }
+
+    /**
+     * Return a previous result for validating certPath with the passed in parameters, if one is still current.
+     *
+     * @param certPath the certification path to be validated.
+     * @param params the parameters the path is to be validated with.
+     * @return a copy of the cached result, null if there is none.
+     */
+    public PKIXCertPathValidatorResult getValidatedPath(CertPath certPath, ExtendedPKIXParameters params)
+    {
+        CacheKey key = createPathKey(certPath, params);
+
+        if (key == null)
+        {
+            return null;
+        }
+
+        synchronized (paths)
+        {
+            PathEntry entry = (PathEntry)paths.get(key);
+
+            if (entry == null)
+            {
+                return null;
+            }
+
+            if (entry.expiry <= System.currentTimeMillis())
+            {
+                paths.remove(key);
+                return null;
+            }
+
+            return (PKIXCertPathValidatorResult)entry.result.clone();
+        }
+    }
+
+    /**
+     * Record a successful validation of certPath with the passed in parameters.
+     *
+     * @param certPath the certification path that was validated.
+     * @param params the parameters the path was validated with.
+     * @param result the result of the validation.
+     * @param revocationValidUntil the earliest next update of the revocation information used, null if not applicable.
+     */
+    public void addValidatedPath(CertPath certPath, ExtendedPKIXParameters params, PKIXCertPathValidatorResult result, Date revocationValidUntil)
+    {
+        CacheKey key = createPathKey(certPath, params);
+
+        if (key == null)
+        {
+            return;
+        }
+
+        long expiry = System.currentTimeMillis() + maxAge;
+
+        if (revocationValidUntil != null && revocationValidUntil.getTime() < expiry)
+        {
+            expiry = revocationValidUntil.getTime();
+        }
+
+        for (Iterator it = certPath.getCertificates().iterator(); it.hasNext();)
+        {
+            long notAfter = ((X509Certificate)it.next()).getNotAfter().getTime();
+
+            if (notAfter < expiry)
+            {
+                expiry = notAfter;
+            }
+        }
+
+        synchronized (paths)
+        {
+            paths.put(key, new PathEntry((PKIXCertPathValidatorResult)result.clone(), expiry));
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear()
+    {
+        synchronized (signatures)
+        {
+            signatures.clear();
+        }
+        synchronized (paths)
+        {
+            paths.clear();
+        }
+    }
+
+    private CacheKey createSignatureKey(X509Certificate cert, PublicKey publicKey)
+    {
+        byte[] keyEnc = publicKey.getEncoded();
+
+        if (keyEnc == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            Digest digest = new SHA256Digest();
+
+            update(digest, cert.getEncoded());
+            update(digest, keyEnc);
+
+            return new CacheKey(doFinal(digest), null);
+        }
+        catch (CertificateEncodingException e)
+        {
+            return null;
+        }
+    }
+
+    private CacheKey createPathKey(CertPath certPath, ExtendedPKIXParameters params)
+    {
+        if (!params.getCertPathCheckers().isEmpty() || params.getTargetConstraints() != null)
+        {
+            return null;
+        }
+
+        try
+        {
+            Digest digest = new SHA256Digest();
+
+            for (Iterator it = certPath.getCertificates().iterator(); it.hasNext();)
+            {
+                update(digest, ((X509Certificate)it.next()).getEncoded());
+            }
+
+            // TrustAnchor has no equals(), so the anchors are keyed by content, in a fixed order.
+            List anchors = new ArrayList();
+
+            for (Iterator it = params.getTrustAnchors().iterator(); it.hasNext();)
+            {
+                anchors.add(hashAnchor((TrustAnchor)it.next()));
+            }
+
+            Collections.sort(anchors, new Comparator()
+            {
+                public int compare(Object o1, Object o2)
+                {
+                    byte[] a = (byte[])o1;
+                    byte[] b = (byte[])o2;
+
+                    for (int i = 0; i != a.length; i++)
+                    {
+                        if (a[i] != b[i])
+                        {
+                            return (a[i] & 0xff) - (b[i] & 0xff);
+                        }
+                    }
+
+                    return 0;
+                }
+            });
+
+            for (Iterator it = anchors.iterator(); it.hasNext();)
+            {
+                update(digest, (byte[])it.next());
+            }
+
+            List values = new ArrayList();
+
+            values.add(params.getDate());
+            values.add(params.getInitialPolicies());
+            values.add(Boolean.valueOf(params.isExplicitPolicyRequired()));
+            values.add(Boolean.valueOf(params.isAnyPolicyInhibited()));
+            values.add(Boolean.valueOf(params.isPolicyMappingInhibited()));
+            values.add(Boolean.valueOf(params.getPolicyQualifiersRejected()));
+            values.add(Boolean.valueOf(params.isRevocationEnabled()));
+            values.add(Boolean.valueOf(params.isUseDeltasEnabled()));
+            values.add(Boolean.valueOf(params.isAdditionalLocationsEnabled()));
+            values.add(new Integer(params.getValidityModel()));
+            values.add(params.getSigProvider());
+
+            if (params.getValidationCacheScope() != null)
+            {
+                values.add(params.getValidationCacheScope());
+            }
+            else
+            {
+                values.add(params.getCertStores());
+                values.add(params.getStores());
+                values.add(params.getAdditionalStores());
+            }
+
+            return new CacheKey(doFinal(digest), values);
+        }
+        catch (CertificateEncodingException e)
+        {
+            return null;
+        }
+    }
+
+    private static byte[] hashAnchor(TrustAnchor anchor)
+        throws CertificateEncodingException
+    {
+        Digest digest = new SHA256Digest();
+
+        if (anchor.getTrustedCert() != null)
+        {
+            digest.update((byte)0);
+            update(digest, anchor.getTrustedCert().getEncoded());
+        }
+        else
+        {
+            digest.update((byte)1);
+            update(digest, anchor.getCA().getEncoded());
+            update(digest, anchor.getCAPublicKey().getEncoded());
+        }
+
+        byte[] nameConstraints = anchor.getNameConstraints();
+
+        update(digest, (nameConstraints != null) ? nameConstraints : new byte[0]);
+
+        return doFinal(digest);
+    }
+
+    private static void update(Digest digest, byte[] data)
+    {
+        // include the length so the boundaries between encodings are unambiguous
+        digest.update((byte)(data.length >>> 24));
+        digest.update((byte)(data.length >>> 16));
+        digest.update((byte)(data.length >>> 8));
+        digest.update((byte)data.length);
+        digest.update(data, 0, data.length);
+    }
+
+    private static byte[] doFinal(Digest digest)
+    {
+        byte[] hash = new byte[digest.getDigestSize()];
+
+        digest.doFinal(hash, 0);
+
+        return hash;
+    }
+
+    private static class CacheKey
+    {
+        private final byte[] hash;
+        private final List values;
+        private final int hashCode;
+
+        CacheKey(byte[] hash, List values)
+        {
+            this.hash = hash;
+            this.values = values;
+            this.hashCode = Arrays.hashCode(hash) ^ ((values != null) ? values.hashCode() : 0);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (o == this)
+            {
+                return true;
+            }
+
+            if (!(o instanceof CacheKey))
+            {
+                return false;
+            }
+
+            CacheKey other = (CacheKey)o;
+
+            if (!Arrays.areEqual(hash, other.hash))
+            {
+                return false;
+            }
+
+            return (values == null) ? other.values == null : values.equals(other.values);
+        }
+    }
+
+    private static class PathEntry
+    {
+        final PKIXCertPathValidatorResult result;
+        final long expiry;
+
+        PathEntry(PKIXCertPathValidatorResult result, long expiry)
+        {
+            this.result = result;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package org.bouncycastle.jce.provider.test;
 
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.test.SimpleTest;
+import org.bouncycastle.x509.X509CertStoreSelector;
 
 import java.io.ByteArrayInputStream;
 import java.security.Security;
@@ -17,6 +20,8 @@
 import java.util.Iterator;
 import java.util.List;
 
+import javax.security.auth.x500.X500Principal;
+
 public class CertStoreTest
     extends SimpleTest
 {
@@ -24,11 +29,13 @@
     public void performTest()
         throws Exception
     {
-        basicTest();
+        basicTest("Collection");
+        basicTest("IndexedCollection");
         orderTest();
+        indexedTest();
     }
 
-    private void basicTest()
+    private void basicTest(String type)
         throws Exception
     {
         CertificateFactory cf = CertificateFactory.getInstance("X.509", "BC");
@@ -56,7 +63,7 @@ private void basicTest()
         list.add(rootCrl);
         list.add(interCrl);
         CollectionCertStoreParameters ccsp = new CollectionCertStoreParameters(list);
-        CertStore store = CertStore.getInstance("Collection", ccsp, "BC");
+        CertStore store = CertStore.getInstance(type, ccsp, "BC");
 
         // Searching for rootCert by subjectDN
         X509CertSelector targetConstraints = new X509CertSelector();
@@ -219,6 +226,113 @@ private void orderTest()
         }
     }
     
+    private void indexedTest()
+        throws Exception
+    {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509", "BC");
+
+        X509Certificate rootCert = (X509Certificate)cf
+                .generateCertificate(new ByteArrayInputStream(
+                        CertPathTest.rootCertBin));
+        X509Certificate interCert = (X509Certificate)cf
+                .generateCertificate(new ByteArrayInputStream(
+                        CertPathTest.interCertBin));
+        X509Certificate finalCert = (X509Certificate)cf
+                .generateCertificate(new ByteArrayInputStream(
+                        CertPathTest.finalCertBin));
+        X509CRL rootCrl = (X509CRL)cf.generateCRL(new ByteArrayInputStream(
+                CertPathTest.rootCrlBin));
+        X509CRL interCrl = (X509CRL)cf
+                .generateCRL(new ByteArrayInputStream(
+                        CertPathTest.interCrlBin));
+
+        List list = new ArrayList();
+        list.add(finalCert);
+        list.add(rootCrl);
+        list.add(interCert);
+        list.add(interCrl);
+        list.add(rootCert);
+
+        CollectionCertStoreParameters ccsp = new CollectionCertStoreParameters(list);
+        CertStore store = CertStore.getInstance("Collection", ccsp, "BC");
+        CertStore indexed = CertStore.getInstance("IndexedCollection", ccsp, "BC");
+
+        X509Certificate[] certs = new X509Certificate[] { rootCert, interCert, finalCert };
+
+        for (int i = 0; i != certs.length; i++)
+        {
+            X509CertSelector select = new X509CertSelector();
+            select.setSerialNumber(certs[i].getSerialNumber());
+            checkSameCerts("serial", store, indexed, select);
+
+            select = new X509CertSelector();
+            select.setIssuer(certs[i].getIssuerX500Principal().getEncoded());
+            select.setSerialNumber(certs[i].getSerialNumber());
+            checkSameCerts("issuer and serial", store, indexed, select);
+
+            select = X509CertStoreSelector.getInstance(new X509CertSelector());
+            select.setSubject(certs[i].getSubjectX500Principal().getEncoded());
+            checkSameCerts("store selector subject", store, indexed, select);
+
+            byte[] ski = certs[i].getExtensionValue(Extension.subjectKeyIdentifier.getId());
+            if (ski != null)
+            {
+                select = new X509CertSelector();
+                select.setSubjectKeyIdentifier(ASN1OctetString.getInstance(ski).getOctets());
+                checkSameCerts("subject key identifier", store, indexed, select);
+            }
+
+            byte[] aki = certs[i].getExtensionValue(Extension.authorityKeyIdentifier.getId());
+            if (aki != null)
+            {
+                select = new X509CertSelector();
+                select.setAuthorityKeyIdentifier(ASN1OctetString.getInstance(aki).getOctets());
+                checkSameCerts("authority key identifier", store, indexed, select);
+            }
+        }
+
+        // a selector with no indexed criteria is a full scan
+        X509CertSelector select = new X509CertSelector();
+        select.setSubjectPublicKey(interCert.getPublicKey());
+        checkSameCerts("public key", store, indexed, select);
+
+        X509CRLSelector crlSelect = new X509CRLSelector();
+        crlSelect.addIssuer(rootCrl.getIssuerX500Principal());
+        crlSelect.addIssuer(interCrl.getIssuerX500Principal());
+
+        Iterator crls = indexed.getCRLs(crlSelect).iterator();
+
+        if (!crls.next().equals(rootCrl) || !crls.next().equals(interCrl) || crls.hasNext())
+        {
+            fail("indexed CRL lookup by issuers failed");
+        }
+
+        crlSelect = new X509CRLSelector();
+        crlSelect.addIssuer(new X500Principal("CN=Unknown"));
+
+        if (!indexed.getCRLs(crlSelect).isEmpty())
+        {
+            fail("indexed CRL lookup found unknown issuer");
+        }
+
+        if (indexed.getCertificates(null).size() != 3 || indexed.getCRLs(null).size() != 2)
+        {
+            fail("indexed store contents wrong");
+        }
+    }
+
+    private void checkSameCerts(String label, CertStore store, CertStore indexed, X509CertSelector select)
+        throws Exception
+    {
+        Collection expected = store.getCertificates(select);
+        Collection found = indexed.getCertificates(select);
+
+        if (expected.isEmpty() || !new ArrayList(expected).equals(new ArrayList(found)))
+        {
+            fail("indexed lookup by " + label + " failed");
+        }
+    }
+
     public String getName()
     {
         return "CertStore";
@@ -3,25 +3,45 @@
 import java.io.ByteArrayInputStream;
 import java.security.GeneralSecurityException;
 import java.security.Security;
+import java.security.cert.CertPath;
 import java.security.cert.CertPathBuilder;
 import java.security.cert.CertPathBuilderResult;
+import java.security.cert.CertPathValidator;
 import java.security.cert.CertStore;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.PKIXCertPathBuilderResult;
+import java.security.cert.PKIXCertPathValidatorResult;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CertSelector;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.PKIXRevocationCache;
+import org.bouncycastle.util.StoreException;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.test.SimpleTest;
+import org.bouncycastle.x509.ExtendedPKIXBuilderParameters;
+import org.bouncycastle.x509.ExtendedPKIXParameters;
+import org.bouncycastle.x509.PKIXValidationCache;
 
 
 /*
@@ -83,6 +103,8 @@ public class NISTCertPathTest
     private int             testCount;
     private Vector          testFail;
     private StringBuffer    resultBuf;
+    private ExecutorService executor;
+    private boolean         useRevocationCache;
  
     public String getName() 
     {
@@ -253,6 +275,13 @@ public void performTest()
         test("74", TEST_74_DATA, true , false);
         test("75", TEST_75_DATA, false, false);
         test("76", TEST_76_DATA, false, false);
+
+        testValidationCache();
+        testParallelBuildOnExecutor();
+
+        testParallelBuild();
+
+        testRevocationCache();
         
         resultBuf.append("NISTCertPathTest -- Failed: ").append(testFail.size()).append('/').append(testCount).append('\n');
         if (!testFail.isEmpty())
@@ -388,7 +417,45 @@ private void test(String _name, String[] _data, Set _ipolset,
                 _param.setInitialPolicies(_ipolset);
             }
 
-            CertPathBuilderResult _result = _cpb.build(_param);
+            CertPathBuilderResult _result;
+            if (useRevocationCache)
+            {
+                ExtendedPKIXBuilderParameters _extParam = (ExtendedPKIXBuilderParameters)ExtendedPKIXBuilderParameters.getInstance(_param);
+                PKIXRevocationCache _cache = new PKIXRevocationCache(16);
+
+                _extParam.setRevocationCache(_cache);
+
+                // fill the cache, the second build must give the same answer from it.
+                try
+                {
+                    _cpb.build(_extParam);
+                }
+                catch (Exception ex)
+                {
+                    // checked on the second build
+                }
+
+                if (_cache.size() == 0)
+                {
+                    System.out.println("No CRLs cached");
+                    _pass = false;
+                    testFail.addElement(_name);
+                }
+
+                _result = _cpb.build(_extParam);
+            }
+            else if (executor != null)
+            {
+                ExtendedPKIXBuilderParameters _extParam = (ExtendedPKIXBuilderParameters)ExtendedPKIXBuilderParameters.getInstance(_param);
+
+                _extParam.setExecutorService(executor);
+
+                _result = _cpb.build(_extParam);
+            }
+            else
+            {
+                _result = _cpb.build(_param);
+            }
 
             if (!_accept)
             {
@@ -412,6 +479,284 @@ private void test(String _name, String[] _data, Set _ipolset,
     }
     
 
+    private void testParallelBuild()
+    {
+        executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            test("P 1", TEST_1_DATA , true , false);
+            test("P 2", TEST_2_DATA , false, false);
+            test("P 4", TEST_4_DATA , true , false);
+            test("P12", TEST_12_DATA, true , false);
+            test("P24", TEST_24_DATA, true , false);
+            test("P25", TEST_25_DATA, false, false);
+            test("P74", TEST_74_DATA, true , false);
+        }
+        finally
+        {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /*
+     * the build runs on the only thread of the executor it searches with, so the
+     * searches have to run on the building thread.
+     */
+    private void testParallelBuildOnExecutor()
+    {
+        final ExecutorService singleThread = Executors.newFixedThreadPool(1);
+
+        try
+        {
+            X509Certificate ee = decodeCertificate(TEST_1_DATA[TEST_1_DATA.length - 1]);
+            X509CertSelector select = new X509CertSelector();
+            select.setSubject(ee.getSubjectX500Principal().getEncoded());
+
+            CertStore collection = makeCertStore(TEST_1_DATA);
+            List certsAndCRLs = new ArrayList();
+
+            certsAndCRLs.addAll(collection.getCertificates(null));
+            certsAndCRLs.addAll(collection.getCRLs(null));
+
+            final ExtendedPKIXBuilderParameters params = (ExtendedPKIXBuilderParameters)ExtendedPKIXBuilderParameters.getInstance(new PKIXBuilderParameters(trustedSet, select));
+
+            params.addCertStore(CertStore.getInstance("IndexedCollection", new CollectionCertStoreParameters(certsAndCRLs), "BC"));
+            params.setRevocationEnabled(true);
+            params.setExecutorService(singleThread);
+
+            Future build = singleThread.submit(new Callable()
+            {
+                public Object call()
+                    throws Exception
+                {
+                    return CertPathBuilder.getInstance("PKIX", "BC").build(params);
+                }
+            });
+
+            PKIXCertPathBuilderResult result = (PKIXCertPathBuilderResult)build.get(60, TimeUnit.SECONDS);
+
+            if (!result.getCertPath().getCertificates().get(0).equals(ee))
+            {
+                fail("wrong path built on executor");
+            }
+        }
+        catch (TimeoutException e)
+        {
+            fail("build on executor deadlocked");
+        }
+        catch (Exception e)
+        {
+            fail("build on executor failed: " + e, e);
+        }
+        finally
+        {
+            singleThread.shutdownNow();
+        }
+    }
+
+    private void testValidationCache()
+    {
+        try
+        {
+            X509Certificate ee = decodeCertificate(TEST_1_DATA[TEST_1_DATA.length - 1]);
+            X509CertSelector select = new X509CertSelector();
+            select.setSubject(ee.getSubjectX500Principal().getEncoded());
+
+            PKIXBuilderParameters buildParams = new PKIXBuilderParameters(trustedSet, select);
+            buildParams.addCertStore(makeCertStore(TEST_1_DATA));
+            buildParams.setRevocationEnabled(true);
+
+            CertPath path = ((PKIXCertPathBuilderResult)CertPathBuilder.getInstance("PKIX", "BC").build(buildParams)).getCertPath();
+
+            PKIXValidationCache cache = new PKIXValidationCache(10, 60 * 1000);
+            ExtendedPKIXParameters params = new ExtendedPKIXParameters(trustedSet);
+            params.addCertStore(makeCertStore(TEST_1_DATA));
+            params.setRevocationEnabled(true);
+            params.setValidationCache(cache);
+
+            CertPathValidator cpv = CertPathValidator.getInstance("PKIX", "BC");
+            PKIXCertPathValidatorResult result = (PKIXCertPathValidatorResult)cpv.validate(path, params);
+
+            if (cache.getValidatedPath(path, params) == null)
+            {
+                fail("validated path not cached");
+            }
+
+            if (!cache.isSignatureVerified(ee, trustedCert.getPublicKey()))
+            {
+                fail("verified signature not cached");
+            }
+
+            PKIXCertPathValidatorResult cached = (PKIXCertPathValidatorResult)cpv.validate(path, params);
+
+            if (!cached.getPublicKey().equals(result.getPublicKey()) || cached.getTrustAnchor() != result.getTrustAnchor())
+            {
+                fail("cached result does not match");
+            }
+
+            //
+            // rebuilt parameters, with new anchor and store instances.
+            //
+            Set rebuiltAnchors = new HashSet();
+            rebuiltAnchors.add(new TrustAnchor(trustedCert, ((TrustAnchor)trustedSet.iterator().next()).getNameConstraints()));
+
+            ExtendedPKIXParameters rebuilt = new ExtendedPKIXParameters(rebuiltAnchors);
+            rebuilt.addCertStore(makeCertStore(TEST_1_DATA));
+            rebuilt.setRevocationEnabled(true);
+            rebuilt.setValidationCache(cache);
+
+            if (cache.getValidatedPath(path, rebuilt) != null)
+            {
+                fail("path found with different stores");
+            }
+
+            params.setValidationCacheScope("test1");
+            cpv.validate(path, params);
+
+            rebuilt.setValidationCacheScope("test1");
+
+            if (cache.getValidatedPath(path, rebuilt) == null)
+            {
+                fail("path not found with rebuilt parameters");
+            }
+
+            rebuilt.setValidationCacheScope("test2");
+
+            if (cache.getValidatedPath(path, rebuilt) != null)
+            {
+                fail("path found with different scope");
+            }
+
+            params.setRevocationEnabled(false);
+
+            if (cache.getValidatedPath(path, params) != null)
+            {
+                fail("path found with different parameters");
+            }
+
+            cache.clear();
+
+            if (cache.getValidatedPath(path, (ExtendedPKIXParameters)params.clone()) != null)
+            {
+                fail("path found after clear");
+            }
+        }
+        catch (Exception e)
+        {
+            fail("validation cache test failed: " + e, e);
+        }
+    }
+
+    private void testRevocationCache()
+    {
+        useRevocationCache = true;
+
+        try
+        {
+            test("R 1", TEST_1_DATA , true , false);
+            test("R 4", TEST_4_DATA , true , false);
+            test("R12", TEST_12_DATA, true , false);
+            test("R20", TEST_20_DATA, false, false);
+            test("R21", TEST_21_DATA, false, false);
+            test("R68", TEST_68_DATA, false, false);
+            test("R74", TEST_74_DATA, true , false);
+        }
+        finally
+        {
+            useRevocationCache = false;
+        }
+
+        long now = System.currentTimeMillis();
+        PKIXRevocationCache cache = new PKIXRevocationCache(2);
+
+        cache.put("issuer", null, Collections.singletonList("current"), new Date(now - 1000), new Date(now + 60000));
+        cache.put("issuer", "dp", Collections.singletonList("future"), new Date(now + 30000), new Date(now + 60000));
+
+        if (cache.get("issuer", "dp") != null)
+        {
+            fail("entry returned before thisUpdate");
+        }
+
+        if (!cache.get("issuer", null).contains("current"))
+        {
+            fail("current entry not returned");
+        }
+
+        cache.put("other", null, Collections.singletonList("expired"), new Date(now - 60000), new Date(now - 1000));
+
+        if (cache.size() != 2 || cache.get("issuer", "dp") != null)
+        {
+            fail("least recently used entry not evicted");
+        }
+
+        if (cache.get("other", null) != null || cache.size() != 1)
+        {
+            fail("expired entry returned");
+        }
+
+        final int[] loads = new int[1];
+        PKIXRevocationCache.Loader loader = new PKIXRevocationCache.Loader()
+        {
+            public void load(PKIXRevocationCache c, Object issuer, Object distributionPoint)
+                throws StoreException
+            {
+                long time = System.currentTimeMillis();
+
+                synchronized (loads)
+                {
+                    loads[0]++;
+                }
+
+                c.put(issuer, distributionPoint, Collections.singletonList("loaded"), new Date(time - 1000), new Date(time + 1000));
+            }
+        };
+
+        Collection values = cache.get("loaded", null, loader);
+
+        if (values == null || !values.contains("loaded") || loads[0] != 1)
+        {
+            fail("entry not loaded");
+        }
+
+        cache.get("loaded", null, loader);
+
+        if (loads[0] != 1)
+        {
+            fail("entry loaded twice");
+        }
+
+        ExecutorService refresher = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            cache = new PKIXRevocationCache(16, refresher, 5000);
+
+            cache.get("loaded", null, loader);
+            cache.get("loaded", null, loader);
+
+            refresher.shutdown();
+            if (!refresher.awaitTermination(10, TimeUnit.SECONDS))
+            {
+                fail("refresh not completed");
+            }
+
+            if (loads[0] != 3)
+            {
+                fail("entry not refreshed in the background");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            fail("interrupted waiting for refresh");
+        }
+        finally
+        {
+            refresher.shutdownNow();
+        }
+    }
+
     public static void main(
         String[]    args)
     {